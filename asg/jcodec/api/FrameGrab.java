@@ -7,13 +7,17 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import asg.jcodec.api.specific.AVCMP4Adaptor;
 import asg.jcodec.api.specific.ContainerAdaptor;
 import asg.jcodec.codecs.h264.H264Decoder;
 import asg.jcodec.codecs.mpeg12.MPEGDecoder;
 import asg.jcodec.codecs.prores.ProresDecoder;
+import asg.jcodec.common.DecodeOptions;
 import asg.jcodec.common.DemuxerTrack;
 import asg.jcodec.common.FileChannelWrapper;
 import asg.jcodec.common.JCodecUtil;
@@ -51,6 +55,14 @@ public class FrameGrab {
     public DemuxerTrack videoTrack;
     public DemuxerTrack audioTrack;
     private ContainerAdaptor decoder;
+
+    /*
+     * With more than one thread the next few frames are decoded ahead, the
+     * frames read ahead are dropped when seeking.
+     */
+    private int threads = 1;
+    private DecodeOptions options = DecodeOptions.FULL;
+    private LinkedList<Future<? extends Picture>> readAhead = new LinkedList<Future<? extends Picture>>();
     
     public MP4Demuxer demuxer;
 
@@ -64,7 +76,8 @@ public class FrameGrab {
         case MOV:
             demuxer = new MP4Demuxer(in);
             videoTrack = demuxer.getVideoTrack();
-            audioTrack = demuxer.getAudioTracks().get(0);
+            // Clips without sound have no audio track
+            audioTrack = demuxer.getAudioTracks().isEmpty() ? null : demuxer.getAudioTracks().get(0);
             
 
             
@@ -167,6 +180,7 @@ public class FrameGrab {
     }
 
     private void goToPrevKeyframe() throws IOException, JCodecException {
+        readAhead.clear();
         Packet frame = videoTrack.nextFrame();
         int orig = (int) frame.getFrameNo();
 
@@ -181,6 +195,7 @@ public class FrameGrab {
     }
 
     private void decodeLeadingFrames() throws IOException, JCodecException {
+        readAhead.clear();
         Packet frame = videoTrack.nextFrame();
         int orig = (int) frame.getFrameNo();
 
@@ -224,8 +239,12 @@ public class FrameGrab {
         if (videoTrack instanceof AbstractMP4DemuxerTrack) {
             SampleEntry se = ((AbstractMP4DemuxerTrack) videoTrack).getSampleEntries()[((MP4Packet) frame).getEntryNo()];
             VideoDecoder byFourcc = byFourcc(se.getHeader().getFourcc());
-            if (byFourcc instanceof H264Decoder)
-                return new AVCMP4Adaptor(((AbstractMP4DemuxerTrack) videoTrack).getSampleEntries());
+            if (byFourcc instanceof H264Decoder) {
+                AVCMP4Adaptor adaptor = new AVCMP4Adaptor(((AbstractMP4DemuxerTrack) videoTrack).getSampleEntries());
+                adaptor.setThreads(threads);
+                adaptor.setOptions(options);
+                return adaptor;
+            }
         }
 
         throw new UnsupportedFormatException("Codec is not supported");
@@ -261,11 +280,59 @@ public class FrameGrab {
      * @throws IOException
      */
     public Picture getNativeFrame() throws IOException {
+        if (decoder instanceof AVCMP4Adaptor && (threads > 1 || !readAhead.isEmpty()))
+            return getReadAheadFrame((AVCMP4Adaptor) decoder);
         Packet frames = videoTrack.nextFrame();
         Picture buffer = Picture.create(1920, 1088, ColorSpace.YUV444);
         return decoder.decodeFrame(frames, buffer.getData());
     }
 
+    /**
+     * Decodes frames on up to as many threads as set with setThreads, keeping
+     * that many frames from the current one on in flight.
+     */
+    private Picture getReadAheadFrame(AVCMP4Adaptor adaptor) throws IOException {
+        while (readAhead.size() < threads) {
+            Packet packet = videoTrack.nextFrame();
+            if (packet == null)
+                break;
+            readAhead.add(adaptor.submitFrame(packet, Picture.create(1920, 1088, ColorSpace.YUV420).getData()));
+        }
+        if (readAhead.isEmpty())
+            return null;
+        Future<? extends Picture> frame = readAhead.removeFirst();
+        if (frame == null)
+            return null;
+        try {
+            return frame.get();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while decoding");
+        } catch (ExecutionException e) {
+            throw new IOException("Could not decode frame: " + e.getCause());
+        }
+    }
+
+    /**
+     * Sets the shortcuts to take for previews from the next frame decoded on,
+     * frames read ahead already keep the ones they were started with. With
+     * shortcuts that skip frames getNativeFrame returns null for them.
+     */
+    public void setOptions(DecodeOptions options) {
+        this.options = options;
+        if (decoder instanceof AVCMP4Adaptor)
+            ((AVCMP4Adaptor) decoder).setOptions(options);
+    }
+
+    /**
+     * Sets how many frames are decoded at the same time while frames are read
+     * in order, see H264Decoder.setThreads.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+        if (decoder instanceof AVCMP4Adaptor)
+            ((AVCMP4Adaptor) decoder).setThreads(threads);
+    }
+
     /**
      * Get frame at a specified second as AWT image
      * 
@@ -49,6 +49,7 @@ public class SequenceEncoder {
 
         // Create an instance of encoder
         encoder = new H264Encoder();
+        encoder.setSlices(Runtime.getRuntime().availableProcessors());
 
         // Encoder extra data ( SPS, PPS ) to be stored in a special place of
         // MP4
@@ -73,14 +74,25 @@ public class SequenceEncoder {
         _out.clear();
         ByteBuffer result = encoder.encodeFrame(_out, toEncode);
 
-        // Based on the frame above form correct MP4 packet
-        spsList.clear();
-        ppsList.clear();
-        H264Utils.wipePS(result, spsList, ppsList);
+        // Based on the frame above form correct MP4 packet, only key frames
+        // carry SPS/PPS
+        ArrayList<ByteBuffer> sps = new ArrayList<ByteBuffer>();
+        ArrayList<ByteBuffer> pps = new ArrayList<ByteBuffer>();
+        H264Utils.wipePS(result, sps, pps);
         H264Utils.encodeMOVPacket(result);
+        boolean keyFrame = !sps.isEmpty();
+        if (keyFrame) {
+            // They point into _out, which the next frame overwrites
+            spsList.clear();
+            ppsList.clear();
+            for (ByteBuffer nalUnit : sps)
+                spsList.add(NIOUtils.duplicate(nalUnit));
+            for (ByteBuffer nalUnit : pps)
+                ppsList.add(NIOUtils.duplicate(nalUnit));
+        }
 
         // Add packet to video track
-        outTrack.addFrame(new MP4Packet(result, frameNo, 25, 1, frameNo, true, null, frameNo, 0));
+        outTrack.addFrame(new MP4Packet(result, frameNo, 25, 1, frameNo, keyFrame, null, frameNo, 0));
 
         frameNo++;
     }
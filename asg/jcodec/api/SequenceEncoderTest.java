@@ -1,13 +1,18 @@
 package asg.jcodec.api;
 
+import java.awt.Color;
+import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 
 import javax.imageio.ImageIO;
 
+import org.junit.Assert;
 import org.junit.Test;
 
+import asg.jcodec.common.NIOUtils;
+
 public class SequenceEncoderTest {
 
     public static void main(String args[]) throws IOException {
@@ -33,4 +38,33 @@ public class SequenceEncoderTest {
         
         System.out.println("done");
     }
+
+    /**
+     * Encodes flat grey frames a little lighter each time, past the first
+     * key interval, and reads every one back.
+     */
+    @Test
+    public void testPFramesRoundTrip() throws Exception {
+        File file = File.createTempFile("SequenceEncoderTest", ".mp4");
+        try {
+            SequenceEncoder enc = new SequenceEncoder(file);
+            for (int i = 0; i < 30; i++) {
+                BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_3BYTE_BGR);
+                Graphics g = image.getGraphics();
+                g.setColor(new Color(40 + 6 * i, 40 + 6 * i, 40 + 6 * i));
+                g.fillRect(0, 0, 64, 48);
+                g.dispose();
+                enc.encodeImage(image);
+            }
+            enc.finish();
+
+            FrameGrab grab = new FrameGrab(NIOUtils.readableFileChannel(file));
+            for (int i = 0; i < 30; i++) {
+                BufferedImage frame = grab.getFrame();
+                Assert.assertEquals("frame " + i, 40 + 6 * i, frame.getRGB(32, 24) & 0xff, 3);
+            }
+        } finally {
+            file.delete();
+        }
+    }
 }
@@ -2,9 +2,13 @@ package asg.jcodec.api.specific;
 
 import static asg.jcodec.codecs.h264.H264Utils.splitMOVPacket;
 
+import java.util.concurrent.Future;
+
 import asg.jcodec.codecs.h264.H264Decoder;
 import asg.jcodec.codecs.h264.H264Utils;
+import asg.jcodec.codecs.h264.io.model.Frame;
 import asg.jcodec.codecs.h264.mp4.AvcCBox;
+import asg.jcodec.common.DecodeOptions;
 import asg.jcodec.common.model.Packet;
 import asg.jcodec.common.model.Picture;
 import asg.jcodec.containers.mp4.MP4Packet;
@@ -29,6 +33,8 @@ public class AVCMP4Adaptor implements ContainerAdaptor {
     private SampleEntry[] ses;
     private AvcCBox avcCBox;
     private int curENo;
+    private int threads = 1;
+    private DecodeOptions options = DecodeOptions.FULL;
 
     public AVCMP4Adaptor(SampleEntry[] ses) {
         this.ses = ses;
@@ -54,6 +60,33 @@ public class AVCMP4Adaptor implements ContainerAdaptor {
         return pic;
     }
 
+    /**
+     * Starts decoding a frame on a worker, see H264Decoder.submitFrame.
+     */
+    public Future<Frame> submitFrame(Packet packet, int[][] data) {
+        updateState(packet);
+        return decoder.submitFrame(H264Utils.splitMOVPacket(packet.getData(), avcCBox), data);
+    }
+
+    /**
+     * How many frames can be decoded at the same time, see
+     * H264Decoder.setThreads.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+        if (decoder != null)
+            decoder.setThreads(threads);
+    }
+
+    /**
+     * Shortcuts to take for previews, see H264Decoder.setOptions.
+     */
+    public void setOptions(DecodeOptions options) {
+        this.options = options;
+        if (decoder != null)
+            decoder.setOptions(options);
+    }
+
     private void updateState(Packet packet) {
         int eNo = ((MP4Packet) packet).getEntryNo();
         if (eNo != curENo) {
@@ -63,6 +96,8 @@ public class AVCMP4Adaptor implements ContainerAdaptor {
             decoder = new H264Decoder();
             ((H264Decoder) decoder).addSps(avcCBox.getSpsList());
             ((H264Decoder) decoder).addPps(avcCBox.getPpsList());
+            decoder.setThreads(threads);
+            decoder.setOptions(options);
         }
     }
 
@@ -6,7 +6,13 @@ import static asg.jcodec.common.tools.MathUtil.wrap;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import asg.jcodec.codecs.h264.decode.SliceDecoder;
 import asg.jcodec.codecs.h264.decode.SliceHeaderReader;
@@ -20,10 +26,13 @@ import asg.jcodec.codecs.h264.io.model.RefPicMarking;
 import asg.jcodec.codecs.h264.io.model.RefPicMarkingIDR;
 import asg.jcodec.codecs.h264.io.model.SeqParameterSet;
 import asg.jcodec.codecs.h264.io.model.SliceHeader;
+import asg.jcodec.common.DecodeOptions;
 import asg.jcodec.common.IntObjectMap;
+import asg.jcodec.common.SliceWorkers;
 import asg.jcodec.common.VideoDecoder;
 import asg.jcodec.common.io.BitReader;
 import asg.jcodec.common.model.ColorSpace;
+import asg.jcodec.common.model.Picture;
 import asg.jcodec.common.model.Rect;
 
 /**
@@ -46,6 +55,26 @@ public class H264Decoder implements VideoDecoder {
     private List<Frame> pictureBuffer;
     private POCManager poc;
     private boolean debug;
+    private DecodeOptions options = DecodeOptions.FULL;
+    private boolean refsMissing;
+
+    /*
+     * Motion vectors and reference lists belong to a frame for as long as it
+     * is used for reference (direct prediction reads them), so they are taken
+     * from these pools and go back when the frame is released.
+     */
+    private List<int[][][][]> mvsPool = new ArrayList<int[][][][]>();
+    private List<Frame[][][]> refsUsedPool = new ArrayList<Frame[][][]>();
+
+    private static final int[] ZERO_VECTOR = new int[3];
+
+    private PictureState state = new PictureState();
+
+    private int threads = 1;
+    private int submitted;
+    private LinkedList<FrameTask> inFlight = new LinkedList<FrameTask>();
+    private List<PictureState> idleStates = new ArrayList<PictureState>();
+    private List<Retired> retired = new ArrayList<Retired>();
 
     public H264Decoder() {
         pictureBuffer = new ArrayList<Frame>();
@@ -54,31 +83,161 @@ public class H264Decoder implements VideoDecoder {
 
     @Override
     public Frame decodeFrame(ByteBuffer data, int[][] buffer) {
-        return new FrameDecoder().decodeFrame(H264Utils.splitFrame(data), buffer);
+        return decodeFrame(H264Utils.splitFrame(data), buffer);
     }
 
     public Frame decodeFrame(List<ByteBuffer> nalUnits, int[][] buffer) {
-    	
-    	
-    	
+        if (threads > 1) {
+            Future<Frame> frame = submitFrame(nalUnits, buffer);
+            return frame == null ? null : SliceWorkers.waitFor(frame);
+        }
         return new FrameDecoder().decodeFrame(nalUnits, buffer);
     }
 
+    /**
+     * Sets how many frames can be decoded at the same time. With more than
+     * one, submitFrame returns as soon as the frame's headers are read and
+     * the frame is decoded on the slice workers, waiting for just the rows of
+     * its references that its motion vectors point into. A frame only ever
+     * waits for frames submitted before it, so the oldest frame can always
+     * make progress.
+     */
+    public void setThreads(int threads) {
+        flush();
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Starts decoding a frame, frames have to be submitted in decoding order.
+     * Blocks while as many frames as set with setThreads are being decoded.
+     * 
+     * @return The frame, decoded into buffer, or null if the NAL units didn't
+     *         contain a picture.
+     */
+    public Future<Frame> submitFrame(final List<ByteBuffer> nalUnits, final int[][] buffer) {
+        if (threads == 1) {
+            FutureTask<Frame> frame = new FutureTask<Frame>(new Callable<Frame>() {
+                public Frame call() {
+                    return new FrameDecoder().decodeFrame(nalUnits, buffer);
+                }
+            });
+            frame.run();
+            return frame;
+        }
+        while (inFlight.size() >= threads)
+            finishOldest();
+        reclaim();
+        return new FrameDecoder().submitFrame(nalUnits, buffer);
+    }
+
+    /**
+     * Waits for every submitted frame to be decoded.
+     */
+    public void flush() {
+        while (!inFlight.isEmpty())
+            finishOldest();
+        reclaim();
+    }
+
+    /**
+     * Waits for the oldest frame in flight, an error decoding it is left for
+     * whoever asks for its result.
+     */
+    private void finishOldest() {
+        try {
+            SliceWorkers.waitFor(inFlight.getFirst().future);
+        } catch (RuntimeException e) {
+        }
+        reclaim();
+    }
+
+    /**
+     * Takes back the state of finished frames, and the references released
+     * while frames that could still read them were being decoded.
+     */
+    private void reclaim() {
+        while (!inFlight.isEmpty() && inFlight.getFirst().future.isDone())
+            idleStates.add(inFlight.removeFirst().state);
+        int oldest = inFlight.isEmpty() ? submitted : inFlight.getFirst().number;
+        for (Iterator<Retired> it = retired.iterator(); it.hasNext();) {
+            Retired ref = it.next();
+            if (ref.number < oldest) {
+                pictureBuffer.add(ref.frame);
+                releaseMvs(ref.frame);
+                it.remove();
+            }
+        }
+    }
+
+    private static class Retired {
+        private Frame frame;
+        private int number;
+
+        private Retired(Frame frame, int number) {
+            this.frame = frame;
+            this.number = number;
+        }
+    }
+
+    /**
+     * A frame being decoded on a worker. Rows are deblocked as soon as they
+     * are decoded and published to the frames that use this one as a
+     * reference, unless slices are out of raster order, then the whole frame
+     * is deblocked at the end.
+     */
+    private class FrameTask implements Callable<Frame>, SliceDecoder.RowListener {
+        private int number;
+        private Frame frame;
+        private PictureState state;
+        private SeqParameterSet sps;
+        private List<ByteBuffer> slices;
+        private List<NALUnit> markers;
+        private boolean rowOrder;
+        private boolean skipLoopFilter;
+        private int[][] buffer;
+        private Future<Frame> future;
+        private int deblocked;
+
+        public Frame call() {
+            try {
+                state.decoder.setRowListener(rowOrder ? this : null);
+                for (int i = 0; i < slices.size(); i++)
+                    state.decoder.decode(slices.get(i), markers.get(i));
+                deblockTo(state.heightInMbs);
+            } finally {
+                frame.setComplete();
+            }
+            Frame out = createFrame(sps, buffer, frame.getFrameNo(), frame.getMvs(), frame.getRefsUsed(),
+                    frame.getPOC());
+            out.copyFrom(frame);
+            return out;
+        }
+
+        public void rowDecoded(int mbY) {
+            deblockTo(mbY + 1);
+        }
+
+        private void deblockTo(int rows) {
+            for (; deblocked < rows; deblocked++)
+                if (!skipLoopFilter)
+                    state.filter.deblockRow(frame, deblocked);
+            frame.setRowsDone(deblocked - 1);
+        }
+    }
+
     class FrameDecoder {
         private SliceHeaderReader shr;
         private PictureParameterSet activePps;
         private SeqParameterSet activeSps;
-        private DeblockingFilter filter;
         private SliceHeader firstSliceHeader;
         private NALUnit firstNu;
-        private SliceDecoder decoder;
-        private int[][][][] mvs;
 
         
         
         
         public Frame decodeFrame(List<ByteBuffer> nalUnits, int[][] buffer) {
             Frame result = null;
+            boolean skipped = false;
 
             
             
@@ -91,12 +250,14 @@ public class H264Decoder implements VideoDecoder {
                 switch (marker.type) {
                 case NON_IDR_SLICE:
                 case IDR_SLICE:
+                    if (skipped || result == null && (skipped = skip(marker)))
+                        break;
                     if (result == null)
-                        result = init(buffer, nalUnit, marker);
+                        result = init(buffer, nalUnit, marker, state);
                     
                     
 
-                    decoder.decode(nalUnit, marker);
+                    state.decoder.decode(nalUnit, marker);
                     break;
                 case SPS:
                     SeqParameterSet _sps = SeqParameterSet.read(nalUnit);
@@ -110,13 +271,104 @@ public class H264Decoder implements VideoDecoder {
                 }
             }
 
-            filter.deblockFrame(result);
+            if (result == null)
+                return null;
+
+            if (!options.skipLoopFilter)
+                state.filter.deblockFrame(result);
 
             updateReferences(result);
 
             return result;
         }
 
+        public Future<Frame> submitFrame(List<ByteBuffer> nalUnits, int[][] buffer) {
+            FrameTask task = null;
+            boolean skipped = false;
+            for (ByteBuffer nalUnit : nalUnits) {
+                NALUnit marker = NALUnit.read(nalUnit);
+
+                unescapeNAL(nalUnit);
+
+                switch (marker.type) {
+                case NON_IDR_SLICE:
+                case IDR_SLICE:
+                    if (skipped || task == null && (skipped = skip(marker)))
+                        break;
+                    if (task == null) {
+                        task = new FrameTask();
+                        task.state = idleStates.isEmpty() ? new PictureState() : idleStates.remove(idleStates
+                                .size() - 1);
+                        task.frame = init(null, nalUnit, marker, task.state);
+                        task.sps = activeSps;
+                        task.slices = new ArrayList<ByteBuffer>();
+                        task.markers = new ArrayList<NALUnit>();
+                    }
+                    task.slices.add(nalUnit);
+                    task.markers.add(marker);
+                    break;
+                case SPS:
+                    SeqParameterSet _sps = SeqParameterSet.read(nalUnit);
+                    sps.put(_sps.seq_parameter_set_id, _sps);
+                    break;
+                case PPS:
+                    PictureParameterSet _pps = PictureParameterSet.read(nalUnit);
+                    pps.put(_pps.pic_parameter_set_id, _pps);
+                    break;
+                default:
+                }
+            }
+            if (task == null)
+                return null;
+
+            task.rowOrder = inRowOrder(task.slices);
+            task.skipLoopFilter = options.skipLoopFilter;
+            task.buffer = buffer;
+            task.number = submitted++;
+            task.future = SliceWorkers.submit(task);
+            inFlight.add(task);
+
+            updateReferences(task.frame);
+
+            return task.future;
+        }
+
+        /**
+         * Whether the options say to skip the frame that starts with this
+         * slice. Once a reference frame is skipped the following frames could
+         * be predicted from it, so everything is skipped up to the next IDR
+         * frame.
+         */
+        private boolean skip(NALUnit marker) {
+            if (marker.type == NALUnitType.IDR_SLICE) {
+                refsMissing = false;
+                return false;
+            }
+            if (refsMissing || options.keyframesOnly) {
+                if (marker.nal_ref_idc != 0)
+                    refsMissing = true;
+                return true;
+            }
+            return options.skipNonReference && marker.nal_ref_idc == 0;
+        }
+
+        /**
+         * Whether the macroblocks of the slices come in raster order, so each
+         * row is complete once its last macroblock is decoded.
+         */
+        private boolean inRowOrder(List<ByteBuffer> slices) {
+            if (activePps.num_slice_groups_minus1 > 0 || !activeSps.frame_mbs_only_flag)
+                return false;
+            int last = -1;
+            for (ByteBuffer slice : slices) {
+                int first = new SliceHeaderReader().readPart1(new BitReader(slice.duplicate())).first_mb_in_slice;
+                if (first <= last)
+                    return false;
+                last = first;
+            }
+            return true;
+        }
+
         private void updateReferences(Frame picture) {
             if (firstNu.nal_ref_idc != 0) {
                 if (firstNu.type == NALUnitType.IDR_SLICE) {
@@ -124,10 +376,20 @@ public class H264Decoder implements VideoDecoder {
                 } else {
                     performMarking(firstSliceHeader.refPicMarkingNonIDR, picture);
                 }
+            } else if (threads > 1) {
+                retire(picture);
+            } else {
+                releaseMvs(picture);
             }
         }
 
-        private Frame init(int[][] buffer, ByteBuffer segment, NALUnit marker) {
+        /**
+         * Reads the first slice header and sets up the frame and the state it
+         * is decoded with. Frames decoded on a worker are decoded into a
+         * frame of their own, which becomes the reference, and only copied
+         * into the caller's buffer when they are done.
+         */
+        private Frame init(int[][] buffer, ByteBuffer segment, NALUnit marker, PictureState state) {
             firstNu = marker;
 
             shr = new SliceHeaderReader();
@@ -136,31 +398,27 @@ public class H264Decoder implements VideoDecoder {
             activePps = pps.get(firstSliceHeader.pic_parameter_set_id);
             activeSps = sps.get(activePps.seq_parameter_set_id);
             shr.readPart2(firstSliceHeader, marker, activeSps, activePps, br);
-            int picWidthInMbs = activeSps.pic_width_in_mbs_minus1 + 1;
-            int picHeightInMbs = getPicHeightInMbs(activeSps);
+            int widthInMbs = activeSps.pic_width_in_mbs_minus1 + 1;
+            int heightInMbs = getPicHeightInMbs(activeSps);
 
-            int[][] nCoeff = new int[picHeightInMbs << 2][picWidthInMbs << 2];
-            mvs = new int[2][picHeightInMbs << 2][picWidthInMbs << 2][3];
-            MBType[] mbTypes = new MBType[picHeightInMbs * picWidthInMbs];
-            boolean[] tr8x8Used = new boolean[picHeightInMbs * picWidthInMbs];
-            int[][] mbQps = new int[3][picHeightInMbs * picWidthInMbs];
-            SliceHeader[] shs = new SliceHeader[picHeightInMbs * picWidthInMbs];
-            Frame[][][] refsUsed = new Frame[picHeightInMbs * picWidthInMbs][][];
+            int[][][][] mvs = takeMvs(widthInMbs, heightInMbs);
+            Frame[][][] refsUsed = takeRefsUsed(widthInMbs, heightInMbs);
 
             if (sRefs == null) {
                 sRefs = new Frame[1 << (firstSliceHeader.sps.log2_max_frame_num_minus4 + 4)];
                 lRefs = new IntObjectMap<Frame>();
             }
 
-            Frame result = createFrame(activeSps, buffer, firstSliceHeader.frame_num, mvs, refsUsed,
-                    poc.calcPOC(firstSliceHeader, firstNu));
-
-            decoder = new SliceDecoder(activeSps, activePps, nCoeff, mvs, mbTypes, mbQps, shs, tr8x8Used, refsUsed,
-                    result, sRefs, lRefs);
-            decoder.setDebug(debug);
-
-            filter = new DeblockingFilter(picWidthInMbs, activeSps.bit_depth_chroma_minus8 + 8, nCoeff, mvs, mbTypes,
-                    mbQps, shs, tr8x8Used, refsUsed);
+            int framePoc = poc.calcPOC(firstSliceHeader, firstNu);
+            Frame result;
+            if (threads == 1) {
+                result = createFrame(activeSps, buffer, firstSliceHeader.frame_num, mvs, refsUsed, framePoc);
+                state.prepare(activeSps, activePps, result, sRefs, lRefs);
+            } else {
+                result = takeFrame(activeSps, firstSliceHeader.frame_num, mvs, refsUsed, framePoc);
+                result.setDecoding();
+                state.prepare(activeSps, activePps, result, state.copyRefs(sRefs, lRefs), state.lRefs);
+            }
 
             return result;
         }
@@ -177,15 +435,23 @@ public class H264Decoder implements VideoDecoder {
         }
 
         private Frame saveRef(Frame decoded) {
-            Frame frame = pictureBuffer.size() > 0 ? pictureBuffer.remove(0) : Frame.createFrame(decoded);
+            if (threads > 1)
+                return decoded;
+            Frame frame = null;
+            while (frame == null && pictureBuffer.size() > 0) {
+                Frame buffered = pictureBuffer.remove(pictureBuffer.size() - 1);
+                if (buffered.getWidth() == decoded.getWidth() && buffered.getHeight() == decoded.getHeight())
+                    frame = buffered;
+            }
+            if (frame == null)
+                frame = Frame.createFrame(decoded);
             frame.copyFrom(decoded);
             return frame;
         }
 
         private void releaseRef(Frame picture) {
-            if (picture != null) {
-                pictureBuffer.add(picture);
-            }
+            if (picture != null)
+                retire(picture);
         }
 
         public void clearAll() {
@@ -281,6 +547,8 @@ public class H264Decoder implements VideoDecoder {
         }
 
         private void convert(int shortNo, int longNo) {
+            // Frames in flight may still read the reference as short term
+            flush();
             int ind = wrap(firstSliceHeader.frame_num - shortNo,
                     1 << (firstSliceHeader.sps.log2_max_frame_num_minus4 + 4));
             releaseRef(lRefs.get(longNo));
@@ -302,6 +570,169 @@ public class H264Decoder implements VideoDecoder {
         }
     }
 
+    /**
+     * Per picture state, allocated for the size of the active SPS and cleared
+     * for each frame instead of being allocated again. There is one for each
+     * frame that is being decoded at the same time.
+     */
+    private class PictureState {
+        private int widthInMbs;
+        private int heightInMbs;
+        private int[][] nCoeff;
+        private MBType[] mbTypes;
+        private boolean[] tr8x8Used;
+        private int[][] mbQps;
+        private SliceHeader[] shs;
+
+        private SliceDecoder decoder;
+        private DeblockingFilter filter;
+        private SeqParameterSet decoderSps;
+        private PictureParameterSet decoderPps;
+        private Frame[] decoderSRefs;
+
+        /*
+         * The references as they were when a frame decoded on a worker was
+         * started, the decoder's own lists change as later frames are
+         * submitted.
+         */
+        private Frame[] sRefs;
+        private IntObjectMap<Frame> lRefs = new IntObjectMap<Frame>();
+
+        private void prepare(SeqParameterSet activeSps, PictureParameterSet activePps, Frame result,
+                Frame[] sRefs, IntObjectMap<Frame> lRefs) {
+            int width = activeSps.pic_width_in_mbs_minus1 + 1;
+            int height = getPicHeightInMbs(activeSps);
+            if (nCoeff == null || width != widthInMbs || height != heightInMbs)
+                allocate(width, height);
+            else
+                clear();
+
+            int[][][][] mvs = result.getMvs();
+            Frame[][][] refsUsed = result.getRefsUsed();
+            if (decoder == null || decoderSps != activeSps || decoderPps != activePps || decoderSRefs != sRefs) {
+                decoder = new SliceDecoder(activeSps, activePps, nCoeff, mvs, mbTypes, mbQps, shs, tr8x8Used,
+                        refsUsed, result, sRefs, lRefs);
+                filter = new DeblockingFilter(widthInMbs, activeSps.bit_depth_chroma_minus8 + 8, nCoeff, mvs,
+                        mbTypes, mbQps, shs, tr8x8Used, refsUsed);
+                decoderSps = activeSps;
+                decoderPps = activePps;
+                decoderSRefs = sRefs;
+            } else {
+                decoder.setFrame(result, mvs, refsUsed);
+                filter.setFrame(mvs, refsUsed);
+            }
+            decoder.setDebug(debug);
+        }
+
+        private Frame[] copyRefs(Frame[] sRefs, IntObjectMap<Frame> lRefs) {
+            if (this.sRefs == null || this.sRefs.length != sRefs.length)
+                this.sRefs = new Frame[sRefs.length];
+            System.arraycopy(sRefs, 0, this.sRefs, 0, sRefs.length);
+            this.lRefs.clear();
+            int[] keys = lRefs.keys();
+            for (int i = 0; i < keys.length; i++)
+                this.lRefs.put(keys[i], lRefs.get(keys[i]));
+            return this.sRefs;
+        }
+
+        private void allocate(int width, int height) {
+            widthInMbs = width;
+            heightInMbs = height;
+            nCoeff = new int[height << 2][width << 2];
+            mbTypes = new MBType[height * width];
+            tr8x8Used = new boolean[height * width];
+            mbQps = new int[3][height * width];
+            shs = new SliceHeader[height * width];
+            decoder = null;
+        }
+
+        private void clear() {
+            for (int i = 0; i < nCoeff.length; i++)
+                Arrays.fill(nCoeff[i], 0);
+            Arrays.fill(mbTypes, null);
+            Arrays.fill(tr8x8Used, false);
+            for (int i = 0; i < mbQps.length; i++)
+                Arrays.fill(mbQps[i], 0);
+            Arrays.fill(shs, null);
+        }
+    }
+
+    /**
+     * Motion vectors for a new frame, from a released frame if there is one
+     * of the right size. Every entry starts out as a zero vector.
+     */
+    private int[][][][] takeMvs(int widthInMbs, int heightInMbs) {
+        int[][][][] mvs = null;
+        while (mvs == null && mvsPool.size() > 0) {
+            int[][][][] pooled = mvsPool.remove(mvsPool.size() - 1);
+            if (pooled[0].length == heightInMbs << 2 && pooled[0][0].length == widthInMbs << 2)
+                mvs = pooled;
+        }
+        if (mvs == null)
+            mvs = new int[2][heightInMbs << 2][widthInMbs << 2][];
+        for (int list = 0; list < 2; list++)
+            for (int i = 0; i < mvs[list].length; i++)
+                Arrays.fill(mvs[list][i], ZERO_VECTOR);
+        return mvs;
+    }
+
+    private Frame[][][] takeRefsUsed(int widthInMbs, int heightInMbs) {
+        Frame[][][] refsUsed = null;
+        while (refsUsed == null && refsUsedPool.size() > 0) {
+            Frame[][][] pooled = refsUsedPool.remove(refsUsedPool.size() - 1);
+            if (pooled.length == heightInMbs * widthInMbs)
+                refsUsed = pooled;
+        }
+        if (refsUsed == null)
+            refsUsed = new Frame[heightInMbs * widthInMbs][][];
+        else
+            Arrays.fill(refsUsed, null);
+        return refsUsed;
+    }
+
+    /**
+     * A frame to decode into on a worker, using the planes of a released
+     * reference of the same size if there is one.
+     */
+    private Frame takeFrame(SeqParameterSet sps, int frame_num, int[][][][] mvs, Frame[][][] refsUsed, int POC) {
+        int width = sps.pic_width_in_mbs_minus1 + 1 << 4;
+        int height = getPicHeightInMbs(sps) << 4;
+        int[][] data = null;
+        while (data == null && pictureBuffer.size() > 0) {
+            Frame buffered = pictureBuffer.remove(pictureBuffer.size() - 1);
+            if (buffered.getWidth() == width && buffered.getHeight() == height)
+                data = buffered.getData();
+        }
+        if (data == null)
+            data = Picture.create(width, height, ColorSpace.YUV420).getData();
+        return createFrame(sps, data, frame_num, mvs, refsUsed, POC);
+    }
+
+    /**
+     * Gives back a frame that is no longer used for reference. With frame
+     * threading it is kept until every frame submitted so far is decoded,
+     * as any of them could still be reading it.
+     */
+    private void retire(Frame picture) {
+        if (threads > 1) {
+            retired.add(new Retired(picture, submitted - 1));
+        } else {
+            pictureBuffer.add(picture);
+            releaseMvs(picture);
+        }
+    }
+
+    /**
+     * Returns a frame's motion vectors and reference lists to the pools once
+     * nothing will read them again.
+     */
+    private void releaseMvs(Frame picture) {
+        if (picture.getMvs() != null && !mvsPool.contains(picture.getMvs()))
+            mvsPool.add(picture.getMvs());
+        if (picture.getRefsUsed() != null && !refsUsedPool.contains(picture.getRefsUsed()))
+            refsUsedPool.add(picture.getRefsUsed());
+    }
+
     public static Frame createFrame(SeqParameterSet sps, int[][] buffer, int frame_num, int[][][][] mvs,
             Frame[][][] refsUsed, int POC) {
         int width = sps.pic_width_in_mbs_minus1 + 1 << 4;
@@ -368,6 +799,14 @@ public class H264Decoder implements VideoDecoder {
         return pps.pic_init_qp_minus26 <= 26 && pps.seq_parameter_set_id <= 2 && pps.pic_parameter_set_id <= 2;
     }
 
+    /**
+     * Sets the shortcuts to take from the next frame on. The decoder returns
+     * null for frames it skips.
+     */
+    public void setOptions(DecodeOptions options) {
+        this.options = options;
+    }
+
     public void setDebug(boolean b) {
         this.debug = b;
     }
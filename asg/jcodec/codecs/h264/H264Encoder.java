@@ -4,17 +4,24 @@ import static asg.jcodec.codecs.h264.H264Const.BLK_X;
 import static asg.jcodec.codecs.h264.H264Const.BLK_Y;
 import static asg.jcodec.codecs.h264.H264Const.MB_BLK_OFF_LEFT;
 import static asg.jcodec.codecs.h264.H264Const.MB_BLK_OFF_TOP;
+import static asg.jcodec.codecs.h264.H264Const.QP_SCALE_CR;
 import static asg.jcodec.codecs.h264.H264Utils.escapeNAL;
 import static asg.jcodec.codecs.h264.decode.CoeffTransformer.reorderDC4x4;
 import static asg.jcodec.codecs.h264.io.model.MBType.I_16x16;
+import static asg.jcodec.codecs.h264.io.model.MBType.P_16x16;
 import static asg.jcodec.common.tools.MathUtil.clip;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
+import asg.jcodec.codecs.h264.decode.BlockInterpolator;
 import asg.jcodec.codecs.h264.decode.CoeffTransformer;
+import asg.jcodec.codecs.h264.decode.deblock.DeblockingFilter;
 import asg.jcodec.codecs.h264.encode.DumbRateControl;
+import asg.jcodec.codecs.h264.encode.MotionEstimator;
 import asg.jcodec.codecs.h264.encode.RateControl;
 import asg.jcodec.codecs.h264.io.CAVLC;
+import asg.jcodec.codecs.h264.io.model.MBType;
 import asg.jcodec.codecs.h264.io.model.NALUnit;
 import asg.jcodec.codecs.h264.io.model.NALUnitType;
 import asg.jcodec.codecs.h264.io.model.PictureParameterSet;
@@ -25,10 +32,12 @@ import asg.jcodec.codecs.h264.io.model.SliceType;
 import asg.jcodec.codecs.h264.io.write.CAVLCWriter;
 import asg.jcodec.codecs.h264.io.write.SliceHeaderWriter;
 import asg.jcodec.common.ArrayUtil;
+import asg.jcodec.common.SliceWorkers;
 import asg.jcodec.common.io.BitWriter;
 import asg.jcodec.common.model.ColorSpace;
 import asg.jcodec.common.model.Picture;
 import asg.jcodec.common.model.Size;
+import asg.jcodec.common.tools.MathUtil;
 
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
@@ -44,12 +53,65 @@ import asg.jcodec.common.model.Size;
 public class H264Encoder {
 
     // private static final int QP = 20;
+    private static final int KEY_INTERVAL_DEFAULT = 25;
+    private static final int SEARCH_RANGE = 16;
+
+    /**
+     * coded_block_pattern to its inter code number, the inverse of
+     * H264Const.CODED_BLOCK_PATTERN_INTER_COLOR
+     */
+    private static final int[] CODED_BLOCK_PATTERN_INTER_COLOR_INV = new int[48];
+    static {
+        for (int i = 0; i < H264Const.CODED_BLOCK_PATTERN_INTER_COLOR.length; i++)
+            CODED_BLOCK_PATTERN_INTER_COLOR_INV[H264Const.CODED_BLOCK_PATTERN_INTER_COLOR[i]] = i;
+    }
+
+    /**
+     * Weight of a motion vector bit against a unit of SAD, by QP
+     */
+    private static final int[] LAMBDA = new int[52];
+    static {
+        for (int qp = 0; qp < 52; qp++)
+            LAMBDA[qp] = Math.max(1, (int) Math.round(Math.pow(2, (qp - 12) / 6.0)));
+    }
+
+    /**
+     * Score of a quantized coefficient by the number of zeros before it, a
+     * block scoring less than a threshold is cheaper to drop than to code
+     */
+    private static final int[] DECIMATE_TABLE = { 3, 2, 2, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+
+    private static final int[] NULL_VECTOR = new int[] { 0, 0, -1 };
 
-    private CAVLC[] cavlc;
-    private int[][] leftRow;
-    private int[][] topLine;
     private RateControl rc;
 
+    private int keyInterval = KEY_INTERVAL_DEFAULT;
+    private int slices = 1;
+    private int frameNumber;
+    private int idrPicId;
+    private SeqParameterSet sps;
+    private PictureParameterSet pps;
+
+    /*
+     * Reconstruction of the picture being encoded, and of the previous one
+     * after the loop filter, exactly as a decoder will see them.
+     */
+    private Picture picOut;
+    private Picture ref;
+    private SliceEncoder[] sliceEncoders;
+
+    /*
+     * Per macroblock information the loop filter needs, laid out as the
+     * decoder keeps it.
+     */
+    private int[][] nCoeff;
+    private int[][][][] mvs;
+    private MBType[] mbTypes;
+    private int[][] mbQps;
+    private SliceHeader[] shs;
+    private Picture[][][] refsUsed;
+    private DeblockingFilter filter;
+
     public H264Encoder() {
         this(new DumbRateControl());
     }
@@ -58,30 +120,141 @@ public class H264Encoder {
         this.rc = rc;
     }
 
+    public int getKeyInterval() {
+        return keyInterval;
+    }
+
+    /**
+     * @param keyInterval
+     *            Distance between IDR frames, the frames in between are P
+     *            frames predicted from the frame before them. 1 makes every
+     *            frame an IDR frame.
+     */
+    public void setKeyInterval(int keyInterval) {
+        this.keyInterval = keyInterval;
+    }
+
+    public int getSlices() {
+        return slices;
+    }
+
+    /**
+     * @param slices
+     *            How many slices of whole macroblock rows to split every
+     *            frame into, the slices are encoded at the same time. Each
+     *            slice boundary costs a little compression. Takes effect with
+     *            a new IDR frame.
+     */
+    public void setSlices(int slices) {
+        this.slices = Math.max(1, slices);
+    }
+
+    /**
+     * Encodes the picture as the next frame of the sequence, an IDR frame at
+     * the start of every key interval and a P frame otherwise.
+     */
     public ByteBuffer encodeFrame(ByteBuffer _out, Picture pic) {
+        if (frameNumber >= keyInterval)
+            frameNumber = 0;
+
+        return encodeFrame(_out, pic, frameNumber++);
+    }
+
+    /**
+     * Encodes the picture as an IDR frame, which starts a new key interval.
+     */
+    public ByteBuffer encodeIDRFrame(ByteBuffer _out, Picture pic) {
+        frameNumber = 0;
+        return encodeFrame(_out, pic, frameNumber++);
+    }
+
+    private ByteBuffer encodeFrame(ByteBuffer _out, Picture pic, int frameNum) {
         ByteBuffer dup = _out.duplicate();
 
-        dup.putInt(0x1);
-        new NALUnit(NALUnitType.SPS, 3).write(dup);
-        SeqParameterSet sps = initSPS(new Size(pic.getCroppedWidth(), pic.getCroppedHeight()));
-        writeSPS(dup, sps);
+        int mbWidth = (pic.getWidth() + 15) >> 4;
+        int mbHeight = (pic.getHeight() + 15) >> 4;
+        int nSlices = Math.min(slices, mbHeight);
+        if (picOut == null || picOut.getWidth() != mbWidth << 4 || picOut.getHeight() != mbHeight << 4
+                || (frameNum == 0 && sliceEncoders.length != nSlices))
+            initPicture(mbWidth, mbHeight, nSlices);
+        if (ref == null) {
+            frameNum = 0;
+            frameNumber = 1;
+        }
+        boolean idr = frameNum == 0;
+        rc.startFrame(pic, idr);
 
-        dup.putInt(0x1);
-        new NALUnit(NALUnitType.PPS, 3).write(dup);
-        PictureParameterSet pps = initPPS();
-        writePPS(dup, pps);
+        if (idr) {
+            sps = initSPS(new Size(pic.getCroppedWidth(), pic.getCroppedHeight()));
+            pps = initPPS();
 
-        int mbWidth = sps.pic_width_in_mbs_minus1 + 1;
+            dup.putInt(0x1);
+            new NALUnit(NALUnitType.SPS, 3).write(dup);
+            writeSPS(dup, sps);
 
-        leftRow = new int[][] { new int[16], new int[8], new int[8] };
-        topLine = new int[][] { new int[mbWidth << 4], new int[mbWidth << 3], new int[mbWidth << 3] };
+            dup.putInt(0x1);
+            new NALUnit(NALUnitType.PPS, 3).write(dup);
+            writePPS(dup, pps);
+        }
 
-        encodeSlice(sps, pps, pic, dup);
+        Arrays.fill(refsUsed, new Picture[][] { { ref }, {} });
+        int start = dup.position();
+        for (ByteBuffer slice : encodeSlices(pic, idr, frameNum, idr ? idrPicId++ & 0xffff : 0)) {
+            dup.putInt(0x1);
+            new NALUnit(idr ? NALUnitType.IDR_SLICE : NALUnitType.NON_IDR_SLICE, 2).write(dup);
+            escapeNAL(slice, dup);
+        }
+        rc.endFrame((dup.position() - start) << 3);
+
+        // The next frame is only predicted from this one if it is a P frame
+        Picture tmp = ref;
+        if (frameNumber < keyInterval) {
+            filter.deblockFrame(picOut);
+            ref = picOut;
+        } else {
+            ref = null;
+        }
+        picOut = tmp != null ? tmp : Picture.create(mbWidth << 4, mbHeight << 4, ColorSpace.YUV420);
 
         dup.flip();
         return dup;
     }
 
+    /**
+     * Encodes the slices on the slice workers and the calling thread, they
+     * only share the reference and write to disjoint parts of the picture.
+     */
+    private ByteBuffer[] encodeSlices(final Picture pic, final boolean idr, final int frameNum, final int idrPicId) {
+        final ByteBuffer[] result = new ByteBuffer[sliceEncoders.length];
+        SliceWorkers.run(sliceEncoders.length, new SliceWorkers.Run() {
+            public void run(int run) {
+                result[run] = sliceEncoders[run].encode(pic, idr, frameNum, idrPicId);
+            }
+        });
+        return result;
+    }
+
+    private void initPicture(int mbWidth, int mbHeight, int nSlices) {
+        picOut = Picture.create(mbWidth << 4, mbHeight << 4, ColorSpace.YUV420);
+        ref = null;
+
+        nCoeff = new int[mbHeight << 2][mbWidth << 2];
+        mvs = new int[2][mbHeight << 2][mbWidth << 2][];
+        for (int[][] row : mvs[1])
+            Arrays.fill(row, NULL_VECTOR);
+        mbTypes = new MBType[mbWidth * mbHeight];
+        mbQps = new int[3][mbWidth * mbHeight];
+        shs = new SliceHeader[mbWidth * mbHeight];
+        refsUsed = new Picture[mbWidth * mbHeight][][];
+        filter = new DeblockingFilter(8, 8, nCoeff, mvs, mbTypes, mbQps, shs, new boolean[mbWidth * mbHeight],
+                refsUsed);
+
+        sliceEncoders = new SliceEncoder[nSlices];
+        for (int i = 0; i < nSlices; i++)
+            sliceEncoders[i] = new SliceEncoder(i * mbHeight / nSlices, (i + 1) * mbHeight / nSlices, mbWidth,
+                    rc.forSlice(i * mbHeight / nSlices * mbWidth));
+    }
+
     private void writePPS(ByteBuffer dup, PictureParameterSet pps) {
         ByteBuffer tmp = ByteBuffer.allocate(1024);
         pps.write(tmp);
@@ -110,6 +283,12 @@ public class H264Encoder {
         sps.profile_idc = 66;
         sps.level_idc = 40;
         sps.frame_mbs_only_flag = true;
+        sps.num_ref_frames = 1;
+
+        // Large enough that frame_num and the POC don't wrap within a key
+        // interval
+        sps.log2_max_frame_num_minus4 = MathUtil.clip(MathUtil.log2(Math.max(1, keyInterval - 1)) - 3, 0, 11);
+        sps.log2_max_pic_order_cnt_lsb_minus4 = sps.log2_max_frame_num_minus4 + 1;
 
         int codedWidth = (sps.pic_width_in_mbs_minus1 + 1) << 4;
         int codedHeight = (sps.pic_height_in_map_units_minus1 + 1) << 4;
@@ -120,333 +299,762 @@ public class H264Encoder {
         return sps;
     }
 
-    private void encodeSlice(SeqParameterSet sps, PictureParameterSet pps, Picture pic, ByteBuffer dup) {
-        cavlc = new CAVLC[] { new CAVLC(sps, pps, 2, 2), new CAVLC(sps, pps, 1, 1), new CAVLC(sps, pps, 1, 1) };
-
-        rc.reset();
-        int qp = rc.getInitQp();
+    /**
+     * Motion vector prediction of a 16x16 partition from the left (a), top
+     * (b), top right (c) and top left (d) neighbours, see 8.4.1.3
+     */
+    private static int mvPred(int[] a, int[] b, int[] c, int[] d, boolean aAvb, boolean bAvb, boolean cAvb,
+            boolean dAvb, int comp) {
+        if (!cAvb) {
+            c = d;
+            cAvb = dAvb;
+        }
 
-        dup.putInt(0x1);
-        new NALUnit(NALUnitType.IDR_SLICE, 2).write(dup);
-        SliceHeader sh = new SliceHeader();
-        sh.slice_type = SliceType.I;
-        sh.refPicMarkingIDR = new RefPicMarkingIDR(false, false);
-        sh.pps = pps;
-        sh.sps = sps;
+        if (aAvb && !bAvb && !cAvb) {
+            b = c = a;
+            bAvb = cAvb = aAvb;
+        }
 
-        ByteBuffer buf = ByteBuffer.allocate(pic.getWidth() * pic.getHeight());
-        BitWriter sliceData = new BitWriter(buf);
-        new SliceHeaderWriter().write(sh, true, 2, sliceData);
+        a = aAvb ? a : NULL_VECTOR;
+        b = bAvb ? b : NULL_VECTOR;
+        c = cAvb ? c : NULL_VECTOR;
 
-        Picture outMB = Picture.create(16, 16, ColorSpace.YUV420);
+        if (a[2] == 0 && b[2] != 0 && c[2] != 0)
+            return a[comp];
+        else if (b[2] == 0 && a[2] != 0 && c[2] != 0)
+            return b[comp];
+        else if (c[2] == 0 && a[2] != 0 && b[2] != 0)
+            return c[comp];
 
-        for (int mbY = 0; mbY < sps.pic_height_in_map_units_minus1 + 1; mbY++) {
-            for (int mbX = 0; mbX < sps.pic_width_in_mbs_minus1 + 1; mbX++) {
-                CAVLCWriter.writeUE(sliceData, 23); // I_16x16_2_2_1
-                BitWriter candidate;
-                int qpDelta;
-                do {
-                    candidate = sliceData.fork();
-                    qpDelta = rc.getQpDelta();
-                    encodeMacroblock(pic, mbX, mbY, candidate, outMB, qp + qpDelta, qpDelta);
-                } while (!rc.accept(candidate.position() - sliceData.position()));
-                sliceData = candidate;
-                qp += qpDelta;
+        return a[comp] + b[comp] + c[comp] - Math.min(Math.min(a[comp], b[comp]), c[comp])
+                - Math.max(Math.max(a[comp], b[comp]), c[comp]);
+    }
 
-                collectPredictors(outMB, mbX);
+    private static int decimateScore(int[] coeff, int first) {
+        int idx = 15, score = 0;
+        while (idx >= first && coeff[CoeffTransformer.zigzag4x4[idx]] == 0)
+            idx--;
+        while (idx >= first) {
+            if (MathUtil.abs(coeff[CoeffTransformer.zigzag4x4[idx--]]) > 1)
+                return 9;
+            int run = 0;
+            while (idx >= first && coeff[CoeffTransformer.zigzag4x4[idx]] == 0) {
+                idx--;
+                run++;
             }
+            score += DECIMATE_TABLE[run];
         }
-        sliceData.write1Bit(1);
-        sliceData.flush();
-        buf = sliceData.getBuffer();
-        buf.flip();
+        return score;
+    }
 
-        escapeNAL(buf, dup);
+    private static int totalCoeff(int[] coeff) {
+        int n = 0;
+        for (int i = 0; i < 16; i++)
+            if (coeff[i] != 0)
+                n++;
+        return n;
     }
 
-    private void collectPredictors(Picture outMB, int mbX) {
-        System.arraycopy(outMB.getPlaneData(0), 240, topLine[0], mbX << 4, 16);
-        System.arraycopy(outMB.getPlaneData(1), 56, topLine[1], mbX << 3, 8);
-        System.arraycopy(outMB.getPlaneData(2), 56, topLine[2], mbX << 3, 8);
+    /**
+     * Encodes a run of macroblock rows as one slice, with its own CAVLC,
+     * prediction and rate control state so slices can be encoded at the same
+     * time. Everything it reads from neighbouring rows comes from its own
+     * slice, as the decoder won't look across slice boundaries.
+     */
+    private class SliceEncoder {
+        private final int firstMbY;
+        private final int lastMbY;
+        private final RateControl rc;
+
+        private CAVLC[] cavlc;
+        private int[][] leftRow;
+        private int[][] topLine;
+        private MotionEstimator me = new MotionEstimator(SEARCH_RANGE);
+
+        /*
+         * Neighbours of the current macroblock within the slice, null types
+         * are skipped macroblocks
+         */
+        private MBType leftMBType;
+        private MBType[] topMBType;
+        private int[] mvLeft;
+        private int[][] mvTop;
+        private int[] mvTopLeft;
+
+        /*
+         * Scratch for a macroblock
+         */
+        private Picture outMB = Picture.create(16, 16, ColorSpace.YUV420);
+        private Picture mbSrc = Picture.create(16, 16, ColorSpace.YUV420);
+        private Picture mbPred = Picture.create(16, 16, ColorSpace.YUV420);
+        private int[][] lumaLevels = new int[16][16];
+        private int[][] chromaDC = new int[3][4];
+        private int[][][] chromaAC = new int[3][4][16];
+        private int[] mv = new int[2];
+
+        public SliceEncoder(int firstMbY, int lastMbY, int mbWidth, RateControl rc) {
+            this.firstMbY = firstMbY;
+            this.lastMbY = lastMbY;
+            this.rc = rc;
+            topMBType = new MBType[mbWidth];
+            mvTop = new int[mbWidth + 1][];
+        }
 
-        copyCol(outMB.getPlaneData(0), 15, 16, leftRow[0]);
-        copyCol(outMB.getPlaneData(1), 7, 8, leftRow[1]);
-        copyCol(outMB.getPlaneData(2), 7, 8, leftRow[2]);
-    }
+        /**
+         * Encodes the slice's rows of the picture.
+         * 
+         * @return Slice data, not yet escaped
+         */
+        public ByteBuffer encode(Picture pic, boolean idr, int frameNum, int idrPicId) {
+            int mbWidth = sps.pic_width_in_mbs_minus1 + 1;
+            cavlc = new CAVLC[] { new CAVLC(sps, pps, 2, 2), new CAVLC(sps, pps, 1, 1), new CAVLC(sps, pps, 1, 1) };
+            leftRow = new int[][] { new int[16], new int[8], new int[8] };
+            topLine = new int[][] { new int[mbWidth << 4], new int[mbWidth << 3], new int[mbWidth << 3] };
+
+            rc.reset();
+            int qp = rc.getInitQp();
+
+            SliceHeader sh = new SliceHeader();
+            sh.slice_type = idr ? SliceType.I : SliceType.P;
+            if (idr) {
+                sh.refPicMarkingIDR = new RefPicMarkingIDR(false, false);
+                sh.idr_pic_id = idrPicId;
+            } else {
+                sh.refPicReordering = new int[2][][];
+            }
+            sh.pps = pps;
+            sh.sps = sps;
+            sh.first_mb_in_slice = firstMbY * mbWidth;
+            sh.slice_qp_delta = qp - (pps.pic_init_qp_minus26 + 26);
+            sh.frame_num = frameNum & ((1 << (sps.log2_max_frame_num_minus4 + 4)) - 1);
+            sh.pic_order_cnt_lsb = (frameNum << 1) & ((1 << (sps.log2_max_pic_order_cnt_lsb_minus4 + 4)) - 1);
+
+            ByteBuffer buf = ByteBuffer.allocate(pic.getWidth() * ((lastMbY - firstMbY) << 4));
+            BitWriter sliceData = new BitWriter(buf);
+            new SliceHeaderWriter().write(sh, idr, 2, sliceData);
+
+            Arrays.fill(shs, firstMbY * mbWidth, lastMbY * mbWidth, sh);
+            leftMBType = null;
+            Arrays.fill(topMBType, null);
+            mvLeft = mvTopLeft = NULL_VECTOR;
+            Arrays.fill(mvTop, NULL_VECTOR);
+
+            int skipRun = 0;
+
+            for (int mbY = firstMbY; mbY < lastMbY; mbY++) {
+                for (int mbX = 0; mbX < mbWidth; mbX++) {
+                    int mbAddr = mbY * mbWidth + mbX;
+                    BitWriter candidate;
+                    int qpDelta;
+                    if (idr) {
+                        CAVLCWriter.writeUE(sliceData, 23); // I_16x16_2_2_1
+                        do {
+                            candidate = sliceData.fork();
+                            qpDelta = clip(qp + rc.getQpDelta(qp), 0, 51) - qp;
+                            encodeMacroblock(pic, mbX, mbY, candidate, outMB, qp + qpDelta, qpDelta);
+                        } while (!rc.accept(candidate.position() - sliceData.position()));
+                        saveIntra(mbX, mbY, qp + qpDelta);
+                    } else {
+                        do {
+                            candidate = sliceData.fork();
+                            qpDelta = clip(qp + rc.getQpDelta(qp), 0, 51) - qp;
+                            encodeMacroblockP(pic, mbX, mbY, candidate, outMB, qp, qpDelta, skipRun);
+                        } while (!rc.accept(candidate.position() - sliceData.position()));
+                        skipRun = mbTypes[mbAddr] == null ? skipRun + 1 : 0;
+                    }
+                    sliceData = candidate;
+                    qp = mbQps[0][mbAddr];
+
+                    collectPredictors(outMB, mbX);
+                    putMB(outMB, mbX, mbY);
+                }
+            }
+            if (skipRun > 0)
+                CAVLCWriter.writeUE(sliceData, skipRun);
+            sliceData.write1Bit(1);
+            sliceData.flush();
+            buf = sliceData.getBuffer();
+            buf.flip();
+
+            return buf;
+        }
+
+        /**
+         * Codes the macroblock as P_Skip if predicting it with the skip vector
+         * leaves nothing worth coding, otherwise searches for its motion and codes
+         * it as P_L0_16x16, or as I_16x16 if no prediction from the reference
+         * comes close to the DC prediction.
+         */
+        private void encodeMacroblockP(Picture pic, int mbX, int mbY, BitWriter out, Picture outMB, int qp, int qpDelta,
+                int skipRun) {
+            int mbWidth = sps.pic_width_in_mbs_minus1 + 1;
+            boolean lAvb = mbX > 0, tAvb = mbY > firstMbY, trAvb = tAvb && mbX < mbWidth - 1, tlAvb = lAvb && tAvb;
+            int[] a = mvLeft, b = mvTop[mbX], c = mvTop[mbX + 1], d = mvTopLeft;
+
+            takeMB(pic, mbX, mbY, mbSrc);
+
+            int skipX = 0, skipY = 0;
+            if (lAvb && tAvb && (a[0] != 0 || a[1] != 0 || a[2] != 0) && (b[0] != 0 || b[1] != 0 || b[2] != 0)) {
+                skipX = mvPred(a, b, c, d, lAvb, tAvb, trAvb, tlAvb, 0);
+                skipY = mvPred(a, b, c, d, lAvb, tAvb, trAvb, tlAvb, 1);
+            }
+            predictInter(mbX, mbY, skipX, skipY, mbPred);
+            if (residualInter(mbPred, qp) == 0) {
+                reconInter(outMB, 0, qp);
+                saveInter(mbX, mbY, null, skipX, skipY, qp);
+                return;
+            }
 
-    private void copyCol(int[] planeData, int off, int stride, int[] out) {
-        for (int i = 0; i < out.length; i++) {
-            out[i] = planeData[off];
-            off += stride;
+            int mvpX = mvPred(a, b, c, d, lAvb, tAvb, trAvb, tlAvb, 0);
+            int mvpY = mvPred(a, b, c, d, lAvb, tAvb, trAvb, tlAvb, 1);
+            int mbQp = qp + qpDelta;
+            int cost = me.estimate(ref, mbSrc.getPlaneData(0), mbX, mbY, mvpX, mvpY, new int[][] { { mvpX, mvpY },
+                    { skipX, skipY }, { 0, 0 } }, LAMBDA[mbQp], mv);
+
+            CAVLCWriter.writeUE(out, skipRun);
+            if (intraSAD(mbX, mbY) < cost) {
+                CAVLCWriter.writeUE(out, 5 + 23); // I_16x16_2_2_1 in a P slice
+                encodeMacroblock(pic, mbX, mbY, out, outMB, mbQp, qpDelta);
+                saveIntra(mbX, mbY, mbQp);
+                return;
+            }
+
+            predictInter(mbX, mbY, mv[0], mv[1], mbPred);
+            int cbp = residualInter(mbPred, mbQp);
+            CAVLCWriter.writeUE(out, 0); // P_L0_16x16
+            CAVLCWriter.writeSE(out, mv[0] - mvpX);
+            CAVLCWriter.writeSE(out, mv[1] - mvpY);
+            CAVLCWriter.writeUE(out, CODED_BLOCK_PATTERN_INTER_COLOR_INV[cbp]);
+            if (cbp != 0)
+                CAVLCWriter.writeSE(out, qpDelta);
+            else
+                mbQp = qp;
+
+            writeResidualInter(out, mbX, mbY, cbp);
+            reconInter(outMB, cbp, mbQp);
+            saveInter(mbX, mbY, P_16x16, mv[0], mv[1], mbQp);
         }
-    }
 
-    private void encodeMacroblock(Picture pic, int mbX, int mbY, BitWriter out, Picture outMB, int qp, int qpDelta) {
-        CAVLCWriter.writeUE(out, 0); // Chroma prediction mode -- DC
-        CAVLCWriter.writeSE(out, qpDelta); // MB QP delta
+        private void predictInter(int mbX, int mbY, int mvX, int mvY, Picture pred) {
+            BlockInterpolator.getBlockLuma(ref, pred, 0, (mbX << 6) + mvX, (mbY << 6) + mvY, 16, 16);
+            for (int comp = 1; comp < 3; comp++)
+                BlockInterpolator.getBlockChroma(ref.getPlaneData(comp), ref.getPlaneWidth(comp),
+                        ref.getPlaneHeight(comp), pred.getPlaneData(comp), 0, 8, (mbX << 6) + mvX, (mbY << 6) + mvY, 8,
+                        8);
+        }
 
-        luma(pic, mbX, mbY, out, qp, outMB);
-        chroma(pic, mbX, mbY, out, qp, outMB);
-    }
+        /**
+         * SAD of the source macroblock against its I_16x16 DC prediction
+         */
+        private int intraSAD(int mbX, int mbY) {
+            int dc = lumaDCPred(mbX << 4, mbY << 4);
+            int[] src = mbSrc.getPlaneData(0);
+            int sad = 0;
+            for (int i = 0; i < 256; i++)
+                sad += MathUtil.abs(src[i] - dc);
+            return sad;
+        }
 
-    private void chroma(Picture pic, int mbX, int mbY, BitWriter out, int qp, Picture outMB) {
-        int cw = pic.getColor().compWidth[1];
-        int ch = pic.getColor().compHeight[1];
-        int x = mbX << (4 - cw);
-        int y = mbY << (4 - ch);
-        int[][] ac1 = transformChroma(pic, 1, qp, cw, ch, x, y, outMB);
-        int[][] ac2 = transformChroma(pic, 2, qp, cw, ch, x, y, outMB);
-        int[] dc1 = extractDC(ac1);
-        int[] dc2 = extractDC(ac2);
-
-        writeDC(1, mbX, mbY, out, qp, mbX << 1, mbY << 1, dc1);
-        writeDC(2, mbX, mbY, out, qp, mbX << 1, mbY << 1, dc2);
-
-        writeAC(1, mbX, mbY, out, mbX << 1, mbY << 1, ac1, qp);
-        writeAC(2, mbX, mbY, out, mbX << 1, mbY << 1, ac2, qp);
-
-        restorePlane(dc1, ac1, qp);
-        putChroma(outMB.getData()[1], 1, x, y, ac1);
-        restorePlane(dc2, ac2, qp);
-        putChroma(outMB.getData()[2], 2, x, y, ac2);
-    }
+        /**
+         * Transforms and quantizes the difference between the source macroblock
+         * and its prediction into lumaLevels, chromaDC and chromaAC, dropping
+         * blocks that would cost more than they are worth.
+         * 
+         * @return coded_block_pattern
+         */
+        private int residualInter(Picture pred, int qp) {
+            int[] src = mbSrc.getPlaneData(0), pix = pred.getPlaneData(0);
+            int cbpLuma = 0, total = 0;
+            for (int blk8x8 = 0; blk8x8 < 4; blk8x8++) {
+                int score = 0;
+                for (int i = blk8x8 << 2; i < (blk8x8 + 1) << 2; i++) {
+                    int[] coeff = lumaLevels[i];
+                    for (int j = 0, off = (BLK_Y[i] << 4) + BLK_X[i]; j < 16; j += 4, off += 16) {
+                        coeff[j] = src[off] - pix[off];
+                        coeff[j + 1] = src[off + 1] - pix[off + 1];
+                        coeff[j + 2] = src[off + 2] - pix[off + 2];
+                        coeff[j + 3] = src[off + 3] - pix[off + 3];
+                    }
+                    CoeffTransformer.fdct4x4(coeff);
+                    CoeffTransformer.quantizeInter(coeff, qp);
+                    score += decimateScore(coeff, 0);
+                }
+                if (score < 4) {
+                    for (int i = blk8x8 << 2; i < (blk8x8 + 1) << 2; i++)
+                        Arrays.fill(lumaLevels[i], 0);
+                } else {
+                    cbpLuma |= 1 << blk8x8;
+                    total += score;
+                }
+            }
+            if (total < 6) {
+                for (int i = 0; i < 16; i++)
+                    Arrays.fill(lumaLevels[i], 0);
+                cbpLuma = 0;
+            }
 
-    private void luma(Picture pic, int mbX, int mbY, BitWriter out, int qp, Picture outMB) {
-        int x = mbX << 4;
-        int y = mbY << 4;
-        int[][] ac = transform(pic, 0, qp, 0, 0, x, y);
-        int[] dc = extractDC(ac);
-        writeDC(0, mbX, mbY, out, qp, mbX << 2, mbY << 2, dc);
-        writeAC(0, mbX, mbY, out, mbX << 2, mbY << 2, ac, qp);
+            int qpc = QP_SCALE_CR[qp];
+            int cbpChroma = 0;
+            for (int comp = 1; comp < 3; comp++) {
+                src = mbSrc.getPlaneData(comp);
+                pix = pred.getPlaneData(comp);
+                int[][] ac = chromaAC[comp];
+                int[] dc = chromaDC[comp];
+                int score = 0;
+                for (int i = 0; i < 4; i++) {
+                    for (int j = 0, off = ((i & 2) << 4) + ((i & 1) << 2); j < 16; j += 4, off += 8) {
+                        ac[i][j] = src[off] - pix[off];
+                        ac[i][j + 1] = src[off + 1] - pix[off + 1];
+                        ac[i][j + 2] = src[off + 2] - pix[off + 2];
+                        ac[i][j + 3] = src[off + 3] - pix[off + 3];
+                    }
+                    CoeffTransformer.fdct4x4(ac[i]);
+                    dc[i] = ac[i][0];
+                    ac[i][0] = 0;
+                    CoeffTransformer.quantizeAC(ac[i], qpc);
+                    score += decimateScore(ac[i], 1);
+                }
+                if (score < 7) {
+                    for (int i = 0; i < 4; i++)
+                        Arrays.fill(ac[i], 0);
+                } else {
+                    cbpChroma = 2;
+                }
+                CoeffTransformer.quantizeDC2x2(dc, qpc);
+                CoeffTransformer.fvdDC2x2(dc);
+                if (cbpChroma == 0 && (dc[0] != 0 || dc[1] != 0 || dc[2] != 0 || dc[3] != 0))
+                    cbpChroma = 1;
+            }
 
-        restorePlane(dc, ac, qp);
-        putLuma(outMB.getPlaneData(0), lumaDCPred(x, y), ac, 4);
-    }
+            return cbpLuma | (cbpChroma << 4);
+        }
 
-    private void putChroma(int[] mb, int comp, int x, int y, int[][] ac) {
-        putBlk(mb, chromaPredBlk0(comp, x, y), ac[0], 3, 0, 0);
+        private void writeResidualInter(BitWriter out, int mbX, int mbY, int cbp) {
+            for (int i = 0; i < 16; i++) {
+                int blkX = (mbX << 2) + MB_BLK_OFF_LEFT[i];
+                int blkY = ((mbY - firstMbY) << 2) + MB_BLK_OFF_TOP[i];
+                if ((cbp & (1 << (i >> 2))) != 0)
+                    cavlc[0].writeACBlock(out, blkX, blkY, MB_BLK_OFF_LEFT[i] == 0 ? leftMBType : P_16x16,
+                            MB_BLK_OFF_TOP[i] == 0 ? topMBType[mbX] : P_16x16, lumaLevels[i], H264Const.totalZeros16, 0,
+                            16, CoeffTransformer.zigzag4x4);
+                else
+                    cavlc[0].setZeroCoeff(blkX, blkY);
+            }
 
-        putBlk(mb, chromaPredBlk1(comp, x, y), ac[1], 3, 4, 0);
+            int cbpChroma = cbp >> 4;
+            if (cbpChroma != 0) {
+                for (int comp = 1; comp < 3; comp++)
+                    cavlc[comp].writeChrDCBlock(out, chromaDC[comp], H264Const.totalZeros4, 0, 4, new int[] { 0, 1, 2, 3 });
+            }
+            for (int comp = 1; comp < 3; comp++) {
+                for (int i = 0; i < 4; i++) {
+                    int blkX = (mbX << 1) + MB_BLK_OFF_LEFT[i];
+                    int blkY = ((mbY - firstMbY) << 1) + MB_BLK_OFF_TOP[i];
+                    if (cbpChroma == 2)
+                        cavlc[comp].writeACBlock(out, blkX, blkY, MB_BLK_OFF_LEFT[i] == 0 ? leftMBType : P_16x16,
+                                MB_BLK_OFF_TOP[i] == 0 ? topMBType[mbX] : P_16x16, chromaAC[comp][i],
+                                H264Const.totalZeros16, 1, 15, CoeffTransformer.zigzag4x4);
+                    else
+                        cavlc[comp].setZeroCoeff(blkX, blkY);
+                }
+            }
+        }
 
-        putBlk(mb, chromaPredBlk2(comp, x, y), ac[2], 3, 0, 4);
+        /**
+         * Adds the dequantized residual to mbPred, the prediction it was computed
+         * against, as the decoder will.
+         */
+        private void reconInter(Picture outMB, int cbp, int qp) {
+            int[] pix = mbPred.getPlaneData(0), dst = outMB.getPlaneData(0);
+            for (int i = 0; i < 16; i++) {
+                int[] coeff = lumaLevels[i];
+                if ((cbp & (1 << (i >> 2))) != 0) {
+                    CoeffTransformer.dequantizeAC(coeff, qp);
+                    CoeffTransformer.idct4x4(coeff);
+                } else {
+                    Arrays.fill(coeff, 0);
+                }
+                addBlk(dst, pix, coeff, 4, BLK_X[i], BLK_Y[i]);
+            }
 
-        putBlk(mb, chromaPredBlk3(comp, x, y), ac[3], 3, 4, 4);
-    }
+            int qpc = QP_SCALE_CR[qp];
+            for (int comp = 1; comp < 3; comp++) {
+                int[][] ac = chromaAC[comp];
+                if ((cbp >> 4) != 0) {
+                    restorePlane(chromaDC[comp], ac, qpc);
+                } else {
+                    for (int i = 0; i < 4; i++)
+                        Arrays.fill(ac[i], 0);
+                }
+                pix = mbPred.getPlaneData(comp);
+                dst = outMB.getPlaneData(comp);
+                for (int i = 0; i < 4; i++)
+                    addBlk(dst, pix, ac[i], 3, (i & 1) << 2, (i & 2) << 1);
+            }
+        }
 
-    private void putLuma(int[] planeData, int pred, int[][] ac, int log2stride) {
-        for (int blk = 0; blk < ac.length; blk++) {
-            putBlk(planeData, pred, ac[blk], log2stride, BLK_X[blk], BLK_Y[blk]);
+        private void addBlk(int[] dst, int[] pred, int[] block, int log2stride, int blkX, int blkY) {
+            int stride = 1 << log2stride;
+            for (int line = 0, srcOff = 0, dstOff = (blkY << log2stride) + blkX; line < 4; line++) {
+                dst[dstOff] = clip(block[srcOff] + pred[dstOff], 0, 255);
+                dst[dstOff + 1] = clip(block[srcOff + 1] + pred[dstOff + 1], 0, 255);
+                dst[dstOff + 2] = clip(block[srcOff + 2] + pred[dstOff + 2], 0, 255);
+                dst[dstOff + 3] = clip(block[srcOff + 3] + pred[dstOff + 3], 0, 255);
+                srcOff += 4;
+                dstOff += stride;
+            }
         }
-    }
 
-    private void putBlk(int[] planeData, int pred, int[] block, int log2stride, int blkX, int blkY) {
-        int stride = 1 << log2stride;
-        for (int line = 0, srcOff = 0, dstOff = (blkY << log2stride) + blkX; line < 4; line++) {
-            planeData[dstOff] = clip(block[srcOff] + pred, 0, 255);
-            planeData[dstOff + 1] = clip(block[srcOff + 1] + pred, 0, 255);
-            planeData[dstOff + 2] = clip(block[srcOff + 2] + pred, 0, 255);
-            planeData[dstOff + 3] = clip(block[srcOff + 3] + pred, 0, 255);
-            srcOff += 4;
-            dstOff += stride;
+        /**
+         * Records an inter (or, with a null type, skipped) macroblock for the
+         * macroblocks after it and for the loop filter.
+         */
+        private void saveInter(int mbX, int mbY, MBType mbType, int mvX, int mvY, int qp) {
+            int[] v = new int[] { mvX, mvY, 0 };
+            for (int i = 0; i < 16; i++) {
+                int blkX = (mbX << 2) + MB_BLK_OFF_LEFT[i], blkY = (mbY << 2) + MB_BLK_OFF_TOP[i];
+                mvs[0][blkY][blkX] = v;
+                nCoeff[blkY][blkX] = totalCoeff(lumaLevels[i]);
+            }
+            saveMB(mbX, mbY, mbType, v, qp);
         }
-    }
 
-    private void restorePlane(int[] dc, int[][] ac, int qp) {
-        if (dc.length == 4) {
-            CoeffTransformer.invDC2x2(dc);
-            CoeffTransformer.dequantizeDC2x2(dc, qp);
-        } else if (dc.length == 8) {
-            CoeffTransformer.invDC4x2(dc);
-            CoeffTransformer.dequantizeDC4x2(dc, qp);
-        } else {
-            CoeffTransformer.invDC4x4(dc);
-            CoeffTransformer.dequantizeDC4x4(dc, qp);
-            reorderDC4x4(dc);
+        private void saveIntra(int mbX, int mbY, int qp) {
+            for (int i = 0; i < 16; i++) {
+                int blkX = (mbX << 2) + MB_BLK_OFF_LEFT[i], blkY = (mbY << 2) + MB_BLK_OFF_TOP[i];
+                mvs[0][blkY][blkX] = NULL_VECTOR;
+                nCoeff[blkY][blkX] = 0;
+            }
+            saveMB(mbX, mbY, I_16x16, NULL_VECTOR, qp);
         }
-        for (int i = 0; i < ac.length; i++) {
-            CoeffTransformer.dequantizeAC(ac[i], qp);
-            ac[i][0] = dc[i];
-            CoeffTransformer.idct4x4(ac[i]);
+
+        private void saveMB(int mbX, int mbY, MBType mbType, int[] v, int qp) {
+            int mbAddr = mbY * (sps.pic_width_in_mbs_minus1 + 1) + mbX;
+            mbTypes[mbAddr] = leftMBType = topMBType[mbX] = mbType;
+            mbQps[0][mbAddr] = qp;
+            mbQps[1][mbAddr] = mbQps[2][mbAddr] = QP_SCALE_CR[qp];
+
+            mvTopLeft = mvTop[mbX];
+            mvTop[mbX] = mvLeft = v;
+            if (mbX == sps.pic_width_in_mbs_minus1)
+                mvTopLeft = mvLeft = NULL_VECTOR;
         }
-    }
 
-    private int[] extractDC(int[][] ac) {
-        int[] dc = new int[ac.length];
-        for (int i = 0; i < ac.length; i++) {
-            dc[i] = ac[i][0];
-            ac[i][0] = 0;
+        /**
+         * Copies the macroblock out of the source picture, repeating the last
+         * column and row past its edges
+         */
+        private void takeMB(Picture pic, int mbX, int mbY, Picture mb) {
+            for (int comp = 0; comp < 3; comp++) {
+                int size = comp == 0 ? 16 : 8;
+                int[] planeData = pic.getPlaneData(comp), out = mb.getPlaneData(comp);
+                int planeWidth = pic.getPlaneWidth(comp), planeHeight = pic.getPlaneHeight(comp);
+                int x = mbX * size, y = mbY * size;
+                for (int j = 0, outOff = 0; j < size; j++) {
+                    int off = Math.min(y + j, planeHeight - 1) * planeWidth;
+                    for (int i = 0; i < size; i++)
+                        out[outOff++] = planeData[off + Math.min(x + i, planeWidth - 1)];
+                }
+            }
         }
-        return dc;
-    }
 
-    private void writeAC(int comp, int mbX, int mbY, BitWriter out, int mbLeftBlk, int mbTopBlk, int[][] ac, int qp) {
-        for (int i = 0; i < ac.length; i++) {
-            CoeffTransformer.quantizeAC(ac[i], qp);
-            // TODO: calc here
-            cavlc[comp].writeACBlock(out, mbLeftBlk + MB_BLK_OFF_LEFT[i], mbTopBlk + MB_BLK_OFF_TOP[i], I_16x16,
-                    I_16x16, ac[i], H264Const.totalZeros16, 1, 15, CoeffTransformer.zigzag4x4);
+        private void putMB(Picture mb, int mbX, int mbY) {
+            for (int comp = 0; comp < 3; comp++) {
+                int size = comp == 0 ? 16 : 8;
+                int stride = picOut.getPlaneWidth(comp);
+                int[] src = mb.getPlaneData(comp), dst = picOut.getPlaneData(comp);
+                for (int j = 0, off = mbY * size * stride + mbX * size; j < size; j++, off += stride)
+                    System.arraycopy(src, j * size, dst, off, size);
+            }
         }
-    }
 
-    private void writeDC(int comp, int mbX, int mbY, BitWriter out, int qp, int mbLeftBlk, int mbTopBlk, int[] dc) {
-        if (dc.length == 4) {
-            CoeffTransformer.quantizeDC2x2(dc, qp);
-            CoeffTransformer.fvdDC2x2(dc);
-            cavlc[comp].writeChrDCBlock(out, dc, H264Const.totalZeros4, 0, dc.length, new int[] { 0, 1, 2, 3 });
-        } else if (dc.length == 8) {
-            CoeffTransformer.quantizeDC4x2(dc, qp);
-            CoeffTransformer.fvdDC4x2(dc);
-            cavlc[comp].writeChrDCBlock(out, dc, H264Const.totalZeros8, 0, dc.length, new int[] { 0, 1, 2, 3, 4, 5, 6,
-                    7 });
-        } else {
-            reorderDC4x4(dc);
-            CoeffTransformer.quantizeDC4x4(dc, qp);
-            CoeffTransformer.fvdDC4x4(dc);
-            // TODO: calc here
-            cavlc[comp].writeLumaDCBlock(out, mbLeftBlk, mbTopBlk, I_16x16, I_16x16, dc, H264Const.totalZeros16, 0, 16,
-                    CoeffTransformer.zigzag4x4);
+        private void collectPredictors(Picture outMB, int mbX) {
+            System.arraycopy(outMB.getPlaneData(0), 240, topLine[0], mbX << 4, 16);
+            System.arraycopy(outMB.getPlaneData(1), 56, topLine[1], mbX << 3, 8);
+            System.arraycopy(outMB.getPlaneData(2), 56, topLine[2], mbX << 3, 8);
+
+            copyCol(outMB.getPlaneData(0), 15, 16, leftRow[0]);
+            copyCol(outMB.getPlaneData(1), 7, 8, leftRow[1]);
+            copyCol(outMB.getPlaneData(2), 7, 8, leftRow[2]);
         }
-    }
 
-    private int[][] transformChroma(Picture pic, int comp, int qp, int cw, int ch, int x, int y, Picture outMB) {
-        int[][] ac = new int[16 >> (cw + ch)][16];
+        private void copyCol(int[] planeData, int off, int stride, int[] out) {
+            for (int i = 0; i < out.length; i++) {
+                out[i] = planeData[off];
+                off += stride;
+            }
+        }
 
-        takeSubtract(pic.getPlaneData(comp), pic.getPlaneWidth(comp), pic.getPlaneHeight(comp), x, y, ac[0],
-                chromaPredBlk0(comp, x, y));
-        CoeffTransformer.fdct4x4(ac[0]);
+        private void encodeMacroblock(Picture pic, int mbX, int mbY, BitWriter out, Picture outMB, int qp, int qpDelta) {
+            CAVLCWriter.writeUE(out, 0); // Chroma prediction mode -- DC
+            CAVLCWriter.writeSE(out, qpDelta); // MB QP delta
 
-        takeSubtract(pic.getPlaneData(comp), pic.getPlaneWidth(comp), pic.getPlaneHeight(comp), x + 4, y, ac[1],
-                chromaPredBlk1(comp, x, y));
-        CoeffTransformer.fdct4x4(ac[1]);
+            luma(pic, mbX, mbY, out, qp, outMB);
+            chroma(pic, mbX, mbY, out, qp, outMB);
+        }
 
-        takeSubtract(pic.getPlaneData(comp), pic.getPlaneWidth(comp), pic.getPlaneHeight(comp), x, y + 4, ac[2],
-                chromaPredBlk2(comp, x, y));
-        CoeffTransformer.fdct4x4(ac[2]);
+        private void chroma(Picture pic, int mbX, int mbY, BitWriter out, int qp, Picture outMB) {
+            int cw = pic.getColor().compWidth[1];
+            int ch = pic.getColor().compHeight[1];
+            int x = mbX << (4 - cw);
+            int y = mbY << (4 - ch);
+            int qpc = QP_SCALE_CR[qp];
+            int[][] ac1 = transformChroma(pic, 1, qpc, cw, ch, x, y, outMB);
+            int[][] ac2 = transformChroma(pic, 2, qpc, cw, ch, x, y, outMB);
+            int[] dc1 = extractDC(ac1);
+            int[] dc2 = extractDC(ac2);
+
+            // CAVLC state is per slice, blocks are indexed from the top of the slice
+            int blkY = (mbY - firstMbY) << 1;
+            writeDC(1, mbX, mbY, out, qpc, mbX << 1, blkY, dc1);
+            writeDC(2, mbX, mbY, out, qpc, mbX << 1, blkY, dc2);
+
+            writeAC(1, mbX, mbY, out, mbX << 1, blkY, ac1, qpc);
+            writeAC(2, mbX, mbY, out, mbX << 1, blkY, ac2, qpc);
+
+            restorePlane(dc1, ac1, qpc);
+            putChroma(outMB.getData()[1], 1, x, y, ac1);
+            restorePlane(dc2, ac2, qpc);
+            putChroma(outMB.getData()[2], 2, x, y, ac2);
+        }
 
-        takeSubtract(pic.getPlaneData(comp), pic.getPlaneWidth(comp), pic.getPlaneHeight(comp), x + 4, y + 4, ac[3],
-                chromaPredBlk3(comp, x, y));
-        CoeffTransformer.fdct4x4(ac[3]);
+        private void luma(Picture pic, int mbX, int mbY, BitWriter out, int qp, Picture outMB) {
+            int x = mbX << 4;
+            int y = mbY << 4;
+            int[][] ac = transform(pic, 0, qp, 0, 0, x, y);
+            int[] dc = extractDC(ac);
+            writeDC(0, mbX, mbY, out, qp, mbX << 2, (mbY - firstMbY) << 2, dc);
+            writeAC(0, mbX, mbY, out, mbX << 2, (mbY - firstMbY) << 2, ac, qp);
 
-        return ac;
-    }
+            restorePlane(dc, ac, qp);
+            putLuma(outMB.getPlaneData(0), lumaDCPred(x, y), ac, 4);
+        }
 
-    private final int chromaPredOne(int[] pix, int x) {
-        return (pix[x] + pix[x + 1] + pix[x + 2] + pix[x + 3] + 2) >> 2;
-    }
+        private void putChroma(int[] mb, int comp, int x, int y, int[][] ac) {
+            putBlk(mb, chromaPredBlk0(comp, x, y), ac[0], 3, 0, 0);
 
-    private final int chromaPredTwo(int[] pix1, int[] pix2, int x, int y) {
-        return (pix1[x] + pix1[x + 1] + pix1[x + 2] + pix1[x + 3] + pix2[y] + pix2[y + 1] + pix2[y + 2] + pix2[y + 3] + 4) >> 3;
-    }
+            putBlk(mb, chromaPredBlk1(comp, x, y), ac[1], 3, 4, 0);
 
-    private int chromaPredBlk0(int comp, int x, int y) {
-        int predY = y & 0x7;
-        if (x != 0 && y != 0)
-            return chromaPredTwo(leftRow[comp], topLine[comp], predY, x);
-        else if (x != 0)
-            return chromaPredOne(leftRow[comp], predY);
-        else if (y != 0)
-            return chromaPredOne(topLine[comp], x);
-        else
-            return 128;
-    }
+            putBlk(mb, chromaPredBlk2(comp, x, y), ac[2], 3, 0, 4);
 
-    private int chromaPredBlk1(int comp, int x, int y) {
-        int predY = y & 0x7;
-        if (y != 0)
-            return chromaPredOne(topLine[comp], x + 4);
-        else if (x != 0)
-            return chromaPredOne(leftRow[comp], predY);
-        else
-            return 128;
-    }
+            putBlk(mb, chromaPredBlk3(comp, x, y), ac[3], 3, 4, 4);
+        }
 
-    private int chromaPredBlk2(int comp, int x, int y) {
-        int predY = y & 0x7;
-        if (x != 0)
-            return chromaPredOne(leftRow[comp], predY + 4);
-        else if (y != 0)
-            return chromaPredOne(topLine[comp], x);
-        else
-            return 128;
-    }
+        private void putLuma(int[] planeData, int pred, int[][] ac, int log2stride) {
+            for (int blk = 0; blk < ac.length; blk++) {
+                putBlk(planeData, pred, ac[blk], log2stride, BLK_X[blk], BLK_Y[blk]);
+            }
+        }
 
-    private int chromaPredBlk3(int comp, int x, int y) {
-        int predY = y & 0x7;
-        if (x != 0 && y != 0)
-            return chromaPredTwo(leftRow[comp], topLine[comp], predY + 4, x + 4);
-        else if (x != 0)
-            return chromaPredOne(leftRow[comp], predY + 4);
-        else if (y != 0)
-            return chromaPredOne(topLine[comp], x + 4);
-        else
-            return 128;
-    }
+        private void putBlk(int[] planeData, int pred, int[] block, int log2stride, int blkX, int blkY) {
+            int stride = 1 << log2stride;
+            for (int line = 0, srcOff = 0, dstOff = (blkY << log2stride) + blkX; line < 4; line++) {
+                planeData[dstOff] = clip(block[srcOff] + pred, 0, 255);
+                planeData[dstOff + 1] = clip(block[srcOff + 1] + pred, 0, 255);
+                planeData[dstOff + 2] = clip(block[srcOff + 2] + pred, 0, 255);
+                planeData[dstOff + 3] = clip(block[srcOff + 3] + pred, 0, 255);
+                srcOff += 4;
+                dstOff += stride;
+            }
+        }
 
-    private int lumaDCPred(int x, int y) {
-        if (x == 0 && y == 0)
-            return 128;
+        private void restorePlane(int[] dc, int[][] ac, int qp) {
+            if (dc.length == 4) {
+                CoeffTransformer.invDC2x2(dc);
+                CoeffTransformer.dequantizeDC2x2(dc, qp);
+            } else if (dc.length == 8) {
+                CoeffTransformer.invDC4x2(dc);
+                CoeffTransformer.dequantizeDC4x2(dc, qp);
+            } else {
+                CoeffTransformer.invDC4x4(dc);
+                CoeffTransformer.dequantizeDC4x4(dc, qp);
+                reorderDC4x4(dc);
+            }
+            for (int i = 0; i < ac.length; i++) {
+                CoeffTransformer.dequantizeAC(ac[i], qp);
+                ac[i][0] = dc[i];
+                CoeffTransformer.idct4x4(ac[i]);
+            }
+        }
 
-        if (y == 0)
-            return (ArrayUtil.sum(leftRow[0]) + 8) >> 4;
-        if (x == 0)
-            return (ArrayUtil.sum(topLine[0], x, 16) + 8) >> 4;
+        private int[] extractDC(int[][] ac) {
+            int[] dc = new int[ac.length];
+            for (int i = 0; i < ac.length; i++) {
+                dc[i] = ac[i][0];
+                ac[i][0] = 0;
+            }
+            return dc;
+        }
 
-        return (ArrayUtil.sum(leftRow[0]) + ArrayUtil.sum(topLine[0], x, 16) + 16) >> 5;
-    }
+        private void writeAC(int comp, int mbX, int mbY, BitWriter out, int mbLeftBlk, int mbTopBlk, int[][] ac, int qp) {
+            for (int i = 0; i < ac.length; i++) {
+                CoeffTransformer.quantizeAC(ac[i], qp);
+                cavlc[comp].writeACBlock(out, mbLeftBlk + MB_BLK_OFF_LEFT[i], mbTopBlk + MB_BLK_OFF_TOP[i],
+                        MB_BLK_OFF_LEFT[i] == 0 ? leftMBType : I_16x16, MB_BLK_OFF_TOP[i] == 0 ? topMBType[mbX] : I_16x16,
+                        ac[i], H264Const.totalZeros16, 1, 15, CoeffTransformer.zigzag4x4);
+            }
+        }
 
-    private int[][] transform(Picture pic, int comp, int qp, int cw, int ch, int x, int y) {
-        int dcc = lumaDCPred(x, y);
+        private void writeDC(int comp, int mbX, int mbY, BitWriter out, int qp, int mbLeftBlk, int mbTopBlk, int[] dc) {
+            if (dc.length == 4) {
+                CoeffTransformer.quantizeDC2x2(dc, qp);
+                CoeffTransformer.fvdDC2x2(dc);
+                cavlc[comp].writeChrDCBlock(out, dc, H264Const.totalZeros4, 0, dc.length, new int[] { 0, 1, 2, 3 });
+            } else if (dc.length == 8) {
+                CoeffTransformer.quantizeDC4x2(dc, qp);
+                CoeffTransformer.fvdDC4x2(dc);
+                cavlc[comp].writeChrDCBlock(out, dc, H264Const.totalZeros8, 0, dc.length, new int[] { 0, 1, 2, 3, 4, 5, 6,
+                        7 });
+            } else {
+                reorderDC4x4(dc);
+                CoeffTransformer.quantizeDC4x4(dc, qp);
+                CoeffTransformer.fvdDC4x4(dc);
+                cavlc[comp].writeLumaDCBlock(out, mbLeftBlk, mbTopBlk, leftMBType, topMBType[mbX], dc,
+                        H264Const.totalZeros16, 0, 16, CoeffTransformer.zigzag4x4);
+            }
+        }
+
+        private int[][] transformChroma(Picture pic, int comp, int qp, int cw, int ch, int x, int y, Picture outMB) {
+            int[][] ac = new int[16 >> (cw + ch)][16];
+
+            takeSubtract(pic.getPlaneData(comp), pic.getPlaneWidth(comp), pic.getPlaneHeight(comp), x, y, ac[0],
+                    chromaPredBlk0(comp, x, y));
+            CoeffTransformer.fdct4x4(ac[0]);
+
+            takeSubtract(pic.getPlaneData(comp), pic.getPlaneWidth(comp), pic.getPlaneHeight(comp), x + 4, y, ac[1],
+                    chromaPredBlk1(comp, x, y));
+            CoeffTransformer.fdct4x4(ac[1]);
 
-        int[][] ac = new int[16 >> (cw + ch)][16];
-        for (int i = 0; i < ac.length; i++) {
-            int[] coeff = ac[i];
-            takeSubtract(pic.getPlaneData(comp), pic.getPlaneWidth(comp), pic.getPlaneHeight(comp), x + BLK_X[i], y
-                    + BLK_Y[i], coeff, dcc);
-            CoeffTransformer.fdct4x4(coeff);
+            takeSubtract(pic.getPlaneData(comp), pic.getPlaneWidth(comp), pic.getPlaneHeight(comp), x, y + 4, ac[2],
+                    chromaPredBlk2(comp, x, y));
+            CoeffTransformer.fdct4x4(ac[2]);
+
+            takeSubtract(pic.getPlaneData(comp), pic.getPlaneWidth(comp), pic.getPlaneHeight(comp), x + 4, y + 4, ac[3],
+                    chromaPredBlk3(comp, x, y));
+            CoeffTransformer.fdct4x4(ac[3]);
+
+            return ac;
         }
-        return ac;
-    }
 
-    private final void takeSubtract(int[] planeData, int planeWidth, int planeHeight, int x, int y, int[] coeff, int dc) {
-        if (x + 4 < planeWidth && y + 4 < planeHeight)
-            takeSubtractSafe(planeData, planeWidth, planeHeight, x, y, coeff, dc);
-        else
-            takeSubtractUnsafe(planeData, planeWidth, planeHeight, x, y, coeff, dc);
+        private final int chromaPredOne(int[] pix, int x) {
+            return (pix[x] + pix[x + 1] + pix[x + 2] + pix[x + 3] + 2) >> 2;
+        }
 
-    }
+        private final int chromaPredTwo(int[] pix1, int[] pix2, int x, int y) {
+            return (pix1[x] + pix1[x + 1] + pix1[x + 2] + pix1[x + 3] + pix2[y] + pix2[y + 1] + pix2[y + 2] + pix2[y + 3] + 4) >> 3;
+        }
 
-    private final void takeSubtractSafe(int[] planeData, int planeWidth, int planeHeight, int x, int y, int[] coeff,
-            int dc) {
-        for (int i = 0, srcOff = y * planeWidth + x, dstOff = 0; i < 4; i++, srcOff += planeWidth, dstOff += 4) {
-            coeff[dstOff] = planeData[srcOff] - dc;
-            coeff[dstOff + 1] = planeData[srcOff + 1] - dc;
-            coeff[dstOff + 2] = planeData[srcOff + 2] - dc;
-            coeff[dstOff + 3] = planeData[srcOff + 3] - dc;
+        private int chromaPredBlk0(int comp, int x, int y) {
+            int predY = y & 0x7;
+            if (x != 0 && y > firstMbY << 3)
+                return chromaPredTwo(leftRow[comp], topLine[comp], predY, x);
+            else if (x != 0)
+                return chromaPredOne(leftRow[comp], predY);
+            else if (y > firstMbY << 3)
+                return chromaPredOne(topLine[comp], x);
+            else
+                return 128;
+        }
+
+        private int chromaPredBlk1(int comp, int x, int y) {
+            int predY = y & 0x7;
+            if (y > firstMbY << 3)
+                return chromaPredOne(topLine[comp], x + 4);
+            else if (x != 0)
+                return chromaPredOne(leftRow[comp], predY);
+            else
+                return 128;
+        }
+
+        private int chromaPredBlk2(int comp, int x, int y) {
+            int predY = y & 0x7;
+            if (x != 0)
+                return chromaPredOne(leftRow[comp], predY + 4);
+            else if (y > firstMbY << 3)
+                return chromaPredOne(topLine[comp], x);
+            else
+                return 128;
+        }
+
+        private int chromaPredBlk3(int comp, int x, int y) {
+            int predY = y & 0x7;
+            if (x != 0 && y > firstMbY << 3)
+                return chromaPredTwo(leftRow[comp], topLine[comp], predY + 4, x + 4);
+            else if (x != 0)
+                return chromaPredOne(leftRow[comp], predY + 4);
+            else if (y > firstMbY << 3)
+                return chromaPredOne(topLine[comp], x + 4);
+            else
+                return 128;
+        }
+
+        private int lumaDCPred(int x, int y) {
+            boolean topAvb = y > firstMbY << 4;
+            if (x == 0 && !topAvb)
+                return 128;
+
+            if (!topAvb)
+                return (ArrayUtil.sum(leftRow[0]) + 8) >> 4;
+            if (x == 0)
+                return (ArrayUtil.sum(topLine[0], x, 16) + 8) >> 4;
+
+            return (ArrayUtil.sum(leftRow[0]) + ArrayUtil.sum(topLine[0], x, 16) + 16) >> 5;
+        }
+
+        private int[][] transform(Picture pic, int comp, int qp, int cw, int ch, int x, int y) {
+            int dcc = lumaDCPred(x, y);
+
+            int[][] ac = new int[16 >> (cw + ch)][16];
+            for (int i = 0; i < ac.length; i++) {
+                int[] coeff = ac[i];
+                takeSubtract(pic.getPlaneData(comp), pic.getPlaneWidth(comp), pic.getPlaneHeight(comp), x + BLK_X[i], y
+                        + BLK_Y[i], coeff, dcc);
+                CoeffTransformer.fdct4x4(coeff);
+            }
+            return ac;
         }
-    }
 
-    private final void takeSubtractUnsafe(int[] planeData, int planeWidth, int planeHeight, int x, int y, int[] coeff,
-            int dc) {
-        int outOff = 0;
-
-        int i;
-        for (i = y; i < Math.min(y + 4, planeHeight); i++) {
-            int off = i * planeWidth + Math.min(x, planeWidth);
-            int j;
-            for (j = x; j < Math.min(x + 4, planeWidth); j++)
-                coeff[outOff++] = planeData[off++] - dc;
-            --off;
-            for (; j < x + 4; j++)
-                coeff[outOff++] = planeData[off] - dc;
-        }
-        for (; i < y + 4; i++) {
-            int off = planeHeight * planeWidth - planeWidth + Math.min(x, planeWidth);
-            int j;
-            for (j = x; j < Math.min(x + 4, planeWidth); j++)
-                coeff[outOff++] = planeData[off++] - dc;
-            --off;
-            for (; j < x + 4; j++)
-                coeff[outOff++] = planeData[off] - dc;
+        private final void takeSubtract(int[] planeData, int planeWidth, int planeHeight, int x, int y, int[] coeff, int dc) {
+            if (x + 4 < planeWidth && y + 4 < planeHeight)
+                takeSubtractSafe(planeData, planeWidth, planeHeight, x, y, coeff, dc);
+            else
+                takeSubtractUnsafe(planeData, planeWidth, planeHeight, x, y, coeff, dc);
+
+        }
+
+        private final void takeSubtractSafe(int[] planeData, int planeWidth, int planeHeight, int x, int y, int[] coeff,
+                int dc) {
+            for (int i = 0, srcOff = y * planeWidth + x, dstOff = 0; i < 4; i++, srcOff += planeWidth, dstOff += 4) {
+                coeff[dstOff] = planeData[srcOff] - dc;
+                coeff[dstOff + 1] = planeData[srcOff + 1] - dc;
+                coeff[dstOff + 2] = planeData[srcOff + 2] - dc;
+                coeff[dstOff + 3] = planeData[srcOff + 3] - dc;
+            }
+        }
+
+        private final void takeSubtractUnsafe(int[] planeData, int planeWidth, int planeHeight, int x, int y, int[] coeff,
+                int dc) {
+            int outOff = 0;
+
+            int i;
+            for (i = y; i < Math.min(y + 4, planeHeight); i++) {
+                int off = i * planeWidth + Math.min(x, planeWidth);
+                int j;
+                for (j = x; j < Math.min(x + 4, planeWidth); j++)
+                    coeff[outOff++] = planeData[off++] - dc;
+                --off;
+                for (; j < x + 4; j++)
+                    coeff[outOff++] = planeData[off] - dc;
+            }
+            for (; i < y + 4; i++) {
+                int off = planeHeight * planeWidth - planeWidth + Math.min(x, planeWidth);
+                int j;
+                for (j = x; j < Math.min(x + 4, planeWidth); j++)
+                    coeff[outOff++] = planeData[off++] - dc;
+                --off;
+                for (; j < x + 4; j++)
+                    coeff[outOff++] = planeData[off] - dc;
+            }
         }
     }
-}
\ No newline at end of file
+}
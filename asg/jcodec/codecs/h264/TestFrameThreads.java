@@ -0,0 +1,84 @@
+package asg.jcodec.codecs.h264;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import asg.jcodec.common.model.ColorSpace;
+import asg.jcodec.common.model.Picture;
+
+public class TestFrameThreads {
+
+    private static final int WIDTH = 176;
+    private static final int HEIGHT = 144;
+
+    @Test
+    public void testMultiSliceThreadedMatchesSerial() {
+        List<ByteBuffer> frames = encode(12, 4, 5);
+
+        Picture[] serial = decode(frames, 1);
+        Picture[] threaded = decode(frames, 4);
+
+        for (int i = 0; i < frames.size(); i++) {
+            for (int plane = 0; plane < 3; plane++)
+                Assert.assertArrayEquals("frame " + i + " plane " + plane, serial[i].getPlaneData(plane),
+                        threaded[i].getPlaneData(plane));
+        }
+    }
+
+    static List<ByteBuffer> encode(int count, int slices, int keyInterval) {
+        H264Encoder encoder = new H264Encoder();
+        encoder.setSlices(slices);
+        encoder.setKeyInterval(keyInterval);
+        List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < count; i++)
+            frames.add(encoder.encodeFrame(ByteBuffer.allocate(WIDTH * HEIGHT * 3), picture(i)));
+        return frames;
+    }
+
+    static Picture[] decode(List<ByteBuffer> frames, int threads) {
+        H264Decoder decoder = new H264Decoder();
+        decoder.setThreads(threads);
+        Picture[] result = new Picture[frames.size()];
+        for (int i = 0; i < result.length; i++) {
+            // Decoding unescapes the NAL units in place
+            ByteBuffer frame = ByteBuffer.allocate(frames.get(i).remaining());
+            frame.put(frames.get(i).duplicate());
+            frame.flip();
+            result[i] = decoder.decodeFrame(frame, Picture.create(WIDTH, HEIGHT, ColorSpace.YUV420).getData());
+            Assert.assertNotNull("frame " + i, result[i]);
+        }
+        return result;
+    }
+
+    /**
+     * A smooth pattern moving a few pixels every frame, so P frames have
+     * motion to find.
+     */
+    static Picture picture(int t) {
+        Picture pic = Picture.create(WIDTH, HEIGHT, ColorSpace.YUV420);
+        int[] y = pic.getPlaneData(0);
+        for (int j = 0; j < HEIGHT; j++) {
+            for (int i = 0; i < WIDTH; i++) {
+                double x = i + 3 * t, yy = j + 2 * t;
+                y[j * WIDTH + i] = clip(128 + (int) (60 * Math.sin(x / 11.0) * Math.cos(yy / 7.0) + 30 * Math
+                        .sin((x + yy) / 23.0)));
+            }
+        }
+        for (int plane = 1; plane < 3; plane++) {
+            int[] c = pic.getPlaneData(plane);
+            for (int j = 0; j < HEIGHT / 2; j++) {
+                for (int i = 0; i < WIDTH / 2; i++)
+                    c[j * WIDTH / 2 + i] = clip(128 + (int) (40 * Math.sin((i + t + plane * j) / 9.0)));
+            }
+        }
+        return pic;
+    }
+
+    private static int clip(int val) {
+        return val < 0 ? 0 : val > 255 ? 255 : val;
+    }
+}
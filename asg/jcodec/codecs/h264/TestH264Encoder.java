@@ -0,0 +1,81 @@
+package asg.jcodec.codecs.h264;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import asg.jcodec.codecs.h264.io.model.NALUnit;
+import asg.jcodec.codecs.h264.io.model.NALUnitType;
+import asg.jcodec.common.model.Picture;
+
+public class TestH264Encoder {
+
+    @Test
+    public void testPFramesRoundTrip() {
+        List<ByteBuffer> frames = TestFrameThreads.encode(10, 1, 5);
+
+        for (int i = 0; i < frames.size(); i++) {
+            boolean idr = i % 5 == 0;
+            List<ByteBuffer> nalUnits = H264Utils.splitFrame(frames.get(i).duplicate());
+            int sps = 0, slices = 0;
+            for (ByteBuffer nalUnit : nalUnits) {
+                NALUnit marker = NALUnit.read(nalUnit.duplicate());
+                if (marker.type == NALUnitType.SPS) {
+                    sps++;
+                } else if (marker.type == NALUnitType.IDR_SLICE || marker.type == NALUnitType.NON_IDR_SLICE) {
+                    Assert.assertEquals("frame " + i, idr ? NALUnitType.IDR_SLICE : NALUnitType.NON_IDR_SLICE,
+                            marker.type);
+                    slices++;
+                }
+            }
+            // Only IDR frames carry the parameter sets
+            Assert.assertEquals("frame " + i, idr ? 1 : 0, sps);
+            Assert.assertEquals("frame " + i, 1, slices);
+            if (!idr)
+                Assert.assertTrue("frame " + i, frames.get(i).remaining() < frames.get(i - i % 5).remaining() / 2);
+        }
+
+        Picture[] decoded = TestFrameThreads.decode(frames, 1);
+        for (int i = 0; i < decoded.length; i++)
+            Assert.assertTrue("frame " + i, psnr(TestFrameThreads.picture(i), decoded[i]) > 38);
+    }
+
+    @Test
+    public void testSlicesRoundTrip() {
+        List<ByteBuffer> single = TestFrameThreads.encode(10, 1, 5);
+        List<ByteBuffer> sliced = TestFrameThreads.encode(10, 4, 5);
+
+        // The slices are encoded at the same time but the stream doesn't
+        // depend on which finishes first
+        List<ByteBuffer> again = TestFrameThreads.encode(10, 4, 5);
+        for (int i = 0; i < sliced.size(); i++) {
+            Assert.assertEquals("frame " + i, sliced.get(i), again.get(i));
+            int slices = 0;
+            for (ByteBuffer nalUnit : H264Utils.splitFrame(sliced.get(i).duplicate())) {
+                NALUnitType type = NALUnit.read(nalUnit.duplicate()).type;
+                if (type == NALUnitType.IDR_SLICE || type == NALUnitType.NON_IDR_SLICE)
+                    slices++;
+            }
+            Assert.assertEquals("frame " + i, 4, slices);
+        }
+
+        Picture[] fromSingle = TestFrameThreads.decode(single, 1);
+        Picture[] fromSliced = TestFrameThreads.decode(sliced, 1);
+        for (int i = 0; i < fromSliced.length; i++) {
+            double psnr = psnr(TestFrameThreads.picture(i), fromSliced[i]);
+            Assert.assertTrue("frame " + i, psnr > 38);
+            Assert.assertEquals("frame " + i, psnr(TestFrameThreads.picture(i), fromSingle[i]), psnr, 0.5);
+        }
+    }
+
+    static double psnr(Picture expected, Picture actual) {
+        int[] a = expected.getPlaneData(0), b = actual.getPlaneData(0);
+        long sum = 0;
+        for (int i = 0; i < a.length; i++)
+            sum += (a[i] - b[i]) * (a[i] - b[i]);
+        double mse = Math.max(sum, 1) / (double) a.length;
+        return 10 * Math.log10(255 * 255 / mse);
+    }
+}
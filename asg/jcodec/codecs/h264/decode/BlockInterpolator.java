@@ -13,7 +13,15 @@ import asg.jcodec.common.model.Picture;
  */
 public class BlockInterpolator {
 
-    private static int[] tmp1 = new int[1024];
+    /*
+     * Scratch for the two pass interpolations, one per thread since several
+     * frames (and streams) can be decoded at once.
+     */
+    private static ThreadLocal<int[]> tmp = new ThreadLocal<int[]>() {
+        protected int[] initialValue() {
+            return new int[1024];
+        }
+    };
 
     /**
      * Get block of ( possibly interpolated ) luma pixels
@@ -409,6 +417,7 @@ public class BlockInterpolator {
      */
     private static void getLuma21(int[] pic, int picW, int[] blk, int blkOff, int blkStride, int x, int y, int blkW,
             int blkH) {
+        int[] tmp1 = tmp.get();
         getLuma20NoRound(pic, picW, tmp1, 0, blkW, x, y - 2, blkW, blkH + 7);
         getLuma02NoRound(tmp1, blkW, blk, blkOff, blkStride, 0, 2, blkW, blkH);
 
@@ -429,6 +438,7 @@ public class BlockInterpolator {
      */
     private static void getLuma21Unsafe(int[] pic, int picW, int imgH, int[] blk, int blkOff, int blkStride, int x,
             int y, int blkW, int blkH) {
+        int[] tmp1 = tmp.get();
         getLuma20UnsafeNoRound(pic, picW, imgH, tmp1, 0, blkW, x, y - 2, blkW, blkH + 7);
         getLuma02NoRound(tmp1, blkW, blk, blkOff, blkStride, 0, 2, blkW, blkH);
 
@@ -449,6 +459,7 @@ public class BlockInterpolator {
      */
     private static void getLuma22(int[] pic, int picW, int[] blk, int blkOff, int blkStride, int x, int y, int blkW,
             int blkH) {
+        int[] tmp1 = tmp.get();
         getLuma20NoRound(pic, picW, tmp1, 0, blkW, x, y - 2, blkW, blkH + 7);
         getLuma02NoRound(tmp1, blkW, blk, blkOff, blkStride, 0, 2, blkW, blkH);
 
@@ -465,6 +476,7 @@ public class BlockInterpolator {
      */
     private static void getLuma22Unsafe(int[] pic, int picW, int imgH, int[] blk, int blkOff, int blkStride, int x,
             int y, int blkW, int blkH) {
+        int[] tmp1 = tmp.get();
         getLuma20UnsafeNoRound(pic, picW, imgH, tmp1, 0, blkW, x, y - 2, blkW, blkH + 7);
         getLuma02NoRound(tmp1, blkW, blk, blkOff, blkStride, 0, 2, blkW, blkH);
 
@@ -482,6 +494,7 @@ public class BlockInterpolator {
      */
     private static void getLuma23(int[] pic, int picW, int[] blk, int blkOff, int blkStride, int x, int y, int blkW,
             int blkH) {
+        int[] tmp1 = tmp.get();
         getLuma20NoRound(pic, picW, tmp1, 0, blkW, x, y - 2, blkW, blkH + 7);
         getLuma02NoRound(tmp1, blkW, blk, blkOff, blkStride, 0, 2, blkW, blkH);
 
@@ -502,6 +515,7 @@ public class BlockInterpolator {
      */
     private static void getLuma23Unsafe(int[] pic, int picW, int imgH, int[] blk, int blkOff, int blkStride, int x,
             int y, int blkW, int blkH) {
+        int[] tmp1 = tmp.get();
         getLuma20UnsafeNoRound(pic, picW, imgH, tmp1, 0, blkW, x, y - 2, blkW, blkH + 7);
         getLuma02NoRound(tmp1, blkW, blk, blkOff, blkStride, 0, 2, blkW, blkH);
 
@@ -522,6 +536,7 @@ public class BlockInterpolator {
      */
     private static void getLuma12(int[] pic, int picW, int[] blk, int blkOff, int blkStride, int x, int y, int blkW,
             int blkH) {
+        int[] tmp1 = tmp.get();
 
         int tmpW = blkW + 7;
 
@@ -545,6 +560,7 @@ public class BlockInterpolator {
      */
     private static void getLuma12Unsafe(int[] pic, int picW, int imgH, int[] blk, int blkOff, int blkStride, int x,
             int y, int blkW, int blkH) {
+        int[] tmp1 = tmp.get();
         int tmpW = blkW + 7;
 
         getLuma02UnsafeNoRound(pic, picW, imgH, tmp1, 0, tmpW, x - 2, y, tmpW, blkH);
@@ -567,6 +583,7 @@ public class BlockInterpolator {
      */
     private static void getLuma32(int[] pic, int picW, int[] blk, int blkOff, int blkStride, int x, int y, int blkW,
             int blkH) {
+        int[] tmp1 = tmp.get();
         int tmpW = blkW + 7;
 
         getLuma02NoRound(pic, picW, tmp1, 0, tmpW, x - 2, y, tmpW, blkH);
@@ -589,6 +606,7 @@ public class BlockInterpolator {
      */
     private static void getLuma32Unsafe(int[] pic, int picW, int imgH, int[] blk, int blkOff, int blkStride, int x,
             int y, int blkW, int blkH) {
+        int[] tmp1 = tmp.get();
         int tmpW = blkW + 7;
 
         getLuma02UnsafeNoRound(pic, picW, imgH, tmp1, 0, tmpW, x - 2, y, tmpW, blkH);
@@ -611,6 +629,7 @@ public class BlockInterpolator {
      */
     private static void getLuma33(int[] pic, int picW, int[] blk, int blkOff, int blkStride, int x, int y, int blkW,
             int blkH) {
+        int[] tmp1 = tmp.get();
         getLuma20(pic, picW, blk, blkOff, blkStride, x, y + 1, blkW, blkH);
         getLuma02(pic, picW, tmp1, 0, blkW, x + 1, y, blkW, blkH);
 
@@ -622,6 +641,7 @@ public class BlockInterpolator {
      */
     private static void getLuma33Unsafe(int[] pic, int picW, int imgH, int[] blk, int blkOff, int blkStride, int x,
             int y, int blkW, int blkH) {
+        int[] tmp1 = tmp.get();
         getLuma20Unsafe(pic, picW, imgH, blk, blkOff, blkStride, x, y + 1, blkW, blkH);
         getLuma02Unsafe(pic, picW, imgH, tmp1, 0, blkW, x + 1, y, blkW, blkH);
 
@@ -633,6 +653,7 @@ public class BlockInterpolator {
      */
     private static void getLuma11(int[] pic, int picW, int[] blk, int blkOff, int blkStride, int x, int y, int blkW,
             int blkH) {
+        int[] tmp1 = tmp.get();
         getLuma20(pic, picW, blk, blkOff, blkStride, x, y, blkW, blkH);
         getLuma02(pic, picW, tmp1, 0, blkW, x, y, blkW, blkH);
 
@@ -644,6 +665,7 @@ public class BlockInterpolator {
      */
     private static void getLuma11Unsafe(int[] pic, int picW, int imgH, int[] blk, int blkOff, int blkStride, int x,
             int y, int blkW, int blkH) {
+        int[] tmp1 = tmp.get();
         getLuma20Unsafe(pic, picW, imgH, blk, blkOff, blkStride, x, y, blkW, blkH);
         getLuma02Unsafe(pic, picW, imgH, tmp1, 0, blkW, x, y, blkW, blkH);
 
@@ -655,6 +677,7 @@ public class BlockInterpolator {
      */
     private static void getLuma13(int[] pic, int picW, int[] blk, int blkOff, int blkStride, int x, int y, int blkW,
             int blkH) {
+        int[] tmp1 = tmp.get();
         getLuma20(pic, picW, blk, blkOff, blkStride, x, y + 1, blkW, blkH);
         getLuma02(pic, picW, tmp1, 0, blkW, x, y, blkW, blkH);
 
@@ -666,6 +689,7 @@ public class BlockInterpolator {
      */
     private static void getLuma13Unsafe(int[] pic, int picW, int imgH, int[] blk, int blkOff, int blkStride, int x,
             int y, int blkW, int blkH) {
+        int[] tmp1 = tmp.get();
         getLuma20Unsafe(pic, picW, imgH, blk, blkOff, blkStride, x, y + 1, blkW, blkH);
         getLuma02Unsafe(pic, picW, imgH, tmp1, 0, blkW, x, y, blkW, blkH);
 
@@ -677,6 +701,7 @@ public class BlockInterpolator {
      */
     private static void getLuma31(int[] pels, int picW, int[] blk, int blkOff, int blkStride, int x, int y, int blkW,
             int blkH) {
+        int[] tmp1 = tmp.get();
         getLuma20(pels, picW, blk, blkOff, blkStride, x, y, blkW, blkH);
         getLuma02(pels, picW, tmp1, 0, blkW, x + 1, y, blkW, blkH);
 
@@ -688,6 +713,7 @@ public class BlockInterpolator {
      */
     private static void getLuma31Unsafe(int[] pels, int picW, int imgH, int[] blk, int blkOff, int blkStride, int x,
             int y, int blkW, int blkH) {
+        int[] tmp1 = tmp.get();
         getLuma20Unsafe(pels, picW, imgH, blk, blkOff, blkStride, x, y, blkW, blkH);
         getLuma02Unsafe(pels, picW, imgH, tmp1, 0, blkW, x + 1, y, blkW, blkH);
 
@@ -699,6 +725,7 @@ public class BlockInterpolator {
     }
 
     private static void mergeCrap(int[] blk, int blkOff, int blkStride, int blkW, int blkH) {
+        int[] tmp1 = tmp.get();
         int tOff = 0;
         for (int j = 0; j < blkH; j++) {
             for (int i = 0; i < blkW; i++) {
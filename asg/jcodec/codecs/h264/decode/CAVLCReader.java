@@ -4,6 +4,7 @@ import static asg.jcodec.common.tools.Debug.trace;
 
 import asg.jcodec.codecs.h264.H264Utils;
 import asg.jcodec.common.io.BitReader;
+import asg.jcodec.common.tools.Debug;
 
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
@@ -87,7 +88,8 @@ public class CAVLCReader {
         while (bits.read1Bit() == 0 && count < 32)
             count++;
 
-        trace(message, String.valueOf(count));
+        if (Debug.debug)
+            trace(message, String.valueOf(count));
 
         return count;
     }
@@ -248,6 +248,25 @@ public class CoeffTransformer {
         }
     }
 
+    /**
+     * Quantizes all 16 coefficients of an inter predicted 4x4 block, rounding
+     * towards zero more than for intra blocks (1/6 instead of 1/3), as the
+     * prediction error is mostly noise.
+     */
+    public static void quantizeInter(int[] coeffs, int qp) {
+        int level = qp / 6;
+        int offset = qp % 6;
+
+        int addition = 341 << (qp / 6 + 4);
+        int qbits = 15 + level;
+
+        for (int i = 0; i < 16; i++) {
+            int sign = (coeffs[i] >> 31);
+            coeffs[i] = (Math.min((((coeffs[i] ^ sign) - sign) * quantCoeff[offset][i] + addition) >> qbits, 2063) ^ sign)
+                    - sign;
+        }
+    }
+
     public static int[] unzigzagAC(int[] coeffs) {
         int[] tab;
         if (coeffs.length == 16) {
@@ -15,9 +15,14 @@ import asg.jcodec.common.Assert;
  */
 public class Intra8x8PredictionBuilder {
 
-    static int[] topBuf = new int[16];
-    static int[] leftBuf = new int[8];
-    static int[] genBuf = new int[24];
+    /*
+     * One set of buffers per thread, several frames can be predicted at once.
+     */
+    private static ThreadLocal<int[][]> buffers = new ThreadLocal<int[][]>() {
+        protected int[][] initialValue() {
+            return new int[][] { new int[16], new int[8], new int[24] };
+        }
+    };
 
     public static void predictWithMode(int mode, int[] residual, boolean leftAvailable, boolean topAvailable,
             boolean topLeftAvailable, boolean topRightAvailable, int[] leftRow, int[] topLine, int topLeft[],
@@ -143,6 +148,7 @@ public class Intra8x8PredictionBuilder {
 
     private static void predictVertical(int[] residual, boolean topLeftAvailable, boolean topRightAvailable,
             int[] topLeft, int[] topLine, int mbOffX, int blkX, int blkY) {
+        int[] topBuf = buffers.get()[0];
         interpolateTop(topLeftAvailable, topRightAvailable, topLeft, topLine, mbOffX + blkX, blkY, topBuf);
         for (int i = 0, off = (blkY << 4) + blkX; i < 8; i++, off += 16) {
             residual[off] = clip(residual[off] + topBuf[0], 0, 255);
@@ -158,6 +164,7 @@ public class Intra8x8PredictionBuilder {
 
     private static void predictHorizontal(int[] residual, boolean topLeftAvailable, int[] topLeft, int[] leftRow,
             int mbOffX, int blkX, int blkY) {
+        int[] leftBuf = buffers.get()[1];
         interpolateLeft(topLeftAvailable, topLeft, leftRow, blkY, leftBuf);
         for (int i = 0, off = (blkY << 4) + blkX; i < 8; i++, off += 16) {
             residual[off] = clip(residual[off] + leftBuf[i], 0, 255);
@@ -174,6 +181,8 @@ public class Intra8x8PredictionBuilder {
     private static void predictDC(int[] residual, boolean topLeftAvailable, boolean topRightAvailable,
             boolean leftAvailable, boolean topAvailable, int topLeft[], int[] leftRow, int[] topLine, int mbOffX,
             int blkX, int blkY) {
+        int[] topBuf = buffers.get()[0];
+        int[] leftBuf = buffers.get()[1];
         if (topAvailable && leftAvailable) {
             interpolateTop(topLeftAvailable, topRightAvailable, topLeft, topLine, mbOffX + blkX, blkY, topBuf);
             interpolateLeft(topLeftAvailable, topLeft, leftRow, blkY, leftBuf);
@@ -199,6 +208,8 @@ public class Intra8x8PredictionBuilder {
 
     private static void predictDiagonalDownLeft(int[] residual, boolean topLeftAvailable, boolean topAvailable,
             boolean topRightAvailable, int[] topLeft, int[] topLine, int mbOffX, int blkX, int blkY) {
+        int[] topBuf = buffers.get()[0];
+        int[] genBuf = buffers.get()[2];
         interpolateTop(topLeftAvailable, topRightAvailable, topLeft, topLine, mbOffX + blkX, blkY, topBuf);
 
         genBuf[0] = ((topBuf[0] + topBuf[2] + ((topBuf[1]) << 1) + 2) >> 2);
@@ -230,6 +241,9 @@ public class Intra8x8PredictionBuilder {
 
     private static void predictDiagonalDownRight(int[] residual, boolean topRightAvailable, int[] topLeft,
             int[] leftRow, int[] topLine, int mbOffX, int blkX, int blkY) {
+        int[] topBuf = buffers.get()[0];
+        int[] leftBuf = buffers.get()[1];
+        int[] genBuf = buffers.get()[2];
         interpolateTop(true, topRightAvailable, topLeft, topLine, mbOffX + blkX, blkY, topBuf);
         interpolateLeft(true, topLeft, leftRow, blkY, leftBuf);
         int tl = interpolateTopLeft(true, true, topLeft, topLine, leftRow, mbOffX, blkX, blkY);
@@ -263,6 +277,9 @@ public class Intra8x8PredictionBuilder {
 
     private static void predictVerticalRight(int[] residual, boolean topRightAvailable, int[] topLeft, int[] leftRow,
             int[] topLine, int mbOffX, int blkX, int blkY) {
+        int[] topBuf = buffers.get()[0];
+        int[] leftBuf = buffers.get()[1];
+        int[] genBuf = buffers.get()[2];
         interpolateTop(true, topRightAvailable, topLeft, topLine, mbOffX + blkX, blkY, topBuf);
         interpolateLeft(true, topLeft, leftRow, blkY, leftBuf);
         int tl = interpolateTopLeft(true, true, topLeft, topLine, leftRow, mbOffX, blkX, blkY);
@@ -303,6 +320,9 @@ public class Intra8x8PredictionBuilder {
 
     private static void predictHorizontalDown(int[] residual, boolean topRightAvailable, int[] topLeft, int[] leftRow,
             int[] topLine, int mbOffX, int blkX, int blkY) {
+        int[] topBuf = buffers.get()[0];
+        int[] leftBuf = buffers.get()[1];
+        int[] genBuf = buffers.get()[2];
         interpolateTop(true, topRightAvailable, topLeft, topLine, mbOffX + blkX, blkY, topBuf);
         interpolateLeft(true, topLeft, leftRow, blkY, leftBuf);
         int tl = interpolateTopLeft(true, true, topLeft, topLine, leftRow, mbOffX, blkX, blkY);
@@ -343,6 +363,8 @@ public class Intra8x8PredictionBuilder {
 
     private static void predictVerticalLeft(int[] residual, boolean topLeftAvailable, boolean topRightAvailable,
             int[] topLeft, int[] topLine, int mbOffX, int blkX, int blkY) {
+        int[] topBuf = buffers.get()[0];
+        int[] genBuf = buffers.get()[2];
         interpolateTop(topLeftAvailable, topRightAvailable, topLeft, topLine, mbOffX + blkX, blkY, topBuf);
 
         genBuf[0] = ((topBuf[0] + topBuf[1] + 1) >> 1);
@@ -381,6 +403,8 @@ public class Intra8x8PredictionBuilder {
 
     private static void predictHorizontalUp(int[] residual, boolean topLeftAvailable, int[] topLeft, int[] leftRow,
             int mbOffX, int blkX, int blkY) {
+        int[] leftBuf = buffers.get()[1];
+        int[] genBuf = buffers.get()[2];
         interpolateLeft(topLeftAvailable, topLeft, leftRow, blkY, leftBuf);
 
         genBuf[0] = ((leftBuf[0] + leftBuf[1] + 1) >> 1);
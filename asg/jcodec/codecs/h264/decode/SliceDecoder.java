@@ -143,6 +143,88 @@ public class SliceDecoder {
         this.refsUsed = refsUsed;
     }
 
+    /**
+     * Starts decoding the slices of another frame with the same SPS and PPS.
+     * The per picture arrays passed to the constructor are reused, only the
+     * motion vectors and reference lists (which stay with the frame while it
+     * is a reference) change.
+     */
+    public void setFrame(Frame result, int[][][][] mvs, Frame[][][] refsUsed) {
+        this.thisFrame = result;
+        this.mvs = mvs;
+        this.refsUsed = refsUsed;
+    }
+
+    /*
+     * Scratch macroblocks, created once and cleared before each use instead of
+     * being created for every macroblock.
+     */
+    private Picture[] predictionMbs;
+    private Picture[] chromaPredictionMbs;
+    private Picture[] directPredictionMbs;
+    private Picture residualMb;
+    private Picture inter8x8Mb;
+    private Picture directMb;
+
+    private Picture[] scratch(Picture[] mbs) {
+        if (mbs == null)
+            return new Picture[] { Picture.create(16, 16, chromaFormat), Picture.create(16, 16, chromaFormat) };
+        clear(mbs[0]);
+        clear(mbs[1]);
+        return mbs;
+    }
+
+    private Picture scratch(Picture mb) {
+        if (mb == null)
+            return Picture.create(16, 16, chromaFormat);
+        clear(mb);
+        return mb;
+    }
+
+    /**
+     * Told about each row of macroblocks once its last macroblock is decoded,
+     * so the row can be deblocked and published while the rest of the frame
+     * is decoded.
+     */
+    public interface RowListener {
+        void rowDecoded(int mbY);
+    }
+
+    private RowListener rowListener;
+
+    public void setRowListener(RowListener rowListener) {
+        this.rowListener = rowListener;
+    }
+
+    private void mbDecoded(int mbX, int mbY) {
+        if (rowListener != null && mbX == activeSps.pic_width_in_mbs_minus1)
+            rowListener.rowDecoded(mbY);
+    }
+
+    /**
+     * A reference may still be being decoded on another thread, this waits
+     * for the rows the block (and the interpolation filter around it) reads.
+     */
+    private static void getBlockLuma(Picture ref, Picture out, int off, int x, int y, int w, int h) {
+        waitForLines(ref, (y >> 2) + h + 3);
+        BlockInterpolator.getBlockLuma(ref, out, off, x, y, w, h);
+    }
+
+    /**
+     * @param lines - How many luma lines from the top of the reference have
+     *            to be final.
+     */
+    private static void waitForLines(Picture ref, int lines) {
+        if (ref instanceof Frame)
+            ((Frame) ref).waitForRows((Math.max(lines, 1) + 15) >> 4);
+    }
+
+    private static void clear(Picture mb) {
+        int[][] data = mb.getData();
+        for (int i = 0; i < data.length; i++)
+            Arrays.fill(data[i], 0);
+    }
+
     public void decode(ByteBuffer segment, NALUnit nalUnit) {
     	
     	
@@ -232,12 +314,14 @@ public class SliceDecoder {
                 int mbSkipRun = readUE(in, "mb_skip_run");
                 for (int j = 0; j < mbSkipRun; j++, i++) {
                     int mbAddr = mapper.getAddress(i);
-                    debugPrint("---------------------- MB (" + (mbAddr % mbWidth) + "," + (mbAddr / mbWidth)
-                            + ") ---------------------");
+                    if (debug)
+                        debugPrint("---------------------- MB (" + (mbAddr % mbWidth) + "," + (mbAddr / mbWidth)
+                                + ") ---------------------");
                     decodeSkip(refList, i, mb, sh.slice_type);
                     shs[mbAddr] = sh;
                     refsUsed[mbAddr] = refList;
                     put(thisFrame, mb, mapper.getMbX(i), mapper.getMbY(i));
+                    mbDecoded(mapper.getMbX(i), mapper.getMbY(i));
                     wipe(mb);
                 }
 
@@ -253,7 +337,8 @@ public class SliceDecoder {
             refsUsed[mbAddr] = refList;
             int mbX = mbAddr % mbWidth;
             int mbY = mbAddr / mbWidth;
-            debugPrint("---------------------- MB (" + mbX + "," + mbY + ") ---------------------");
+            if (debug)
+                debugPrint("---------------------- MB (" + mbX + "," + mbY + ") ---------------------");
 
             if (sh.slice_type.isIntra()
                     || (!activePps.entropy_coding_mode_flag || !cabac.readMBSkipFlag(mDecoder, sh.slice_type,
@@ -271,6 +356,7 @@ public class SliceDecoder {
                 prevMBType = null;
             }
             put(thisFrame, mb, mbX, mbY);
+            mbDecoded(mbX, mbY);
 
             if (activePps.entropy_coding_mode_flag && mDecoder.decodeFinalBin() == 1)
                 break;
@@ -1101,7 +1187,7 @@ public class SliceDecoder {
                         mbX, 0, 2, 4, 2, list);
         }
 
-        Picture[] mbb = { Picture.create(16, 16, chromaFormat), Picture.create(16, 16, chromaFormat) };
+        Picture[] mbb = predictionMbs = scratch(predictionMbs);
         for (int list = 0; list < 2; list++) {
             predictInter16x8(reader, mbb[list], refs, mbX, mbY, leftAvailable, topAvailable, topLeftAvailable,
                     topRightAvailable, xx, refIdx1, refIdx2, x, p0, p1, list);
@@ -1144,10 +1230,11 @@ public class SliceDecoder {
             mvX1 = mvdX1 + mvpX1;
             mvY1 = mvdY1 + mvpY1;
 
-            debugPrint("MVP: (" + mvpX1 + ", " + mvpY1 + "), MVD: (" + mvdX1 + ", " + mvdY1 + "), MV: (" + mvX1 + ","
-                    + mvY1 + "," + refIdx1[list] + ")");
+            if (debug)
+                debugPrint("MVP: (" + mvpX1 + ", " + mvpY1 + "), MVD: (" + mvdX1 + ", " + mvdY1 + "), MV: (" + mvX1 + ","
+                        + mvY1 + "," + refIdx1[list] + ")");
 
-            BlockInterpolator.getBlockLuma(references[list][refIdx1[list]], mb, 0, (mbX << 6) + mvX1,
+            getBlockLuma(references[list][refIdx1[list]], mb, 0, (mbX << 6) + mvX1,
                     (mbY << 6) + mvY1, 16, 8);
             r1 = refIdx1[list];
         }
@@ -1167,10 +1254,11 @@ public class SliceDecoder {
             mvX2 = mvdX2 + mvpX2;
             mvY2 = mvdY2 + mvpY2;
 
-            debugPrint("MVP: (" + mvpX2 + ", " + mvpY2 + "), MVD: (" + mvdX2 + ", " + mvdY2 + "), MV: (" + mvX2 + ","
-                    + mvY2 + "," + refIdx2[list] + ")");
+            if (debug)
+                debugPrint("MVP: (" + mvpX2 + ", " + mvpY2 + "), MVD: (" + mvdX2 + ", " + mvdY2 + "), MV: (" + mvX2 + ","
+                        + mvY2 + "," + refIdx2[list] + ")");
 
-            BlockInterpolator.getBlockLuma(references[list][refIdx2[list]], mb, 128, (mbX << 6) + mvX2, (mbY << 6) + 32
+            getBlockLuma(references[list][refIdx2[list]], mb, 128, (mbX << 6) + mvX2, (mbY << 6) + 32
                     + mvY2, 16, 8);
             r2 = refIdx2[list];
         }
@@ -1192,7 +1280,7 @@ public class SliceDecoder {
         int cbpLuma = codedBlockPattern & 0xf;
         int cbpChroma = codedBlockPattern >> 4;
 
-        Picture mb1 = Picture.create(16, 16, chromaFormat);
+        Picture mb1 = residualMb = scratch(residualMb);
 
         boolean transform8x8Used = false;
         if (cbpLuma != 0 && transform8x8) {
@@ -1259,7 +1347,7 @@ public class SliceDecoder {
                         predModeTop[(mbX << 1) + 1], p1, mbX, 2, 0, 2, 4, list);
         }
 
-        Picture[] mbb = { Picture.create(16, 16, chromaFormat), Picture.create(16, 16, chromaFormat) };
+        Picture[] mbb = predictionMbs = scratch(predictionMbs);
 
         for (int list = 0; list < 2; list++) {
             predictInter8x16(reader, mbb[list], refs, mbX, mbY, leftAvailable, topAvailable, topLeftAvailable,
@@ -1304,10 +1392,11 @@ public class SliceDecoder {
             mvX1 = mvdX1 + mvpX1;
             mvY1 = mvdY1 + mvpY1;
 
-            debugPrint("MVP: (" + mvpX1 + ", " + mvpY1 + "), MVD: (" + mvdX1 + ", " + mvdY1 + "), MV: (" + mvX1 + ","
-                    + mvY1 + "," + refIdx1[list] + ")");
+            if (debug)
+                debugPrint("MVP: (" + mvpX1 + ", " + mvpY1 + "), MVD: (" + mvdX1 + ", " + mvdY1 + "), MV: (" + mvX1 + ","
+                        + mvY1 + "," + refIdx1[list] + ")");
 
-            BlockInterpolator.getBlockLuma(references[list][refIdx1[list]], mb, 0, (mbX << 6) + mvX1,
+            getBlockLuma(references[list][refIdx1[list]], mb, 0, (mbX << 6) + mvX1,
                     (mbY << 6) + mvY1, 8, 16);
             r1 = refIdx1[list];
         }
@@ -1327,10 +1416,11 @@ public class SliceDecoder {
             mvX2 = mvdX2 + mvpX2;
             mvY2 = mvdY2 + mvpY2;
 
-            debugPrint("MVP: (" + mvpX2 + ", " + mvpY2 + "), MVD: (" + mvdX2 + ", " + mvdY2 + "), MV: (" + mvX2 + ","
-                    + mvY2 + "," + refIdx2[list] + ")");
+            if (debug)
+                debugPrint("MVP: (" + mvpX2 + ", " + mvpY2 + "), MVD: (" + mvdX2 + ", " + mvdY2 + "), MV: (" + mvX2 + ","
+                        + mvY2 + "," + refIdx2[list] + ")");
 
-            BlockInterpolator.getBlockLuma(references[list][refIdx2[list]], mb, 8, (mbX << 6) + 32 + mvX2, (mbY << 6)
+            getBlockLuma(references[list][refIdx2[list]], mb, 8, (mbX << 6) + 32 + mvX2, (mbY << 6)
                     + mvY2, 8, 16);
             r2 = refIdx2[list];
         }
@@ -1362,7 +1452,7 @@ public class SliceDecoder {
                 refIdx[list] = readRefIdx(reader, leftAvailable, topAvailable, leftMBType, topMBType[mbX],
                         predModeLeft[0], predModeTop[(mbX << 1)], p0, mbX, 0, 0, 4, 4, list);
         }
-        Picture[] mbb = { Picture.create(16, 16, chromaFormat), Picture.create(16, 16, chromaFormat) };
+        Picture[] mbb = predictionMbs = scratch(predictionMbs);
         for (int list = 0; list < 2; list++) {
             predictInter16x16(reader, mbb[list], refs, mbX, mbY, leftAvailable, topAvailable, topLeftAvailable,
                     topRightAvailable, x, xx, refIdx, list, p0);
@@ -1400,11 +1490,12 @@ public class SliceDecoder {
             mvX = mvdX + mvpX;
             mvY = mvdY + mvpY;
 
-            debugPrint("MVP: (" + mvpX + ", " + mvpY + "), MVD: (" + mvdX + ", " + mvdY + "), MV: (" + mvX + "," + mvY
-                    + "," + refIdx[list] + ")");
+            if (debug)
+                debugPrint("MVP: (" + mvpX + ", " + mvpY + "), MVD: (" + mvdX + ", " + mvdY + "), MV: (" + mvX + "," + mvY
+                        + "," + refIdx[list] + ")");
             r = refIdx[list];
 
-            BlockInterpolator.getBlockLuma(references[list][r], mb, 0, (mbX << 6) + mvX, (mbY << 6) + mvY, 16, 16);
+            getBlockLuma(references[list][r], mb, 0, (mbX << 6) + mvX, (mbY << 6) + mvY, 16, 16);
         }
 
         copyVect(mvTopLeft[list], mvTop[list][xx + 3]);
@@ -1520,7 +1611,7 @@ public class SliceDecoder {
         for (int i = 0; i < 16; i++)
             x[0][i][2] = x[1][i][2] = -1;
 
-        Picture mb1 = Picture.create(16, 16, chromaFormat);
+        Picture mb1 = inter8x8Mb = scratch(inter8x8Mb);
 
         MBType curMBType;
         boolean noSubMBLessThen8x8;
@@ -1641,7 +1732,7 @@ public class SliceDecoder {
                 refIdx[list][3] = readRefIdx(reader, true, true, B_8x8, B_8x8, p[2], p[1], p[3], mbX, 2, 2, 2, 2, list);
         }
 
-        Picture[] mbb = { Picture.create(16, 16, chromaFormat), Picture.create(16, 16, chromaFormat) };
+        Picture[] mbb = predictionMbs = scratch(predictionMbs);
 
         PartPred[] _pp = new PartPred[4];
         for (int i = 0; i < 4; i++) {
@@ -1717,7 +1808,7 @@ public class SliceDecoder {
         for (int i = 0; i < 16; i++)
             x[0][i][2] = x[1][i][2] = -1;
 
-        Picture mb1 = Picture.create(16, 16, chromaFormat);
+        Picture mb1 = directMb = scratch(directMb);
         PartPred[] pp = new PartPred[4];
 
         predictBDirect(references, mbX, mbY, lAvb, tAvb, tlAvb, trAvb, x, pp, mb1, identityMapping4);
@@ -1841,7 +1932,7 @@ public class SliceDecoder {
 
         debugPrint("MVP: (" + mvpX + ", " + mvpY + "), MVD: (" + mvdX + ", " + mvdY + "), MV: (" + x00[0] + ","
                 + x00[1] + "," + refIdx + ")");
-        BlockInterpolator.getBlockLuma(references[refIdx], mb, off, offX + x00[0], offY + x00[1], 8, 8);
+        getBlockLuma(references[refIdx], mb, off, offX + x00[0], offY + x00[1], 8, 8);
     }
 
     private void decodeSub8x4(BitReader reader, Picture[] references, int offX, int offY, int[] tl, int[] t0, int[] tr,
@@ -1878,8 +1969,8 @@ public class SliceDecoder {
         debugPrint("MVP: (" + mvpX2 + ", " + mvpY2 + "), MVD: (" + mvdX2 + ", " + mvdY2 + "), MV: (" + x10[0] + ","
                 + x10[1] + "," + refIdx + ")");
 
-        BlockInterpolator.getBlockLuma(references[refIdx], mb, off, offX + x00[0], offY + x00[1], 8, 4);
-        BlockInterpolator.getBlockLuma(references[refIdx], mb, off + mb.getWidth() * 4, offX + x10[0], offY + x10[1]
+        getBlockLuma(references[refIdx], mb, off, offX + x00[0], offY + x00[1], 8, 4);
+        getBlockLuma(references[refIdx], mb, off + mb.getWidth() * 4, offX + x10[0], offY + x10[1]
                 + 16, 8, 4);
     }
 
@@ -1917,8 +2008,8 @@ public class SliceDecoder {
         debugPrint("MVP: (" + mvpX2 + ", " + mvpY2 + "), MVD: (" + mvdX2 + ", " + mvdY2 + "), MV: (" + x01[0] + ","
                 + x01[1] + "," + refIdx + ")");
 
-        BlockInterpolator.getBlockLuma(references[refIdx], mb, off, offX + x00[0], offY + x00[1], 4, 8);
-        BlockInterpolator.getBlockLuma(references[refIdx], mb, off + 4, offX + x01[0] + 16, offY + x01[1], 4, 8);
+        getBlockLuma(references[refIdx], mb, off, offX + x00[0], offY + x00[1], 4, 8);
+        getBlockLuma(references[refIdx], mb, off + 4, offX + x01[0] + 16, offY + x01[1], 4, 8);
     }
 
     private void decodeSub4x4(BitReader reader, Picture[] references, int offX, int offY, int[] tl, int[] t0, int[] t1,
@@ -1980,11 +2071,11 @@ public class SliceDecoder {
         debugPrint("MVP: (" + mvpX4 + ", " + mvpY4 + "), MVD: (" + mvdX4 + ", " + mvdY4 + "), MV: (" + x11[0] + ","
                 + x11[1] + "," + refIdx + ")");
 
-        BlockInterpolator.getBlockLuma(references[refIdx], mb, off, offX + x00[0], offY + x00[1], 4, 4);
-        BlockInterpolator.getBlockLuma(references[refIdx], mb, off + 4, offX + x01[0] + 16, offY + x01[1], 4, 4);
-        BlockInterpolator.getBlockLuma(references[refIdx], mb, off + mb.getWidth() * 4, offX + x10[0], offY + x10[1]
+        getBlockLuma(references[refIdx], mb, off, offX + x00[0], offY + x00[1], 4, 4);
+        getBlockLuma(references[refIdx], mb, off + 4, offX + x01[0] + 16, offY + x01[1], 4, 4);
+        getBlockLuma(references[refIdx], mb, off + mb.getWidth() * 4, offX + x10[0], offY + x10[1]
                 + 16, 4, 4);
-        BlockInterpolator.getBlockLuma(references[refIdx], mb, off + mb.getWidth() * 4 + 4, offX + x11[0] + 16, offY
+        getBlockLuma(references[refIdx], mb, off + mb.getWidth() * 4 + 4, offX + x11[0] + 16, offY
                 + x11[1] + 16, 4, 4);
     }
 
@@ -2026,7 +2117,7 @@ public class SliceDecoder {
     public void predictChromaInter(Frame[][] refs, int[][][] vectors, int x, int y, int comp, Picture mb,
             PartPred[] predType) {
 
-        Picture[] mbb = { Picture.create(16, 16, chromaFormat), Picture.create(16, 16, chromaFormat) };
+        Picture[] mbb = chromaPredictionMbs = scratch(chromaPredictionMbs);
 
         for (int blk8x8 = 0; blk8x8 < 4; blk8x8++) {
             for (int list = 0; list < 2; list++) {
@@ -2042,6 +2133,7 @@ public class SliceDecoder {
 
                     int xx = ((x + blkPox) << 3) + mv[0];
                     int yy = ((y + blkPoy) << 3) + mv[1];
+                    waitForLines(ref, ((yy >> 3) + 3) << 1);
 
                     BlockInterpolator.getBlockChroma(ref.getPlaneData(comp), ref.getPlaneWidth(comp),
                             ref.getPlaneHeight(comp), mbb[list].getPlaneData(comp), blkPoy * mb.getPlaneWidth(comp)
@@ -2119,7 +2211,8 @@ public class SliceDecoder {
     private void predictBTemporalDirect(Frame[][] refs, int mbX, int mbY, boolean lAvb, boolean tAvb, boolean tlAvb,
             boolean trAvb, int[][][] x, PartPred[] pp, Picture mb, int[] blocks8x8) {
 
-        Picture mb0 = Picture.create(16, 16, chromaFormat), mb1 = Picture.create(16, 16, chromaFormat);
+        Picture[] mbs = directPredictionMbs = scratch(directPredictionMbs);
+        Picture mb0 = mbs[0], mb1 = mbs[1];
         for (int blk8x8 : blocks8x8) {
             int blk4x4_0 = H264Const.BLK8x8_BLOCKS[blk8x8][0];
             pp[blk8x8] = Bi;
@@ -2138,9 +2231,9 @@ public class SliceDecoder {
                     int blkPredX = (mbX << 6) + (blkIndX << 4);
                     int blkPredY = (mbY << 6) + (blkIndY << 4);
 
-                    BlockInterpolator.getBlockLuma(refs[0][x[0][blk4x4][2]], mb0, BLK_4x4_MB_OFF_LUMA[blk4x4], blkPredX
+                    getBlockLuma(refs[0][x[0][blk4x4][2]], mb0, BLK_4x4_MB_OFF_LUMA[blk4x4], blkPredX
                             + x[0][blk4x4][0], blkPredY + x[0][blk4x4][1], 4, 4);
-                    BlockInterpolator.getBlockLuma(refs[1][0], mb1, BLK_4x4_MB_OFF_LUMA[blk4x4], blkPredX
+                    getBlockLuma(refs[1][0], mb1, BLK_4x4_MB_OFF_LUMA[blk4x4], blkPredX
                             + x[1][blk4x4][0], blkPredY + x[1][blk4x4][1], 4, 4);
                 }
             else {
@@ -2158,9 +2251,9 @@ public class SliceDecoder {
                 int blkPredX = (mbX << 6) + (blkIndX << 4);
                 int blkPredY = (mbY << 6) + (blkIndY << 4);
 
-                BlockInterpolator.getBlockLuma(refs[0][x[0][blk4x4_0][2]], mb0, BLK_4x4_MB_OFF_LUMA[blk4x4_0], blkPredX
+                getBlockLuma(refs[0][x[0][blk4x4_0][2]], mb0, BLK_4x4_MB_OFF_LUMA[blk4x4_0], blkPredX
                         + x[0][blk4x4_0][0], blkPredY + x[0][blk4x4_0][1], 8, 8);
-                BlockInterpolator.getBlockLuma(refs[1][0], mb1, BLK_4x4_MB_OFF_LUMA[blk4x4_0], blkPredX
+                getBlockLuma(refs[1][0], mb1, BLK_4x4_MB_OFF_LUMA[blk4x4_0], blkPredX
                         + x[1][blk4x4_0][0], blkPredY + x[1][blk4x4_0][1], 8, 8);
             }
             prediction.mergePrediction(x[0][blk4x4_0][2], x[1][blk4x4_0][2], Bi, 0, mb0.getPlaneData(0),
@@ -2178,6 +2271,7 @@ public class SliceDecoder {
         int blkPosX = (mbX << 2) + blkIndX;
         int blkPosY = (mbY << 2) + blkIndY;
 
+        picCol.waitForRows(mbY + 1);
         int[] mvCol = picCol.getMvs()[0][blkPosY][blkPosX];
         Frame refL0;
         int refIdxL0;
@@ -2236,7 +2330,8 @@ public class SliceDecoder {
         int refIdxL0 = calcRef(a0, b0, c0, d0, lAvb, tAvb, tlAvb, trAvb, mbX);
         int refIdxL1 = calcRef(a1, b1, c1, d1, lAvb, tAvb, tlAvb, trAvb, mbX);
 
-        Picture mb0 = Picture.create(16, 16, chromaFormat), mb1 = Picture.create(16, 16, chromaFormat);
+        Picture[] mbs = directPredictionMbs = scratch(directPredictionMbs);
+        Picture mb0 = mbs[0], mb1 = mbs[1];
 
         if (refIdxL0 < 0 && refIdxL1 < 0) {
             for (int blk8x8 : blocks8x8) {
@@ -2247,9 +2342,9 @@ public class SliceDecoder {
 
                 int blkOffX = (blk8x8 & 1) << 5;
                 int blkOffY = (blk8x8 >> 1) << 5;
-                BlockInterpolator.getBlockLuma(refs[0][0], mb0, BLK_8x8_MB_OFF_LUMA[blk8x8], (mbX << 6) + blkOffX,
+                getBlockLuma(refs[0][0], mb0, BLK_8x8_MB_OFF_LUMA[blk8x8], (mbX << 6) + blkOffX,
                         (mbY << 6) + blkOffY, 8, 8);
-                BlockInterpolator.getBlockLuma(refs[1][0], mb1, BLK_8x8_MB_OFF_LUMA[blk8x8], (mbX << 6) + blkOffX,
+                getBlockLuma(refs[1][0], mb1, BLK_8x8_MB_OFF_LUMA[blk8x8], (mbX << 6) + blkOffX,
                         (mbY << 6) + blkOffY, 8, 8);
                 prediction.mergePrediction(0, 0, PartPred.Bi, 0, mb0.getPlaneData(0), mb1.getPlaneData(0),
                         BLK_8x8_MB_OFF_LUMA[blk8x8], 16, 8, 8, mb.getPlaneData(0), refs, thisFrame);
@@ -2282,10 +2377,10 @@ public class SliceDecoder {
                     int blkPredY = (mbY << 6) + (blkIndY << 4);
 
                     if (refIdxL0 >= 0)
-                        BlockInterpolator.getBlockLuma(refs[0][refIdxL0], mb0, BLK_4x4_MB_OFF_LUMA[blk4x4], blkPredX
+                        getBlockLuma(refs[0][refIdxL0], mb0, BLK_4x4_MB_OFF_LUMA[blk4x4], blkPredX
                                 + x[0][blk4x4][0], blkPredY + x[0][blk4x4][1], 4, 4);
                     if (refIdxL1 >= 0)
-                        BlockInterpolator.getBlockLuma(refs[1][refIdxL1], mb1, BLK_4x4_MB_OFF_LUMA[blk4x4], blkPredX
+                        getBlockLuma(refs[1][refIdxL1], mb1, BLK_4x4_MB_OFF_LUMA[blk4x4], blkPredX
                                 + x[1][blk4x4][0], blkPredY + x[1][blk4x4][1], 4, 4);
                 }
             else {
@@ -2304,10 +2399,10 @@ public class SliceDecoder {
                 int blkPredY = (mbY << 6) + (blkIndY << 4);
 
                 if (refIdxL0 >= 0)
-                    BlockInterpolator.getBlockLuma(refs[0][refIdxL0], mb0, BLK_4x4_MB_OFF_LUMA[blk4x4_0], blkPredX
+                    getBlockLuma(refs[0][refIdxL0], mb0, BLK_4x4_MB_OFF_LUMA[blk4x4_0], blkPredX
                             + x[0][blk4x4_0][0], blkPredY + x[0][blk4x4_0][1], 8, 8);
                 if (refIdxL1 >= 0)
-                    BlockInterpolator.getBlockLuma(refs[1][refIdxL1], mb1, BLK_4x4_MB_OFF_LUMA[blk4x4_0], blkPredX
+                    getBlockLuma(refs[1][refIdxL1], mb1, BLK_4x4_MB_OFF_LUMA[blk4x4_0], blkPredX
                             + x[1][blk4x4_0][0], blkPredY + x[1][blk4x4_0][1], 8, 8);
             }
             prediction.mergePrediction(x[0][blk4x4_0][2], x[1][blk4x4_0][2], refIdxL0 >= 0 ? (refIdxL1 >= 0 ? Bi : L0)
@@ -2345,6 +2440,7 @@ public class SliceDecoder {
         x[0][blk4x4][2] = refL0;
         x[1][blk4x4][2] = refL1;
 
+        col.waitForRows(mbY + 1);
         int[] mvCol = col.getMvs()[0][blkPosY][blkPosX];
         if (mvCol[2] == -1)
             mvCol = col.getMvs()[1][blkPosY][blkPosX];
@@ -2395,7 +2491,7 @@ public class SliceDecoder {
             x[0][i][1] = mvY;
             x[0][i][2] = 0;
         }
-        BlockInterpolator.getBlockLuma(refs[0][0], mb, 0, (mbX << 6) + mvX, (mbY << 6) + mvY, 16, 16);
+        getBlockLuma(refs[0][0], mb, 0, (mbX << 6) + mvX, (mbY << 6) + mvY, 16, 16);
 
         prediction.mergePrediction(0, 0, L0, 0, mb.getPlaneData(0), null, 0, 16, 16, 16, mb.getPlaneData(0), refs,
                 thisFrame);
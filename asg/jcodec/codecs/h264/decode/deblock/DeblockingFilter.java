@@ -69,14 +69,37 @@ public class DeblockingFilter {
         this.refsUsed = refsUsed;
     }
 
+    /**
+     * Points the filter at the motion vectors and reference lists of the next
+     * frame, the other per picture arrays are reused from frame to frame.
+     */
+    public void setFrame(int[][][][] mvs, Picture[][][] refsUsed) {
+        this.mvs = mvs;
+        this.refsUsed = refsUsed;
+    }
+
     public void deblockFrame(Picture result) {
-        ColorSpace color = result.getColor();
         // for (int i = 0; i < shs.length; i++)
         // printMB(result.getPlaneData(2), result.getPlaneWidth(2), i, shs[i],
         // "!--!--!--!--!--!--!--!--!--!--!--!");
 //        printMB(result.getPlaneData(0), result.getPlaneWidth(0), 0, shs[0], "!--!--!--!--!--!--!--!--!--!--!--!");
+        int mbWidth = result.getWidth() >> 4;
+        for (int mbY = 0; mbY < shs.length / mbWidth; mbY++)
+            deblockRow(result, mbY);
+        // printMB(result.getPlaneData(0), result.getPlaneWidth(0), 235,
+        // shs[235], "!**!**!**!**!--!--!--!--!--!--!--!");
+    }
+
+    /**
+     * Filters one row of macroblocks. The rows have to be filtered top to
+     * bottom, and filtering a row also changes the bottom 3 lines of the row
+     * above it, so a row is only final once the row below has been filtered.
+     */
+    public void deblockRow(Picture result, int mbY) {
+        ColorSpace color = result.getColor();
+        int mbWidth = result.getWidth() >> 4;
         int[][] bsV = new int[4][4], bsH = new int[4][4];
-        for (int i = 0; i < shs.length; i++) {
+        for (int i = mbY * mbWidth; i < (mbY + 1) * mbWidth; i++) {
             calcBsH(result, i, bsH);
             calcBsV(result, i, bsV);
             for (int c = 0; c < color.nComp; c++) {
@@ -87,8 +110,6 @@ public class DeblockingFilter {
                 // "!**!**!**!**!--!--!--!--!--!--!--!");
             }
         }
-        // printMB(result.getPlaneData(0), result.getPlaneWidth(0), 235,
-        // shs[235], "!**!**!**!**!--!--!--!--!--!--!--!");
     }
 
     private void printMB(int[] is, int stride, int mbAddr, SliceHeader sh, String delim) {
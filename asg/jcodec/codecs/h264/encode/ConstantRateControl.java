@@ -1,5 +1,6 @@
 package asg.jcodec.codecs.h264.encode;
 
+import asg.jcodec.common.model.Picture;
 import asg.jcodec.common.tools.MathUtil;
 
 /**
@@ -28,7 +29,7 @@ public class ConstantRateControl implements RateControl {
     }
 
     @Override
-    public int getQpDelta() {
+    public int getQpDelta(int qp) {
         int qpDelta = balance < 0 ? (balance < -(perMb >> 1) ? 2 : 1) : (balance > perMb ? (balance > (perMb << 2) ? -2
                 : -1) : 0);
         int prevQp = curQp;
@@ -53,6 +54,19 @@ public class ConstantRateControl implements RateControl {
         curQp = INIT_QP;
     }
 
+    @Override
+    public RateControl forSlice(int firstMb) {
+        return firstMb == 0 ? this : new ConstantRateControl(perMb);
+    }
+
+    @Override
+    public void startFrame(Picture pic, boolean idr) {
+    }
+
+    @Override
+    public void endFrame(int bits) {
+    }
+
     public int calcFrameSize(int nMB) {
         return ((256 + nMB * (perMb + 9)) >> 3) + (nMB >> 6);
     }
@@ -1,5 +1,7 @@
 package asg.jcodec.codecs.h264.encode;
 
+import asg.jcodec.common.model.Picture;
+
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
  * under FreeBSD License
@@ -18,7 +20,7 @@ public class DumbRateControl implements RateControl {
     }
 
     @Override
-    public int getQpDelta() {
+    public int getQpDelta(int qp) {
         return 0;
     }
 
@@ -31,4 +33,17 @@ public class DumbRateControl implements RateControl {
     public void reset() {
         // Do nothing, remember we are dumb
     }
+
+    @Override
+    public RateControl forSlice(int firstMb) {
+        return this;
+    }
+
+    @Override
+    public void startFrame(Picture pic, boolean idr) {
+    }
+
+    @Override
+    public void endFrame(int bits) {
+    }
 }
@@ -0,0 +1,118 @@
+package asg.jcodec.codecs.h264.encode;
+
+import asg.jcodec.common.model.Picture;
+import asg.jcodec.common.tools.MathUtil;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Cheap estimate of how hard a frame is to code, for rate control to plan
+ * ahead. The luma is downscaled by two and every macroblock becomes an 8x8
+ * block, costed as the smaller of its difference from its own mean (intra) and
+ * of the best match in the previous frame within a few pixels (inter).
+ * Pictures have to be estimated in coding order.
+ *
+ * @author The JCodec project
+ *
+ */
+public class Lookahead {
+
+    private static final int SEARCH_RANGE = 4;
+
+    private int[] cur;
+    private int[] prev;
+    private int width;
+    private int height;
+
+    /**
+     * Cost of a frame, in SAD over the full resolution luma
+     */
+    public static class FrameCost {
+        public final int intra;
+        public final int inter;
+        public final int mbs;
+
+        public FrameCost(int intra, int inter, int mbs) {
+            this.intra = intra;
+            this.inter = inter;
+            this.mbs = mbs;
+        }
+
+        public int get(boolean idr) {
+            return idr ? intra : inter;
+        }
+    }
+
+    public FrameCost estimate(Picture pic) {
+        int mbW = (pic.getWidth() + 15) >> 4, mbH = (pic.getHeight() + 15) >> 4;
+        if (cur == null || width != mbW << 3 || height != mbH << 3) {
+            width = mbW << 3;
+            height = mbH << 3;
+            cur = new int[width * height];
+            prev = null;
+        }
+        downscale(pic);
+
+        long intra = 0, inter = 0;
+        for (int mbY = 0; mbY < mbH; mbY++) {
+            for (int mbX = 0; mbX < mbW; mbX++) {
+                int off = (mbY << 3) * width + (mbX << 3);
+                int intraCost = intraCost(off);
+                intra += intraCost;
+                inter += prev == null ? intraCost : Math.min(intraCost, interCost(mbX << 3, mbY << 3));
+            }
+        }
+
+        int[] tmp = prev;
+        prev = cur;
+        cur = tmp != null ? tmp : new int[width * height];
+
+        // Half resolution SAD is roughly a quarter of the full resolution one
+        return new FrameCost((int) Math.min(Integer.MAX_VALUE, intra << 2), (int) Math.min(Integer.MAX_VALUE,
+                inter << 2), mbW * mbH);
+    }
+
+    private void downscale(Picture pic) {
+        int[] luma = pic.getPlaneData(0);
+        int stride = pic.getPlaneWidth(0), lastX = pic.getWidth() - 1, lastY = pic.getHeight() - 1;
+        for (int y = 0, off = 0; y < height; y++) {
+            int row0 = Math.min(y << 1, lastY) * stride, row1 = Math.min((y << 1) + 1, lastY) * stride;
+            for (int x = 0; x < width; x++) {
+                int x0 = Math.min(x << 1, lastX), x1 = Math.min((x << 1) + 1, lastX);
+                cur[off++] = (luma[row0 + x0] + luma[row0 + x1] + luma[row1 + x0] + luma[row1 + x1] + 2) >> 2;
+            }
+        }
+    }
+
+    private int intraCost(int off) {
+        int sum = 0;
+        for (int j = 0, o = off; j < 8; j++, o += width)
+            for (int i = 0; i < 8; i++)
+                sum += cur[o + i];
+        int mean = (sum + 32) >> 6;
+        int cost = 0;
+        for (int j = 0, o = off; j < 8; j++, o += width)
+            for (int i = 0; i < 8; i++)
+                cost += MathUtil.abs(cur[o + i] - mean);
+        return cost;
+    }
+
+    private int interCost(int x, int y) {
+        int best = Integer.MAX_VALUE;
+        int minX = Math.max(-x, -SEARCH_RANGE), maxX = Math.min(width - 8 - x, SEARCH_RANGE);
+        int minY = Math.max(-y, -SEARCH_RANGE), maxY = Math.min(height - 8 - y, SEARCH_RANGE);
+        int off = y * width + x;
+        for (int dy = minY; dy <= maxY; dy++) {
+            for (int dx = minX; dx <= maxX; dx++) {
+                int refOff = off + dy * width + dx, cost = 0;
+                for (int j = 0; j < 8 && cost < best; j++)
+                    for (int i = 0, o = j * width; i < 8; i++)
+                        cost += MathUtil.abs(cur[off + o + i] - prev[refOff + o + i]);
+                if (cost < best)
+                    best = cost;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,311 @@
+package asg.jcodec.codecs.h264.encode;
+
+import java.util.LinkedList;
+
+import asg.jcodec.codecs.h264.encode.Lookahead.FrameCost;
+import asg.jcodec.common.model.Picture;
+import asg.jcodec.common.tools.MathUtil;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Rate control that plans every frame from a complexity estimate of it and of
+ * the frames after it, see lookahead.
+ *
+ * CRF keeps the quality constant, complex frames get a slightly higher QP as
+ * their detail hides the loss. VBR does the same but picks the quality that
+ * makes the average bitrate come out at the target, paying back any overshoot
+ * over the next two seconds. CBR pays it back within a second, and within a
+ * frame raises the QP of the rows that come after the rows that went over
+ * their share.
+ *
+ * Within a frame the QP of every macroblock is adapted to its activity, flat
+ * areas where blocking shows get a lower QP than busy ones.
+ *
+ * @author The JCodec project
+ *
+ */
+public class LookaheadRateControl implements RateControl {
+
+    public enum Mode {
+        CBR, VBR, CRF
+    }
+
+    private static final double QCOMP = 0.6;
+    private static final double IP_RATIO = 1.4;
+    private static final int AQ_RANGE = 6;
+    private static final int QP_MIN = 10;
+    private static final int QP_MAX = 51;
+
+    /**
+     * Per macroblock cost CRF is the QP for, a moderately busy picture
+     */
+    private static final double CRF_BASE_COST = 1200;
+
+    /**
+     * Bits times qscale per unit of cost, before the first frame of each type
+     * is coded, then learned from the frames
+     */
+    private static final double INIT_COEFF_I = 1.4;
+    private static final double INIT_COEFF_P = 1.2;
+
+    private Mode mode;
+    private int bitrate;
+    private double fps;
+    private int crf;
+
+    private Lookahead lookahead = new Lookahead();
+    private LinkedList<FrameCost> queue = new LinkedList<FrameCost>();
+    private double[] coeff = { INIT_COEFF_P, INIT_COEFF_I };
+    private double[] coeffBits = new double[2];
+    private double[] coeffCost = new double[2];
+    private long wantedBits;
+    private long totalBits;
+    private int lastPQp = -1;
+
+    /*
+     * The frame being encoded, read by every slice
+     */
+    private boolean idr;
+    private FrameCost cost;
+    private int frameQp;
+    private int[] aq = new int[0];
+    private int mbWidth;
+    private int frameMbs;
+    private int frameBits;
+
+    private SliceRateControl whole = new SliceRateControl(0);
+
+    /**
+     * @param bitrate
+     *            Bits per second
+     */
+    public static LookaheadRateControl cbr(int bitrate, double fps) {
+        return new LookaheadRateControl(Mode.CBR, bitrate, fps, 0);
+    }
+
+    /**
+     * @param bitrate
+     *            Average bits per second
+     */
+    public static LookaheadRateControl vbr(int bitrate, double fps) {
+        return new LookaheadRateControl(Mode.VBR, bitrate, fps, 0);
+    }
+
+    /**
+     * @param crf
+     *            QP of an average P frame, 0 to 51, lower is better
+     */
+    public static LookaheadRateControl crf(int crf) {
+        return new LookaheadRateControl(Mode.CRF, 0, 0, MathUtil.clip(crf, 0, 51));
+    }
+
+    private LookaheadRateControl(Mode mode, int bitrate, double fps, int crf) {
+        this.mode = mode;
+        this.bitrate = bitrate;
+        this.fps = fps;
+        this.crf = crf;
+        frameQp = mode == Mode.CRF ? crf : 26;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Estimates a picture ahead of encoding it. Either every picture is given
+     * here, in order and before it is encoded, or none is and each picture is
+     * only estimated when it is encoded.
+     */
+    public void lookahead(Picture pic) {
+        queue.add(lookahead.estimate(pic));
+    }
+
+    @Override
+    public void startFrame(Picture pic, boolean idr) {
+        this.idr = idr;
+        cost = queue.isEmpty() ? lookahead.estimate(pic) : queue.removeFirst();
+        adaptiveQuant(pic);
+
+        // Complexity of the frame blurred with the ones after it, so the
+        // quality doesn't jump from frame to frame
+        double sum = cost.inter, weights = 1, weight = 1;
+        for (FrameCost next : queue) {
+            weight *= 0.5;
+            sum += next.inter * weight;
+            weights += weight;
+        }
+        double rceq = Math.pow(Math.max(1, sum / weights), 1 - QCOMP);
+
+        double qscale;
+        if (mode == Mode.CRF) {
+            qscale = rceq / (Math.pow(CRF_BASE_COST * cost.mbs, 1 - QCOMP) / qp2qscale(crf));
+        } else {
+            double target = bitrate / fps;
+            double overflow = totalBits - wantedBits;
+            int window = queue.size() + 1;
+            double smooth = Math.max(window, mode == Mode.CBR ? fps : fps * 2);
+            double budget = Math.max(window * target - overflow * window / smooth, window * target / 4);
+
+            // Bits of the window for a rate factor of 1
+            double bits = coeff[idr ? 1 : 0] * cost.get(idr) * (idr ? IP_RATIO : 1) / rceq;
+            for (FrameCost next : queue)
+                bits += coeff[0] * next.inter / Math.pow(Math.max(1, next.inter), 1 - QCOMP);
+
+            qscale = rceq * bits / budget;
+            wantedBits += (long) target;
+        }
+        if (idr)
+            qscale /= IP_RATIO;
+
+        int qp = MathUtil.clip((int) Math.round(qscale2qp(qscale)), QP_MIN, QP_MAX);
+        if (mode != Mode.CRF && !idr && lastPQp >= 0) {
+            int step = mode == Mode.CBR ? 6 : 3;
+            qp = MathUtil.clip(qp, lastPQp - step, lastPQp + step);
+        }
+        frameQp = qp;
+        frameBits = (int) (coeff[idr ? 1 : 0] * cost.get(idr) / qp2qscale(qp));
+    }
+
+    /**
+     * Offsets the QP of every macroblock by how its activity (log2 of its
+     * luma variance) compares to the frame's average
+     */
+    private void adaptiveQuant(Picture pic) {
+        int[] luma = pic.getPlaneData(0);
+        int stride = pic.getPlaneWidth(0), lastX = pic.getWidth() - 1, lastY = pic.getHeight() - 1;
+        mbWidth = (pic.getWidth() + 15) >> 4;
+        frameMbs = mbWidth * ((pic.getHeight() + 15) >> 4);
+        if (aq.length != frameMbs)
+            aq = new int[frameMbs];
+
+        double[] energy = new double[frameMbs];
+        double mean = 0;
+        for (int mb = 0; mb < frameMbs; mb++) {
+            int x0 = (mb % mbWidth) << 4, y0 = (mb / mbWidth) << 4;
+            long sum = 0, sqr = 0;
+            for (int y = y0; y < y0 + 16; y++) {
+                int row = Math.min(y, lastY) * stride;
+                for (int x = x0; x < x0 + 16; x++) {
+                    int v = luma[row + Math.min(x, lastX)];
+                    sum += v;
+                    sqr += v * v;
+                }
+            }
+            energy[mb] = Math.log(sqr - ((sum * sum) >> 8) + 1) / Math.log(2);
+            mean += energy[mb];
+        }
+        mean /= frameMbs;
+        for (int mb = 0; mb < frameMbs; mb++)
+            aq[mb] = MathUtil.clip((int) Math.round(energy[mb] - mean), -AQ_RANGE, AQ_RANGE);
+    }
+
+    @Override
+    public void endFrame(int bits) {
+        totalBits += bits;
+        int c = cost.get(idr);
+        if (c > 0) {
+            // Decaying sums, so a big frame counts more than a small one
+            int t = idr ? 1 : 0;
+            coeffBits[t] = coeffBits[t] * 0.5 + bits * qp2qscale(frameQp);
+            coeffCost[t] = coeffCost[t] * 0.5 + c;
+            coeff[t] = coeffBits[t] / coeffCost[t];
+        }
+        if (!idr)
+            lastPQp = frameQp;
+    }
+
+    private static double qp2qscale(double qp) {
+        return 0.85 * Math.pow(2, (qp - 12) / 6);
+    }
+
+    private static double qscale2qp(double qscale) {
+        return 12 + 6 * Math.log(qscale / 0.85) / Math.log(2);
+    }
+
+    @Override
+    public int getInitQp() {
+        return frameQp;
+    }
+
+    @Override
+    public int getQpDelta(int qp) {
+        return whole.getQpDelta(qp);
+    }
+
+    @Override
+    public boolean accept(int bits) {
+        return whole.accept(bits);
+    }
+
+    @Override
+    public void reset() {
+        whole.reset();
+    }
+
+    @Override
+    public RateControl forSlice(int firstMb) {
+        return new SliceRateControl(firstMb);
+    }
+
+    /**
+     * Follows the frame's plan macroblock by macroblock within one slice
+     */
+    private class SliceRateControl implements RateControl {
+        private int firstMb;
+        private int mb;
+        private int bits;
+        private int feedback;
+
+        public SliceRateControl(int firstMb) {
+            this.firstMb = firstMb;
+        }
+
+        @Override
+        public int getInitQp() {
+            return frameQp;
+        }
+
+        @Override
+        public int getQpDelta(int qp) {
+            int target = frameQp + (mb < frameMbs ? aq[mb] : 0) + feedback;
+            return MathUtil.clip(target, QP_MIN, QP_MAX) - qp;
+        }
+
+        @Override
+        public boolean accept(int bits) {
+            this.bits += bits;
+            mb++;
+            if (mode == Mode.CBR && (mb - firstMb) % mbWidth == 0) {
+                // Bits so far against this slice's share of the frame
+                double planned = (double) frameBits * (mb - firstMb) / frameMbs;
+                feedback = MathUtil.clip((int) Math.round(3 * Math.log(Math.max(1, this.bits) / planned)
+                        / Math.log(2)), -2, 4);
+            }
+            return true;
+        }
+
+        @Override
+        public void reset() {
+            mb = firstMb;
+            bits = 0;
+            feedback = 0;
+        }
+
+        @Override
+        public RateControl forSlice(int firstMb) {
+            return LookaheadRateControl.this.forSlice(firstMb);
+        }
+
+        @Override
+        public void startFrame(Picture pic, boolean idr) {
+            LookaheadRateControl.this.startFrame(pic, idr);
+        }
+
+        @Override
+        public void endFrame(int bits) {
+            LookaheadRateControl.this.endFrame(bits);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package asg.jcodec.codecs.h264.encode;
+
+import static asg.jcodec.common.tools.MathUtil.clip;
+
+import asg.jcodec.codecs.h264.decode.BlockInterpolator;
+import asg.jcodec.common.model.ColorSpace;
+import asg.jcodec.common.model.Picture;
+import asg.jcodec.common.tools.MathUtil;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Estimates the motion of a 16x16 macroblock: a hexagon search over whole
+ * pixels followed by a half and then a quarter pixel refinement. The cost of a
+ * vector is its SAD plus lambda times the bits its difference from the
+ * predicted vector takes to code.
+ *
+ * @author The JCodec project
+ *
+ */
+public class MotionEstimator {
+
+    private static final int[][] HEXAGON = { { -2, 0 }, { -1, -2 }, { 1, -2 }, { 2, 0 }, { 1, 2 }, { -1, 2 } };
+    private static final int[][] SQUARE = { { -1, -1 }, { 0, -1 }, { 1, -1 }, { -1, 0 }, { 1, 0 }, { -1, 1 },
+            { 0, 1 }, { 1, 1 } };
+
+    private int searchRange;
+    private Picture block = Picture.create(16, 16, ColorSpace.YUV420);
+
+    private Picture ref;
+    private int[] patch;
+    private int mvpX;
+    private int mvpY;
+    private int lambda;
+
+    /**
+     * @param searchRange
+     *            How far, in whole pixels, a vector can point from the best
+     *            starting candidate
+     */
+    public MotionEstimator(int searchRange) {
+        this.searchRange = searchRange;
+    }
+
+    /**
+     * @param ref
+     *            Reconstructed reference picture
+     * @param patch
+     *            Source luma of the macroblock, 16x16
+     * @param mvpX
+     *            Predicted vector, quarter pixels
+     * @param candidates
+     *            Vectors to start searching from, quarter pixels
+     * @param mv
+     *            Receives the best vector found, quarter pixels
+     * @return Cost of the best vector
+     */
+    public int estimate(Picture ref, int[] patch, int mbX, int mbY, int mvpX, int mvpY, int[][] candidates,
+            int lambda, int[] mv) {
+        this.ref = ref;
+        this.patch = patch;
+        this.mvpX = mvpX;
+        this.mvpY = mvpY;
+        this.lambda = lambda;
+
+        // Whole pixel positions, the block may be at most one macroblock
+        // outside of the picture
+        int x0 = mbX << 4, y0 = mbY << 4;
+        int minX = -16 - x0, maxX = ref.getWidth() - x0, minY = -16 - y0, maxY = ref.getHeight() - y0;
+
+        int bestX = 0, bestY = 0, bestCost = Integer.MAX_VALUE;
+        for (int[] c : candidates) {
+            int x = clip((c[0] + 2) >> 2, minX, maxX), y = clip((c[1] + 2) >> 2, minY, maxY);
+            int cost = costFull(x0, y0, x, y);
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestX = x;
+                bestY = y;
+            }
+        }
+        minX = Math.max(minX, bestX - searchRange);
+        maxX = Math.min(maxX, bestX + searchRange);
+        minY = Math.max(minY, bestY - searchRange);
+        maxY = Math.min(maxY, bestY + searchRange);
+
+        for (int i = 0; i < searchRange; i++) {
+            int cx = bestX, cy = bestY;
+            for (int[] p : HEXAGON) {
+                int x = cx + p[0], y = cy + p[1];
+                if (x < minX || x > maxX || y < minY || y > maxY)
+                    continue;
+                int cost = costFull(x0, y0, x, y);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestX = x;
+                    bestY = y;
+                }
+            }
+            if (cx == bestX && cy == bestY)
+                break;
+        }
+        int cx = bestX, cy = bestY;
+        for (int[] p : SQUARE) {
+            int x = cx + p[0], y = cy + p[1];
+            if (x < minX || x > maxX || y < minY || y > maxY)
+                continue;
+            int cost = costFull(x0, y0, x, y);
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestX = x;
+                bestY = y;
+            }
+        }
+
+        // Half, then quarter pixel refinement around the best whole pixel
+        bestX <<= 2;
+        bestY <<= 2;
+        for (int step = 2; step > 0; step >>= 1) {
+            cx = bestX;
+            cy = bestY;
+            for (int[] p : SQUARE) {
+                int x = cx + p[0] * step, y = cy + p[1] * step;
+                int cost = costSub(x0, y0, x, y);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestX = x;
+                    bestY = y;
+                }
+            }
+        }
+
+        mv[0] = bestX;
+        mv[1] = bestY;
+        return bestCost;
+    }
+
+    private int costFull(int x0, int y0, int x, int y) {
+        int sad;
+        int stride = ref.getWidth();
+        if (x0 + x >= 0 && y0 + y >= 0 && x0 + x + 16 <= stride && y0 + y + 16 <= ref.getHeight())
+            sad = sad(ref.getPlaneData(0), (y0 + y) * stride + x0 + x, stride);
+        else {
+            BlockInterpolator.getBlockLuma(ref, block, 0, (x0 + x) << 2, (y0 + y) << 2, 16, 16);
+            sad = sad(block.getPlaneData(0), 0, 16);
+        }
+        return sad + lambda * (mvdBits((x << 2) - mvpX) + mvdBits((y << 2) - mvpY));
+    }
+
+    private int costSub(int x0, int y0, int x, int y) {
+        BlockInterpolator.getBlockLuma(ref, block, 0, (x0 << 2) + x, (y0 << 2) + y, 16, 16);
+        return sad(block.getPlaneData(0), 0, 16) + lambda * (mvdBits(x - mvpX) + mvdBits(y - mvpY));
+    }
+
+    private int sad(int[] pix, int off, int stride) {
+        int sad = 0;
+        for (int j = 0, i = 0; j < 16; j++, off += stride - 16) {
+            for (int k = 0; k < 16; k++)
+                sad += MathUtil.abs(pix[off++] - patch[i++]);
+        }
+        return sad;
+    }
+
+    /**
+     * Length of a motion vector difference coded as se(v)
+     */
+    public static int mvdBits(int mvd) {
+        int codeNum = mvd > 0 ? (mvd << 1) - 1 : -mvd << 1;
+        return (MathUtil.log2(codeNum + 1) << 1) + 1;
+    }
+}
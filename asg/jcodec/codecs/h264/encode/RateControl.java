@@ -1,5 +1,7 @@
 package asg.jcodec.codecs.h264.encode;
 
+import asg.jcodec.common.model.Picture;
+
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
  * under FreeBSD License
@@ -13,10 +15,30 @@ public interface RateControl {
 
     int getInitQp();
 
-    int getQpDelta();
+    /**
+     * @param qp
+     *            QP of the previous macroblock
+     */
+    int getQpDelta(int qp);
 
     boolean accept(int bits);
 
     void reset();
 
+    /**
+     * Rate control for the slice starting at macroblock firstMb, slices are
+     * encoded at the same time so each needs its own state
+     */
+    RateControl forSlice(int firstMb);
+
+    /**
+     * Called before the slices of a picture are encoded
+     */
+    void startFrame(Picture pic, boolean idr);
+
+    /**
+     * Called with the size of the picture once all of its slices are encoded
+     */
+    void endFrame(int bits);
+
 }
@@ -22,6 +22,13 @@ public class Frame extends Picture {
     private boolean shortTerm;
     private int poc;
 
+    /*
+     * Macroblock rows that are decoded and deblocked, for frames that are
+     * still being decoded on another thread. A frame is complete unless it
+     * was started with setDecoding.
+     */
+    private volatile int rowsDone = Integer.MAX_VALUE;
+
     public Frame(int width, int height, int[][] data, ColorSpace color, Rect crop, int frameNo, int[][][][] mvs, Frame[][][] refsUsed, int poc) {
         super(width, height, data, color, crop);
         this.frameNo = frameNo;
@@ -51,6 +58,45 @@ public class Frame extends Picture {
         this.poc = src.poc;
     }
 
+    /**
+     * Marks the frame as being decoded, waitForRows will block until the rows
+     * asked for are published with setRowsDone.
+     */
+    public void setDecoding() {
+        rowsDone = 0;
+    }
+
+    /**
+     * Publishes that the top rows macroblock rows won't change anymore.
+     */
+    public synchronized void setRowsDone(int rows) {
+        rowsDone = rows;
+        notifyAll();
+    }
+
+    public void setComplete() {
+        setRowsDone(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Waits until the top rows macroblock rows have been decoded and
+     * deblocked, returns straight away for frames that are complete.
+     */
+    public void waitForRows(int rows) {
+        if (rowsDone >= rows)
+            return;
+        synchronized (this) {
+            while (rowsDone < rows) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
     public int getFrameNo() {
         return frameNo;
     }
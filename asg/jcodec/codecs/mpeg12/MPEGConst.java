@@ -53,6 +53,9 @@ public class MPEGConst {
     public static VLC vlcCoeff0;
     public static VLC vlcCoeff1;
 
+    public static final int CODE_ESCAPE = 2049;
+    public static final int CODE_END = 2048;
+
     public static class MBType {
         public int macroblock_quant;
         public int macroblock_motion_forward;
@@ -145,235 +148,235 @@ public class MPEGConst {
                 "111111110", "1111111110", "1111111111");
 
         VLCBuilder vlcCoeffBldr = new VLCBuilder();
-        vlcCoeffBldr.set(-2, "000001");
-        vlcCoeffBldr.set(-1, "10");
-        vlcCoeffBldr.set((0 << 12) | 1, "11");
-        vlcCoeffBldr.set((1 << 12) | 1, "011");
-        vlcCoeffBldr.set((0 << 12) | 2, "0100");
-        vlcCoeffBldr.set((2 << 12) | 1, "0101");
-        vlcCoeffBldr.set((0 << 12) | 3, "00101");
-        vlcCoeffBldr.set((3 << 12) | 1, "00111");
-        vlcCoeffBldr.set((4 << 12) | 1, "00110");
-        vlcCoeffBldr.set((1 << 12) | 2, "000110");
-        vlcCoeffBldr.set((5 << 12) | 1, "000111");
-        vlcCoeffBldr.set((6 << 12) | 1, "000101");
-        vlcCoeffBldr.set((7 << 12) | 1, "000100");
-        vlcCoeffBldr.set((0 << 12) | 4, "0000110");
-        vlcCoeffBldr.set((2 << 12) | 2, "0000100");
-        vlcCoeffBldr.set((8 << 12) | 1, "0000111");
-        vlcCoeffBldr.set((9 << 12) | 1, "0000101");
-        vlcCoeffBldr.set((0 << 12) | 5, "00100110");
-        vlcCoeffBldr.set((0 << 12) | 6, "00100001");
-        vlcCoeffBldr.set((1 << 12) | 3, "00100101");
-        vlcCoeffBldr.set((3 << 12) | 2, "00100100");
-        vlcCoeffBldr.set((10 << 12) | 1, "00100111");
-        vlcCoeffBldr.set((11 << 12) | 1, "00100011");
-        vlcCoeffBldr.set((12 << 12) | 1, "00100010");
-        vlcCoeffBldr.set((13 << 12) | 1, "00100000");
-        vlcCoeffBldr.set((0 << 12) | 7, "0000001010");
-        vlcCoeffBldr.set((1 << 12) | 4, "0000001100");
-        vlcCoeffBldr.set((2 << 12) | 3, "0000001011");
-        vlcCoeffBldr.set((4 << 12) | 2, "0000001111");
-        vlcCoeffBldr.set((5 << 12) | 2, "0000001001");
-        vlcCoeffBldr.set((14 << 12) | 1, "0000001110");
-        vlcCoeffBldr.set((15 << 12) | 1, "0000001101");
-        vlcCoeffBldr.set((16 << 12) | 1, "0000001000");
-        vlcCoeffBldr.set((0 << 12) | 8, "000000011101");
-        vlcCoeffBldr.set((0 << 12) | 9, "000000011000");
-        vlcCoeffBldr.set((0 << 12) | 10, "000000010011");
-        vlcCoeffBldr.set((0 << 12) | 11, "000000010000");
-        vlcCoeffBldr.set((1 << 12) | 5, "000000011011");
-        vlcCoeffBldr.set((2 << 12) | 4, "000000010100");
-        vlcCoeffBldr.set((3 << 12) | 3, "000000011100");
-        vlcCoeffBldr.set((4 << 12) | 3, "000000010010");
-        vlcCoeffBldr.set((6 << 12) | 2, "000000011110");
-        vlcCoeffBldr.set((7 << 12) | 2, "000000010101");
-        vlcCoeffBldr.set((8 << 12) | 2, "000000010001");
-        vlcCoeffBldr.set((17 << 12) | 1, "000000011111");
-        vlcCoeffBldr.set((18 << 12) | 1, "000000011010");
-        vlcCoeffBldr.set((19 << 12) | 1, "000000011001");
-        vlcCoeffBldr.set((20 << 12) | 1, "000000010111");
-        vlcCoeffBldr.set((21 << 12) | 1, "000000010110");
-        vlcCoeffBldr.set((0 << 12) | 12, "0000000011010");
-        vlcCoeffBldr.set((0 << 12) | 13, "0000000011001");
-        vlcCoeffBldr.set((0 << 12) | 14, "0000000011000");
-        vlcCoeffBldr.set((0 << 12) | 15, "0000000010111");
-        vlcCoeffBldr.set((1 << 12) | 6, "0000000010110");
-        vlcCoeffBldr.set((1 << 12) | 7, "0000000010101");
-        vlcCoeffBldr.set((2 << 12) | 5, "0000000010100");
-        vlcCoeffBldr.set((3 << 12) | 4, "0000000010011");
-        vlcCoeffBldr.set((5 << 12) | 3, "0000000010010");
-        vlcCoeffBldr.set((9 << 12) | 2, "0000000010001");
-        vlcCoeffBldr.set((10 << 12) | 2, "0000000010000");
-        vlcCoeffBldr.set((22 << 12) | 1, "0000000011111");
-        vlcCoeffBldr.set((23 << 12) | 1, "0000000011110");
-        vlcCoeffBldr.set((24 << 12) | 1, "0000000011101");
-        vlcCoeffBldr.set((25 << 12) | 1, "0000000011100");
-        vlcCoeffBldr.set((26 << 12) | 1, "0000000011011");
-        vlcCoeffBldr.set((0 << 12) | 16, "00000000011111");
-        vlcCoeffBldr.set((0 << 12) | 17, "00000000011110");
-        vlcCoeffBldr.set((0 << 12) | 18, "00000000011101");
-        vlcCoeffBldr.set((0 << 12) | 19, "00000000011100");
-        vlcCoeffBldr.set((0 << 12) | 20, "00000000011011");
-        vlcCoeffBldr.set((0 << 12) | 21, "00000000011010");
-        vlcCoeffBldr.set((0 << 12) | 22, "00000000011001");
-        vlcCoeffBldr.set((0 << 12) | 23, "00000000011000");
-        vlcCoeffBldr.set((0 << 12) | 24, "00000000010111");
-        vlcCoeffBldr.set((0 << 12) | 25, "00000000010110");
-        vlcCoeffBldr.set((0 << 12) | 26, "00000000010101");
-        vlcCoeffBldr.set((0 << 12) | 27, "00000000010100");
-        vlcCoeffBldr.set((0 << 12) | 28, "00000000010011");
-        vlcCoeffBldr.set((0 << 12) | 29, "00000000010010");
-        vlcCoeffBldr.set((0 << 12) | 30, "00000000010001");
-        vlcCoeffBldr.set((0 << 12) | 31, "00000000010000");
-        vlcCoeffBldr.set((0 << 12) | 32, "000000000011000");
-        vlcCoeffBldr.set((0 << 12) | 33, "000000000010111");
-        vlcCoeffBldr.set((0 << 12) | 34, "000000000010110");
-        vlcCoeffBldr.set((0 << 12) | 35, "000000000010101");
-        vlcCoeffBldr.set((0 << 12) | 36, "000000000010100");
-        vlcCoeffBldr.set((0 << 12) | 37, "000000000010011");
-        vlcCoeffBldr.set((0 << 12) | 38, "000000000010010");
-        vlcCoeffBldr.set((0 << 12) | 39, "000000000010001");
-        vlcCoeffBldr.set((0 << 12) | 40, "000000000010000");
-        vlcCoeffBldr.set((1 << 12) | 8, "000000000011111");
-        vlcCoeffBldr.set((1 << 12) | 9, "000000000011110");
-        vlcCoeffBldr.set((1 << 12) | 10, "000000000011101");
-        vlcCoeffBldr.set((1 << 12) | 11, "000000000011100");
-        vlcCoeffBldr.set((1 << 12) | 12, "000000000011011");
-        vlcCoeffBldr.set((1 << 12) | 13, "000000000011010");
-        vlcCoeffBldr.set((1 << 12) | 14, "000000000011001");
-        vlcCoeffBldr.set((1 << 12) | 15, "0000000000010011");
-        vlcCoeffBldr.set((1 << 12) | 16, "0000000000010010");
-        vlcCoeffBldr.set((1 << 12) | 17, "0000000000010001");
-        vlcCoeffBldr.set((1 << 12) | 18, "0000000000010000");
-        vlcCoeffBldr.set((6 << 12) | 3, "0000000000010100");
-        vlcCoeffBldr.set((11 << 12) | 2, "0000000000011010");
-        vlcCoeffBldr.set((12 << 12) | 2, "0000000000011001");
-        vlcCoeffBldr.set((13 << 12) | 2, "0000000000011000");
-        vlcCoeffBldr.set((14 << 12) | 2, "0000000000010111");
-        vlcCoeffBldr.set((15 << 12) | 2, "0000000000010110");
-        vlcCoeffBldr.set((16 << 12) | 2, "0000000000010101");
-        vlcCoeffBldr.set((27 << 12) | 1, "0000000000011111");
-        vlcCoeffBldr.set((28 << 12) | 1, "0000000000011110");
-        vlcCoeffBldr.set((29 << 12) | 1, "0000000000011101");
-        vlcCoeffBldr.set((30 << 12) | 1, "0000000000011100");
-        vlcCoeffBldr.set((31 << 12) | 1, "0000000000011011");
+        vlcCoeffBldr.set(CODE_ESCAPE, "000001");
+        vlcCoeffBldr.set(CODE_END, "10");
+        vlcCoeffBldr.set((0 << 6) | 1, "11");
+        vlcCoeffBldr.set((1 << 6) | 1, "011");
+        vlcCoeffBldr.set((0 << 6) | 2, "0100");
+        vlcCoeffBldr.set((2 << 6) | 1, "0101");
+        vlcCoeffBldr.set((0 << 6) | 3, "00101");
+        vlcCoeffBldr.set((3 << 6) | 1, "00111");
+        vlcCoeffBldr.set((4 << 6) | 1, "00110");
+        vlcCoeffBldr.set((1 << 6) | 2, "000110");
+        vlcCoeffBldr.set((5 << 6) | 1, "000111");
+        vlcCoeffBldr.set((6 << 6) | 1, "000101");
+        vlcCoeffBldr.set((7 << 6) | 1, "000100");
+        vlcCoeffBldr.set((0 << 6) | 4, "0000110");
+        vlcCoeffBldr.set((2 << 6) | 2, "0000100");
+        vlcCoeffBldr.set((8 << 6) | 1, "0000111");
+        vlcCoeffBldr.set((9 << 6) | 1, "0000101");
+        vlcCoeffBldr.set((0 << 6) | 5, "00100110");
+        vlcCoeffBldr.set((0 << 6) | 6, "00100001");
+        vlcCoeffBldr.set((1 << 6) | 3, "00100101");
+        vlcCoeffBldr.set((3 << 6) | 2, "00100100");
+        vlcCoeffBldr.set((10 << 6) | 1, "00100111");
+        vlcCoeffBldr.set((11 << 6) | 1, "00100011");
+        vlcCoeffBldr.set((12 << 6) | 1, "00100010");
+        vlcCoeffBldr.set((13 << 6) | 1, "00100000");
+        vlcCoeffBldr.set((0 << 6) | 7, "0000001010");
+        vlcCoeffBldr.set((1 << 6) | 4, "0000001100");
+        vlcCoeffBldr.set((2 << 6) | 3, "0000001011");
+        vlcCoeffBldr.set((4 << 6) | 2, "0000001111");
+        vlcCoeffBldr.set((5 << 6) | 2, "0000001001");
+        vlcCoeffBldr.set((14 << 6) | 1, "0000001110");
+        vlcCoeffBldr.set((15 << 6) | 1, "0000001101");
+        vlcCoeffBldr.set((16 << 6) | 1, "0000001000");
+        vlcCoeffBldr.set((0 << 6) | 8, "000000011101");
+        vlcCoeffBldr.set((0 << 6) | 9, "000000011000");
+        vlcCoeffBldr.set((0 << 6) | 10, "000000010011");
+        vlcCoeffBldr.set((0 << 6) | 11, "000000010000");
+        vlcCoeffBldr.set((1 << 6) | 5, "000000011011");
+        vlcCoeffBldr.set((2 << 6) | 4, "000000010100");
+        vlcCoeffBldr.set((3 << 6) | 3, "000000011100");
+        vlcCoeffBldr.set((4 << 6) | 3, "000000010010");
+        vlcCoeffBldr.set((6 << 6) | 2, "000000011110");
+        vlcCoeffBldr.set((7 << 6) | 2, "000000010101");
+        vlcCoeffBldr.set((8 << 6) | 2, "000000010001");
+        vlcCoeffBldr.set((17 << 6) | 1, "000000011111");
+        vlcCoeffBldr.set((18 << 6) | 1, "000000011010");
+        vlcCoeffBldr.set((19 << 6) | 1, "000000011001");
+        vlcCoeffBldr.set((20 << 6) | 1, "000000010111");
+        vlcCoeffBldr.set((21 << 6) | 1, "000000010110");
+        vlcCoeffBldr.set((0 << 6) | 12, "0000000011010");
+        vlcCoeffBldr.set((0 << 6) | 13, "0000000011001");
+        vlcCoeffBldr.set((0 << 6) | 14, "0000000011000");
+        vlcCoeffBldr.set((0 << 6) | 15, "0000000010111");
+        vlcCoeffBldr.set((1 << 6) | 6, "0000000010110");
+        vlcCoeffBldr.set((1 << 6) | 7, "0000000010101");
+        vlcCoeffBldr.set((2 << 6) | 5, "0000000010100");
+        vlcCoeffBldr.set((3 << 6) | 4, "0000000010011");
+        vlcCoeffBldr.set((5 << 6) | 3, "0000000010010");
+        vlcCoeffBldr.set((9 << 6) | 2, "0000000010001");
+        vlcCoeffBldr.set((10 << 6) | 2, "0000000010000");
+        vlcCoeffBldr.set((22 << 6) | 1, "0000000011111");
+        vlcCoeffBldr.set((23 << 6) | 1, "0000000011110");
+        vlcCoeffBldr.set((24 << 6) | 1, "0000000011101");
+        vlcCoeffBldr.set((25 << 6) | 1, "0000000011100");
+        vlcCoeffBldr.set((26 << 6) | 1, "0000000011011");
+        vlcCoeffBldr.set((0 << 6) | 16, "00000000011111");
+        vlcCoeffBldr.set((0 << 6) | 17, "00000000011110");
+        vlcCoeffBldr.set((0 << 6) | 18, "00000000011101");
+        vlcCoeffBldr.set((0 << 6) | 19, "00000000011100");
+        vlcCoeffBldr.set((0 << 6) | 20, "00000000011011");
+        vlcCoeffBldr.set((0 << 6) | 21, "00000000011010");
+        vlcCoeffBldr.set((0 << 6) | 22, "00000000011001");
+        vlcCoeffBldr.set((0 << 6) | 23, "00000000011000");
+        vlcCoeffBldr.set((0 << 6) | 24, "00000000010111");
+        vlcCoeffBldr.set((0 << 6) | 25, "00000000010110");
+        vlcCoeffBldr.set((0 << 6) | 26, "00000000010101");
+        vlcCoeffBldr.set((0 << 6) | 27, "00000000010100");
+        vlcCoeffBldr.set((0 << 6) | 28, "00000000010011");
+        vlcCoeffBldr.set((0 << 6) | 29, "00000000010010");
+        vlcCoeffBldr.set((0 << 6) | 30, "00000000010001");
+        vlcCoeffBldr.set((0 << 6) | 31, "00000000010000");
+        vlcCoeffBldr.set((0 << 6) | 32, "000000000011000");
+        vlcCoeffBldr.set((0 << 6) | 33, "000000000010111");
+        vlcCoeffBldr.set((0 << 6) | 34, "000000000010110");
+        vlcCoeffBldr.set((0 << 6) | 35, "000000000010101");
+        vlcCoeffBldr.set((0 << 6) | 36, "000000000010100");
+        vlcCoeffBldr.set((0 << 6) | 37, "000000000010011");
+        vlcCoeffBldr.set((0 << 6) | 38, "000000000010010");
+        vlcCoeffBldr.set((0 << 6) | 39, "000000000010001");
+        vlcCoeffBldr.set((0 << 6) | 40, "000000000010000");
+        vlcCoeffBldr.set((1 << 6) | 8, "000000000011111");
+        vlcCoeffBldr.set((1 << 6) | 9, "000000000011110");
+        vlcCoeffBldr.set((1 << 6) | 10, "000000000011101");
+        vlcCoeffBldr.set((1 << 6) | 11, "000000000011100");
+        vlcCoeffBldr.set((1 << 6) | 12, "000000000011011");
+        vlcCoeffBldr.set((1 << 6) | 13, "000000000011010");
+        vlcCoeffBldr.set((1 << 6) | 14, "000000000011001");
+        vlcCoeffBldr.set((1 << 6) | 15, "0000000000010011");
+        vlcCoeffBldr.set((1 << 6) | 16, "0000000000010010");
+        vlcCoeffBldr.set((1 << 6) | 17, "0000000000010001");
+        vlcCoeffBldr.set((1 << 6) | 18, "0000000000010000");
+        vlcCoeffBldr.set((6 << 6) | 3, "0000000000010100");
+        vlcCoeffBldr.set((11 << 6) | 2, "0000000000011010");
+        vlcCoeffBldr.set((12 << 6) | 2, "0000000000011001");
+        vlcCoeffBldr.set((13 << 6) | 2, "0000000000011000");
+        vlcCoeffBldr.set((14 << 6) | 2, "0000000000010111");
+        vlcCoeffBldr.set((15 << 6) | 2, "0000000000010110");
+        vlcCoeffBldr.set((16 << 6) | 2, "0000000000010101");
+        vlcCoeffBldr.set((27 << 6) | 1, "0000000000011111");
+        vlcCoeffBldr.set((28 << 6) | 1, "0000000000011110");
+        vlcCoeffBldr.set((29 << 6) | 1, "0000000000011101");
+        vlcCoeffBldr.set((30 << 6) | 1, "0000000000011100");
+        vlcCoeffBldr.set((31 << 6) | 1, "0000000000011011");
         vlcCoeff0 = vlcCoeffBldr.getVLC();
 
         vlcCoeffBldr = new VLCBuilder();
-        vlcCoeffBldr.set(-2, "000001");
-        vlcCoeffBldr.set(-1, "0110");
-        vlcCoeffBldr.set((0 << 12) | 1, "10");
-        vlcCoeffBldr.set((1 << 12) | 1, "010");
-        vlcCoeffBldr.set((0 << 12) | 2, "110");
-        vlcCoeffBldr.set((2 << 12) | 1, "00101");
-        vlcCoeffBldr.set((0 << 12) | 3, "0111");
-        vlcCoeffBldr.set((3 << 12) | 1, "00111");
-        vlcCoeffBldr.set((4 << 12) | 1, "000110");
-        vlcCoeffBldr.set((1 << 12) | 2, "00110");
-        vlcCoeffBldr.set((5 << 12) | 1, "000111");
-        vlcCoeffBldr.set((6 << 12) | 1, "0000110");
-        vlcCoeffBldr.set((7 << 12) | 1, "0000100");
-        vlcCoeffBldr.set((0 << 12) | 4, "11100");
-        vlcCoeffBldr.set((2 << 12) | 2, "0000111");
-        vlcCoeffBldr.set((8 << 12) | 1, "0000101");
-        vlcCoeffBldr.set((9 << 12) | 1, "1111000");
-        vlcCoeffBldr.set((0 << 12) | 5, "11101");
-        vlcCoeffBldr.set((0 << 12) | 6, "000101");
-        vlcCoeffBldr.set((1 << 12) | 3, "1111001");
-        vlcCoeffBldr.set((3 << 12) | 2, "00100110");
-        vlcCoeffBldr.set((10 << 12) | 1, "1111010");
-        vlcCoeffBldr.set((11 << 12) | 1, "00100001");
-        vlcCoeffBldr.set((12 << 12) | 1, "00100101");
-        vlcCoeffBldr.set((13 << 12) | 1, "00100100");
-        vlcCoeffBldr.set((0 << 12) | 7, "000100");
-        vlcCoeffBldr.set((1 << 12) | 4, "00100111");
-        vlcCoeffBldr.set((2 << 12) | 3, "11111100");
-        vlcCoeffBldr.set((4 << 12) | 2, "11111101");
-        vlcCoeffBldr.set((5 << 12) | 2, "000000100");
-        vlcCoeffBldr.set((14 << 12) | 1, "000000101");
-        vlcCoeffBldr.set((15 << 12) | 1, "000000111");
-        vlcCoeffBldr.set((16 << 12) | 1, "0000001101");
-        vlcCoeffBldr.set((0 << 12) | 8, "1111011");
-        vlcCoeffBldr.set((0 << 12) | 9, "1111100");
-        vlcCoeffBldr.set((0 << 12) | 10, "00100011");
-        vlcCoeffBldr.set((0 << 12) | 11, "00100010");
-        vlcCoeffBldr.set((1 << 12) | 5, "00100000");
-        vlcCoeffBldr.set((2 << 12) | 4, "0000001100");
-        vlcCoeffBldr.set((3 << 12) | 3, "000000011100");
-        vlcCoeffBldr.set((4 << 12) | 3, "000000010010");
-        vlcCoeffBldr.set((6 << 12) | 2, "000000011110");
-        vlcCoeffBldr.set((7 << 12) | 2, "000000010101");
-        vlcCoeffBldr.set((8 << 12) | 2, "000000010001");
-        vlcCoeffBldr.set((17 << 12) | 1, "000000011111");
-        vlcCoeffBldr.set((18 << 12) | 1, "000000011010");
-        vlcCoeffBldr.set((19 << 12) | 1, "000000011001");
-        vlcCoeffBldr.set((20 << 12) | 1, "000000010111");
-        vlcCoeffBldr.set((21 << 12) | 1, "000000010110");
-        vlcCoeffBldr.set((0 << 12) | 12, "11111010");
-        vlcCoeffBldr.set((0 << 12) | 13, "11111011");
-        vlcCoeffBldr.set((0 << 12) | 14, "11111110");
-        vlcCoeffBldr.set((0 << 12) | 15, "11111111");
-        vlcCoeffBldr.set((1 << 12) | 6, "0000000010110");
-        vlcCoeffBldr.set((1 << 12) | 7, "0000000010101");
-        vlcCoeffBldr.set((2 << 12) | 5, "0000000010100");
-        vlcCoeffBldr.set((3 << 12) | 4, "0000000010011");
-        vlcCoeffBldr.set((5 << 12) | 3, "0000000010010");
-        vlcCoeffBldr.set((9 << 12) | 2, "0000000010001");
-        vlcCoeffBldr.set((10 << 12) | 2, "0000000010000");
-        vlcCoeffBldr.set((22 << 12) | 1, "0000000011111");
-        vlcCoeffBldr.set((23 << 12) | 1, "0000000011110");
-        vlcCoeffBldr.set((24 << 12) | 1, "0000000011101");
-        vlcCoeffBldr.set((25 << 12) | 1, "0000000011100");
-        vlcCoeffBldr.set((26 << 12) | 1, "0000000011011");
-        vlcCoeffBldr.set((0 << 12) | 16, "00000000011111");
-        vlcCoeffBldr.set((0 << 12) | 17, "00000000011110");
-        vlcCoeffBldr.set((0 << 12) | 18, "00000000011101");
-        vlcCoeffBldr.set((0 << 12) | 19, "00000000011100");
-        vlcCoeffBldr.set((0 << 12) | 20, "00000000011011");
-        vlcCoeffBldr.set((0 << 12) | 21, "00000000011010");
-        vlcCoeffBldr.set((0 << 12) | 22, "00000000011001");
-        vlcCoeffBldr.set((0 << 12) | 23, "00000000011000");
-        vlcCoeffBldr.set((0 << 12) | 24, "00000000010111");
-        vlcCoeffBldr.set((0 << 12) | 25, "00000000010110");
-        vlcCoeffBldr.set((0 << 12) | 26, "00000000010101");
-        vlcCoeffBldr.set((0 << 12) | 27, "00000000010100");
-        vlcCoeffBldr.set((0 << 12) | 28, "00000000010011");
-        vlcCoeffBldr.set((0 << 12) | 29, "00000000010010");
-        vlcCoeffBldr.set((0 << 12) | 30, "00000000010001");
-        vlcCoeffBldr.set((0 << 12) | 31, "00000000010000");
-        vlcCoeffBldr.set((0 << 12) | 32, "000000000011000");
-        vlcCoeffBldr.set((0 << 12) | 33, "000000000010111");
-        vlcCoeffBldr.set((0 << 12) | 34, "000000000010110");
-        vlcCoeffBldr.set((0 << 12) | 35, "000000000010101");
-        vlcCoeffBldr.set((0 << 12) | 36, "000000000010100");
-        vlcCoeffBldr.set((0 << 12) | 37, "000000000010011");
-        vlcCoeffBldr.set((0 << 12) | 38, "000000000010010");
-        vlcCoeffBldr.set((0 << 12) | 39, "000000000010001");
-        vlcCoeffBldr.set((0 << 12) | 40, "000000000010000");
-        vlcCoeffBldr.set((1 << 12) | 8, "000000000011111");
-        vlcCoeffBldr.set((1 << 12) | 9, "000000000011110");
-        vlcCoeffBldr.set((1 << 12) | 10, "000000000011101");
-        vlcCoeffBldr.set((1 << 12) | 11, "000000000011100");
-        vlcCoeffBldr.set((1 << 12) | 12, "000000000011011");
-        vlcCoeffBldr.set((1 << 12) | 13, "000000000011010");
-        vlcCoeffBldr.set((1 << 12) | 14, "000000000011001");
-        vlcCoeffBldr.set((1 << 12) | 15, "0000000000010011");
-        vlcCoeffBldr.set((1 << 12) | 16, "0000000000010010");
-        vlcCoeffBldr.set((1 << 12) | 17, "0000000000010001");
-        vlcCoeffBldr.set((1 << 12) | 18, "0000000000010000");
-        vlcCoeffBldr.set((6 << 12) | 3, "0000000000010100");
-        vlcCoeffBldr.set((11 << 12) | 2, "0000000000011010");
-        vlcCoeffBldr.set((12 << 12) | 2, "0000000000011001");
-        vlcCoeffBldr.set((13 << 12) | 2, "0000000000011000");
-        vlcCoeffBldr.set((14 << 12) | 2, "0000000000010111");
-        vlcCoeffBldr.set((15 << 12) | 2, "0000000000010110");
-        vlcCoeffBldr.set((16 << 12) | 2, "0000000000010101");
-        vlcCoeffBldr.set((27 << 12) | 1, "0000000000011111");
-        vlcCoeffBldr.set((28 << 12) | 1, "0000000000011110");
-        vlcCoeffBldr.set((29 << 12) | 1, "0000000000011101");
-        vlcCoeffBldr.set((30 << 12) | 1, "0000000000011100");
-        vlcCoeffBldr.set((31 << 12) | 1, "0000000000011011");
+        vlcCoeffBldr.set(CODE_ESCAPE, "000001");
+        vlcCoeffBldr.set(CODE_END, "0110");
+        vlcCoeffBldr.set((0 << 6) | 1, "10");
+        vlcCoeffBldr.set((1 << 6) | 1, "010");
+        vlcCoeffBldr.set((0 << 6) | 2, "110");
+        vlcCoeffBldr.set((2 << 6) | 1, "00101");
+        vlcCoeffBldr.set((0 << 6) | 3, "0111");
+        vlcCoeffBldr.set((3 << 6) | 1, "00111");
+        vlcCoeffBldr.set((4 << 6) | 1, "000110");
+        vlcCoeffBldr.set((1 << 6) | 2, "00110");
+        vlcCoeffBldr.set((5 << 6) | 1, "000111");
+        vlcCoeffBldr.set((6 << 6) | 1, "0000110");
+        vlcCoeffBldr.set((7 << 6) | 1, "0000100");
+        vlcCoeffBldr.set((0 << 6) | 4, "11100");
+        vlcCoeffBldr.set((2 << 6) | 2, "0000111");
+        vlcCoeffBldr.set((8 << 6) | 1, "0000101");
+        vlcCoeffBldr.set((9 << 6) | 1, "1111000");
+        vlcCoeffBldr.set((0 << 6) | 5, "11101");
+        vlcCoeffBldr.set((0 << 6) | 6, "000101");
+        vlcCoeffBldr.set((1 << 6) | 3, "1111001");
+        vlcCoeffBldr.set((3 << 6) | 2, "00100110");
+        vlcCoeffBldr.set((10 << 6) | 1, "1111010");
+        vlcCoeffBldr.set((11 << 6) | 1, "00100001");
+        vlcCoeffBldr.set((12 << 6) | 1, "00100101");
+        vlcCoeffBldr.set((13 << 6) | 1, "00100100");
+        vlcCoeffBldr.set((0 << 6) | 7, "000100");
+        vlcCoeffBldr.set((1 << 6) | 4, "00100111");
+        vlcCoeffBldr.set((2 << 6) | 3, "11111100");
+        vlcCoeffBldr.set((4 << 6) | 2, "11111101");
+        vlcCoeffBldr.set((5 << 6) | 2, "000000100");
+        vlcCoeffBldr.set((14 << 6) | 1, "000000101");
+        vlcCoeffBldr.set((15 << 6) | 1, "000000111");
+        vlcCoeffBldr.set((16 << 6) | 1, "0000001101");
+        vlcCoeffBldr.set((0 << 6) | 8, "1111011");
+        vlcCoeffBldr.set((0 << 6) | 9, "1111100");
+        vlcCoeffBldr.set((0 << 6) | 10, "00100011");
+        vlcCoeffBldr.set((0 << 6) | 11, "00100010");
+        vlcCoeffBldr.set((1 << 6) | 5, "00100000");
+        vlcCoeffBldr.set((2 << 6) | 4, "0000001100");
+        vlcCoeffBldr.set((3 << 6) | 3, "000000011100");
+        vlcCoeffBldr.set((4 << 6) | 3, "000000010010");
+        vlcCoeffBldr.set((6 << 6) | 2, "000000011110");
+        vlcCoeffBldr.set((7 << 6) | 2, "000000010101");
+        vlcCoeffBldr.set((8 << 6) | 2, "000000010001");
+        vlcCoeffBldr.set((17 << 6) | 1, "000000011111");
+        vlcCoeffBldr.set((18 << 6) | 1, "000000011010");
+        vlcCoeffBldr.set((19 << 6) | 1, "000000011001");
+        vlcCoeffBldr.set((20 << 6) | 1, "000000010111");
+        vlcCoeffBldr.set((21 << 6) | 1, "000000010110");
+        vlcCoeffBldr.set((0 << 6) | 12, "11111010");
+        vlcCoeffBldr.set((0 << 6) | 13, "11111011");
+        vlcCoeffBldr.set((0 << 6) | 14, "11111110");
+        vlcCoeffBldr.set((0 << 6) | 15, "11111111");
+        vlcCoeffBldr.set((1 << 6) | 6, "0000000010110");
+        vlcCoeffBldr.set((1 << 6) | 7, "0000000010101");
+        vlcCoeffBldr.set((2 << 6) | 5, "0000000010100");
+        vlcCoeffBldr.set((3 << 6) | 4, "0000000010011");
+        vlcCoeffBldr.set((5 << 6) | 3, "0000000010010");
+        vlcCoeffBldr.set((9 << 6) | 2, "0000000010001");
+        vlcCoeffBldr.set((10 << 6) | 2, "0000000010000");
+        vlcCoeffBldr.set((22 << 6) | 1, "0000000011111");
+        vlcCoeffBldr.set((23 << 6) | 1, "0000000011110");
+        vlcCoeffBldr.set((24 << 6) | 1, "0000000011101");
+        vlcCoeffBldr.set((25 << 6) | 1, "0000000011100");
+        vlcCoeffBldr.set((26 << 6) | 1, "0000000011011");
+        vlcCoeffBldr.set((0 << 6) | 16, "00000000011111");
+        vlcCoeffBldr.set((0 << 6) | 17, "00000000011110");
+        vlcCoeffBldr.set((0 << 6) | 18, "00000000011101");
+        vlcCoeffBldr.set((0 << 6) | 19, "00000000011100");
+        vlcCoeffBldr.set((0 << 6) | 20, "00000000011011");
+        vlcCoeffBldr.set((0 << 6) | 21, "00000000011010");
+        vlcCoeffBldr.set((0 << 6) | 22, "00000000011001");
+        vlcCoeffBldr.set((0 << 6) | 23, "00000000011000");
+        vlcCoeffBldr.set((0 << 6) | 24, "00000000010111");
+        vlcCoeffBldr.set((0 << 6) | 25, "00000000010110");
+        vlcCoeffBldr.set((0 << 6) | 26, "00000000010101");
+        vlcCoeffBldr.set((0 << 6) | 27, "00000000010100");
+        vlcCoeffBldr.set((0 << 6) | 28, "00000000010011");
+        vlcCoeffBldr.set((0 << 6) | 29, "00000000010010");
+        vlcCoeffBldr.set((0 << 6) | 30, "00000000010001");
+        vlcCoeffBldr.set((0 << 6) | 31, "00000000010000");
+        vlcCoeffBldr.set((0 << 6) | 32, "000000000011000");
+        vlcCoeffBldr.set((0 << 6) | 33, "000000000010111");
+        vlcCoeffBldr.set((0 << 6) | 34, "000000000010110");
+        vlcCoeffBldr.set((0 << 6) | 35, "000000000010101");
+        vlcCoeffBldr.set((0 << 6) | 36, "000000000010100");
+        vlcCoeffBldr.set((0 << 6) | 37, "000000000010011");
+        vlcCoeffBldr.set((0 << 6) | 38, "000000000010010");
+        vlcCoeffBldr.set((0 << 6) | 39, "000000000010001");
+        vlcCoeffBldr.set((0 << 6) | 40, "000000000010000");
+        vlcCoeffBldr.set((1 << 6) | 8, "000000000011111");
+        vlcCoeffBldr.set((1 << 6) | 9, "000000000011110");
+        vlcCoeffBldr.set((1 << 6) | 10, "000000000011101");
+        vlcCoeffBldr.set((1 << 6) | 11, "000000000011100");
+        vlcCoeffBldr.set((1 << 6) | 12, "000000000011011");
+        vlcCoeffBldr.set((1 << 6) | 13, "000000000011010");
+        vlcCoeffBldr.set((1 << 6) | 14, "000000000011001");
+        vlcCoeffBldr.set((1 << 6) | 15, "0000000000010011");
+        vlcCoeffBldr.set((1 << 6) | 16, "0000000000010010");
+        vlcCoeffBldr.set((1 << 6) | 17, "0000000000010001");
+        vlcCoeffBldr.set((1 << 6) | 18, "0000000000010000");
+        vlcCoeffBldr.set((6 << 6) | 3, "0000000000010100");
+        vlcCoeffBldr.set((11 << 6) | 2, "0000000000011010");
+        vlcCoeffBldr.set((12 << 6) | 2, "0000000000011001");
+        vlcCoeffBldr.set((13 << 6) | 2, "0000000000011000");
+        vlcCoeffBldr.set((14 << 6) | 2, "0000000000010111");
+        vlcCoeffBldr.set((15 << 6) | 2, "0000000000010110");
+        vlcCoeffBldr.set((16 << 6) | 2, "0000000000010101");
+        vlcCoeffBldr.set((27 << 6) | 1, "0000000000011111");
+        vlcCoeffBldr.set((28 << 6) | 1, "0000000000011110");
+        vlcCoeffBldr.set((29 << 6) | 1, "0000000000011101");
+        vlcCoeffBldr.set((30 << 6) | 1, "0000000000011100");
+        vlcCoeffBldr.set((31 << 6) | 1, "0000000000011011");
         vlcCoeff1 = vlcCoeffBldr.getVLC();
     }
 
@@ -1,6 +1,8 @@
 package asg.jcodec.codecs.mpeg12;
 
 import static asg.jcodec.codecs.mpeg12.MPEGConst.BLOCK_TO_CC;
+import static asg.jcodec.codecs.mpeg12.MPEGConst.CODE_END;
+import static asg.jcodec.codecs.mpeg12.MPEGConst.CODE_ESCAPE;
 import static asg.jcodec.codecs.mpeg12.MPEGConst.EXTENSION_START_CODE;
 import static asg.jcodec.codecs.mpeg12.MPEGConst.GROUP_START_CODE;
 import static asg.jcodec.codecs.mpeg12.MPEGConst.PICTURE_START_CODE;
@@ -34,6 +36,8 @@ import static asg.jcodec.common.model.ColorSpace.YUV444;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
 
 import asg.jcodec.codecs.mpeg12.MPEGConst.MBType;
 import asg.jcodec.codecs.mpeg12.bitstream.GOPHeader;
@@ -42,6 +46,7 @@ import asg.jcodec.codecs.mpeg12.bitstream.SequenceExtension;
 import asg.jcodec.codecs.mpeg12.bitstream.SequenceHeader;
 import asg.jcodec.codecs.mpeg12.bitstream.SequenceScalableExtension;
 import asg.jcodec.common.Assert;
+import asg.jcodec.common.SliceWorkers;
 import asg.jcodec.common.VideoDecoder;
 import asg.jcodec.common.dct.SparseIDCT;
 import asg.jcodec.common.io.BitReader;
@@ -59,6 +64,9 @@ import asg.jcodec.common.model.Size;
  * 
  * Supports I/P/B frames, frame/field/interlaced frame encoding
  * 
+ * The slices of a picture are decoded in parallel, they always start at a
+ * macroblock row and only depend on the reference pictures
+ * 
  * Conforms to H.262 ( ISO/IEC 13818-2, ISO/IEC 11172-2 ) specifications
  * 
  * @author The JCodec project
@@ -72,6 +80,8 @@ public class MPEGDecoder implements VideoDecoder {
     private Picture[] refFrames = new Picture[2];
     private Picture[] refFields = new Picture[2];
 
+    private int threads = SliceWorkers.THREADS;
+
     public MPEGDecoder(SequenceHeader sh, GOPHeader gh) {
         this.sh = sh;
         this.gh = gh;
@@ -85,6 +95,14 @@ public class MPEGDecoder implements VideoDecoder {
         this.maxCoeff = maxCoeff;
     }
 
+    /**
+     * Sets how many threads the slices of a picture are split between, by
+     * default one per processor.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
     public class Context {
         int[] intra_dc_predictor = new int[3];
         public int mbWidth;
@@ -96,6 +114,26 @@ public class MPEGDecoder implements VideoDecoder {
         public MBType lastPredB;
         public int[][] qMats;
         public int[] scan;
+        public int picWidth;
+        public int picHeight;
+
+        /**
+         * A copy with the picture's parameters and its own predictors, every
+         * slice is decoded with one
+         */
+        public Context forSlice() {
+            Context context = new Context();
+            context.mbWidth = mbWidth;
+            context.codedWidth = codedWidth;
+            context.codedHeight = codedHeight;
+            context.mbHeight = mbHeight;
+            context.color = color;
+            context.qMats = qMats;
+            context.scan = scan;
+            context.picWidth = picWidth;
+            context.picHeight = picHeight;
+            return context;
+        }
     }
 
     public Picture decodeFrame(ByteBuffer ByteBuffer, int[][] buf) {
@@ -107,7 +145,7 @@ public class MPEGDecoder implements VideoDecoder {
         }
         Context context = initContext(sh, ph);
         Picture pic = new Picture(context.codedWidth, context.codedHeight, buf, context.color, new Rect(0, 0,
-                sh.horizontal_size, sh.vertical_size));
+                context.picWidth, context.picHeight));
         if (ph.pictureCodingExtension != null && ph.pictureCodingExtension.picture_structure != Frame) {
             decodePicture(context, ph, ByteBuffer, buf, ph.pictureCodingExtension.picture_structure - 1, 1);
             ph = readHeader(ByteBuffer);
@@ -138,48 +176,47 @@ public class MPEGDecoder implements VideoDecoder {
     private PictureHeader readHeader(ByteBuffer buffer) {
         PictureHeader ph = null;
         ByteBuffer segment;
-        while ((segment = nextSegment(buffer)) != null) {
-            int code = segment.get(3);
+        ByteBuffer fork = buffer.duplicate();
+
+        // Headers are read off a fork, the buffer is left at the first slice
+        while ((segment = nextSegment(fork)) != null) {
+            int code = segment.get(3) & 0xff;
             segment.position(4);
-            switch (code) {
-            case SEQUENCE_HEADER_CODE:
+            if (code == SEQUENCE_HEADER_CODE) {
                 SequenceHeader newSh = SequenceHeader.read(segment);
                 if (sh != null) {
                     newSh.copyExtensions(sh);
                 }
                 sh = newSh;
-                break;
-            case GROUP_START_CODE:
+            } else if (code == GROUP_START_CODE) {
                 gh = GOPHeader.read(segment);
-                break;
-            case PICTURE_START_CODE:
+            } else if (code == PICTURE_START_CODE) {
                 ph = PictureHeader.read(segment);
-                break;
-            case EXTENSION_START_CODE:
+            } else if (code == EXTENSION_START_CODE) {
                 int extType = segment.get(4) >> 4;
                 if (extType == Sequence_Extension || extType == Sequence_Scalable_Extension
                         || extType == Sequence_Display_Extension)
                     SequenceHeader.readExtension(segment, sh);
                 else
                     PictureHeader.readExtension(segment, ph, sh);
-                break;
-            case USER_DATA_START_CODE:
+            } else if (code == USER_DATA_START_CODE) {
                 // do nothing
-                break;
-            default:
-                buffer.reset();
+            } else {
                 break;
             }
+            buffer.position(fork.position());
         }
         return ph;
     }
 
-    private Context initContext(SequenceHeader sh, PictureHeader ph) {
+    protected Context initContext(SequenceHeader sh, PictureHeader ph) {
         Context context = new Context();
         context.codedWidth = (sh.horizontal_size + 15) & ~0xf;
         context.codedHeight = getCodedHeight(sh, ph);
         context.mbWidth = (sh.horizontal_size + 15) >> 4;
         context.mbHeight = (sh.vertical_size + 15) >> 4;
+        context.picWidth = sh.horizontal_size;
+        context.picHeight = sh.vertical_size;
 
         int chromaFormat = Chroma420;
         if (sh.sequenceExtension != null)
@@ -221,8 +258,13 @@ public class MPEGDecoder implements VideoDecoder {
         return (((sh.vertical_size >> field) + 15) & ~0xf) << field;
     }
 
-    public Picture decodePicture(Context context, PictureHeader ph, ByteBuffer buffer, int[][] buf, int vertOff,
-            int vertStep) {
+    /**
+     * Finds the slices of the picture and decodes them on the slice workers,
+     * as many at the same time as set with setThreads. Each thread takes a run
+     * of consecutive slices.
+     */
+    public Picture decodePicture(final Context context, final PictureHeader ph, ByteBuffer buffer,
+            final int[][] buf, final int vertOff, final int vertStep) {
 
         int planeSize = context.codedWidth * context.codedHeight;
         if (buf.length < 3 || buf[0].length < planeSize || buf[1].length < planeSize || buf[2].length < planeSize) {
@@ -230,34 +272,52 @@ public class MPEGDecoder implements VideoDecoder {
                     + context.codedHeight + "]");
         }
 
-        try {
-            ByteBuffer segment;
-            while ((segment = nextSegment(buffer)) != null) {
-                if (segment.get(3) >= SLICE_START_CODE_FIRST && segment.get(3) <= SLICE_START_CODE_LAST) {
-                    segment.position(4);
-                    try {
-                        decodeSlice(ph, segment.get(3) & 0xff, context, buf, new BitReader(segment), vertOff, vertStep);
-                    } catch (RuntimeException e) {
-                        e.printStackTrace();
-                    }
-                } else if (segment.get(3) >= 0xB3 && segment.get(3) != 0xB6 && segment.get(3) != 0xB7) {
-                    throw new RuntimeException("Unexpected start code " + segment.get(3));
-                } else if (segment.get(3) == 0x0) {
-                    buffer.reset();
-                    break;
-                }
+        final List<ByteBuffer> slices = new ArrayList<ByteBuffer>();
+        ByteBuffer segment;
+        while ((segment = nextSegment(buffer)) != null) {
+            int startCode = segment.get(3) & 0xff;
+            if (startCode >= SLICE_START_CODE_FIRST && startCode <= SLICE_START_CODE_LAST) {
+                slices.add(segment);
+            } else if (startCode >= 0xB3 && startCode != 0xB6 && startCode != 0xB7) {
+                throw new RuntimeException("Unexpected start code " + startCode);
+            } else if (startCode == 0x0) {
+                // The second field, left for readHeader
+                buffer.position(buffer.position() - segment.remaining());
+                break;
             }
+        }
 
-            Picture pic = new Picture(context.codedWidth, context.codedHeight, buf, context.color);
-            if ((ph.picture_coding_type == PictureHeader.IntraCoded || ph.picture_coding_type == PictureHeader.PredictiveCoded)
-                    && ph.pictureCodingExtension != null && ph.pictureCodingExtension.picture_structure != Frame) {
-                refFields[ph.pictureCodingExtension.picture_structure - 1] = copyAndCreateIfNeeded(pic,
-                        refFields[ph.pictureCodingExtension.picture_structure - 1]);
+        final int runs = Math.max(1, Math.min(threads, slices.size()));
+        SliceWorkers.run(runs, new SliceWorkers.Run() {
+            public void run(int run) {
+                decodeSlices(context, ph, buf, vertOff, vertStep, slices, run * slices.size() / runs, (run + 1)
+                        * slices.size() / runs);
             }
+        });
 
-            return pic;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        Picture pic = new Picture(context.codedWidth, context.codedHeight, buf, context.color);
+        if ((ph.picture_coding_type == PictureHeader.IntraCoded || ph.picture_coding_type == PictureHeader.PredictiveCoded)
+                && ph.pictureCodingExtension != null && ph.pictureCodingExtension.picture_structure != Frame) {
+            refFields[ph.pictureCodingExtension.picture_structure - 1] = copyAndCreateIfNeeded(pic,
+                    refFields[ph.pictureCodingExtension.picture_structure - 1]);
+        }
+
+        return pic;
+    }
+
+    private void decodeSlices(Context context, PictureHeader ph, int[][] buf, int vertOff, int vertStep,
+            List<ByteBuffer> slices, int from, int to) {
+        for (int i = from; i < to; i++) {
+            ByteBuffer segment = slices.get(i).duplicate();
+            int startCode = segment.get(3) & 0xff;
+            segment.position(4);
+            try {
+                decodeSlice(ph, startCode, context.forSlice(), buf, new BitReader(segment), vertOff, vertStep);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
         }
     }
 
@@ -297,7 +357,7 @@ public class MPEGDecoder implements VideoDecoder {
                 in.readNBit(8);
         }
 
-        MPEGPred pred = new MPEGPred(ph.pictureCodingExtension != null ? ph.pictureCodingExtension.f_code
+        MPEGPred pred = createPred(ph.pictureCodingExtension != null ? ph.pictureCodingExtension.f_code
                 : new int[][] { new int[] { ph.forward_f_code, ph.forward_f_code },
                         new int[] { ph.backward_f_code, ph.backward_f_code } },
                 sh.sequenceExtension != null ? sh.sequenceExtension.chroma_format : Chroma420,
@@ -312,6 +372,14 @@ public class MPEGDecoder implements VideoDecoder {
         }
     }
 
+    /**
+     * Motion compensation of one slice, the reduced resolution decoders
+     * predict at their own scale
+     */
+    protected MPEGPred createPred(int[][] fCode, int chromaFormat, boolean topFieldFirst) {
+        return new MPEGPred(fCode, chromaFormat, topFieldFirst);
+    }
+
     private void resetDCPredictors(Context context, PictureHeader ph) {
         int rval = 1 << 7;
         if (ph.pictureCodingExtension != null)
@@ -332,7 +400,9 @@ public class MPEGDecoder implements VideoDecoder {
         if (sh.sequenceExtension != null)
             chromaFormat = sh.sequenceExtension.chroma_format;
 
-        for (int i = prevAddr + 1; i < mbAddr; i++) {
+        // The address of the first macroblock of a slice only positions it in
+        // the row, the macroblocks before it belong to other slices
+        for (int i = context.mbNo == 0 ? mbAddr : prevAddr + 1; i < mbAddr; i++) {
             int[][] predFwd = new int[][] { new int[256], new int[1 << (chromaFormat + 5)],
                     new int[1 << (chromaFormat + 5)] };
             int mbX = i % context.mbWidth;
@@ -455,10 +525,10 @@ public class MPEGDecoder implements VideoDecoder {
             int[] qmat = context.qMats[(i >= 4 ? 1 : 0) + (mbType.macroblock_intra << 1)];
 
             if (mbType.macroblock_intra == 1)
-                blockIntra(bits, vlcCoeff, pp[BLOCK_TO_CC[i]], context.intra_dc_predictor, i, context.scan,
+                blockIntra(bits, vlcCoeff, block, context.intra_dc_predictor, i, context.scan,
                         sh.hasExtensions() || ph.hasExtensions() ? 12 : 8, intra_dc_mult, qScale, qmat);
             else
-                blockInter(bits, vlcCoeff, pp[BLOCK_TO_CC[i]], context.scan,
+                blockInter(bits, vlcCoeff, block, context.scan,
                         sh.hasExtensions() || ph.hasExtensions() ? 12 : 8, qScale, qmat);
 
             mapBlock(block, pp[BLOCK_TO_CC[i]], i, dctType, chromaFormat);
@@ -470,7 +540,7 @@ public class MPEGDecoder implements VideoDecoder {
         return mbAddr;
     }
 
-    private void mapBlock(int[] block, int[] out, int blkIdx, int dctType, int chromaFormat) {
+    protected void mapBlock(int[] block, int[] out, int blkIdx, int dctType, int chromaFormat) {
         int stepVert = chromaFormat == Chroma420 && (blkIdx == 4 || blkIdx == 5) ? 0 : dctType;
         int log2stride = blkIdx < 4 ? 4 : 4 - SQUEEZE_X[chromaFormat];
 
@@ -592,19 +662,19 @@ public class MPEGDecoder implements VideoDecoder {
         }
     }
 
-    private static final int clip(int val) {
+    protected static final int clip(int val) {
         return val < 0 ? 0 : (val > 255 ? 255 : val);
     }
 
-    private static final int quantInter(int level, int quant) {
+    protected static final int quantInter(int level, int quant) {
         return (((level << 1) + 1) * quant) >> 5;
     }
 
-    private static final int quantInterSigned(int level, int quant) {
+    protected static final int quantInterSigned(int level, int quant) {
         return level >= 0 ? quantInter(level, quant) : -quantInter(-level, quant);
     }
 
-    private final void blockIntra(BitReader bits, VLC vlcCoeff, int[] block, int[] intra_dc_predictor, int blkIdx,
+    protected void blockIntra(BitReader bits, VLC vlcCoeff, int[] block, int[] intra_dc_predictor, int blkIdx,
             int[] scan, int escSize, int intra_dc_mult, int qScale, int[] qmat) {
         int cc = BLOCK_TO_CC[blkIdx];
         int size = (cc == 0 ? vlcDCSizeLuma : vlcDCSizeChroma).readVLC(bits);
@@ -616,21 +686,22 @@ public class MPEGDecoder implements VideoDecoder {
         for (int idx = 0; idx < maxCoeff;) {
             int readVLC = vlcCoeff.readVLC(bits);
             int level;
-            if (readVLC >= 0) {
-                idx += (readVLC >> 12) + 1;
-                level = toSigned(((readVLC & 0xfff) * qScale * qmat[idx]) >> 4, bits.read1Bit());
-            } else if (readVLC == -2) {
+            if (readVLC == CODE_END) {
+                break;
+            } else if (readVLC == CODE_ESCAPE) {
                 idx += bits.readNBit(6) + 1;
                 level = twosSigned(bits, escSize) * qScale * qmat[idx];
                 level = level >= 0 ? (level >> 4) : -(-level >> 4);
-            } else
-                break;
+            } else {
+                idx += (readVLC >> 6) + 1;
+                level = toSigned(((readVLC & 0x3f) * qScale * qmat[idx]) >> 4, bits.read1Bit());
+            }
             SparseIDCT.coeff(block, scan[idx], level);
         }
         SparseIDCT.finish(block);
     }
 
-    private final void blockInter(BitReader bits, VLC vlcCoeff, int[] block, int[] scan, int escSize, int qScale,
+    protected void blockInter(BitReader bits, VLC vlcCoeff, int[] block, int[] scan, int escSize, int qScale,
             int[] qmat) {
 
         int idx = -1;
@@ -646,31 +717,32 @@ public class MPEGDecoder implements VideoDecoder {
         for (; idx < maxCoeff;) {
             int readVLC = vlcCoeff.readVLC(bits);
             int ac;
-            if (readVLC >= 0) {
-                idx += (readVLC >> 12) + 1;
-                ac = toSigned(quantInter(readVLC & 0xfff, qScale * qmat[idx]), bits.read1Bit());
-            } else if (readVLC == -2) {
+            if (readVLC == CODE_END) {
+                break;
+            } else if (readVLC == CODE_ESCAPE) {
                 idx += bits.readNBit(6) + 1;
                 ac = quantInterSigned(twosSigned(bits, escSize), qScale * qmat[idx]);
-            } else
-                break;
+            } else {
+                idx += (readVLC >> 6) + 1;
+                ac = toSigned(quantInter(readVLC & 0x3f, qScale * qmat[idx]), bits.read1Bit());
+            }
             SparseIDCT.coeff(block, scan[idx], ac);
         }
         SparseIDCT.finish(block);
     }
 
-    private static final int twosSigned(BitReader bits, int size) {
+    protected static final int twosSigned(BitReader bits, int size) {
         int shift = 32 - size;
         return (bits.readNBit(size) << shift) >> shift;
     }
 
-    private static final int mpegSigned(BitReader bits, int size) {
+    protected static final int mpegSigned(BitReader bits, int size) {
         int val = bits.readNBit(size);
         int sign = (val >>> (size - 1)) ^ 0x1;
         return val + sign - (sign << size);
     }
 
-    private static final int toSigned(int val, int s) {
+    protected static final int toSigned(int val, int s) {
         int sign = (s << 31) >> 31;
         return (val ^ sign) - sign;
     }
@@ -0,0 +1,26 @@
+package asg.jcodec.codecs.mpeg12;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * MPEG 1/2 decoder interframe motion compensation routines.
+ *
+ * Quad subpixel interpolator which is just a sub-case of octal subpixel
+ * interpolator, for pictures decoded at half the width and height.
+ *
+ * @author The JCodec project
+ *
+ */
+public class MPEGPredQuad extends MPEGPredOct {
+    public MPEGPredQuad(int[][] fCode, int chromaFormat, boolean topFieldFirst) {
+        super(fCode, chromaFormat, topFieldFirst);
+    }
+
+    @Override
+    public void predictPlane(int[] ref, int refX, int refY, int refW, int refH, int refVertStep, int refVertOff,
+            int[] tgt, int tgtY, int tgtW, int tgtH, int tgtVertStep) {
+        predictOct(ref, refX << 1, refY << 1, refW, refH, refVertStep, refVertOff, tgt, tgtVertStep == 0 ? tgtY >> 1
+                : tgtY, tgtW >> 1, tgtH >> 1, tgtVertStep);
+    }
+}
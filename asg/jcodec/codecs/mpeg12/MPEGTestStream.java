@@ -0,0 +1,341 @@
+package asg.jcodec.codecs.mpeg12;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import asg.jcodec.common.io.BitWriter;
+
+/**
+ * Writes small MPEG-2 main profile frames for the decoder tests. Macroblocks
+ * are picked at random between intra, skipped and predicted with random
+ * motion, so the pictures are only meaningful as decoder input, except for
+ * the I frames which code the test pattern.
+ */
+public class MPEGTestStream {
+    public static final int I = 1;
+    public static final int P = 2;
+    public static final int B = 3;
+
+    private static final int QCODE = 4;
+    private static final int FCODE = 2;
+
+    private static final double[][] cos = new double[8][8];
+    static {
+        for (int u = 0; u < 8; u++)
+            for (int x = 0; x < 8; x++)
+                cos[u][x] = (u == 0 ? Math.sqrt(0.125) : 0.5) * Math.cos((2 * x + 1) * u * Math.PI / 16);
+    }
+
+    private int width;
+    private int height;
+    private int mbWidth;
+    private int mbHeight;
+    private int slicesPerRow;
+    private Random rnd = new Random(7);
+
+    private ByteBuffer buf;
+    private BitWriter bw;
+    private int[] dcPred = new int[3];
+    private int[][] mvPred = new int[2][2];
+
+    public MPEGTestStream(int width, int height, int slicesPerRow) {
+        this.width = width;
+        this.height = height;
+        this.mbWidth = (width + 15) >> 4;
+        this.mbHeight = (height + 15) >> 4;
+        this.slicesPerRow = slicesPerRow;
+    }
+
+    /**
+     * A frame of the given picture type showing the pattern at time t,
+     * preceded by sequence headers when seq is set.
+     */
+    public ByteBuffer frame(int type, int t, boolean seq, int temporalRef) {
+        buf = ByteBuffer.allocate(mbWidth * mbHeight * 1024);
+        bw = new BitWriter(buf);
+        if (seq) {
+            startCode(0xB3);
+            bw.writeNBit(width, 12);
+            bw.writeNBit(height, 12);
+            bw.writeNBit(1, 4);
+            bw.writeNBit(3, 4);
+            bw.writeNBit(20000, 18);
+            bw.write1Bit(1);
+            bw.writeNBit(112, 10);
+            bw.writeNBit(0, 3);
+
+            startCode(0xB5);
+            bw.writeNBit(1, 4);
+            bw.writeNBit(0x48, 8);
+            bw.write1Bit(1);
+            bw.writeNBit(1, 2);
+            bw.writeNBit(0, 4);
+            bw.writeNBit(0, 12);
+            bw.writeNBit(0, 8);
+            bw.writeNBit(0, 8);
+        }
+        startCode(0x00);
+        bw.writeNBit(temporalRef, 10);
+        bw.writeNBit(type, 3);
+        bw.writeNBit(0xffff, 16);
+        if (type >= P) {
+            bw.write1Bit(0);
+            bw.writeNBit(7, 3);
+        }
+        if (type == B) {
+            bw.write1Bit(0);
+            bw.writeNBit(7, 3);
+        }
+        bw.write1Bit(0);
+
+        startCode(0xB5);
+        bw.writeNBit(8, 4);
+        bw.writeNBit(type >= P ? FCODE : 15, 4);
+        bw.writeNBit(type >= P ? FCODE : 15, 4);
+        bw.writeNBit(type == B ? FCODE : 15, 4);
+        bw.writeNBit(type == B ? FCODE : 15, 4);
+        // intra_dc_precision 8 bit, frame picture, frame_pred_frame_dct
+        bw.writeNBit(0, 2);
+        bw.writeNBit(3, 2);
+        bw.writeNBit(0x4, 4);
+        bw.writeNBit(0, 3);
+        bw.writeNBit(0x6, 3);
+
+        int[][] img = image(t);
+        for (int row = 0; row < mbHeight; row++) {
+            for (int s = 0; s < slicesPerRow; s++) {
+                int from = s * mbWidth / slicesPerRow, to = (s + 1) * mbWidth / slicesPerRow;
+                if (from == to)
+                    continue;
+                startCode(row + 1);
+                bw.writeNBit(QCODE, 5);
+                bw.write1Bit(0);
+                slice(type, img, row, from, to);
+                bw.flush();
+                bw = new BitWriter(buf);
+            }
+        }
+        bw.flush();
+        buf.flip();
+        return buf;
+    }
+
+    private void startCode(int code) {
+        bw.flush();
+        buf.put((byte) 0);
+        buf.put((byte) 0);
+        buf.put((byte) 1);
+        buf.put((byte) code);
+        bw = new BitWriter(buf);
+    }
+
+    private int[][] image(int t) {
+        int lw = mbWidth * 16, lh = mbHeight * 16, cw = lw / 2, ch = lh / 2;
+        int[] y = new int[lw * lh], u = new int[cw * ch], v = new int[cw * ch];
+        for (int j = 0; j < lh; j++) {
+            for (int i = 0; i < lw; i++) {
+                double x = i + 2.5 * t, yy = j + 1.5 * t;
+                int check = ((int) x / 24 + (int) yy / 24) % 2 == 0 ? 20 : -20;
+                y[j * lw + i] = clip((int) (128 + 60 * Math.sin(x / 13.0) * Math.cos(yy / 9.0) + 40 * Math
+                        .sin((x + yy) / 31.0)) + check);
+            }
+        }
+        for (int j = 0; j < ch; j++) {
+            for (int i = 0; i < cw; i++) {
+                u[j * cw + i] = clip((int) (128 + 50 * Math.sin((i + t) / 7.0)));
+                v[j * cw + i] = clip((int) (128 + 50 * Math.cos((j + t) / 5.0)));
+            }
+        }
+        return new int[][] { y, u, v };
+    }
+
+    private void slice(int type, int[][] img, int row, int from, int to) {
+        dcPred[0] = dcPred[1] = dcPred[2] = 128;
+        mvPred = new int[2][2];
+        int prevAddr = row * mbWidth - 1;
+        for (int x = from; x < to; x++) {
+            int addr = row * mbWidth + x;
+            if (type != I && x != from && x != to - 1 && rnd.nextInt(6) == 0) {
+                if (type == P)
+                    mvPred = new int[2][2];
+                continue;
+            }
+            int inc = addr - prevAddr;
+            for (; inc > 33; inc -= 33)
+                bw.writeNBit(0x8, 11);
+            MPEGConst.vlcAddressIncrement.writeVLC(bw, inc - 1);
+            if (inc > 1 || type != I)
+                dcPred[0] = dcPred[1] = dcPred[2] = 128;
+            prevAddr = addr;
+
+            int kind = type == I ? 0 : rnd.nextInt(4);
+            if (kind == 0) {
+                if (type == I)
+                    MPEGConst.vlcMBTypeI.writeVLC(bw, 0);
+                else if (type == P)
+                    MPEGConst.vlcMBTypeP.writeVLC(bw, 3);
+                else
+                    MPEGConst.vlcMBTypeB.writeVLC(bw, 6);
+                mvPred = new int[2][2];
+                for (int b = 0; b < 6; b++)
+                    intraBlock(img, x, row, b);
+            } else if (type == P) {
+                boolean coded = kind != 3;
+                MPEGConst.vlcMBTypeP.writeVLC(bw, coded ? 0 : 2);
+                motionVector(0);
+                if (coded)
+                    residual(img, x, row);
+            } else if (kind == 1) {
+                MPEGConst.vlcMBTypeB.writeVLC(bw, 4);
+                motionVector(0);
+            } else if (kind == 2) {
+                MPEGConst.vlcMBTypeB.writeVLC(bw, 2);
+                motionVector(1);
+            } else {
+                MPEGConst.vlcMBTypeB.writeVLC(bw, 1);
+                motionVector(0);
+                motionVector(1);
+                residual(img, x, row);
+            }
+        }
+    }
+
+    private void motionVector(int dir) {
+        int shift = FCODE - 1, f = 1 << shift;
+        for (int c = 0; c < 2; c++) {
+            int v = rnd.nextInt(25) - 12;
+            int delta = v - mvPred[dir][c];
+            if (delta < -16 * f)
+                delta += 32 * f;
+            else if (delta >= 16 * f)
+                delta -= 32 * f;
+            if (delta == 0) {
+                MPEGConst.vlcMotionCode.writeVLC(bw, 0);
+            } else {
+                int a = Math.abs(delta) - 1;
+                MPEGConst.vlcMotionCode.writeVLC(bw, (a >> shift) + 1);
+                bw.write1Bit(delta < 0 ? 1 : 0);
+                bw.writeNBit(a & (f - 1), shift);
+            }
+            mvPred[dir][c] = v;
+        }
+    }
+
+    private void intraBlock(int[][] img, int mbX, int mbY, int b) {
+        double[] coeffs = fdct(block(img, mbX, mbY, b));
+        int comp = b < 4 ? 0 : b - 3;
+        int dc = (int) Math.round(coeffs[0] / 8);
+        int diff = dc - dcPred[comp];
+        dcPred[comp] = dc;
+        int size = 0;
+        while ((Math.abs(diff) >> size) != 0)
+            size++;
+        (comp == 0 ? MPEGConst.vlcDCSizeLuma : MPEGConst.vlcDCSizeChroma).writeVLC(bw, size);
+        if (size > 0)
+            bw.writeNBit(diff < 0 ? diff + (1 << size) - 1 : diff, size);
+
+        int qScale = MPEGConst.qScaleTab1[QCODE];
+        int run = 0;
+        for (int i = 1; i < 64; i++) {
+            int level = (int) Math.round(coeffs[MPEGConst.scan[0][i]] * 16
+                    / (qScale * MPEGConst.defaultQMatIntra[MPEGConst.scan[0][i]]));
+            if (level == 0) {
+                run++;
+            } else {
+                coeff(run, level);
+                run = 0;
+            }
+        }
+        MPEGConst.vlcCoeff0.writeVLC(bw, MPEGConst.CODE_END);
+    }
+
+    private void residual(int[][] img, int mbX, int mbY) {
+        int qScale = MPEGConst.qScaleTab1[QCODE];
+        int[][] levels = new int[6][64];
+        int cbp = 0;
+        for (int b = 0; b < 6; b++) {
+            int[] blk = block(img, mbX, mbY, b);
+            for (int i = 0; i < 64; i++)
+                blk[i] = (blk[i] - 128) / 3 + rnd.nextInt(9) - 4;
+            double[] coeffs = fdct(blk);
+            for (int i = 0; i < 64; i++) {
+                levels[b][i] = (int) (coeffs[MPEGConst.scan[0][i]] / qScale);
+                if (levels[b][i] != 0)
+                    cbp |= 1 << (5 - b);
+            }
+        }
+        if (cbp == 0) {
+            levels[0][0] = 1;
+            cbp = 32;
+        }
+        MPEGConst.vlcCBP.writeVLC(bw, cbp);
+        for (int b = 0; b < 6; b++) {
+            if ((cbp & (1 << (5 - b))) == 0)
+                continue;
+            int run = 0;
+            boolean first = true;
+            for (int i = 0; i < 64; i++) {
+                int level = levels[b][i];
+                if (level == 0) {
+                    run++;
+                    continue;
+                }
+                if (first && run == 0 && Math.abs(level) == 1) {
+                    bw.write1Bit(1);
+                    bw.write1Bit(level < 0 ? 1 : 0);
+                } else {
+                    coeff(run, level);
+                }
+                first = false;
+                run = 0;
+            }
+            MPEGConst.vlcCoeff0.writeVLC(bw, MPEGConst.CODE_END);
+        }
+    }
+
+    private void coeff(int run, int level) {
+        int abs = Math.abs(level);
+        if (abs < 41 && run < 32) {
+            try {
+                MPEGConst.vlcCoeff0.writeVLC(bw, (run << 6) | abs);
+                bw.write1Bit(level < 0 ? 1 : 0);
+                return;
+            } catch (RuntimeException e) {
+                // no code for this pair, escape it
+            }
+        }
+        MPEGConst.vlcCoeff0.writeVLC(bw, MPEGConst.CODE_ESCAPE);
+        bw.writeNBit(run, 6);
+        bw.writeNBit(Math.max(-2047, Math.min(2047, level)), 12);
+    }
+
+    private int[] block(int[][] img, int mbX, int mbY, int b) {
+        int[] result = new int[64];
+        int stride = b < 4 ? mbWidth * 16 : mbWidth * 8;
+        int x0 = b < 4 ? mbX * 16 + (b & 1) * 8 : mbX * 8;
+        int y0 = b < 4 ? mbY * 16 + (b >> 1) * 8 : mbY * 8;
+        int[] plane = img[b < 4 ? 0 : b - 3];
+        for (int j = 0; j < 8; j++)
+            for (int i = 0; i < 8; i++)
+                result[j * 8 + i] = plane[(y0 + j) * stride + x0 + i];
+        return result;
+    }
+
+    private static double[] fdct(int[] block) {
+        double[] result = new double[64];
+        for (int v = 0; v < 8; v++) {
+            for (int u = 0; u < 8; u++) {
+                double sum = 0;
+                for (int y = 0; y < 8; y++)
+                    for (int x = 0; x < 8; x++)
+                        sum += cos[v][y] * cos[u][x] * block[y * 8 + x];
+                result[v * 8 + u] = sum;
+            }
+        }
+        return result;
+    }
+
+    private static int clip(int val) {
+        return val < 0 ? 0 : val > 255 ? 255 : val;
+    }
+}
@@ -1,13 +1,21 @@
 package asg.jcodec.codecs.mpeg12;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import junit.framework.Assert;
 
 import org.junit.Test;
 
+import asg.jcodec.common.model.Picture;
+
 public class TestMPEGDecoder {
 
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int[] TYPES = { MPEGTestStream.I, MPEGTestStream.P, MPEGTestStream.B, MPEGTestStream.P,
+            MPEGTestStream.B, MPEGTestStream.I };
+
     @Test
     public void testProbe() {
         MPEGDecoder decoder = new MPEGDecoder();
@@ -16,4 +24,68 @@ public class TestMPEGDecoder {
         Assert.assertEquals(0, decoder.probe(ByteBuffer.wrap(MPEGTestConst.prores())));
 
     }
+
+    @Test
+    public void testThreadedMatchesSerial() {
+        ByteBuffer[] frames = frames(3);
+
+        MPEGDecoder serial = new MPEGDecoder();
+        serial.setThreads(1);
+        MPEGDecoder threaded = new MPEGDecoder();
+        threaded.setThreads(4);
+        for (int i = 0; i < frames.length; i++) {
+            Picture expected = decode(serial, frames[i], 1);
+            Picture actual = decode(threaded, frames[i], 1);
+            for (int plane = 0; plane < 3; plane++)
+                Assert.assertTrue("frame " + i + " plane " + plane,
+                        Arrays.equals(expected.getPlaneData(plane), actual.getPlaneData(plane)));
+        }
+    }
+
+    @Test
+    public void testThumbnailsMatchFullDecode() {
+        ByteBuffer[] frames = frames(2);
+
+        MPEGDecoder full = new MPEGDecoder();
+        MPEGDecoder half = new Mpeg2Thumb4x4();
+        MPEGDecoder quarter = new Mpeg2Thumb2x2();
+        for (int i = 0; i < frames.length; i++) {
+            int[] luma = decode(full, frames[i], 1).getPlaneData(0);
+            Assert.assertTrue("frame " + i, psnr(luma, decode(half, frames[i], 2).getPlaneData(0), 2) > 35);
+            Assert.assertTrue("frame " + i, psnr(luma, decode(quarter, frames[i], 4).getPlaneData(0), 4) > 35);
+        }
+    }
+
+    private static ByteBuffer[] frames(int slicesPerRow) {
+        MPEGTestStream stream = new MPEGTestStream(WIDTH, HEIGHT, slicesPerRow);
+        ByteBuffer[] frames = new ByteBuffer[TYPES.length];
+        for (int i = 0; i < TYPES.length; i++)
+            frames[i] = stream.frame(TYPES[i], i, i == 0, i);
+        return frames;
+    }
+
+    private static Picture decode(MPEGDecoder decoder, ByteBuffer frame, int scale) {
+        int size = WIDTH * HEIGHT / (scale * scale);
+        return decoder.decodeFrame(frame.duplicate(), new int[][] { new int[size], new int[size], new int[size] });
+    }
+
+    /**
+     * Compares a reduced luma plane against the full one averaged down by
+     * scale.
+     */
+    private static double psnr(int[] full, int[] reduced, int scale) {
+        int width = WIDTH / scale, height = HEIGHT / scale;
+        double sum = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int avg = 0;
+                for (int j = 0; j < scale; j++)
+                    for (int i = 0; i < scale; i++)
+                        avg += full[(y * scale + j) * WIDTH + x * scale + i];
+                double diff = avg / (double) (scale * scale) - reduced[y * width + x];
+                sum += diff * diff;
+            }
+        }
+        return 10 * Math.log10(255 * 255 / Math.max(sum / (width * height), 1e-3));
+    }
 }
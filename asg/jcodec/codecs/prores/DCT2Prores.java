@@ -1,7 +1,5 @@
 package asg.jcodec.codecs.prores;
 
-import static asg.jcodec.common.model.ColorSpace.YUV422_10;
-
 import java.nio.ByteBuffer;
 
 import asg.jcodec.common.model.Picture;
@@ -14,9 +12,9 @@ public class DCT2Prores extends ProresEncoder {
 
     @Override
     protected int encodeSlice(ByteBuffer out, int[][] scaledLuma, int[][] scaledChroma, int[] scan, int sliceMbCount,
-            int mbX, int mbY, Picture source, int prevQp, int mbWidth, int mbHeight, boolean unsafe) {
+            int mbX, int mbY, Picture source, int prevQp, int mbWidth, int mbHeight, boolean unsafe, SliceContext ctx) {
 
-        Picture striped = sliceData(source, mbX, mbY, mbWidth, sliceMbCount);
+        Picture striped = sliceData(source, mbX, mbY, mbWidth, sliceMbCount, ctx);
 
         int est = (sliceMbCount >> 2) * profile.bitrate;
         int low = est - (est >> 3); // 12% bitrate fluctuation
@@ -29,7 +27,7 @@ public class DCT2Prores extends ProresEncoder {
         ByteBuffer fork = out.duplicate();
         out.putInt(0);
         int rem = out.position();
-        int[] sizes = new int[3];
+        int[] sizes = ctx.sizes;
         encodeSliceData(out, scaledLuma[qp - 1], scaledChroma[qp - 1], scan, sliceMbCount, striped, qp, sizes);
         if (bits(sizes) > high && qp < profile.lastQp) {
             do {
@@ -51,9 +49,9 @@ public class DCT2Prores extends ProresEncoder {
         return qp;
     }
 
-    private Picture sliceData(Picture source, int mbX, int mbY, int mbWidth, int sliceMbCount) {
+    private Picture sliceData(Picture source, int mbX, int mbY, int mbWidth, int sliceMbCount, SliceContext ctx) {
 
-        Picture pic = Picture.create(sliceMbCount << 4, 16, YUV422_10);
+        Picture pic = ctx.striped(sliceMbCount);
         int[][] out = pic.getData();
         int[][] in = source.getData();
 
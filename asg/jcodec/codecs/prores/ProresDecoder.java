@@ -22,6 +22,7 @@ import asg.jcodec.codecs.prores.ProresConsts.PictureHeader;
 import asg.jcodec.common.FileChannelWrapper;
 import asg.jcodec.common.JCodecUtil;
 import asg.jcodec.common.NIOUtils;
+import asg.jcodec.common.SliceWorkers;
 import asg.jcodec.common.VideoDecoder;
 import asg.jcodec.common.io.BitReader;
 import asg.jcodec.common.model.ColorSpace;
@@ -46,9 +47,19 @@ import asg.jcodec.scale.Yuv422pToRgb;
  */
 public class ProresDecoder implements VideoDecoder {
 
+    private int threads = SliceWorkers.THREADS;
+
     public ProresDecoder() {
     }
 
+    /**
+     * Sets how many threads the slices of a picture are split between, by
+     * default one per processor.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
     static final int[] table = new int[] { 7, 6, 5, 5, 4, 4, 4, 4, 3, 3, 3, 3, 3, 3, 3, 3, 2, 2, 2, 2, 2, 2, 2, 2, 2,
             2, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
             1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
@@ -155,9 +166,13 @@ public class ProresDecoder implements VideoDecoder {
         return ((val * qMat[ind]) >> 2);
     }
 
-    protected int[] decodeOnePlane(BitReader bits, int blocksPerSlice, int[] qMat, int[] scan, int mbX, int mbY,
-            int plane) {
-        int[] out = new int[blocksPerSlice << 6];
+    /**
+     * Decodes the coefficients of one plane of a slice into out and transforms
+     * them
+     */
+    protected void decodeOnePlane(BitReader bits, int blocksPerSlice, int[] qMat, int[] scan, int mbX, int mbY,
+            int plane, int[] out) {
+        fill(out, 0, blocksPerSlice << 6, 0);
         try {
             readDCCoeffs(bits, qMat, out, blocksPerSlice, 64);
             readACCoeffs(bits, qMat, out, blocksPerSlice, scan, 64, 6);
@@ -168,8 +183,24 @@ public class ProresDecoder implements VideoDecoder {
         for (int i = 0; i < blocksPerSlice; i++) {
             idct10(out, i << 6);
         }
+    }
 
-        return out;
+    /**
+     * Buffers one thread decodes slices with
+     */
+    protected static class SliceContext {
+        final int[] y;
+        final int[] u;
+        final int[] v;
+        final int[] qMatLuma = new int[64];
+        final int[] qMatChroma = new int[64];
+
+        SliceContext(int maxSliceMbCount) {
+            // Room for 4:4:4
+            y = new int[maxSliceMbCount << 8];
+            u = new int[maxSliceMbCount << 8];
+            v = new int[maxSliceMbCount << 8];
+        }
     }
 
     public Picture decodeFrame(ByteBuffer data, int[][] target) {
@@ -187,13 +218,13 @@ public class ProresDecoder implements VideoDecoder {
         }
 
         if (fh.frameType == 0) {
-            decodePicture(data, target, fh.width, fh.height, codedWidth >> 4, fh.qMatLuma, fh.qMatChroma, fh.scan, 0,
+            decodePicture(data, target, codedWidth, fh.height, codedWidth >> 4, fh.qMatLuma, fh.qMatChroma, fh.scan, 0,
                     fh.chromaType);
         } else {
-            decodePicture(data, target, fh.width, fh.height >> 1, codedWidth >> 4, fh.qMatLuma, fh.qMatChroma, fh.scan,
+            decodePicture(data, target, codedWidth, fh.height >> 1, codedWidth >> 4, fh.qMatLuma, fh.qMatChroma, fh.scan,
                     fh.topFieldFirst ? 1 : 2, fh.chromaType);
 
-            decodePicture(data, target, fh.width, fh.height >> 1, codedWidth >> 4, fh.qMatLuma, fh.qMatChroma, fh.scan,
+            decodePicture(data, target, codedWidth, fh.height >> 1, codedWidth >> 4, fh.qMatLuma, fh.qMatChroma, fh.scan,
                     fh.topFieldFirst ? 2 : 1, fh.chromaType);
         }
 
@@ -216,7 +247,7 @@ public class ProresDecoder implements VideoDecoder {
                 throw new RuntimeException("Provided output picture won't fit into provided buffer");
             }
 
-            decodePicture(data, target[0], fh.width, fh.height, codedWidth >> 4, fh.qMatLuma, fh.qMatChroma, fh.scan,
+            decodePicture(data, target[0], codedWidth, fh.height, codedWidth >> 4, fh.qMatLuma, fh.qMatChroma, fh.scan,
                     0, fh.chromaType);
             return new Picture[] { new Picture(codedWidth, codedHeight, target[0], ColorSpace.YUV422_10) };
         } else {
@@ -228,10 +259,10 @@ public class ProresDecoder implements VideoDecoder {
                 throw new RuntimeException("Provided output picture won't fit into provided buffer");
             }
 
-            decodePicture(data, target[fh.topFieldFirst ? 0 : 1], fh.width, fh.height >> 1, codedWidth >> 4,
+            decodePicture(data, target[fh.topFieldFirst ? 0 : 1], codedWidth, fh.height >> 1, codedWidth >> 4,
                     fh.qMatLuma, fh.qMatChroma, fh.scan, 0, fh.chromaType);
 
-            decodePicture(data, target[fh.topFieldFirst ? 1 : 0], fh.width, fh.height >> 1, codedWidth >> 4,
+            decodePicture(data, target[fh.topFieldFirst ? 1 : 0], codedWidth, fh.height >> 1, codedWidth >> 4,
                     fh.qMatLuma, fh.qMatChroma, fh.scan, 0, fh.chromaType);
 
             return new Picture[] { new Picture(codedWidth, codedHeight >> 1, target[0], ColorSpace.YUV422_10),
@@ -306,22 +337,31 @@ public class ProresDecoder implements VideoDecoder {
         return new String(sig);
     }
 
-    protected void decodePicture(ByteBuffer data, int[][] result, int width, int height, int mbWidth, int[] qMatLuma,
-            int[] qMatChroma, int[] scan, int pictureType, int chromaType) {
-        ProresConsts.PictureHeader ph = readPictureHeader(data);
+    /**
+     * Decodes the slices of a picture on the slice workers, each writes its
+     * macroblocks straight into result
+     */
+    protected void decodePicture(ByteBuffer data, final int[][] result, final int width, int height, int mbWidth,
+            final int[] qMatLuma, final int[] qMatChroma, final int[] scan, final int pictureType,
+            final int chromaType) {
+        final ProresConsts.PictureHeader ph = readPictureHeader(data);
 
         // int mbWidth = (width + 15) >> 4;
         // int mbHeight = (height + 15) >> 4;
 
+        // Where every slice is, so that they can be decoded in any order
+        final int nSlices = ph.sliceSizes.length;
+        final ByteBuffer[] sliceData = new ByteBuffer[nSlices];
+        final int[][] slicePos = new int[nSlices][];
         int mbX = 0, mbY = 0;
         int sliceMbCount = 1 << ph.log2SliceMbWidth;
-        for (int i = 0; i < ph.sliceSizes.length; i++) {
+        for (int i = 0; i < nSlices; i++) {
 
             while (mbWidth - mbX < sliceMbCount)
                 sliceMbCount >>= 1;
 
-            decodeSlice(NIOUtils.read(data, ph.sliceSizes[i]), qMatLuma, qMatChroma, scan, sliceMbCount, mbX, mbY,
-                    ph.sliceSizes[i], result, width, pictureType, chromaType);
+            sliceData[i] = NIOUtils.read(data, ph.sliceSizes[i]);
+            slicePos[i] = new int[] { mbX, mbY, sliceMbCount };
 
             mbX += sliceMbCount;
             if (mbX == mbWidth) {
@@ -330,6 +370,17 @@ public class ProresDecoder implements VideoDecoder {
                 mbY++;
             }
         }
+
+        final int runs = Math.max(1, min(threads, nSlices));
+        SliceWorkers.run(runs, new SliceWorkers.Run() {
+            public void run(int run) {
+                SliceContext ctx = new SliceContext(1 << ph.log2SliceMbWidth);
+                for (int i = run * nSlices / runs; i < (run + 1) * nSlices / runs; i++) {
+                    decodeSlice(sliceData[i], qMatLuma, qMatChroma, scan, slicePos[i][2], slicePos[i][0],
+                            slicePos[i][1], ph.sliceSizes[i], result, width, pictureType, chromaType, ctx);
+                }
+            }
+        });
     }
 
     public static PictureHeader readPictureHeader(ByteBuffer inp) {
@@ -348,7 +399,7 @@ public class ProresDecoder implements VideoDecoder {
     }
 
     private void decodeSlice(ByteBuffer data, int[] qMatLuma, int[] qMatChroma, int[] scan, int sliceMbCount, int mbX,
-            int mbY, short sliceSize, int[][] result, int lumaStride, int pictureType, int chromaType) {
+            int mbY, short sliceSize, int[][] result, int lumaStride, int pictureType, int chromaType, SliceContext ctx) {
 
         int hdrSize = (data.get() & 0xff) >> 3;
         int qScale = clip(data.get() & 0xff, 1, 224);
@@ -357,19 +408,22 @@ public class ProresDecoder implements VideoDecoder {
         int uDataSize = data.getShort();
         int vDataSize = hdrSize > 7 ? data.getShort() : sliceSize - uDataSize - yDataSize - hdrSize;
 
-        int[] y = decodeOnePlane(bitstream(data, yDataSize), sliceMbCount << 2, scaleMat(qMatLuma, qScale), scan, mbX,
-                mbY, 0);
+        scaleMat(qMatLuma, qScale, ctx.qMatLuma);
+        scaleMat(qMatChroma, qScale, ctx.qMatChroma);
+        decodeOnePlane(bitstream(data, yDataSize), sliceMbCount << 2, ctx.qMatLuma, scan, mbX, mbY, 0, ctx.y);
         int chromaBlkCount = (sliceMbCount << chromaType) >> 1;
-        int[] u = decodeOnePlane(bitstream(data, uDataSize), chromaBlkCount, scaleMat(qMatChroma, qScale), scan, mbX,
-                mbY, 1);
-        int[] v = decodeOnePlane(bitstream(data, vDataSize), chromaBlkCount, scaleMat(qMatChroma, qScale), scan, mbX,
-                mbY, 2);
+        decodeOnePlane(bitstream(data, uDataSize), chromaBlkCount, ctx.qMatChroma, scan, mbX, mbY, 1, ctx.u);
+        decodeOnePlane(bitstream(data, vDataSize), chromaBlkCount, ctx.qMatChroma, scan, mbX, mbY, 2, ctx.v);
 
-        putSlice(result, lumaStride, mbX, mbY, y, u, v, pictureType == 0 ? 0 : 1, pictureType == 2 ? 1 : 0, chromaType);
+        putSlice(result, lumaStride, mbX, mbY, sliceMbCount, ctx.y, ctx.u, ctx.v, pictureType == 0 ? 0 : 1,
+                pictureType == 2 ? 1 : 0, chromaType);
     }
 
     public static final int[] scaleMat(int[] qMatLuma, int qScale) {
-        int[] res = new int[qMatLuma.length];
+        return scaleMat(qMatLuma, qScale, new int[qMatLuma.length]);
+    }
+
+    public static final int[] scaleMat(int[] qMatLuma, int qScale, int[] res) {
         for (int i = 0; i < qMatLuma.length; i++)
             res[i] = qMatLuma[i] * qScale;
 
@@ -384,10 +438,8 @@ public class ProresDecoder implements VideoDecoder {
         return val < min ? min : (val > max ? max : val);
     }
 
-    protected void putSlice(int[][] result, int lumaStride, int mbX, int mbY, int[] y, int[] u, int[] v, int dist,
-            int shift, int chromaType) {
-        int mbPerSlice = y.length >> 8;
-
+    protected void putSlice(int[][] result, int lumaStride, int mbX, int mbY, int mbPerSlice, int[] y, int[] u,
+            int[] v, int dist, int shift, int chromaType) {
         int chromaStride = lumaStride >> 1;
 
         putLuma(result[0], shift * lumaStride, lumaStride << dist, mbX, mbY, y, mbPerSlice, dist, shift);
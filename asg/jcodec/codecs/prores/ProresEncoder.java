@@ -20,9 +20,11 @@ import static asg.jcodec.common.tools.MathUtil.log2;
 import static asg.jcodec.common.tools.MathUtil.sign;
 import static java.lang.Math.min;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 
 import asg.jcodec.common.NIOUtils;
+import asg.jcodec.common.SliceWorkers;
 import asg.jcodec.common.io.BitWriter;
 import asg.jcodec.common.model.Picture;
 import asg.jcodec.common.model.Rect;
@@ -69,6 +71,34 @@ public class ProresEncoder {
     protected Profile profile;
     private int[][] scaledLuma;
     private int[][] scaledChroma;
+    private SliceContext[] contexts = new SliceContext[0];
+    private int threads = SliceWorkers.THREADS;
+
+    /**
+     * Buffers one thread encodes slices with, kept from frame to frame
+     */
+    protected static class SliceContext {
+        final int[] sizes = new int[3];
+        private final Picture[] striped = new Picture[LOG_DEFAULT_SLICE_MB_WIDTH + 1];
+        private final Picture[] filled = new Picture[LOG_DEFAULT_SLICE_MB_WIDTH + 1];
+
+        /**
+         * Picture a slice of sliceMbCount macroblocks is reordered into
+         */
+        Picture striped(int sliceMbCount) {
+            int i = log2(sliceMbCount);
+            if (striped[i] == null)
+                striped[i] = Picture.create(sliceMbCount << 4, 16, YUV422_10);
+            return striped[i];
+        }
+
+        Picture filled(int sliceMbCount) {
+            int i = log2(sliceMbCount);
+            if (filled[i] == null)
+                filled[i] = Picture.create(sliceMbCount << 4, 16, YUV422_10);
+            return filled[i];
+        }
+    }
 
     public ProresEncoder(Profile profile) {
         this.profile = profile;
@@ -76,6 +106,15 @@ public class ProresEncoder {
         scaledChroma = scaleQMat(profile.qmatChroma, 1, 16);
     }
 
+    /**
+     * Sets how many threads the rows of slices of a picture are split
+     * between, by default one per processor. The output is the same whatever
+     * the number.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
     private int[][] scaleQMat(int[] qmatLuma, int start, int count) {
         int[][] result = new int[count][];
         for (int i = 0; i < count; i++) {
@@ -187,9 +226,9 @@ public class ProresEncoder {
     }
 
     protected int encodeSlice(ByteBuffer out, int[][] scaledLuma, int[][] scaledChroma, int[] scan, int sliceMbCount,
-            int mbX, int mbY, Picture result, int prevQp, int mbWidth, int mbHeight, boolean unsafe) {
+            int mbX, int mbY, Picture result, int prevQp, int mbWidth, int mbHeight, boolean unsafe, SliceContext ctx) {
 
-        Picture striped = splitSlice(result, mbX, mbY, sliceMbCount, unsafe);
+        Picture striped = splitSlice(result, mbX, mbY, sliceMbCount, unsafe, ctx);
         dctOnePlane(sliceMbCount << 2, striped.getPlaneData(0));
         dctOnePlane(sliceMbCount << 1, striped.getPlaneData(1));
         dctOnePlane(sliceMbCount << 1, striped.getPlaneData(2));
@@ -204,7 +243,7 @@ public class ProresEncoder {
         ByteBuffer fork = out.duplicate();
         NIOUtils.skip(out, 5);
         int rem = out.position();
-        int[] sizes = new int[3];
+        int[] sizes = ctx.sizes;
         encodeSliceData(out, scaledLuma[qp - 1], scaledChroma[qp - 1], scan, sliceMbCount, striped, qp, sizes);
         if (bits(sizes) > high && qp < profile.lastQp) {
             do {
@@ -247,19 +286,26 @@ public class ProresEncoder {
         return out.position() - rem;
     }
 
-    protected void encodePicture(ByteBuffer out, int[][] scaledLuma, int[][] scaledChroma, int[] scan, Picture picture) {
+    /**
+     * Encodes the slices of a picture on the slice workers. Each thread
+     * encodes a run of whole rows of slices straight into out, in a share of
+     * the space left in proportion to its rows, then the runs are moved
+     * together. Every row starts from the first qp of the profile, so the
+     * slices don't depend on how the rows are split.
+     */
+    protected void encodePicture(ByteBuffer out, final int[][] scaledLuma, final int[][] scaledChroma,
+            final int[] scan, final Picture picture) {
 
-        int mbWidth = (picture.getWidth() + 15) >> 4;
-        int mbHeight = (picture.getHeight() + 15) >> 4;
-        int qp = profile.firstQp;
+        final int mbWidth = (picture.getWidth() + 15) >> 4;
+        final int mbHeight = (picture.getHeight() + 15) >> 4;
 
-        int nSlices = calcNSlices(mbWidth, mbHeight);
+        final int nSlices = calcNSlices(mbWidth, mbHeight);
         writePictureHeader(LOG_DEFAULT_SLICE_MB_WIDTH, nSlices, out);
         ByteBuffer fork = out.duplicate();
         NIOUtils.skip(out, nSlices << 1);
 
+        final int[][] slicePos = new int[nSlices][];
         int i = 0;
-        int[] total = new int[nSlices];
         for (int mbY = 0; mbY < mbHeight; mbY++) {
             int mbX = 0;
             int sliceMbCount = DEFAULT_SLICE_MB_WIDTH;
@@ -267,17 +313,80 @@ public class ProresEncoder {
                 while (mbWidth - mbX < sliceMbCount)
                     sliceMbCount >>= 1;
 
-                int sliceStart = out.position();
                 boolean unsafeBottom = (picture.getHeight() % 16) != 0 && mbY == mbHeight - 1;
                 boolean unsafeRight = (picture.getWidth() % 16) != 0 && mbX + sliceMbCount == mbWidth;
-                qp = encodeSlice(out, scaledLuma, scaledChroma, scan, sliceMbCount, mbX, mbY, picture, qp, mbWidth,
-                        mbHeight, unsafeBottom || unsafeRight);
-                fork.putShort((short) (out.position() - sliceStart));
-                total[i++] = (short) (out.position() - sliceStart);
+                slicePos[i++] = new int[] { mbX, mbY, sliceMbCount, unsafeBottom || unsafeRight ? 1 : 0 };
 
                 mbX += sliceMbCount;
             }
         }
+
+        final int runs = Math.max(1, min(threads, mbHeight));
+        if (contexts.length < runs) {
+            SliceContext[] grown = new SliceContext[runs];
+            System.arraycopy(contexts, 0, grown, 0, contexts.length);
+            for (int r = contexts.length; r < runs; r++)
+                grown[r] = new SliceContext();
+            contexts = grown;
+        }
+
+        final int start = out.position();
+        final int[] shares = new int[runs + 1];
+        final ByteBuffer[] windows = new ByteBuffer[runs];
+        for (int r = 0; r <= runs; r++)
+            shares[r] = start + (int) ((long) out.remaining() * r / runs);
+        for (int r = 0; r < runs; r++) {
+            windows[r] = out.duplicate();
+            windows[r].position(shares[r]);
+            windows[r].limit(shares[r + 1]);
+        }
+
+        final short[] sliceSizes = new short[nSlices];
+        final boolean[] overflowed = new boolean[runs];
+        SliceWorkers.run(runs, new SliceWorkers.Run() {
+            public void run(int run) {
+                try {
+                    encodeRows(windows[run], run * mbHeight / runs, (run + 1) * mbHeight / runs, nSlices / mbHeight,
+                            scaledLuma, scaledChroma, scan, slicePos, picture, mbWidth, mbHeight, sliceSizes,
+                            contexts[run]);
+                } catch (BufferOverflowException e) {
+                    overflowed[run] = true;
+                }
+            }
+        });
+
+        /*
+         * A run that didn't fit its share is encoded again once the runs
+         * before it are in place, along with the runs after it, as their
+         * shares could be written over.
+         */
+        for (int r = 0; r < runs; r++) {
+            if (overflowed[r]) {
+                encodeRows(out, r * mbHeight / runs, mbHeight, nSlices / mbHeight, scaledLuma, scaledChroma, scan,
+                        slicePos, picture, mbWidth, mbHeight, sliceSizes, contexts[0]);
+                break;
+            }
+            ByteBuffer run = out.duplicate();
+            run.position(shares[r]);
+            run.limit(windows[r].position());
+            out.put(run);
+        }
+        for (int s = 0; s < nSlices; s++)
+            fork.putShort(sliceSizes[s]);
+    }
+
+    private void encodeRows(ByteBuffer buf, int fromRow, int toRow, int slicesPerRow, int[][] scaledLuma,
+            int[][] scaledChroma, int[] scan, int[][] slicePos, Picture picture, int mbWidth, int mbHeight,
+            short[] sliceSizes, SliceContext ctx) {
+        for (int row = fromRow; row < toRow; row++) {
+            int qp = profile.firstQp;
+            for (int i = row * slicesPerRow; i < (row + 1) * slicesPerRow; i++) {
+                int sliceStart = buf.position();
+                qp = encodeSlice(buf, scaledLuma, scaledChroma, scan, slicePos[i][2], slicePos[i][0], slicePos[i][1],
+                        picture, qp, mbWidth, mbHeight, slicePos[i][3] != 0, ctx);
+                sliceSizes[i] = (short) (buf.position() - sliceStart);
+            }
+        }
     }
 
     public static void writePictureHeader(int logDefaultSliceMbWidth, int nSlices, ByteBuffer out) {
@@ -296,10 +405,10 @@ public class ProresEncoder {
         return nSlices * mbHeight;
     }
 
-    private Picture splitSlice(Picture result, int mbX, int mbY, int sliceMbCount, boolean unsafe) {
-        Picture out = Picture.create(sliceMbCount << 4, 16, YUV422_10);
+    private Picture splitSlice(Picture result, int mbX, int mbY, int sliceMbCount, boolean unsafe, SliceContext ctx) {
+        Picture out = ctx.striped(sliceMbCount);
         if (unsafe) {
-            Picture filled = Picture.create(sliceMbCount << 4, 16, YUV422_10);
+            Picture filled = ctx.filled(sliceMbCount);
             ImageOP.subImageWithFill(result, filled, new Rect(mbX << 4, mbY << 4, sliceMbCount << 4, 16));
 
             split(filled, out, 0, 0, sliceMbCount);
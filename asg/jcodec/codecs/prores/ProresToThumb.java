@@ -1,6 +1,7 @@
 package asg.jcodec.codecs.prores;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import asg.jcodec.codecs.prores.ProresConsts.FrameHeader;
 import asg.jcodec.common.io.BitReader;
@@ -22,9 +23,9 @@ public class ProresToThumb extends ProresDecoder {
     public ProresToThumb() {
     }
 
-    protected int[] decodeOnePlane(BitReader bits, int blocksPerSlice, int[] qMat, int[] scan, int mbX, int mbY,
-            int plane) {
-        int[] out = new int[blocksPerSlice];
+    protected void decodeOnePlane(BitReader bits, int blocksPerSlice, int[] qMat, int[] scan, int mbX, int mbY,
+            int plane, int[] out) {
+        Arrays.fill(out, 0, blocksPerSlice, 0);
         try {
             readDCCoeffs(bits, qMat, out, blocksPerSlice, 1);
         } catch (RuntimeException e) {
@@ -34,8 +35,6 @@ public class ProresToThumb extends ProresDecoder {
         for (int i = 0; i < blocksPerSlice; i++) {
             out[i] >>= 3;
         }
-
-        return out;
     }
 
     public Picture decodeFrame(ByteBuffer data, int[][] target) {
@@ -68,10 +67,8 @@ public class ProresToThumb extends ProresDecoder {
     }
 
     @Override
-    protected void putSlice(int[][] result, int lumaStride, int mbX, int mbY, int[] y, int[] u, int[] v, int dist,
-            int shift, int chromaType) {
-        int mbPerSlice = y.length >> 2;
-
+    protected void putSlice(int[][] result, int lumaStride, int mbX, int mbY, int mbPerSlice, int[] y, int[] u,
+            int[] v, int dist, int shift, int chromaType) {
         int chromaStride = lumaStride >> 1;
 
         putLuma(result[0], shift * lumaStride, lumaStride << dist, mbX, mbY, y, mbPerSlice, dist, shift);
@@ -1,6 +1,7 @@
 package asg.jcodec.codecs.prores;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import asg.jcodec.codecs.prores.ProresConsts.FrameHeader;
 import asg.jcodec.common.dct.IDCT2x2;
@@ -25,9 +26,9 @@ public class ProresToThumb2x2 extends ProresDecoder {
     }
 
     @Override
-    protected int[] decodeOnePlane(BitReader bits, int blocksPerSlice, int[] qMat, int[] scan, int mbX, int mbY,
-            int plane) {
-        int[] out = new int[blocksPerSlice << 2];
+    protected void decodeOnePlane(BitReader bits, int blocksPerSlice, int[] qMat, int[] scan, int mbX, int mbY,
+            int plane, int[] out) {
+        Arrays.fill(out, 0, blocksPerSlice << 2, 0);
 
         readDCCoeffs(bits, qMat, out, blocksPerSlice, 4);
         readACCoeffs(bits, qMat, out, blocksPerSlice, scan, 4, 2);
@@ -35,8 +36,6 @@ public class ProresToThumb2x2 extends ProresDecoder {
         for (int i = 0; i < blocksPerSlice; i++) {
             IDCT2x2.idct(out, i << 2);
         }
-
-        return out;
     }
 
     public Picture decodeFrame(ByteBuffer data, int[][] target) {
@@ -69,10 +68,8 @@ public class ProresToThumb2x2 extends ProresDecoder {
     }
 
     @Override
-    protected void putSlice(int[][] result, int lumaStride, int mbX, int mbY, int[] y, int[] u, int[] v, int dist,
-            int shift, int chromaType) {
-        int mbPerSlice = y.length >> 4;
-
+    protected void putSlice(int[][] result, int lumaStride, int mbX, int mbY, int mbPerSlice, int[] y, int[] u,
+            int[] v, int dist, int shift, int chromaType) {
         int chromaStride = lumaStride >> 1;
 
         putLuma(result[0], shift * lumaStride, lumaStride << dist, mbX, mbY, y, mbPerSlice, dist, shift);
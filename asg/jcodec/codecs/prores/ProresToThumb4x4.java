@@ -1,6 +1,7 @@
 package asg.jcodec.codecs.prores;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import asg.jcodec.codecs.prores.ProresConsts.FrameHeader;
 import asg.jcodec.common.dct.IDCT4x4;
@@ -25,9 +26,9 @@ public class ProresToThumb4x4 extends ProresDecoder {
     }
 
     @Override
-    protected int[] decodeOnePlane(BitReader bits, int blocksPerSlice, int[] qMat, int[] scan, int mbX, int mbY,
-            int plane) {
-        int[] out = new int[blocksPerSlice << 4];
+    protected void decodeOnePlane(BitReader bits, int blocksPerSlice, int[] qMat, int[] scan, int mbX, int mbY,
+            int plane, int[] out) {
+        Arrays.fill(out, 0, blocksPerSlice << 4, 0);
 
         readDCCoeffs(bits, qMat, out, blocksPerSlice, 16);
         readACCoeffs(bits, qMat, out, blocksPerSlice, scan, 16, 4);
@@ -35,8 +36,6 @@ public class ProresToThumb4x4 extends ProresDecoder {
         for (int i = 0; i < blocksPerSlice; i++) {
             IDCT4x4.idct(out, i << 4);
         }
-
-        return out;
     }
 
     public static int progressive_scan_4x4[] = new int[] { 0, 1, 4, 5, 2, 3, 6, 7, 8, 9, 12, 13, 11, 12, 14, 15 };
@@ -73,10 +72,8 @@ public class ProresToThumb4x4 extends ProresDecoder {
     }
 
     @Override
-    protected void putSlice(int[][] result, int lumaStride, int mbX, int mbY, int[] y, int[] u, int[] v, int dist,
-            int shift, int chromaType) {
-        int mbPerSlice = y.length >> 6;
-
+    protected void putSlice(int[][] result, int lumaStride, int mbX, int mbY, int mbPerSlice, int[] y, int[] u,
+            int[] v, int dist, int shift, int chromaType) {
         int chromaStride = lumaStride >> 1;
 
         putLuma(result[0], shift * lumaStride, lumaStride << dist, mbX, mbY, y, mbPerSlice, dist, shift);
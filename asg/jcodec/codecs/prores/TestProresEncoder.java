@@ -2,6 +2,7 @@ package asg.jcodec.codecs.prores;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -93,6 +94,63 @@ public class TestProresEncoder {
         // Assert.assertArrayEquals(V, result.getCr());
     }
 
+    @Test
+    public void testThreadedMatchesSerial() throws Exception {
+        Picture picture = pattern(352, 288, 288);
+
+        ByteBuffer serial = encode(picture, 1, 352 * 288 * 6);
+        ByteBuffer threaded = encode(picture, 4, 352 * 288 * 6);
+        Assert.assertEquals(serial, threaded);
+
+        Picture serialPic = decode(serial, 1, 352, 288);
+        Picture threadedPic = decode(threaded, 4, 352, 288);
+        for (int plane = 0; plane < 3; plane++)
+            Assert.assertArrayEquals(serialPic.getPlaneData(plane), threadedPic.getPlaneData(plane));
+    }
+
+    /**
+     * Noise at the top and a flat picture below, in a buffer only just big
+     * enough, so the runs of the top rows outgrow their share of it.
+     */
+    @Test
+    public void testRunOutgrowingItsShare() throws Exception {
+        Picture picture = pattern(352, 288, 64);
+
+        ByteBuffer serial = encode(picture, 1, 352 * 288 * 6);
+        ByteBuffer threaded = encode(picture, 4, serial.remaining());
+        Assert.assertEquals(serial, threaded);
+    }
+
+    private ByteBuffer encode(Picture picture, int threads, int size) {
+        ProresEncoder encoder = new ProresEncoder(Profile.HQ);
+        encoder.setThreads(threads);
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        encoder.encodeFrame(buf, picture);
+        return buf;
+    }
+
+    private Picture decode(ByteBuffer frame, int threads, int width, int height) {
+        ProresDecoder decoder = new ProresDecoder();
+        decoder.setThreads(threads);
+        return decoder.decodeFrame(frame.duplicate(), new int[][] { new int[width * height],
+                new int[width * height / 2], new int[width * height / 2] });
+    }
+
+    /**
+     * Noise down to noiseHeight, a flat grey below it.
+     */
+    private Picture pattern(int width, int height, int noiseHeight) {
+        Random random = new Random(42);
+        Picture picture = Picture.create(width, height, ColorSpace.YUV422_10);
+        for (int plane = 0; plane < 3; plane++) {
+            int[] data = picture.getPlaneData(plane);
+            int planeWidth = picture.getPlaneWidth(plane);
+            for (int i = 0; i < data.length; i++)
+                data[i] = i / planeWidth < noiseHeight ? 4 + random.nextInt(1015) : 512;
+        }
+        return picture;
+    }
+
     private int[] randomArray(int size, int off, int max) {
         int width = max - off;
         int[] result = new int[size];
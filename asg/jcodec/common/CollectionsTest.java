@@ -40,6 +40,40 @@ public class CollectionsTest {
         assertArrayEquals(test.keys(), new int[] { 24, 248 });
         assertArrayEquals(test.values(), new int[] { 11, 21 });
     }
+
+    @Test
+    public void testIntIntMapGrowRemove() {
+        IntIntMap test = new IntIntMap();
+
+        for (int i = 0; i < 300; i += 3)
+            test.put(i, -i);
+        test.put(1000, 7);
+        assertEquals(101, test.size());
+        assertEquals(-297, test.get(297));
+        assertEquals(7, test.get(1000));
+
+        assertEquals(Integer.MIN_VALUE, test.get(298));
+        assertEquals(Integer.MIN_VALUE, test.get(5000));
+
+        test.put(297, 5);
+        assertEquals(101, test.size());
+
+        test.remove(297);
+        test.remove(298);
+        test.remove(5000);
+        assertEquals(100, test.size());
+        assertEquals(Integer.MIN_VALUE, test.get(297));
+        assertEquals(1000, test.keys()[99]);
+
+        test.clear();
+        assertEquals(0, test.size());
+        assertEquals(Integer.MIN_VALUE, test.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIntIntMapMinValue() {
+        new IntIntMap().put(1, Integer.MIN_VALUE);
+    }
     
     @Test
     public void testByteArrayList() {
@@ -0,0 +1,59 @@
+package asg.jcodec.common;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Shortcuts a decoder can take when a frame is only needed for a preview,
+ * trading some quality for speed. Decoders that don't support a shortcut just
+ * decode the frame in full.
+ *
+ * @author The JCodec project
+ *
+ */
+public class DecodeOptions {
+
+    /**
+     * Every frame, at full quality.
+     */
+    public static final DecodeOptions FULL = new DecodeOptions(false, false, false);
+
+    /**
+     * Every frame, without the loop filter. Blocking shows at low bitrates and
+     * builds up a little until the next key frame.
+     */
+    public static final DecodeOptions FAST = new DecodeOptions(true, false, false);
+
+    /**
+     * Only the frames other frames are predicted from, without the loop
+     * filter, for scrubbing.
+     */
+    public static final DecodeOptions SCRUB = new DecodeOptions(true, true, false);
+
+    /**
+     * Only key frames, for thumbnails.
+     */
+    public static final DecodeOptions KEYFRAMES = new DecodeOptions(true, true, true);
+
+    /**
+     * Don't run the deblocking (loop) filter.
+     */
+    public final boolean skipLoopFilter;
+
+    /**
+     * Don't decode frames that no other frame is predicted from, the decoder
+     * returns null for them.
+     */
+    public final boolean skipNonReference;
+
+    /**
+     * Only decode key frames, the decoder returns null for every other frame.
+     */
+    public final boolean keyframesOnly;
+
+    public DecodeOptions(boolean skipLoopFilter, boolean skipNonReference, boolean keyframesOnly) {
+        this.skipLoopFilter = skipLoopFilter;
+        this.skipNonReference = skipNonReference;
+        this.keyframesOnly = keyframesOnly;
+    }
+}
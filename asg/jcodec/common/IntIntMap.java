@@ -26,7 +26,7 @@ public class IntIntMap {
         if (val == MIN_VALUE)
             throw new IllegalArgumentException("This implementation can not store " + MIN_VALUE);
         if (storage.length <= key) {
-            int[] ns = createArray(storage.length + GROW_BY);
+            int[] ns = createArray(key + GROW_BY);
             System.arraycopy(storage, 0, ns, 0, storage.length);
             Arrays.fill(ns, storage.length, ns.length, MIN_VALUE);
             storage = ns;
@@ -37,7 +37,7 @@ public class IntIntMap {
     }
 
     public int get(int key) {
-        return key >= storage.length ? null : storage[key];
+        return key >= storage.length ? MIN_VALUE : storage[key];
     }
 
     public int[] keys() {
@@ -60,6 +60,8 @@ public class IntIntMap {
     }
 
     public void remove(int key) {
+        if (key >= storage.length)
+            return;
         if (storage[key] != Integer.MIN_VALUE)
             size--;
         storage[key] = MIN_VALUE;
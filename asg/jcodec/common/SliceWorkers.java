@@ -0,0 +1,109 @@
+package asg.jcodec.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ * 
+ * Threads shared by every decoder and encoder that splits a picture up, the
+ * slices of ProRes, MPEG-2 and H.264 pictures and whole H.264 frames. A
+ * picture's slices are split in runs, each run goes to one thread with its own
+ * buffers.
+ * 
+ * @author The JCodec project
+ * 
+ */
+public class SliceWorkers {
+
+    public static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService workers = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        private int count = 0;
+
+        public synchronized Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "SliceWorker-" + (count++));
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public interface Run {
+        void run(int run);
+    }
+
+    /**
+     * Runs every run but the first on the workers and the first on the calling
+     * thread, and returns when all have finished. Runs the workers haven't got
+     * to by then are taken back and run on the calling thread too, so a
+     * picture never waits behind other work queued on the workers.
+     */
+    public static void run(int runs, final Run task) {
+        List<FutureTask<Object>> futures = new ArrayList<FutureTask<Object>>();
+        for (int i = 1; i < runs; i++) {
+            final int run = i;
+            FutureTask<Object> future = new FutureTask<Object>(new Runnable() {
+                public void run() {
+                    task.run(run);
+                }
+            }, null);
+            workers.execute(future);
+            futures.add(future);
+        }
+        try {
+            task.run(0);
+        } finally {
+            // Does nothing for runs that are already started
+            for (FutureTask<Object> future : futures)
+                future.run();
+            for (FutureTask<Object> future : futures)
+                waitFor(future);
+        }
+    }
+
+    /**
+     * Starts a task on the workers, for work that isn't split in runs such as
+     * a whole frame.
+     */
+    public static <T> Future<T> submit(Callable<T> task) {
+        return workers.submit(task);
+    }
+
+    /**
+     * Waits for a task even if the calling thread is interrupted, the
+     * interrupt is kept for the caller to see.
+     * 
+     * @return The result of the task
+     * @throws RuntimeException
+     *             What the task threw, wrapped if it was checked
+     */
+    public static <T> T waitFor(Future<T> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException)
+                        throw (RuntimeException) e.getCause();
+                    if (e.getCause() instanceof Error)
+                        throw (Error) e.getCause();
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+}
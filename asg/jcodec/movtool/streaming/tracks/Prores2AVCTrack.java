@@ -52,6 +52,7 @@ public class Prores2AVCTrack implements VirtualTrack {
         this.proresTrack = proresTrack;
         ConstantRateControl rc = new ConstantRateControl(TARGET_RATE);
         H264Encoder encoder = new H264Encoder(rc);
+        encoder.setKeyInterval(1);
 
         scaleFactor = frameDim.getWidth() >= 960 ? 2 : 1;
         thumbWidth = frameDim.getWidth() >> scaleFactor;
@@ -127,7 +128,10 @@ public class Prores2AVCTrack implements VirtualTrack {
         public Transcoder() {
             rc = new ConstantRateControl(TARGET_RATE);
             this.decoder = scaleFactor == 2 ? new ProresToThumb2x2() : new ProresToThumb4x4();
+            // Frames are transcoded on demand in any order, each has to decode
+            // on its own
             this.encoder = new H264Encoder(rc);
+            this.encoder.setKeyInterval(1);
             pic0 = Picture.create(mbW << 4, mbH << 4, ColorSpace.YUV444);
         }
 
@@ -58,6 +58,7 @@ public class AVCClipTrack extends ClipTrack {
 
         rc = new ConstantRateControl(1024);
         H264Encoder encoder = new H264Encoder(rc);
+        encoder.setKeyInterval(1);
         avcC = H264Utils.parseAVCC((VideoSampleEntry) origSE);
         SeqParameterSet sps = H264Utils.readSPS(NIOUtils.duplicate(avcC.getSpsList().get(0)));
 
@@ -127,7 +128,10 @@ public class AVCClipTrack extends ClipTrack {
             for (VirtualPacket virtualPacket : head) {
                 dec = decoder.decodeFrame(H264Utils.splitMOVPacket(virtualPacket.getData(), avcC), buf.getData());
             }
+            // Re-encoded frames are spliced in between the original ones, each
+            // has to decode on its own
             H264Encoder encoder = new H264Encoder(rc);
+            encoder.setKeyInterval(1);
             ByteBuffer tmp = ByteBuffer.allocate(frameSize);
 
             List<ByteBuffer> result = new ArrayList<ByteBuffer>();
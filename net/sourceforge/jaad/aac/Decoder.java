@@ -98,6 +98,29 @@ public class Decoder implements SyntaxConstants {
     public void decodeFrame(byte[] frame, SampleBuffer buffer) throws AACException {
         if (frame != null)
             in.setData(frame);
+        decodeFrame(buffer);
+    }
+
+    /**
+     * Decodes one frame of AAC data held in the first <code>length</code>
+     * bytes of <code>frame</code>. This lets a caller read every packet of
+     * a stream into one reused array instead of allocating one per frame.
+     * 
+     * @param frame
+     *            the array holding the AAC frame
+     * @param length
+     *            the size of the frame in bytes
+     * @param buffer
+     *            a buffer to hold the decoded PCM data
+     * @throws AACException
+     *             if decoding fails
+     */
+    public void decodeFrame(byte[] frame, int length, SampleBuffer buffer) throws AACException {
+        in.setData(frame, length);
+        decodeFrame(buffer);
+    }
+
+    private void decodeFrame(SampleBuffer buffer) throws AACException {
         LOGGER.finest("bits left " + in.getBitsLeft());
         try {
             decode(buffer);
@@ -34,6 +34,7 @@ class MDCT implements MDCTTables {
 				break;
 			case 240:
 				sincos = MDCT_TABLE_240;
+				break;
 			default:
 				throw new AACException("unsupported MDCT length: "+length);
 		}
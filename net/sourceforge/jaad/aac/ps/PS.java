@@ -87,6 +87,12 @@ public class PS implements PSConstants, PSTables, PSHuffmanTables {
 	int phase_hist;
 	float[][][] ipd_prev = new float[20][2][2];
 	float[][][] opd_prev = new float[20][2][2];
+	/* per-frame work buffers */
+	private final float[][][] X_hybrid_left = new float[32][32][2];
+	private final float[][][] X_hybrid_right = new float[32][32][2];
+	private final int[] temp_delay_ser = new int[NO_ALLPASS_LINKS];
+	private final float[][] P = new float[32][34];
+	private final float[][] G_TransientRatio = new float[32][34];
 
 	public PS(SampleFrequency sr, int numTimeSlotsRate) {
 		int i;
@@ -638,10 +644,10 @@ public class PS implements PSConstants, PSTables, PSHuffmanTables {
 		int gr, n, m, bk;
 		int temp_delay = 0;
 		int sb, maxsb;
-		int[] temp_delay_ser = new int[NO_ALLPASS_LINKS];
+		final int[] temp_delay_ser = this.temp_delay_ser;
 		float P_SmoothPeakDecayDiffNrg, nrg;
-		float[][] P = new float[32][34];
-		float[][] G_TransientRatio = new float[32][34];
+		final float[][] P = this.P;
+		final float[][] G_TransientRatio = this.G_TransientRatio;
 		float[] inputLeft = new float[2];
 
 
@@ -1253,8 +1259,16 @@ public class PS implements PSConstants, PSTables, PSHuffmanTables {
 
 	/* main Parametric Stereo decoding function */
 	public int process(float[][][] X_left, float[][][] X_right) {
-		float[][][] X_hybrid_left = new float[32][32][2];
-		float[][][] X_hybrid_right = new float[32][32][2];
+		final float[][][] X_hybrid_left = this.X_hybrid_left;
+		final float[][][] X_hybrid_right = this.X_hybrid_right;
+
+		/* the hybrid matrices are only partly written, keep them zeroed as before */
+		for(int n = 0; n<32; n++) {
+			for(int k = 0; k<32; k++) {
+				X_hybrid_left[n][k][0] = X_hybrid_left[n][k][1] = 0;
+				X_hybrid_right[n][k][0] = X_hybrid_right[n][k][1] = 0;
+			}
+		}
 
 		/* delta decoding of the bitstream data */
 		ps_data_decode();
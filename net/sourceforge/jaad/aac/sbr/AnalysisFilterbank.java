@@ -14,6 +14,10 @@ class AnalysisFilterbank implements FilterbankTable {
 	private float[] x; //x is implemented as double ringbuffer
 	private int x_index; //ringbuffer index
 	private int channels;
+	//per-slot work buffers, fully overwritten every time slot
+	private final float[] u = new float[64];
+	private final float[] in_real = new float[32], in_imag = new float[32];
+	private final float[] out_real = new float[32], out_imag = new float[32];
 
 	AnalysisFilterbank(int channels) {
 		this.channels = channels;
@@ -27,9 +31,9 @@ class AnalysisFilterbank implements FilterbankTable {
 
 	void sbr_qmf_analysis_32(SBR sbr, float[] input,
 		float[][][] X, int offset, int kx) {
-		float[] u = new float[64];
-		float[] in_real = new float[32], in_imag = new float[32];
-		float[] out_real = new float[32], out_imag = new float[32];
+		final float[] u = this.u;
+		final float[] in_real = this.in_real, in_imag = this.in_imag;
+		final float[] out_real = this.out_real, out_imag = this.out_imag;
 		int in = 0;
 		int l;
 
@@ -1,5 +1,7 @@
 package net.sourceforge.jaad.aac.sbr;
 
+import java.util.Arrays;
+
 /**
  * This class is part of JAAD ( jaadec.sourceforge.net ) that is distributed
  * under the Public Domain license. Code changes provided by the JCodec project
@@ -21,11 +23,22 @@ class HFAdjustment implements SBRConstants, NoiseTable {
 	private float[][] G_lim_boost = new float[MAX_L_E][MAX_M];
 	private float[][] Q_M_lim_boost = new float[MAX_L_E][MAX_M];
 	private float[][] S_M_boost = new float[MAX_L_E][MAX_M];
+	//calculate_gain work buffers, written before they are read for each limiter band
+	private final float[] Q_M_lim = new float[MAX_M];
+	private final float[] G_lim = new float[MAX_M];
+	private final float[] S_M = new float[MAX_M];
 
 	public static int hf_adjustment(SBR sbr, float[][][] Xsbr, int ch) {
-		HFAdjustment adj = new HFAdjustment();
+		HFAdjustment adj = sbr.adj;
 		int ret = 0;
 
+		/* the instance is shared by all frames of the stream */
+		for(int l = 0; l<MAX_L_E; l++) {
+			Arrays.fill(adj.G_lim_boost[l], 0);
+			Arrays.fill(adj.Q_M_lim_boost[l], 0);
+			Arrays.fill(adj.S_M_boost[l], 0);
+		}
+
 		if(sbr.bs_frame_class[ch]==FIXFIX) {
 			sbr.l_A[ch] = -1;
 		}
@@ -259,10 +272,10 @@ class HFAdjustment implements SBRConstants, NoiseTable {
 		int current_t_noise_band = 0;
 		int S_mapped;
 
-		float[] Q_M_lim = new float[MAX_M];
-		float[] G_lim = new float[MAX_M];
+		final float[] Q_M_lim = adj.Q_M_lim;
+		final float[] G_lim = adj.G_lim;
 		float G_boost;
-		float[] S_M = new float[MAX_M];
+		final float[] S_M = adj.S_M;
 
 		for(l = 0; l<sbr.L_E[ch]; l++) {
 			int current_f_noise_band = 0;
@@ -11,7 +11,7 @@ class HFGeneration {
 
 	private static final int[] goalSbTab = {21, 23, 32, 43, 46, 64, 85, 93, 128, 0, 0, 0};
 
-	private static class acorr_coef {
+	static class acorr_coef {
 
 		float[] r01 = new float[2];
 		float[] r02 = new float[2];
@@ -24,7 +24,7 @@ class HFGeneration {
 	public static void hf_generation(SBR sbr, float[][][] Xlow,
 		float[][][] Xhigh, int ch) {
 		int l, i, x;
-		float[][] alpha_0 = new float[64][2], alpha_1 = new float[64][2];
+		final float[][] alpha_0 = sbr.alpha_0, alpha_1 = sbr.alpha_1;
 
 		int offset = sbr.tHFAdj;
 		int first = sbr.t_E[ch][0];
@@ -174,7 +174,7 @@ class HFGeneration {
 	private static void calc_prediction_coef(SBR sbr, float[][][] Xlow,
 		float[][] alpha_0, float[][] alpha_1, int k) {
 		float tmp;
-		acorr_coef ac = new acorr_coef();
+		final acorr_coef ac = sbr.ac;
 
 		auto_correlation(sbr, ac, Xlow, k, sbr.numTimeSlotsRate+6);
 
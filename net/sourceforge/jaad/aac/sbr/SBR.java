@@ -111,6 +111,13 @@ public class SBR implements SBRConstants, net.sourceforge.jaad.aac.syntax.Syntax
 	SynthesisFilterbank[] qmfs = new SynthesisFilterbank[2];
 
 	float[][][][] Xsbr = new float[2][MAX_NTSRHFG][64][2];
+	/* QMF output matrices, reused for every frame */
+	private final float[][][] X = new float[MAX_NTSR][64][2];
+	private float[][][] X_left, X_right;
+	/* HF generation/adjustment work buffers */
+	final float[][] alpha_0 = new float[64][2], alpha_1 = new float[64][2];
+	final HFGeneration.acorr_coef ac = new HFGeneration.acorr_coef();
+	final HFAdjustment adj = new HFAdjustment();
 
 	int numTimeSlotsRate;
 	int numTimeSlots;
@@ -1155,7 +1162,7 @@ public class SBR implements SBRConstants, net.sourceforge.jaad.aac.syntax.Syntax
 		boolean just_seeked) {
 		boolean dont_process = false;
 		int ret = 0;
-		float[][][] X = new float[MAX_NTSR][64][2];
+		final float[][][] X = this.X;
 
 		/* case can occur due to bit errors */
 		if(!stereo) return 21;
@@ -1216,7 +1223,7 @@ public class SBR implements SBRConstants, net.sourceforge.jaad.aac.syntax.Syntax
 		boolean just_seeked) {
 		boolean dont_process = false;
 		int ret = 0;
-		float[][][] X = new float[MAX_NTSR][64][2];
+		final float[][][] X = this.X;
 
 		/* case can occur due to bit errors */
 		if(stereo) return 21;
@@ -1266,8 +1273,17 @@ public class SBR implements SBRConstants, net.sourceforge.jaad.aac.syntax.Syntax
 		int l, k;
 		boolean dont_process = false;
 		int ret = 0;
-		float[][][] X_left = new float[38][64][2];
-		float[][][] X_right = new float[38][64][2];
+		if(this.X_left==null) {
+			this.X_left = new float[38][64][2];
+			this.X_right = new float[38][64][2];
+		}
+		else {
+			/* PS reads parts of the matrices that are not written every frame */
+			clear(this.X_left);
+			clear(this.X_right);
+		}
+		final float[][][] X_left = this.X_left;
+		final float[][][] X_right = this.X_right;
 
 		/* case can occur due to bit errors */
 		if(stereo) return 21;
@@ -1333,4 +1349,13 @@ public class SBR implements SBRConstants, net.sourceforge.jaad.aac.syntax.Syntax
 	public boolean isPSUsed() {
 		return ps_used;
 	}
+
+	static void clear(float[][][] x) {
+		for(int i = 0; i<x.length; i++) {
+			for(int j = 0; j<x[i].length; j++) {
+				x[i][j][0] = 0;
+				x[i][j][1] = 0;
+			}
+		}
+	}
 }
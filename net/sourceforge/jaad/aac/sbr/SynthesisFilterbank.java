@@ -49,6 +49,10 @@ class SynthesisFilterbank implements FilterbankTable {
 	private float[] v; //double ringbuffer
 	private int v_index; //ringbuffer index
 	private final int channels;
+	//per-slot work buffers, fully overwritten every time slot
+	private final float[] x1 = new float[32], x2 = new float[32];
+	private final float[] in_real1 = new float[32], in_imag1 = new float[32], out_real1 = new float[32], out_imag1 = new float[32];
+	private final float[] in_real2 = new float[32], in_imag2 = new float[32], out_real2 = new float[32], out_imag2 = new float[32];
 
 	public SynthesisFilterbank(int channels) {
 		this.channels = channels;
@@ -62,7 +66,7 @@ class SynthesisFilterbank implements FilterbankTable {
 
 	void sbr_qmf_synthesis_32(SBR sbr, float[][][] X,
 		float[] output) {
-		float[] x1 = new float[32], x2 = new float[32];
+		final float[] x1 = this.x1, x2 = this.x2;
 		float scale = 1.f/64.f;
 		int n, k, out = 0;
 		int l;
@@ -116,8 +120,8 @@ class SynthesisFilterbank implements FilterbankTable {
 
 	void sbr_qmf_synthesis_64(SBR sbr, float[][][] X,
 		float[] output) {
-		float[] in_real1 = new float[32], in_imag1 = new float[32], out_real1 = new float[32], out_imag1 = new float[32];
-		float[] in_real2 = new float[32], in_imag2 = new float[32], out_real2 = new float[32], out_imag2 = new float[32];
+		final float[] in_real1 = this.in_real1, in_imag1 = this.in_imag1, out_real1 = this.out_real1, out_imag1 = this.out_imag1;
+		final float[] in_real2 = this.in_real2, in_imag2 = this.in_imag2, out_real2 = this.out_real2, out_imag2 = this.out_imag2;
 		float[][] pX;
 		float scale = 1.f/64.f;
 		int n, k, out = 0;
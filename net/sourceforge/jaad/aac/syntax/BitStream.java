@@ -15,6 +15,7 @@ public class BitStream implements IBitStream {
 	private static final int WORD_BYTES = 4;
 	private static final int BYTE_MASK = 0xff;
 	private byte[] buffer;
+	private int limit; //number of valid bytes in the buffer, a multiple of WORD_BYTES
 	private int pos; //offset in the buffer array
 	private int cache; //current 4 bytes, that are read from the buffer
 	protected int bitsCached; //remaining bits in current cache
@@ -41,11 +42,23 @@ public class BitStream implements IBitStream {
      */
 	@Override
     public final void setData(byte[] data) {
+		setData(data, data.length);
+	}
+
+	/* (non-Javadoc)
+     * @see net.sourceforge.jaad.aac.syntax.IBitStream#setData(byte[], int)
+     */
+	@Override
+    public final void setData(byte[] data, int length) {
 		//make the buffer size an integer number of words
-		final int size = WORD_BYTES*((data.length+WORD_BYTES-1)/WORD_BYTES);
-		//only reallocate if needed
-		if(buffer==null||buffer.length!=size) buffer = new byte[size];
-		System.arraycopy(data, 0, buffer, 0, data.length);
+		final int size = WORD_BYTES*((length+WORD_BYTES-1)/WORD_BYTES);
+		//only grow the buffer, frames of one stream vary in size
+		if(buffer==null||buffer.length<size) buffer = new byte[size];
+		System.arraycopy(data, 0, buffer, 0, length);
+		for(int i = length; i<size; i++) {
+			buffer[i] = 0;
+		}
+		limit = size;
 		reset();
 	}
 
@@ -82,7 +95,7 @@ public class BitStream implements IBitStream {
      */
 	@Override
     public int getBitsLeft() {
-		return buffer != null ? 8*(buffer.length-pos)+bitsCached : 0;
+		return buffer != null ? 8*(limit-pos)+bitsCached : 0;
 	}
 
 	/**
@@ -91,7 +104,7 @@ public class BitStream implements IBitStream {
 	 */
 	protected int readCache(boolean peek) throws AACException {
 		int i;
-		if(pos>buffer.length-WORD_BYTES) throw new AACException("end of stream", true);
+		if(pos>limit-WORD_BYTES) throw new AACException("end of stream", true);
 		else i = ((buffer[pos]&BYTE_MASK)<<24)
 					|((buffer[pos+1]&BYTE_MASK)<<16)
 					|((buffer[pos+2]&BYTE_MASK)<<8)
@@ -15,6 +15,13 @@ public interface IBitStream {
 
     void setData(byte[] data);
 
+    /**
+     * Sets the first <code>length</code> bytes of <code>data</code> as the
+     * stream content, so a caller can reuse one array for frames of
+     * different sizes.
+     */
+    void setData(byte[] data, int length);
+
     void byteAlign() throws AACException;
 
     void reset();
@@ -32,6 +32,11 @@ public class NIOBitStream implements IBitStream {
         br = new BitReader(ByteBuffer.wrap(data));
     }
 
+    @Override
+    public void setData(byte[] data, int length) {
+        br = new BitReader(ByteBuffer.wrap(data, 0, length));
+    }
+
     @Override
     public void byteAlign() throws AACException {
         br.align();
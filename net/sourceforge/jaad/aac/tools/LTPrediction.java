@@ -33,6 +33,9 @@ public class LTPrediction implements SyntaxConstants {
 	};
 	private final int frameLength;
 	private final int[] states;
+	//processLTP work buffers
+	private final float[] in = new float[2048];
+	private final float[] out = new float[2048];
 	private int coef, lag, lastBand;
 	private boolean lagUpdate;
 	private boolean[] shortUsed, shortLagPresent, longUsed;
@@ -84,8 +87,8 @@ public class LTPrediction implements SyntaxConstants {
 
 		if(!info.isEightShortFrame()) {
 			final int samples = frameLength<<1;
-			final float[] in = new float[2048];
-			final float[] out = new float[2048];
+			final float[] in = this.in;
+			final float[] out = this.out;
 
 			for(int i = 0; i<samples; i++) {
 				in[i] = states[samples+i-lag]*CODEBOOK[coef];
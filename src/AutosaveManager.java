@@ -0,0 +1,554 @@
+package src;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+import src.dataStore.DataStore;
+
+/**
+ * Keeps a copy of the open project on disk so it can be recovered if the program doesn't close properly.
+ *
+ * Every few seconds, if the project has been changed (see markDirty), a ProjectCopy is taken on the event
+ * dispatch thread, where the project is edited, so no section is caught half way through a change. A background
+ * thread then writes each section of the copy (the details, the media library and each track) and appends the
+ * ones that are different from last time to a journal, with a single fsync for the lot, so a change to one track
+ * only writes that track. When the journal has grown well past the size of the project it is compacted: the
+ * latest copy of every section is written to a snapshot file, which replaces the old one, and the journal is emptied.
+ *
+ * On start up, a snapshot or journal left behind means the last session crashed, and the user is asked
+ * whether to recover it. The files are deleted when the program closes normally, see shutdown().
+ */
+public class AutosaveManager {
+
+	/**
+	 * Time between checks for changes, in milliseconds.
+	 */
+	private static final int INTERVAL = 2000;
+
+	/*
+	 * Where files that couldn't be recovered are moved to, so the next session doesn't overwrite them.
+	 */
+	private static final String UNRECOVERED_SUFFIX = ".unrecovered";
+
+	/*
+	 * The journal is compacted once it is larger than both of these.
+	 */
+	private static final int COMPACT_MIN_LENGTH = 1024*1024;
+	private static final int COMPACT_RATIO = 4;
+
+	/*
+	 * Record types. A record is [int payload length][byte type][int index][payload][long CRC32 of type, index and payload].
+	 */
+	private static final byte RECORD_PROJECT = 0;
+	private static final byte RECORD_LIBRARY = 1;
+	private static final byte RECORD_TRACK_COUNT = 2;
+	private static final byte RECORD_TRACK = 3;
+
+	private static final Object lock = new Object();
+
+	private static Thread thread = null;
+	private static volatile boolean running = false;
+
+	/**
+	 * Set while a project is being loaded, when the sections are only half read.
+	 */
+	private static volatile int suspended = 0;
+
+	/**
+	 * Set when a different project has been loaded, so everything is written and the journal compacted.
+	 */
+	private static volatile boolean rebase = false;
+
+	/**
+	 * Counts the projects loaded, so sections written out before a load aren't saved as part of the new project.
+	 */
+	private static volatile int generation = 0;
+
+	/**
+	 * Set when the project has changed since it was last copied.
+	 */
+	private static volatile boolean dirty = true;
+
+	/**
+	 * Every section of the project, written out from the same ProjectCopy.
+	 */
+	private static class Sections {
+		private int generation;
+		private byte[] projectDetails;
+		private byte[] mediaLibrary;
+		private ArrayList<byte[]> tracks = new ArrayList<byte[]>();
+	}
+
+	private static FileChannel journal = null;
+	private static long snapshotLength = 0;
+
+	/*
+	 * The sections as they were last written to the journal.
+	 */
+	private static byte[] projectDetails = null;
+	private static byte[] mediaLibrary = null;
+	private static ArrayList<byte[]> tracks = new ArrayList<byte[]>();
+
+	private static File getJournalFile(){
+		return new File(DataStore.getLocation()+"autosave.journal");
+	}
+
+	private static File getSnapshotFile(){
+		return new File(DataStore.getLocation()+"autosave.snapshot");
+	}
+
+	private static File getTemporarySnapshotFile(){
+		return new File(DataStore.getLocation()+"autosave.snapshot.tmp");
+	}
+
+	/**
+	 * Offers to recover the project left behind by a crash, then starts saving in the background.
+	 * Called once the editor is set up.
+	 */
+	public static void start(){
+		if(thread != null){
+			return;
+		}
+		running = true;
+
+		/*
+		 * Run this process on a separate thread, to stop it freezing the GUI.
+		 */
+		thread = new Thread("Autosave") {
+			public void run() {
+				recover();
+
+				while(running){
+					try {
+						Thread.sleep(INTERVAL);
+					} catch (InterruptedException e) {
+					}
+					if(!dirty && !rebase){
+						continue;
+					}
+					/*
+					 * The lock isn't held while waiting for the event dispatch thread, which may be waiting
+					 * for it in suspend() or resume().
+					 */
+					Sections sections = writeSections();
+					synchronized(lock){
+						if(!running){
+							break;
+						}
+						try {
+							if(!saveChanges(sections)){
+								dirty = true;//Try again next time.
+							}
+						} catch (Exception e) {
+							e.printStackTrace();
+							dirty = true;
+						}
+					}
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Stops saving and deletes the saved files, as closing the program normally isn't a crash.
+	 * Only call this when the user closes the program, not from a shutdown hook, which also runs
+	 * when the program is killed or the system shuts down.
+	 */
+	public static void shutdown(){
+		running = false;
+		synchronized(lock){
+			closeJournal();
+			getJournalFile().delete();
+			getSnapshotFile().delete();
+			getTemporarySnapshotFile().delete();
+		}
+	}
+
+	/**
+	 * Stops saving until resume() is called, while the project is in an inconsistent state.
+	 */
+	public static void suspend(){
+		synchronized(lock){
+			suspended++;
+		}
+	}
+
+	public static void resume(){
+		synchronized(lock){
+			suspended--;
+		}
+	}
+
+	/**
+	 * Writes the whole project on the next save, after a different project has been loaded.
+	 */
+	public static void rebase(){
+		generation++;
+		rebase = true;
+		dirty = true;
+	}
+
+	/**
+	 * Saves the project on the next check. Called for every change to the project, e.g. by the EditHistory.
+	 */
+	public static void markDirty(){
+		dirty = true;
+	}
+
+	/**
+	 * Asks whether to load the project from the files left behind, on the event dispatch thread.
+	 * The files are deleted once the project has been recovered (or the user doesn't want it), the
+	 * recovered project is saved again from scratch. Files that couldn't be read or loaded are kept,
+	 * moved out of the way of this session's files.
+	 */
+	private static void recover(){
+		File snapshot = getSnapshotFile();
+		if(!snapshot.exists()){
+			snapshot = getTemporarySnapshotFile();//The program stopped while a compacted snapshot was replacing the old one.
+		}
+		if(!snapshot.exists() && !getJournalFile().exists()){
+			return;
+		}
+
+		final boolean[] recovered = new boolean[1];
+		try {
+			final byte[] dataBytes = replay(snapshot, getJournalFile());
+			if(dataBytes != null){
+				SwingUtilities.invokeAndWait(new Runnable() {
+					public void run() {
+						int option = JOptionPane.showConfirmDialog(MainApplet.getInstance(),
+								"Visual Cross didn't close properly last time. Do you want to recover the project you were working on?",
+								"Recover Project", JOptionPane.YES_NO_OPTION);
+						if(option == JOptionPane.YES_OPTION){
+							recovered[0] = DataManager.loadProject(dataBytes);
+						} else {
+							recovered[0] = true;//Nothing to keep.
+						}
+					}
+				});
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+
+		synchronized(lock){
+			File[] files = new File[]{getJournalFile(), getSnapshotFile(), getTemporarySnapshotFile()};
+			for(File file : files){
+				if(recovered[0]){
+					file.delete();
+				} else if(file.exists()){
+					File kept = new File(file.getPath()+UNRECOVERED_SUFFIX);
+					kept.delete();
+					file.renameTo(kept);
+				}
+			}
+			rebase = true;
+		}
+	}
+
+	/**
+	 * Reads the latest copy of each section from the snapshot, then the journal.
+	 * Reading a file stops at the first record that is incomplete or doesn't match its checksum,
+	 * which is where the program stopped writing.
+	 * @return The project in DataManager's file format, or null if nothing usable was saved.
+	 */
+	private static byte[] replay(File snapshot, File journalFile) throws IOException {
+		byte[][] sections = new byte[2][];
+		ArrayList<byte[]> savedTracks = new ArrayList<byte[]>();
+		int trackCount = -1;
+
+		for(File file : new File[]{snapshot, journalFile}){
+			if(!file.exists()){
+				continue;
+			}
+			DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				CRC32 crc = new CRC32();
+				while(true){
+					int length = stream.readInt();
+					if(length < 0 || length > file.length()){
+						break;
+					}
+					byte type = stream.readByte();
+					int index = stream.readInt();
+					byte[] payload = new byte[length];
+					stream.readFully(payload);
+					long checksum = stream.readLong();
+
+					crc.reset();
+					crc.update(type);
+					crc.update(ByteBuffer.allocate(4).putInt(index).array());
+					crc.update(payload);
+					if(crc.getValue() != checksum){
+						break;
+					}
+
+					if(type == RECORD_PROJECT || type == RECORD_LIBRARY){
+						sections[type] = payload;
+					}
+					if(type == RECORD_TRACK_COUNT){
+						trackCount = index;
+					}
+					if(type == RECORD_TRACK){
+						while(savedTracks.size() <= index){
+							savedTracks.add(null);
+						}
+						savedTracks.set(index, payload);
+					}
+				}
+			} catch (EOFException e) {
+				//Stopped part way through writing a record.
+			} finally {
+				stream.close();
+			}
+		}
+
+		if(sections[RECORD_PROJECT] == null || sections[RECORD_LIBRARY] == null || trackCount < 0 || savedTracks.size() < trackCount){
+			return null;
+		}
+		ArrayList<byte[]> projectTracks = new ArrayList<byte[]>(savedTracks.subList(0, trackCount));
+		if(projectTracks.contains(null)){
+			return null;
+		}
+		return DataManager.assemble(sections[RECORD_PROJECT], sections[RECORD_LIBRARY], projectTracks);
+	}
+
+	/**
+	 * Copies the project on the event dispatch thread, waiting for it, then writes out every section of the copy.
+	 * @return The sections, or null if the project is being loaded or changed underneath them.
+	 */
+	private static Sections writeSections(){
+		final ProjectCopy[] copy = new ProjectCopy[1];
+		final int[] copyGeneration = new int[1];
+		try {
+			SwingUtilities.invokeAndWait(new Runnable() {
+				public void run() {
+					if(suspended > 0){
+						return;
+					}
+					dirty = false;//Cleared before copying, so a change made after this is saved next time.
+					copyGeneration[0] = generation;
+					try {
+						copy[0] = new ProjectCopy();
+					} catch (RuntimeException e) {
+						//Changed by a thread other than the event dispatch thread. Try again next time.
+						dirty = true;
+					}
+				}
+			});
+		} catch (InterruptedException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			e.printStackTrace();
+			return null;
+		}
+		if(copy[0] == null){
+			return null;
+		}
+
+		Sections written = new Sections();
+		written.generation = copyGeneration[0];
+		try {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			copy[0].writeProjectDetails(new DataOutputStream(output));
+			written.projectDetails = output.toByteArray();
+
+			output = new ByteArrayOutputStream();
+			copy[0].writeMediaLibrary(new DataOutputStream(output));
+			written.mediaLibrary = output.toByteArray();
+
+			for(int index = 0; index < copy[0].getTrackCount(); index++){
+				output = new ByteArrayOutputStream();
+				copy[0].writeTrack(new DataOutputStream(output), index);
+				written.tracks.add(output.toByteArray());
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		return written;
+	}
+
+	/**
+	 * Appends the sections that have changed since the last save to the journal, and compacts it if it has grown too big.
+	 * @param sections - The sections as they are now, from writeSections().
+	 * @return False if the sections couldn't be saved, as the project is being loaded or changed underneath them.
+	 */
+	private static boolean saveChanges(Sections sections) throws IOException {
+		if(sections == null || suspended > 0 || sections.generation != generation){
+			return false;
+		}
+
+		boolean compact = rebase;
+		if(rebase){
+			rebase = false;
+			projectDetails = null;
+			mediaLibrary = null;
+			tracks.clear();
+		}
+
+		byte[] newProjectDetails = sections.projectDetails;
+		byte[] newMediaLibrary = sections.mediaLibrary;
+		ArrayList<byte[]> newTracks = sections.tracks;
+
+		/*
+		 * Only the sections that are different from last time are added to the journal.
+		 */
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		DataOutputStream stream = new DataOutputStream(records);
+		if(!Arrays.equals(newProjectDetails, projectDetails)){
+			writeRecord(stream, RECORD_PROJECT, 0, newProjectDetails);
+		}
+		if(!Arrays.equals(newMediaLibrary, mediaLibrary)){
+			writeRecord(stream, RECORD_LIBRARY, 0, newMediaLibrary);
+		}
+		if(newTracks.size() != tracks.size() || projectDetails == null){
+			writeRecord(stream, RECORD_TRACK_COUNT, newTracks.size(), new byte[0]);
+		}
+		for(int index = 0; index < newTracks.size(); index++){
+			if(index >= tracks.size() || !Arrays.equals(newTracks.get(index), tracks.get(index))){
+				writeRecord(stream, RECORD_TRACK, index, newTracks.get(index));
+			}
+		}
+
+		if(records.size() > 0){
+			openJournal();
+			long offset = journal.position();
+			try {
+				ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+				while(buffer.hasRemaining()){
+					journal.write(buffer);
+				}
+				journal.force(false);//One sync for the whole batch.
+			} catch (IOException e) {
+				discardAppend(offset);
+				throw e;
+			}
+
+			projectDetails = newProjectDetails;
+			mediaLibrary = newMediaLibrary;
+			tracks = newTracks;
+		}
+
+		if(journal != null && journal.size() > COMPACT_MIN_LENGTH && journal.size() > COMPACT_RATIO*snapshotLength){
+			compact = true;
+		}
+		if(compact && projectDetails != null){
+			compact();
+		}
+		return true;
+	}
+
+	/**
+	 * Cuts a failed or partly written append off the end of the journal, so the records appended
+	 * after it aren't hidden behind it when the journal is replayed. If even that fails, the journal
+	 * is closed and the whole project written again on the next save, which empties the journal.
+	 * The sections that were being appended are still different from the last saved ones, so they
+	 * are written again next time either way.
+	 * @param offset - The end of the last complete append.
+	 */
+	private static void discardAppend(long offset){
+		try {
+			journal.truncate(offset);
+			journal.position(offset);
+		} catch (IOException e) {
+			e.printStackTrace();
+			closeJournal();
+			rebase = true;
+		}
+	}
+
+	/**
+	 * Replaces the snapshot with the latest copy of every section and empties the journal.
+	 * The new snapshot is written to a temporary file first, so there is always a complete one on disk.
+	 */
+	private static void compact() throws IOException {
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		DataOutputStream stream = new DataOutputStream(records);
+		writeRecord(stream, RECORD_PROJECT, 0, projectDetails);
+		writeRecord(stream, RECORD_LIBRARY, 0, mediaLibrary);
+		writeRecord(stream, RECORD_TRACK_COUNT, tracks.size(), new byte[0]);
+		for(int index = 0; index < tracks.size(); index++){
+			writeRecord(stream, RECORD_TRACK, index, tracks.get(index));
+		}
+
+		File temporary = getTemporarySnapshotFile();
+		RandomAccessFile output = new RandomAccessFile(temporary, "rw");
+		try {
+			output.setLength(0);
+			output.write(records.toByteArray());
+			output.getChannel().force(true);
+		} finally {
+			output.close();
+		}
+
+		File snapshot = getSnapshotFile();
+		snapshot.delete();
+		if(!temporary.renameTo(snapshot)){
+			throw new IOException("Couldn't replace "+snapshot);
+		}
+		snapshotLength = records.size();
+
+		/*
+		 * Everything in the journal is in the snapshot now. If the program stops before this,
+		 * replaying the journal over the new snapshot just writes the same sections again.
+		 */
+		openJournal();
+		journal.truncate(0);
+		journal.position(0);
+		journal.force(true);
+	}
+
+	private static void writeRecord(DataOutputStream stream, byte type, int index, byte[] payload) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(type);
+		crc.update(ByteBuffer.allocate(4).putInt(index).array());
+		crc.update(payload);
+
+		stream.writeInt(payload.length);
+		stream.writeByte(type);
+		stream.writeInt(index);
+		stream.write(payload);
+		stream.writeLong(crc.getValue());
+	}
+
+	private static void openJournal() throws IOException {
+		if(journal == null){
+			File file = getJournalFile();
+			file.getParentFile().mkdirs();
+			journal = new RandomAccessFile(file, "rw").getChannel();
+			journal.position(journal.size());
+		}
+	}
+
+	private static void closeJournal(){
+		if(journal != null){
+			try {
+				journal.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			journal = null;
+		}
+	}
+
+}
@@ -6,16 +6,18 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 
 import src.renderer.Renderer;
 import src.screens.editorScreen.libraryPanel.mediaPanel.MediaPanelManager;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.Album;
-import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaAudioItem;
-import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaImageItem;
+import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaInfo;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaItem;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaManager;
+import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaVideoItem;
 import src.screens.editorScreen.timeline.TimelineManager;
+import src.screens.editorScreen.timeline.edit.EditHistory;
 import src.screens.editorScreen.timeline.track.AudioTrack;
 import src.screens.editorScreen.timeline.track.TextTrack;
 import src.screens.editorScreen.timeline.track.Track;
@@ -28,8 +30,16 @@ import src.util.Misc;
 
 public class DataManager {
 
-	public static ArrayList<byte[]> undoHistory = new ArrayList<byte[]>();//Stores all previous program states
-	public static ArrayList<byte[]> redoHistory = new ArrayList<byte[]>();//Stores all previous undo'd-program states
+	/*
+	 * Project files start with the project width, which is never negative, so files that start with
+	 * this marker are in a newer format: the marker is followed by the format version.
+	 */
+	private static final int FORMAT_MARKER = -1;
+	/**
+	 * Version 2 saves each media item's type and the metadata read from its header,
+	 * so a project opens without probing or decoding its media again.
+	 */
+	private static final int FORMAT_VERSION = 2;
 	
 	
 	/**
@@ -49,88 +59,26 @@ public class DataManager {
 			
 			
 			
+			ProjectCopy project = new ProjectCopy();
+			
 			/*
 			 * Write project details
 			 */
-			stream.writeInt(Project.projectWidth);
-			stream.writeInt(Project.projectHeight);
-			stream.writeDouble(Project.frameRate);
-			
-			
-			
-			
+			stream.writeInt(FORMAT_MARKER);
+			stream.writeInt(FORMAT_VERSION);
+			project.writeProjectDetails(stream);
 			
 			/*
 			 * Write media library
 			 */
-			stream.writeInt(MediaPanelManager.albums.size());
-			
-			for(Album album : MediaPanelManager.albums){
-				
-				stream.writeUTF(album.albumName);
-				stream.writeInt(album.mediaItems.size());
-				
-				for(MediaItem mediaItem : album.mediaItems){
-					stream.writeUTF(mediaItem.directory);
-					if(mediaItem instanceof MediaImageItem){
-						stream.writeInt(0);
-					}
-					if(mediaItem instanceof MediaAudioItem){
-						stream.writeInt(1);
-					}
-					
-				}
-				
-			}
+			project.writeMediaLibrary(stream);
 			
 			/*
 			 * Write time-line track information
 			 */
-			stream.writeInt(src.screens.editorScreen.timeline.TimelineManager.tracks.size());
-			
-			for(Track track : src.screens.editorScreen.timeline.TimelineManager.tracks){
-				if(track instanceof VideoTrack){
-					stream.writeByte(0);
-				}
-				if(track instanceof AudioTrack){
-					stream.writeByte(1);
-				}
-				if(track instanceof TextTrack){
-					stream.writeByte(2);
-				}
-				
-				/*
-				 * Loop through and write each track item
-				 */
-				stream.writeInt(track.trackItems.size());
-				for(TrackItem trackItem : track.trackItems){
-					stream.writeInt(MediaPanelManager.albums.indexOf(trackItem.mediaItem.thisAlbum));
-					stream.writeInt(trackItem.mediaItem.thisAlbum.mediaItems.indexOf(trackItem.mediaItem));
-					stream.writeInt(trackItem.trackStartPosition);
-					stream.writeInt(trackItem.mediaStartPosition);
-					stream.writeInt(trackItem.mediaDuration);
-				}
-				
-				/*
-				 * Loop through and write each transition on the track
-				 */
-				stream.writeInt(track.transitions.size());
-				for(Transition transition : track.transitions){
-					
-					if(transition instanceof Fade){
-						stream.writeByte(0);
-					}
-					if(transition instanceof WipeDown){
-						stream.writeByte(1);
-					}
-					
-					
-					stream.writeInt(track.trackItems.indexOf(transition.item1));
-					stream.writeInt(track.trackItems.indexOf(transition.item2));
-					stream.writeInt(transition.duration);
-					
-				}
-				
+			stream.writeInt(project.getTrackCount());
+			for(int index = 0; index < project.getTrackCount(); index++){
+				project.writeTrack(stream, index);
 			}
 			
 			
@@ -144,6 +92,24 @@ public class DataManager {
 
 		return null;//Something went wrong with the writing process, so return as null.
 	}
+
+	/**
+	 * Puts sections written by a ProjectCopy back together as a project file.
+	 * @param tracks - The sections of each track, in order.
+	 */
+	public static byte[] assemble(byte[] projectDetails, byte[] mediaLibrary, ArrayList<byte[]> tracks) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		DataOutputStream stream = new DataOutputStream(output);
+		stream.writeInt(FORMAT_MARKER);
+		stream.writeInt(FORMAT_VERSION);
+		stream.write(projectDetails);
+		stream.write(mediaLibrary);
+		stream.writeInt(tracks.size());
+		for(byte[] track : tracks){
+			stream.write(track);
+		}
+		return output.toByteArray();
+	}
 	
 	/**
 	 * Loads/reads the program saved data from a file.
@@ -169,24 +135,10 @@ public class DataManager {
 						return;
 					}
 					
-					/*
-					 * Setup the progress bar
-					 */
-					MainApplet.instance.getjLabel19().setText("");
-					MainApplet.instance.getjLabel20().setText("0%");
-					MainApplet.instance.getjProgressBar1().setValue(0);
-					MainApplet.instance.getjLabel21().setText("Importing albums...");
-					MainApplet.instance.getjInternalFrame2().setTitle("Importing");
-					MainApplet.instance.getjInternalFrame2().setVisible(true);
-					
-					
 					if(file.exists()){//Make sure the file actually exists for attempting to read from it.
 						byte[] dataBytes = Misc.getBytesFromFile(file);//Converts the file into an array of bytes.
-						readFromByteArray(dataBytes);//Load the file, with the array of bytes as the parameter.
+						loadProject(dataBytes);//Load the file, with the array of bytes as the parameter.
 					}
-					
-					MainApplet.instance.getjInternalFrame2().setVisible(false);//Hide progress bar
-					MainApplet.getInstance().getjPanel16().setVisible(true);//Show editor screen
 				} catch (Exception e){
 					e.printStackTrace();
 				}
@@ -196,12 +148,37 @@ public class DataManager {
 		}.start();
 	}
 	
+	/**
+	 * Loads a project while showing the progress bar, then shows the editor screen.
+	 * @param dataBytes - The bytes containing the file data.
+	 * @return False if the data couldn't be read.
+	 */
+	public static boolean loadProject(byte[] dataBytes){
+		/*
+		 * Setup the progress bar
+		 */
+		MainApplet.instance.getjLabel19().setText("");
+		MainApplet.instance.getjLabel20().setText("0%");
+		MainApplet.instance.getjProgressBar1().setValue(0);
+		MainApplet.instance.getjLabel21().setText("Importing albums...");
+		MainApplet.instance.getjInternalFrame2().setTitle("Importing");
+		MainApplet.instance.getjInternalFrame2().setVisible(true);
+		
+		boolean loaded = readFromByteArray(dataBytes);
+		
+		MainApplet.instance.getjInternalFrame2().setVisible(false);//Hide progress bar
+		MainApplet.getInstance().getjPanel16().setVisible(true);//Show editor screen
+		return loaded;
+	}
+	
 	
 	/**
 	 * Loads/reads the program saved data from a byte array.
 	 * @param dataBytes - The bytes containing the file data.
+	 * @return False if the data couldn't be read, the project may then be partly loaded.
 	 */
-	public static void readFromByteArray(byte[] dataBytes){
+	public static boolean readFromByteArray(byte[] dataBytes){
+		AutosaveManager.suspend();//Don't autosave a half loaded project.
 		try {
 			
 			
@@ -216,7 +193,12 @@ public class DataManager {
 			/*
 			 * Read project details
 			 */
+			int version = 1;
 			int projectWidth = stream.readInt();
+			if(projectWidth == FORMAT_MARKER){
+				version = stream.readInt();
+				projectWidth = stream.readInt();
+			}
 			int projectHeight = stream.readInt();
 			double frameRate = stream.readDouble();
 			Project.setupProject(projectWidth, projectHeight, frameRate);
@@ -226,6 +208,13 @@ public class DataManager {
 			 * Read media library
 			 */
 			int totalAlbums = stream.readInt();
+			for(Album oldAlbum : MediaPanelManager.albums){
+				for(MediaItem mediaItem : oldAlbum.mediaItems){
+					if(mediaItem instanceof MediaVideoItem){
+						((MediaVideoItem) mediaItem).closeDecoder();
+					}
+				}
+			}
 			MediaPanelManager.albums.clear();
 			for(int albumIndex = 0; albumIndex < totalAlbums; albumIndex++){
 				String albumName = stream.readUTF();
@@ -260,7 +249,16 @@ public class DataManager {
 					
 					int mediaItemType = stream.readInt();
 					
-					MediaManager.addFile(new File(directory), album);
+					/*
+					 * The saved metadata is used if the file hasn't changed since, so the item
+					 * doesn't have to be probed, and its decoder is only opened in the background.
+					 */
+					MediaInfo savedInfo = null;
+					if(version >= 2){
+						savedInfo = MediaInfo.read(stream);
+					}
+					
+					MediaManager.addFile(new File(directory), album, savedInfo);
 				}
 				
 			}
@@ -336,43 +334,17 @@ public class DataManager {
 				
 			}
 			
+			EditHistory.clear();//Edits made to the previous project can't be undone in this one.
 			
 			
 			
+			return true;
 		} catch (Exception e){
 			e.printStackTrace();
-		}
-	}
-	
-	/**
-	 * Saves the current program state.
-	 * @param saveToFile TODO
-	 * @param addUndoPoint - Adds an undo check point, allowing the program to return to this state in the future.
-	 */
-	public static void saveData(boolean addUndoPoint){
-		byte[] writtenData = writeDataToByteArray();//Converts the current state of the program into a byte array.
-		
-		/*
-		 * This section is responsible for actually storing a copy of the programs current state.
-		 * -This state can be loaded again later on, if the user wants to undo a change.
-		 */
-		if(addUndoPoint){
-			undoHistory.add(writtenData);//Adds the current state of the program to a global list (arraylist)
-			/*
-			 * The small section below ensures that the undo system won't consume too much memory.
-			 * -If 20 previous states of the program already exist, it removes the first one to make room for this new one.
-			 * (This means that the program will only store a maximum of 20 previous states.)
-			 */
-			if(undoHistory.size() == 20){
-				undoHistory.remove(0);//Remove from global list
-			}
-			/*
-			 * 
-			 * Anything stored in the list below is no longer needed because this list contains future states of the previous
-			 * program state. As we now have a new program state, we no longer have any future states of this.
-			 * (This list now contains future states which are for the wrong program state, so we need to clear it.)
-			 */
-			redoHistory.clear();//Clear this data as its no longer relevant/needed.
+			return false;
+		} finally {
+			AutosaveManager.rebase();//Start the autosave again from this project.
+			AutosaveManager.resume();
 		}
 	}
 	
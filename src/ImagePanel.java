@@ -2,17 +2,22 @@ package src;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.Toolkit;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
-import java.awt.image.MemoryImageSource;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.VolatileImage;
+import java.awt.image.WritableRaster;
 import java.util.ArrayList;
 
 import javax.swing.JPanel;
 
 
 import src.multiThreading.threads.DecodingThread;
-import src.multiThreading.threads.RenderingThread;
 import src.renderer.Renderer;
 
 
@@ -47,10 +52,28 @@ public class ImagePanel extends JPanel
 		
 	}
 	
-	public static BufferedImage lastBufferedImage;
-	
 	public static BufferedImage fullQualityFrame;
 	
+	/*
+	 * Stands in for a frame that has been rendered as blank (no pixels).
+	 */
+	private static final Object BLANK_FRAME = new Object();
+	
+	/*
+	 * Frames are presented by copying the rendered pixels straight into the int[] of a reusable image,
+	 * then scaling that once into an accelerated VolatileImage at the displayed size. A repaint that
+	 * doesn't change the frame is then a single unscaled blit, with nothing allocated.
+	 */
+	private BufferedImage frameImage;
+	private int[] frameData;
+	private VolatileImage scaledFrame;
+	
+	/*
+	 * The frame (int[] pixels, BufferedImage or BLANK_FRAME) currently scaled into scaledFrame.
+	 */
+	private Object presentedFrame;
+	private boolean scaledFrameValid = false;
+	
 	
 	public static boolean generatingFullQualityFrame = false;
 	
@@ -173,17 +196,7 @@ public class ImagePanel extends JPanel
 
 		int currentFrame = src.screens.editorScreen.timeline.TimelineManager.timelinePosition;
 
-		byte status;
-
-		BufferedImage frame = RenderingThread.getFrame(currentFrame);
-
-		if(frame != null){
-			lastBufferedImage = frame;
-		}
-		
-		if(fullQualityFrame != null){
-			lastBufferedImage = fullQualityFrame;
-		}
+		Object frame = getFrameToPresent(currentFrame);
 		
 		if(lastFrame != currentFrame){
 			
@@ -192,20 +205,110 @@ public class ImagePanel extends JPanel
 			lastFrame = currentFrame;
 		}
 
-		if(lastBufferedImage != null){
-			Image image2 = lastBufferedImage.getScaledInstance((int)videoWidth, (int)videoHeight, Image.SCALE_FAST);
-			g.drawImage(image2, videoX, videoY, this);
+		/*
+		 * Keep showing the last frame until the current one has been rendered.
+		 */
+		if(frame == null){
+			frame = presentedFrame;
+		}
+
+		if(frame != null && videoWidth > 0 && videoHeight > 0 && prepareScaledFrame(videoWidth, videoHeight)){
+			if(frame != presentedFrame || !scaledFrameValid){
+				scaleFrame(frame, videoWidth, videoHeight);
+			}
+			g.drawImage(scaledFrame, videoX, videoY, this);
+			if(scaledFrame.contentsLost()){
+				scaledFrameValid = false;
+				repaint();
+			}
 		} else {
 			g.setColor(new Color(0,0,0));
 			g.fillRect(videoX, videoY, Project.getScaledWidth(), Project.getScaledHeight());
 		}
 	}
 	
+	/**
+	 * @return The pixels of the frame if it has been rendered, BLANK_FRAME if it was rendered
+	 * without pixels, the full quality frame if there is one, or null if it isn't ready yet.
+	 */
+	private Object getFrameToPresent(int frameId){
+		if(fullQualityFrame != null){
+			return fullQualityFrame;
+		}
+		byte[] status = Renderer.renderingStatus;
+		int[][] pixels = Renderer.pixels;
+		if(status != null && status.length > frameId && frameId >= 0 && status[frameId] == 2){
+			if(pixels.length > frameId && pixels[frameId] != null){
+				return pixels[frameId];
+			}
+			return BLANK_FRAME;
+		}
+		update();
+		return null;
+	}
+	
+	/**
+	 * Makes sure the VolatileImage exists at the given size and still belongs to this screen.
+	 * @return false if no accelerated image could be made (panel not displayable yet).
+	 */
+	private boolean prepareScaledFrame(int width, int height){
+		if(scaledFrame != null){
+			if(scaledFrame.getWidth() != width || scaledFrame.getHeight() != height
+					|| scaledFrame.validate(getGraphicsConfiguration()) == VolatileImage.IMAGE_INCOMPATIBLE){
+				scaledFrame.flush();
+				scaledFrame = null;
+			} else if(scaledFrame.contentsLost()){
+				scaledFrameValid = false;
+			}
+		}
+		if(scaledFrame == null){
+			scaledFrame = createVolatileImage(width, height);
+			scaledFrameValid = false;
+		}
+		return scaledFrame != null;
+	}
+	
+	/**
+	 * Scales a frame into the VolatileImage. Rendered pixels are copied into the reusable frame image first.
+	 */
+	private void scaleFrame(Object frame, int width, int height){
+		Graphics2D g = scaledFrame.createGraphics();
+		g.setColor(new Color(0,0,0));
+		g.fillRect(0, 0, width, height);
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+		
+		if(frame instanceof int[]){
+			int[] pixels = (int[]) frame;
+			int frameWidth = Project.getScaledWidth();
+			int frameHeight = Project.getScaledHeight();
+			if(frameImage == null || frameImage.getWidth() != frameWidth || frameImage.getHeight() != frameHeight){
+				frameImage = new BufferedImage(frameWidth, frameHeight, BufferedImage.TYPE_INT_ARGB);
+				frameData = ((DataBufferInt) frameImage.getRaster().getDataBuffer()).getData();
+			}
+			System.arraycopy(pixels, 0, frameData, 0, Math.min(pixels.length, frameData.length));
+			g.drawImage(frameImage, 0, 0, width, height, null);
+		} else if(frame instanceof BufferedImage){
+			g.drawImage((BufferedImage) frame, 0, 0, width, height, null);
+		}
+		
+		g.dispose();
+		presentedFrame = frame;
+		scaledFrameValid = true;
+	}
+	
 	public static BufferedImage getBI(int[] pixels, int width, int height) {
 		BufferedImage finalimg = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
         
-        Image piximg = Toolkit.getDefaultToolkit().createImage(new MemoryImageSource(width, height, pixels,0,width));
-        finalimg.getGraphics().drawImage(piximg, 0, 0, null);
+        /*
+         * Wrap the pixels as an ARGB image (no copy) instead of going through a MemoryImageSource producer.
+         */
+        DirectColorModel colorModel = (DirectColorModel) ColorModel.getRGBdefault();
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, width*height), width, height, width,
+        		colorModel.getMasks(), null);
+        BufferedImage piximg = new BufferedImage(colorModel, raster, false, null);
+        Graphics g = finalimg.getGraphics();
+        g.drawImage(piximg, 0, 0, null);
+        g.dispose();
         return finalimg;
     }
 	
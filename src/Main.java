@@ -1,6 +1,8 @@
 package src;
 
 import java.awt.Component;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 import javax.swing.JApplet;
 import javax.swing.JFrame;
@@ -8,10 +10,15 @@ import javax.swing.JFrame;
 public class Main extends MainApplet {
 //
 	  public static void main(String[] args) {
-	    JApplet applet = new MainApplet();
+	    final JApplet applet = new MainApplet();
 	    JFrame frame = new JFrame("Visual Cross");
 	    frame.getContentPane().add(applet);
 	    frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+	    frame.addWindowListener(new WindowAdapter() {
+	    	public void windowClosing(WindowEvent e) {
+	    		applet.destroy();//Runs before the program exits.
+	    	}
+	    });
 	    applet.init();
 	    frame.pack();
 	    frame.setSize(800, 500);
@@ -47,6 +47,9 @@ import src.screens.editorScreen.libraryPanel.transitionPanel.TransitionManager;
 import src.screens.editorScreen.newProjectPanel.NewProject;
 import src.screens.editorScreen.previewPanel.PreviewPanelManager;
 import src.screens.editorScreen.timeline.TimelineManager;
+import src.screens.editorScreen.timeline.edit.AddTransitionEdit;
+import src.screens.editorScreen.timeline.edit.ChangeItemEdit;
+import src.screens.editorScreen.timeline.edit.EditHistory;
 import src.screens.editorScreen.timeline.track.Track;
 import src.screens.editorScreen.timeline.track.TrackObject;
 import src.screens.editorScreen.timeline.track.trackItem.TrackItem;
@@ -193,6 +196,7 @@ public class MainApplet extends javax.swing.JApplet {
 
 					
 					ExportManager.updateVideoSizePanel();
+					ExportManager.setupCodecPanel();
 					NewProject.updateVideoSizePanel();
 					PreviewPanelManager.refreshViewModeButtons();
 					
@@ -212,6 +216,7 @@ public class MainApplet extends javax.swing.JApplet {
 					refreshTransitionCatagoryList();
 					jList1.setSelectedIndex(0);
 					
+					AutosaveManager.start();
 					
 						}
 
@@ -227,6 +232,14 @@ public class MainApplet extends javax.swing.JApplet {
 		}
 	}
 	
+	/**
+	 * Called when the user closes the program, which isn't a crash, so there is nothing left to recover.
+	 */
+	@Override
+	public void destroy() {
+		AutosaveManager.shutdown();
+	}
+	
 	private void preInit(){
 		
 		 jLabel23 = new javax.swing.JLabel();
@@ -488,6 +501,8 @@ public class MainApplet extends javax.swing.JApplet {
         jMenuItem3 = new javax.swing.JMenuItem();
         jMenuItem4 = new javax.swing.JMenuItem();
         jMenu2 = new javax.swing.JMenu();
+        jMenuItem5 = new javax.swing.JMenuItem();
+        jMenuItem6 = new javax.swing.JMenuItem();
 
         jTable1.setModel(new javax.swing.table.DefaultTableModel(
             new Object [][] {
@@ -1099,7 +1114,7 @@ public class MainApplet extends javax.swing.JApplet {
 
         jLabel12.setText("Video codec: ");
 
-        jComboBox4.setModel(new javax.swing.DefaultComboBoxModel(new String[] { "JPEG", "PNG" }));
+        jComboBox4.setModel(new javax.swing.DefaultComboBoxModel(new String[] { "JPEG", "PNG", "H.264", "ProRes 422" }));
 
         jLabel13.setText("Compression: ");
 
@@ -2818,6 +2833,25 @@ public class MainApplet extends javax.swing.JApplet {
         jMenuBar1.add(jMenu1);
 
         jMenu2.setText("Edit");
+
+        jMenuItem5.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_Z, java.awt.event.InputEvent.CTRL_MASK));
+        jMenuItem5.setText("Undo");
+        jMenuItem5.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                jMenuItem5ActionPerformed(evt);
+            }
+        });
+        jMenu2.add(jMenuItem5);
+
+        jMenuItem6.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_Y, java.awt.event.InputEvent.CTRL_MASK));
+        jMenuItem6.setText("Redo");
+        jMenuItem6.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                jMenuItem6ActionPerformed(evt);
+            }
+        });
+        jMenu2.add(jMenuItem6);
+
         jMenuBar1.add(jMenu2);
 
         setJMenuBar(jMenuBar1);
@@ -3136,175 +3170,197 @@ public class MainApplet extends javax.swing.JApplet {
 	}//GEN-LAST:event_timeline2MouseDragged
 
 	private void timeline2MouseReleased(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_timeline2MouseReleased
+		try {
 
 		
 
-		int x = evt.getX();
-		int y = evt.getY();
+			int x = evt.getX();
+			int y = evt.getY();
 
 		
-		//System.
+			//System.
 		
-		if(!src.screens.editorScreen.timeline.track.TrackManager.validTrackItemPosition(timeline2.draggedTrackItem) && timeline2.croppedTrackItem == null){
-			//System.out.println(timeline2.draggedTrackItem.trackStartPosition+ " = "+timeline2.itemDraggedLastX);
-			timeline2.draggedTrackItem.trackStartPosition = timeline2.itemDraggedLastX;
+			if(!src.screens.editorScreen.timeline.track.TrackManager.validTrackItemPosition(timeline2.draggedTrackItem) && timeline2.croppedTrackItem == null){
+				//System.out.println(timeline2.draggedTrackItem.trackStartPosition+ " = "+timeline2.itemDraggedLastX);
+				timeline2.draggedTrackItem.trackStartPosition = timeline2.itemDraggedLastX;
 			
-			src.screens.editorScreen.timeline.track.TrackManager.moveItemToNewTrack(timeline2.draggedTrackItem, timeline2.itemDraggedLastTrack);
-		}
+				src.screens.editorScreen.timeline.track.TrackManager.moveItemToNewTrack(timeline2.draggedTrackItem, timeline2.itemDraggedLastTrack);
+			}
 		
-		if(!src.screens.editorScreen.timeline.track.TrackManager.validTrackItemPosition(timeline2.croppedTrackItem)){
-			timeline2.croppedTrackItem.mediaDuration = timeline2.itemCroppedLastDuration;
-		}
+			if(!src.screens.editorScreen.timeline.track.TrackManager.validTrackItemPosition(timeline2.croppedTrackItem)){
+				timeline2.croppedTrackItem.mediaDuration = timeline2.itemCroppedLastDuration;
+			}
 
+			/*
+			 * Record where the item was before it was moved or trimmed, so it can be undone.
+			 */
+			if(timeline2.croppedTrackItem != null){
+				TrackItem trackItem = timeline2.croppedTrackItem;
+				ChangeItemEdit edit = new ChangeItemEdit(trackItem, src.screens.editorScreen.timeline.track.TrackManager.getTrackForItem(trackItem), trackItem.trackStartPosition, trackItem.mediaStartPosition, timeline2.itemCroppedLastDuration);
+				if(edit.changed()){
+					EditHistory.record(edit);
+				}
+			} else if(timeline2.draggedTrackItem != null){
+				TrackItem trackItem = timeline2.draggedTrackItem;
+				ChangeItemEdit edit = new ChangeItemEdit(trackItem, timeline2.itemDraggedLastTrack, timeline2.itemDraggedLastX, trackItem.mediaStartPosition, trackItem.mediaDuration);
+				if(edit.changed()){
+					EditHistory.record(edit);
+				}
+			}
 
-		if(timeline2.draggedTrackItem != null){
-			if(timeline2.draggedTrackItem.trackStartPosition == timeline2.itemDraggedLastX && src.screens.editorScreen.timeline.track.TrackManager.getTrackForItem(timeline2.draggedTrackItem) == timeline2.itemDraggedLastTrack){
+
+			if(timeline2.draggedTrackItem != null){
+				if(timeline2.draggedTrackItem.trackStartPosition == timeline2.itemDraggedLastX && src.screens.editorScreen.timeline.track.TrackManager.getTrackForItem(timeline2.draggedTrackItem) == timeline2.itemDraggedLastTrack){
 				
-				src.screens.editorScreen.timeline.TimelineManager.timelinePosition = src.screens.editorScreen.timeline.track.TrackManager.pixelPositionToTrackPosition(x);
-				ImagePanel.generateFullQualityFrame();
-			} else {
-				for(int frameIndex = timeline2.draggedTrackItem.getTrackStartPosition(); frameIndex < timeline2.draggedTrackItem.getTrackStartPosition()+timeline2.draggedTrackItem.mediaDuration+1; frameIndex++){
-					if(frameIndex+1 < Renderer.renderingStatus.length){
-					Renderer.renderingStatus[frameIndex] = 0;
+					src.screens.editorScreen.timeline.TimelineManager.timelinePosition = src.screens.editorScreen.timeline.track.TrackManager.pixelPositionToTrackPosition(x);
+					Timeline.markPositionDirty();
 					ImagePanel.generateFullQualityFrame();
-					}
-				}
-				
-				for(int frameIndex = timeline2.itemDraggedLastX; frameIndex < timeline2.itemDraggedLastX+timeline2.draggedTrackItem.mediaDuration+1; frameIndex++){
-					if(frameIndex+1 < Renderer.renderingStatus.length){
+				} else {
+					for(int frameIndex = timeline2.draggedTrackItem.getTrackStartPosition(); frameIndex < timeline2.draggedTrackItem.getTrackStartPosition()+timeline2.draggedTrackItem.mediaDuration+1; frameIndex++){
+						if(frameIndex+1 < Renderer.renderingStatus.length){
 						Renderer.renderingStatus[frameIndex] = 0;
 						ImagePanel.generateFullQualityFrame();
+						}
+					}
+				
+					for(int frameIndex = timeline2.itemDraggedLastX; frameIndex < timeline2.itemDraggedLastX+timeline2.draggedTrackItem.mediaDuration+1; frameIndex++){
+						if(frameIndex+1 < Renderer.renderingStatus.length){
+							Renderer.renderingStatus[frameIndex] = 0;
+							ImagePanel.generateFullQualityFrame();
+						}
 					}
 				}
-			}
 
-		} else {
-			if(timeline2.croppedTrackItem == null){//stops position moving when cropping
-			src.screens.editorScreen.timeline.TimelineManager.timelinePosition = src.screens.editorScreen.timeline.track.TrackManager.pixelPositionToTrackPosition(x);
-			ImagePanel.generateFullQualityFrame();
+			} else {
+				if(timeline2.croppedTrackItem == null){//stops position moving when cropping
+				src.screens.editorScreen.timeline.TimelineManager.timelinePosition = src.screens.editorScreen.timeline.track.TrackManager.pixelPositionToTrackPosition(x);
+				Timeline.markPositionDirty();
+				ImagePanel.generateFullQualityFrame();
+				}
 			}
-		}
 
 
 		
 	
-		timeline2.croppedTrackItem = null;
-		timeline2.itemCroppedLastDuration = 0;
+			timeline2.croppedTrackItem = null;
+			timeline2.itemCroppedLastDuration = 0;
 
-		timeline2.draggedTrackItem = null;
-		timeline2.draggedStuckToLeft = null;
-		timeline2.draggedStickDelayLeft = 0;
+			timeline2.draggedTrackItem = null;
+			timeline2.draggedStuckToLeft = null;
+			timeline2.draggedStickDelayLeft = 0;
 		
-		timeline2.draggedStuckToRight = null;
-		timeline2.draggedStickDelayRight = 0;
+			timeline2.draggedStuckToRight = null;
+			timeline2.draggedStickDelayRight = 0;
 		
-		timeline2.itemDraggedOffset = 0;
-		timeline2.itemDraggedLastX = 0;
-		timeline2.itemDraggedLastTrack = null;
+			timeline2.itemDraggedOffset = 0;
+			timeline2.itemDraggedLastX = 0;
+			timeline2.itemDraggedLastTrack = null;
 		
 		
-		if(TransitionMediaPanel.hoveredTransition != TransitionMediaPanel.draggedTransition && TransitionMediaPanel.draggedTransition != -1){
+			if(TransitionMediaPanel.hoveredTransition != TransitionMediaPanel.draggedTransition && TransitionMediaPanel.draggedTransition != -1){
 			
 			
-			boolean notNull = TransitionMediaPanel.item1 != null && TransitionMediaPanel.item2 != null;
+				boolean notNull = TransitionMediaPanel.item1 != null && TransitionMediaPanel.item2 != null;
 			
-			if(TransitionMediaPanel.transitionValidPosition && notNull){
+				if(TransitionMediaPanel.transitionValidPosition && notNull){
 				
 				
-				Track track1 = src.screens.editorScreen.timeline.track.TrackManager.getTrackForItem(TransitionMediaPanel.item1);
-				Track track2 = src.screens.editorScreen.timeline.track.TrackManager.getTrackForItem(TransitionMediaPanel.item2);
+					Track track1 = src.screens.editorScreen.timeline.track.TrackManager.getTrackForItem(TransitionMediaPanel.item1);
+					Track track2 = src.screens.editorScreen.timeline.track.TrackManager.getTrackForItem(TransitionMediaPanel.item2);
 				
 				
-				if(track1 == track2 && TransitionMediaPanel.item1.trackStartPosition < TransitionMediaPanel.item2.trackStartPosition){
+					if(track1 == track2 && TransitionMediaPanel.item1.trackStartPosition < TransitionMediaPanel.item2.trackStartPosition){
 				
 				
-				TrackObject trackObject = null;
-				if(TransitionMediaPanel.draggedTransition == 0){
-					trackObject = new Fade(TransitionMediaPanel.item1, TransitionMediaPanel.item2);
-				}
+					TrackObject trackObject = null;
+					if(TransitionMediaPanel.draggedTransition == 0){
+						trackObject = new Fade(TransitionMediaPanel.item1, TransitionMediaPanel.item2);
+					}
 				
-				if(TransitionMediaPanel.draggedTransition == 1){
-					trackObject = new WipeDown(TransitionMediaPanel.item1, TransitionMediaPanel.item2);
-				}
+					if(TransitionMediaPanel.draggedTransition == 1){
+						trackObject = new WipeDown(TransitionMediaPanel.item1, TransitionMediaPanel.item2);
+					}
 				
 				
-				Transition transition = (Transition) trackObject;
+					Transition transition = (Transition) trackObject;
 				
-				transition.duration = 50;
+					transition.duration = 50;
 				
 				
 
 				
-				track1.transitions.add(transition);
+					track1.transitions.add(transition);
+					EditHistory.record(new AddTransitionEdit(track1, transition));
 				
 				
-				for(int frameIndex = transition.item1.trackStartPosition; frameIndex < transition.item2.trackStartPosition+transition.item2.mediaDuration+1; frameIndex++){
-					Renderer.renderingStatus[frameIndex] = 0;
-				}
+					for(int frameIndex = transition.item1.trackStartPosition; frameIndex < transition.item2.trackStartPosition+transition.item2.mediaDuration+1; frameIndex++){
+						Renderer.renderingStatus[frameIndex] = 0;
+					}
 				
-				System.out.println("added");
-				}
+					System.out.println("added");
+					}
 				
 				
-			} else {
+				} else {
 				
 				
-				System.out.println("Wrong place!! "+TransitionMediaPanel.draggedTransition);
+					System.out.println("Wrong place!! "+TransitionMediaPanel.draggedTransition);
+				}
+				TransitionMediaPanel.draggedTransition = -1;
 			}
-			TransitionMediaPanel.draggedTransition = -1;
-		}
 		
 		
 		
-		if(MediaPanel.hoveredMediaItem != MediaPanel.draggedMediaItem && MediaPanel.draggedMediaItem != null && evt.getButton() != 3){
+			if(MediaPanel.hoveredMediaItem != MediaPanel.draggedMediaItem && MediaPanel.draggedMediaItem != null && evt.getButton() != 3){
 			
 			
 
 			
-			if(MediaPanel.transitionValidPosition){
+				if(MediaPanel.transitionValidPosition){
 				
 
-				int distance = src.screens.editorScreen.timeline.track.TrackManager.getDistanceFromNextItem(MediaPanel.track, MediaPanel.xPosition);
+					int distance = src.screens.editorScreen.timeline.track.TrackManager.getDistanceFromNextItem(MediaPanel.track, MediaPanel.xPosition);
 				
 				
-				int size = 100;
+					int size = 100;
 				
-				if(MediaPanel.draggedMediaItem instanceof MediaVideoItem){
-					MediaVideoItem mediaVideoItem = (MediaVideoItem)MediaPanel.draggedMediaItem;
-					size = mediaVideoItem.totalFrames;
-				}
+					if(MediaPanel.draggedMediaItem instanceof MediaVideoItem){
+						MediaVideoItem mediaVideoItem = (MediaVideoItem)MediaPanel.draggedMediaItem;
+						size = mediaVideoItem.totalFrames;
+					}
 
 				
 				
-				if(distance < size && distance != -1){
-					MediaPanel.track.addTrackItem(MediaPanel.draggedMediaItem, 0, distance-1, MediaPanel.xPosition);
-				} else {
-					MediaPanel.track.addTrackItem(MediaPanel.draggedMediaItem, 0, size, MediaPanel.xPosition);
-				}
+					if(distance < size && distance != -1){
+						src.screens.editorScreen.timeline.track.TrackManager.addItem(MediaPanel.track, MediaPanel.draggedMediaItem, 0, distance-1, MediaPanel.xPosition);
+					} else {
+						src.screens.editorScreen.timeline.track.TrackManager.addItem(MediaPanel.track, MediaPanel.draggedMediaItem, 0, size, MediaPanel.xPosition);
+					}
 
 				
-				//if(distance != -1){
+					//if(distance != -1){
 					
-				//}
+					//}
 				
-				System.out.println("added: "+distance);
+					System.out.println("added: "+distance);
 
 				
 				
-			} else {
+				} else {
 				
 				
-				System.out.println("Wrong place!!2");
+					System.out.println("Wrong place!!2");
+				}
+				MediaPanel.draggedMediaItem = null;
+			} else {
+				MediaPanel.draggedMediaItem = null;
 			}
-			MediaPanel.draggedMediaItem = null;
-		} else {
-			MediaPanel.draggedMediaItem = null;
-		}
-				
-				
 		
-		ImagePanel.update();
-		DecodingThread.updateDecodingPriority();
+			ImagePanel.update();
+			DecodingThread.updateDecodingPriority();
+		} finally {
+			EditHistory.endGroup();//Closes the group opened when the mouse was pressed, even if handling the release failed.
+		}
 	}//GEN-LAST:event_timeline2MouseReleased
 
 private void jButton1ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButton1ActionPerformed
@@ -3495,6 +3551,7 @@ private void mediaPanel1MouseReleased(java.awt.event.MouseEvent evt) {//GEN-FIRS
 private void jTextField3KeyReleased(java.awt.event.KeyEvent evt) {//GEN-FIRST:event_jTextField3KeyReleased
 	if(MediaManager.getSelectedAlbum() != null){
 		MediaManager.getSelectedAlbum().albumName = jTextField3.getText();
+		AutosaveManager.markDirty();
 		
 		
 		refreshAlbumNameList();
@@ -3574,6 +3631,14 @@ private void jMenuItem4ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FI
 	DataManager.saveDataToFile();
 }//GEN-LAST:event_jMenuItem4ActionPerformed
 
+private void jMenuItem5ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItem5ActionPerformed
+	EditHistory.undo();
+}//GEN-LAST:event_jMenuItem5ActionPerformed
+
+private void jMenuItem6ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItem6ActionPerformed
+	EditHistory.redo();
+}//GEN-LAST:event_jMenuItem6ActionPerformed
+
 private void customButton2ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_customButton2ActionPerformed
 	PreviewPanelManager.selectedItemView = true;
 	PreviewPanelManager.refreshViewModeButtons();
@@ -3980,6 +4045,18 @@ public void refreshAlbumNameList(){
 	public javax.swing.JComboBox getjComboBox2() {
 		return jComboBox2;
 	}
+
+	public javax.swing.JComboBox getjComboBox1() {
+		return jComboBox1;
+	}
+
+	public javax.swing.JComboBox getjComboBox4() {
+		return jComboBox4;
+	}
+
+	public javax.swing.JTabbedPane getjTabbedPane3() {
+		return jTabbedPane3;
+	}
 	public void setjTextField4(javax.swing.JTextField jTextField4) {
 		this.jTextField4 = jTextField4;
 	}
@@ -4336,6 +4413,8 @@ public void refreshAlbumNameList(){
     private javax.swing.JMenuItem jMenuItem2;
     private javax.swing.JMenuItem jMenuItem3;
     private javax.swing.JMenuItem jMenuItem4;
+    private javax.swing.JMenuItem jMenuItem5;
+    private javax.swing.JMenuItem jMenuItem6;
     private javax.swing.JPanel jPanel1;
     private javax.swing.JPanel jPanel10;
     private javax.swing.JPanel jPanel11;
@@ -75,6 +75,28 @@ public class MediaPanel extends JPanel
 		MainApplet.getInstance().getMediaPanel1().repaint();
 	}
 	
+	/*
+	 * Set when something has changed that needs the panel redrawn.
+	 */
+	private static volatile boolean dirty = true;
+	
+	/**
+	 * Marks the panel as needing a repaint on the next task thread run.
+	 */
+	public static void markDirty(){
+		dirty = true;
+	}
+	
+	/**
+	 * Repaints the panel only if it was marked dirty since the last call.
+	 */
+	public static void repaintIfDirty(){
+		if(dirty){
+			dirty = false;
+			update();
+		}
+	}
+	
 	public static MediaItem selectedMediaItem = null;
 	public static MediaItem hoveredMediaItem = null;
 	
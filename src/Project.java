@@ -22,6 +22,7 @@ public class Project {
 		Project.projectWidth = width;
 		Project.projectHeight = height;
 		Project.frameRate = fps;
+		AutosaveManager.markDirty();
 		
 		MainApplet.instance.getjTextField2().setText(width+" x "+height);//Update the dimensions in the export tab.
 		
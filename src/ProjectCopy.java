@@ -0,0 +1,204 @@
+package src;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import src.screens.editorScreen.libraryPanel.mediaPanel.MediaPanelManager;
+import src.screens.editorScreen.libraryPanel.mediaPanel.album.Album;
+import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaAudioItem;
+import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaImageItem;
+import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaItem;
+import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaVideoItem;
+import src.screens.editorScreen.timeline.TimelineManager;
+import src.screens.editorScreen.timeline.track.AudioTrack;
+import src.screens.editorScreen.timeline.track.TextTrack;
+import src.screens.editorScreen.timeline.track.Track;
+import src.screens.editorScreen.timeline.track.VideoTrack;
+import src.screens.editorScreen.timeline.track.trackItem.TrackItem;
+import src.screens.editorScreen.timeline.track.transition.Transition;
+import src.screens.editorScreen.timeline.track.transition.transitions.Fade;
+import src.screens.editorScreen.timeline.track.transition.transitions.WipeDown;
+
+/**
+ * A copy of everything a project file is written from.
+ * Making one only copies lists and numbers, so it is cheap enough to do on the event dispatch thread,
+ * where the project is edited, and the copy can then be written out on any thread.
+ *
+ * The project file is made of the sections written here, which the AutosaveManager also writes
+ * separately so that only the parts of a project that changed have to be saved again.
+ */
+public class ProjectCopy {
+
+	private final int projectWidth;
+	private final int projectHeight;
+	private final double frameRate;
+
+	private final ArrayList<Album> albums;
+	private final ArrayList<String> albumNames = new ArrayList<String>();
+	private final ArrayList<ArrayList<MediaItem>> albumItems = new ArrayList<ArrayList<MediaItem>>();
+
+	private final ArrayList<TrackCopy> tracks = new ArrayList<TrackCopy>();
+
+	/**
+	 * The items and transitions of a track, with the positions the items had when it was copied.
+	 */
+	private static class TrackCopy {
+		private Track track;
+		private TrackItem[] trackItems;
+		private MediaItem[] mediaItems;
+		private int[] trackStartPositions;
+		private int[] mediaStartPositions;
+		private int[] mediaDurations;
+
+		private Transition[] transitions;
+		private TrackItem[] items1;
+		private TrackItem[] items2;
+		private int[] durations;
+	}
+
+	/**
+	 * Copies the project as it is now. Call this on the event dispatch thread.
+	 */
+	public ProjectCopy(){
+		projectWidth = Project.projectWidth;
+		projectHeight = Project.projectHeight;
+		frameRate = Project.frameRate;
+
+		albums = (ArrayList<Album>) MediaPanelManager.albums.clone();
+		for(Album album : albums){
+			albumNames.add(album.albumName);
+			albumItems.add((ArrayList<MediaItem>) album.mediaItems.clone());
+		}
+
+		for(Track track : (ArrayList<Track>) TimelineManager.tracks.clone()){
+			TrackCopy copy = new TrackCopy();
+			copy.track = track;
+
+			copy.trackItems = track.trackItems.toArray(new TrackItem[0]);
+			int count = copy.trackItems.length;
+			copy.mediaItems = new MediaItem[count];
+			copy.trackStartPositions = new int[count];
+			copy.mediaStartPositions = new int[count];
+			copy.mediaDurations = new int[count];
+			for(int i = 0; i < count; i++){
+				TrackItem trackItem = copy.trackItems[i];
+				copy.mediaItems[i] = trackItem.mediaItem;
+				copy.trackStartPositions[i] = trackItem.trackStartPosition;
+				copy.mediaStartPositions[i] = trackItem.mediaStartPosition;
+				copy.mediaDurations[i] = trackItem.mediaDuration;
+			}
+
+			copy.transitions = track.transitions.toArray(new Transition[0]);
+			count = copy.transitions.length;
+			copy.items1 = new TrackItem[count];
+			copy.items2 = new TrackItem[count];
+			copy.durations = new int[count];
+			for(int i = 0; i < count; i++){
+				Transition transition = copy.transitions[i];
+				copy.items1[i] = transition.item1;
+				copy.items2[i] = transition.item2;
+				copy.durations[i] = transition.duration;
+			}
+
+			tracks.add(copy);
+		}
+	}
+
+	public int getTrackCount(){
+		return tracks.size();
+	}
+
+	/**
+	 * Writes the project's size and frame rate.
+	 */
+	public void writeProjectDetails(DataOutputStream stream) throws IOException {
+		stream.writeInt(projectWidth);
+		stream.writeInt(projectHeight);
+		stream.writeDouble(frameRate);
+	}
+
+	/**
+	 * Writes every album and the path, type and metadata of each of its media items.
+	 */
+	public void writeMediaLibrary(DataOutputStream stream) throws IOException {
+		stream.writeInt(albums.size());
+
+		for(int album = 0; album < albums.size(); album++){
+
+			ArrayList<MediaItem> localMediaItems = albumItems.get(album);
+			stream.writeUTF(albumNames.get(album));
+			stream.writeInt(localMediaItems.size());
+
+			for(MediaItem mediaItem : localMediaItems){
+				stream.writeUTF(mediaItem.directory);
+				if(mediaItem instanceof MediaImageItem){
+					stream.writeInt(0);
+				}
+				if(mediaItem instanceof MediaAudioItem){
+					stream.writeInt(1);
+				}
+				if(mediaItem instanceof MediaVideoItem){
+					stream.writeInt(2);
+				}
+				mediaItem.info.write(stream);
+
+			}
+
+		}
+	}
+
+	/**
+	 * Writes a track's type, its items (which refer to their media by album and item index) and its transitions.
+	 * @param index - The track's position on the timeline.
+	 */
+	public void writeTrack(DataOutputStream stream, int index) throws IOException {
+		TrackCopy copy = tracks.get(index);
+		if(copy.track instanceof VideoTrack){
+			stream.writeByte(0);
+		}
+		if(copy.track instanceof AudioTrack){
+			stream.writeByte(1);
+		}
+		if(copy.track instanceof TextTrack){
+			stream.writeByte(2);
+		}
+
+		/*
+		 * Loop through and write each track item
+		 */
+		stream.writeInt(copy.trackItems.length);
+		for(int i = 0; i < copy.trackItems.length; i++){
+			int album = albums.indexOf(copy.mediaItems[i].thisAlbum);
+			stream.writeInt(album);
+			stream.writeInt(album == -1 ? -1 : albumItems.get(album).indexOf(copy.mediaItems[i]));
+			stream.writeInt(copy.trackStartPositions[i]);
+			stream.writeInt(copy.mediaStartPositions[i]);
+			stream.writeInt(copy.mediaDurations[i]);
+		}
+
+		/*
+		 * Loop through and write each transition on the track
+		 */
+		List<TrackItem> localTrackItems = Arrays.asList(copy.trackItems);
+		stream.writeInt(copy.transitions.length);
+		for(int i = 0; i < copy.transitions.length; i++){
+
+			if(copy.transitions[i] instanceof Fade){
+				stream.writeByte(0);
+			}
+			if(copy.transitions[i] instanceof WipeDown){
+				stream.writeByte(1);
+			}
+
+
+			stream.writeInt(localTrackItems.indexOf(copy.items1[i]));
+			stream.writeInt(localTrackItems.indexOf(copy.items2[i]));
+			stream.writeInt(copy.durations[i]);
+
+		}
+	}
+
+}
@@ -14,6 +14,7 @@ import java.awt.event.MouseListener;
 import java.awt.image.BufferedImage;
 import java.awt.image.MemoryImageSource;
 import java.util.ArrayList;
+import java.util.BitSet;
 
 import javax.swing.JPanel;
 
@@ -31,6 +32,7 @@ import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaAudioIt
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaItem;
 import src.screens.editorScreen.previewPanel.PreviewPanelManager;
 import src.screens.editorScreen.timeline.TimelineManager;
+import src.screens.editorScreen.timeline.edit.EditHistory;
 import src.screens.editorScreen.timeline.track.Track;
 import src.screens.editorScreen.timeline.track.TrackManager;
 import src.screens.editorScreen.timeline.track.TrackObject;
@@ -78,6 +80,92 @@ public class Timeline extends JPanel {
 		MainApplet.getInstance().getTimeline2().repaint();
 	}
 
+	/**
+	 * Height of the rendering and decoding status bars at the top of the timeline.
+	 */
+	private static final int STATUS_BARS_HEIGHT = 19;
+
+	/*
+	 * Set when something has changed that needs the whole timeline redrawn.
+	 */
+	private static volatile boolean dirty = true;
+
+	/*
+	 * Set when only the rendering/decoding status of some frames has changed.
+	 */
+	private static volatile boolean statusDirty = false;
+
+	/*
+	 * Set when the timeline position has been moved.
+	 */
+	private static volatile boolean positionDirty = false;
+
+	private static int lastPaintedPosition = -1;
+
+	/**
+	 * Marks the whole timeline as needing a repaint on the next task thread run.
+	 */
+	public static void markDirty() {
+		dirty = true;
+	}
+
+	/**
+	 * Marks the status bars as needing a repaint on the next task thread run.
+	 */
+	public static void markStatusDirty() {
+		statusDirty = true;
+	}
+
+	/**
+	 * Marks the position line as needing to be moved on the next task thread run.
+	 */
+	public static void markPositionDirty() {
+		positionDirty = true;
+	}
+
+	public static boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Repaints only what has been marked as changed since the last call: the whole panel if it was
+	 * marked dirty, otherwise just the status bars and/or the old and new columns of the position line.
+	 */
+	public static void repaintIfDirty() {
+		Timeline timeline = MainApplet.getInstance().getTimeline2();
+		int position = TimelineManager.timelinePosition;
+
+		if (dirty) {
+			dirty = false;
+			statusDirty = false;
+			positionDirty = false;
+			lastPaintedPosition = position;
+			timeline.repaint();
+			return;
+		}
+
+		if (statusDirty) {
+			statusDirty = false;
+			timeline.repaint(0, 0, timeline.getWidth(), STATUS_BARS_HEIGHT + 1);
+		}
+
+		if (positionDirty) {
+			positionDirty = false;
+			if (position != lastPaintedPosition) {
+				repaintPositionLine(timeline, lastPaintedPosition);
+				repaintPositionLine(timeline, position);
+				lastPaintedPosition = position;
+			}
+		}
+	}
+
+	/**
+	 * Repaints the one pixel wide column the position line is drawn in, the full height of the panel.
+	 */
+	private static void repaintPositionLine(Timeline timeline, int position) {
+		timeline.repaint(TrackManager.trackPositionToPixelPosition(position), 0, 1, timeline.getHeight());
+	}
+
 	public TrackItem hoveredTrackItem;
 	public static TrackObject selectedTrackObject;
 
@@ -124,6 +212,14 @@ public class Timeline extends JPanel {
 
 	public void mousePressed(int x, int y) {
 
+		/*
+		 * Whatever this press and drag changes (moving, trimming and any transitions that
+		 * breaks) is undone as one step, the group is closed when the mouse is released.
+		 * A group left open by a press whose release never arrived is closed first.
+		 */
+		EditHistory.closeGroups();
+		EditHistory.beginGroup();
+
 		if (hoveredTransition != null) {
 			selectedTrackObject = hoveredTransition;
 			TransitionMediaPanel.selectedTransition = -1;
@@ -492,22 +588,7 @@ public class Timeline extends JPanel {
 				 */
 				g.setColor(new Color(0, 0, 0));
 				g.drawRect(1,1,(src.screens.editorScreen.timeline.track.TrackManager.trackPositionToPixelPosition(Renderer.pixels.length)) - 1,7);
-				for (int index = 0; index < Renderer.renderingStatus.length; index++) {
-
-					if (Renderer.renderingStatus != null) {
-						if (Renderer.renderingStatus[index] == 0) {
-							g.setColor(new Color(148, 24, 18));
-						}
-						if (Renderer.renderingStatus[index] == 1) {
-							g.setColor(new Color(206, 206, 0));
-						}
-						if (Renderer.renderingStatus[index] == 2) {
-							g.setColor(new Color(0, 128, 0));
-						}
-					}
-
-					g.fillRect(src.screens.editorScreen.timeline.track.TrackManager.trackPositionToPixelPosition(index),1 + 1, 1, 7 - 1);
-				}
+				paintRenderingStatus(g, 1 + 1, 7 - 1);
 
 				g.setColor(new Color(0, 0, 0));
 				g.drawRect(
@@ -516,19 +597,7 @@ public class Timeline extends JPanel {
 						(src.screens.editorScreen.timeline.track.TrackManager
 								.trackPositionToPixelPosition(Renderer.pixels.length)) - 1,
 						7);
-				for (int index = 0; index < Renderer.renderingStatus.length; index++) {
-
-					if (DecodingThread.isFrameDecoded(index)) {
-						g.setColor(new Color(128, 128, 0));
-					} else {
-						g.setColor(new Color(12, 73, 97));
-					}
-
-					g.fillRect(
-							src.screens.editorScreen.timeline.track.TrackManager
-									.trackPositionToPixelPosition(index),
-							10 + 1, 1, 7 - 1);
-				}
+				paintDecodingStatus(g, 10 + 1, 7 - 1);
 
 				/*
 				 * line
@@ -537,7 +606,7 @@ public class Timeline extends JPanel {
 				g.fillRect(
 						src.screens.editorScreen.timeline.track.TrackManager
 								.trackPositionToPixelPosition(src.screens.editorScreen.timeline.TimelineManager.timelinePosition),
-						0, 1, 400);
+						0, 1, getHeight());
 
 			}
 
@@ -547,6 +616,78 @@ public class Timeline extends JPanel {
 
 	}
 
+	private static final Color[] RENDERING_STATUS_COLOURS = {
+			new Color(148, 24, 18), new Color(206, 206, 0), new Color(0, 128, 0) };
+	private static final Color DECODED_COLOUR = new Color(128, 128, 0);
+	private static final Color NOT_DECODED_COLOUR = new Color(12, 73, 97);
+
+	/**
+	 * @return The first and last frame drawn inside the clip of g.
+	 */
+	private int[] getVisibleFrames(Graphics g, int frameCount) {
+		int first = 0;
+		int last = frameCount - 1;
+		Rectangle clip = g.getClipBounds();
+		if (clip != null) {
+			first = Math.max(first, TrackManager.pixelPositionToTrackPosition(clip.x) - 1);
+			last = Math.min(last, TrackManager.pixelPositionToTrackPosition(clip.x + clip.width) + 1);
+		}
+		return new int[] { first, last };
+	}
+
+	/**
+	 * Fills the frames first to last (inclusive) of a status bar.
+	 */
+	private void fillFrames(Graphics g, int first, int last, int y, int height) {
+		int x = TrackManager.trackPositionToPixelPosition(first);
+		g.fillRect(x, y, TrackManager.trackPositionToPixelPosition(last) - x + 1, height);
+	}
+
+	/**
+	 * Paints the rendering status bar as one rectangle per run of frames with the same status,
+	 * only for the frames inside the clip.
+	 */
+	private void paintRenderingStatus(Graphics g, int y, int height) {
+		byte[] status = Renderer.renderingStatus;
+		if (status == null) {
+			return;
+		}
+		int[] visible = getVisibleFrames(g, status.length);
+		int index = visible[0];
+		while (index <= visible[1]) {
+			byte runStatus = status[index];
+			int end = index;
+			while (end + 1 <= visible[1] && status[end + 1] == runStatus) {
+				end++;
+			}
+			if (runStatus >= 0 && runStatus < RENDERING_STATUS_COLOURS.length) {
+				g.setColor(RENDERING_STATUS_COLOURS[runStatus]);
+			}
+			fillFrames(g, index, end, y, height);
+			index = end + 1;
+		}
+	}
+
+	/**
+	 * Paints the decoding status bar from the decoded frame bitmap, one rectangle per run of
+	 * decoded or not decoded frames inside the clip.
+	 */
+	private void paintDecodingStatus(Graphics g, int y, int height) {
+		BitSet decoded = DecodingThread.getDecodedFrames();
+		int[] visible = getVisibleFrames(g, Renderer.renderingStatus.length);
+		int index = visible[0];
+		while (index <= visible[1]) {
+			boolean isDecoded = decoded.get(index);
+			int next = isDecoded ? decoded.nextClearBit(index) : decoded.nextSetBit(index);
+			if (next < 0 || next > visible[1] + 1) {
+				next = visible[1] + 1;
+			}
+			g.setColor(isDecoded ? DECODED_COLOUR : NOT_DECODED_COLOUR);
+			fillFrames(g, index, next - 1, y, height);
+			index = next;
+		}
+	}
+
 	public void drawTrackItemThumbnails(Graphics g, Track trackInstance,
 			TrackItem trackItem, int itemX, int itemY, int itemLength) {
 
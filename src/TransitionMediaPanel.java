@@ -64,6 +64,28 @@ public class TransitionMediaPanel extends JPanel
 		MainApplet.getInstance().getTransitionMediaPanel1().repaint();
 	}
 	
+	/*
+	 * Set when something has changed that needs the panel redrawn.
+	 */
+	private static volatile boolean dirty = true;
+	
+	/**
+	 * Marks the panel as needing a repaint on the next task thread run.
+	 */
+	public static void markDirty(){
+		dirty = true;
+	}
+	
+	/**
+	 * Repaints the panel only if it was marked dirty since the last call.
+	 */
+	public static void repaintIfDirty(){
+		if(dirty){
+			dirty = false;
+			update();
+		}
+	}
+	
 	public static int selectedTransition = -1;
 	public static int hoveredTransition = -1;
 	
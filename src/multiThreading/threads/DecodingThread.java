@@ -5,12 +5,14 @@ import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.awt.image.PixelGrabber;
 import java.util.ArrayList;
+import java.util.BitSet;
 
 import javax.swing.ImageIcon;
 
 import src.ImagePanel;
 import src.IntroScreen;
 import src.Project;
+import src.Timeline;
 import src.renderer.Renderer;
 import src.screens.editorScreen.libraryPanel.mediaPanel.MediaPanelManager;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.Album;
@@ -59,6 +61,80 @@ public class DecodingThread {
 		
 	}
 
+	/*
+	 * One bit per timeline frame, set if a video item covering it has that frame decoded. It is rebuilt
+	 * when the track layout changes and otherwise only updated as frames are decoded, so the timeline
+	 * does not have to search the tracks for every frame it paints. A new BitSet is made on rebuild and
+	 * bits are only set below its initial size, so it never reallocates while the timeline reads it.
+	 */
+	private static volatile BitSet decodedFrames = new BitSet();
+	private static long decodedFramesLayout = 0;
+	
+	/**
+	 * @return The bitmap of timeline frames that are decoded.
+	 */
+	public static BitSet getDecodedFrames(){
+		return decodedFrames;
+	}
+	
+	/**
+	 * Marks a timeline frame as decoded in the bitmap.
+	 */
+	private static void setFrameDecoded(int frameId){
+		BitSet frames = decodedFrames;
+		if(frameId >= 0 && frameId < frames.size()){
+			frames.set(frameId);
+		}
+	}
+	
+	/**
+	 * Rebuilds the decoded frame bitmap if a video item has been added, removed, moved or trimmed,
+	 * or the timeline length has changed, since it was last built.
+	 */
+	public static void updateDecodedFrames(){
+		int frameCount = Renderer.renderingStatus.length;
+		ArrayList<Track> localTracks = (ArrayList<Track>) src.screens.editorScreen.timeline.TimelineManager.tracks.clone();
+		
+		long layout = frameCount;
+		for(Track trackInstance : localTracks){
+			ArrayList<TrackItem> localTrackItems = (ArrayList<TrackItem>) trackInstance.trackItems.clone();
+			for(TrackItem trackItem : localTrackItems){
+				if(trackItem instanceof TrackVideoItem){
+					layout = layout*31+trackItem.getTrackStartPosition();
+					layout = layout*31+trackItem.mediaDuration;
+					layout = layout*31+System.identityHashCode(trackItem.mediaItem);
+				}
+			}
+		}
+		if(layout == decodedFramesLayout){
+			return;
+		}
+		
+		BitSet frames = new BitSet(frameCount);
+		for(Track trackInstance : localTracks){
+			ArrayList<TrackItem> localTrackItems = (ArrayList<TrackItem>) trackInstance.trackItems.clone();
+			for(TrackItem trackItem : localTrackItems){
+				if(trackItem instanceof TrackVideoItem && trackItem.mediaItem instanceof MediaVideoItem){
+					byte[] frameDecoded = ((MediaVideoItem) trackItem.mediaItem).frameDecoded;
+					if(frameDecoded == null){
+						continue;
+					}
+					int start = trackItem.getTrackStartPosition();
+					int end = Math.min(start+trackItem.mediaDuration, frameCount-1);
+					for(int frameId = Math.max(start, 0); frameId <= end; frameId++){
+						int localFrameId = frameId-start;
+						if(localFrameId < frameDecoded.length && frameDecoded[localFrameId] == 2){
+							frames.set(frameId);
+						}
+					}
+				}
+			}
+		}
+		decodedFrames = frames;
+		decodedFramesLayout = layout;
+		Timeline.markStatusDirty();
+	}
+	
 	public static boolean isFrameDecoded(int frameId){
 		ArrayList<Track> localTracks = (ArrayList<Track>) src.screens.editorScreen.timeline.TimelineManager.tracks.clone();
 		if(localTracks != null){
@@ -392,6 +468,7 @@ public class DecodingThread {
 						if(mediaVideoItem.frameDecoded[index] == 0){
 							mediaVideoItem.decodeFrame(index);
 							mediaVideoItem.frameDecoded[index] = 2;
+							Timeline.markStatusDirty();
 							
 							
 							
@@ -412,6 +489,9 @@ public class DecodingThread {
 										if(trackItem.mediaItem == mediaVideoItem){
 											int start = trackItem.getTrackStartPosition();
 											Renderer.renderingStatus[start+index] = 0;
+											if(index <= trackItem.mediaDuration){
+												setFrameDecoded(start+index);
+											}
 										}
 									}
 								}
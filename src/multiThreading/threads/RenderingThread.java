@@ -1,12 +1,8 @@
 package src.multiThreading.threads;
 
-import java.awt.Color;
-import java.awt.Graphics;
-import java.awt.image.BufferedImage;
-
-import src.ImagePanel;
 import src.IntroScreen;
 import src.Project;
+import src.Timeline;
 import src.renderer.Renderer;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaImageItem;
 
@@ -21,35 +17,6 @@ public class RenderingThread {
 	
 	
 	
-	/**
-	 * Returns a BufferedImage frame.
-	 * @param frameId - The frame to get.
-	 */
-	public static BufferedImage getFrame(int frameId){
-		if(Renderer.renderingStatus != null && Renderer.renderingStatus.length > frameId){
-			int status = Renderer.renderingStatus[frameId];
-
-
-			if(status == 2){
-				if(Renderer.pixels[frameId] != null){
-					BufferedImage bufferedImage = ImagePanel.getBI(Renderer.pixels[frameId], Project.getScaledWidth(), Project.getScaledHeight());
-					return bufferedImage;
-				} else {
-					BufferedImage blank = new BufferedImage(Project.getScaledWidth(), Project.getScaledHeight(), BufferedImage.TYPE_INT_ARGB);
-					Graphics g = blank.getGraphics();
-					g.setColor(new Color(0,0,0));
-					g.fillRect(0, 0, Project.getScaledWidth(), Project.getScaledHeight());
-					return blank;
-				}
-			}
-		}
-		ImagePanel.update();
-
-		return null;
-
-	}
-	
-	
 	/**
 	 * Carries out any rendering related processes.
 	 */
@@ -77,11 +44,15 @@ public class RenderingThread {
 						//if(Renderer.pixels[frameIndex] != null)
 						if(frameIndex+1 < Renderer.renderingStatus.length){
 							Renderer.renderingStatus[frameIndex] = 2;
+							Timeline.markStatusDirty();
 						}
 					}
 				} else {
 					Renderer.pixels[frameIndex] = null;
-					Renderer.renderingStatus[frameIndex] = 0;
+					if(Renderer.renderingStatus[frameIndex] != 0){
+						Renderer.renderingStatus[frameIndex] = 0;
+						Timeline.markStatusDirty();
+					}
 				}
 
 			}
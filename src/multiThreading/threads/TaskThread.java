@@ -1,9 +1,14 @@
 package src.multiThreading.threads;
 
+import java.awt.AWTEvent;
 import java.awt.Cursor;
 import java.awt.Image;
 import java.awt.Point;
 import java.awt.Toolkit;
+import java.awt.event.AWTEventListener;
+import java.util.HashMap;
+
+import javax.swing.ImageIcon;
 
 import src.ChromaKeyFrame;
 import src.MainApplet;
@@ -29,6 +34,64 @@ public class TaskThread {
 	
 	public static boolean editorRunning = false;
 	
+	/*
+	 * The media panels are repainted in full at least this often (in runs of this thread), in case
+	 * something they show changed that was not marked dirty, e.g. an item finishing importing.
+	 * The timeline isn't, it is only repainted when the tracks, the position or the status bars change.
+	 */
+	private static final int FULL_REPAINT_RUNS = 50;
+	private static int runsSinceFullRepaint = 0;
+	
+	private static boolean inputListenerAdded = false;
+	
+	/*
+	 * Custom cursors by sprite id, so each one is only created once.
+	 */
+	private static final HashMap<Integer, Cursor> cursors = new HashMap<Integer, Cursor>();
+	private static Cursor currentCursor;
+	
+	
+	/**
+	 * Marks the timeline, transition and media panels dirty whenever the user moves the mouse or presses a key,
+	 * since anything they draw as hovered, selected or dragged can only change on input.
+	 */
+	private static void addInputListener(){
+		Toolkit.getDefaultToolkit().addAWTEventListener(new AWTEventListener() {
+			public void eventDispatched(AWTEvent event) {
+				Timeline.markDirty();
+				TransitionMediaPanel.markDirty();
+				MediaPanel.markDirty();
+			}
+		}, AWTEvent.MOUSE_EVENT_MASK | AWTEvent.MOUSE_MOTION_EVENT_MASK | AWTEvent.MOUSE_WHEEL_EVENT_MASK | AWTEvent.KEY_EVENT_MASK);
+		inputListenerAdded = true;
+	}
+	
+	/**
+	 * @return The custom cursor for a sprite, created the first time it is needed.
+	 */
+	private static Cursor getCursor(int spriteId, Point hotSpot){
+		Cursor cursor = cursors.get(spriteId);
+		if(cursor == null){
+			/*
+			 * ImageIcon waits for the sprite to finish loading, otherwise the cached cursor could be blank.
+			 */
+			Image image = new ImageIcon(DataStore.spriteLoadFile(spriteId)).getImage();
+			cursor = Toolkit.getDefaultToolkit().createCustomCursor(image, hotSpot, "cursor"+spriteId);
+			cursors.put(spriteId, cursor);
+		}
+		return cursor;
+	}
+	
+	/**
+	 * Sets the cursor, only if it is different to the current one.
+	 */
+	private static void setCursor(Cursor cursor){
+		if(cursor != currentCursor){
+			currentCursor = cursor;
+			MainApplet.getInstance().setCursor(cursor);
+		}
+	}
+	
 	
 	/**
 	 * Refreshes the size of the editor panel to match the size of the program (i.e resized)
@@ -43,9 +106,28 @@ public class TaskThread {
 	 */
 	public static void processTasks(){
 		MainApplet.getInstance().processEvents();
-		Timeline.update();
-		TransitionMediaPanel.update();
-		MediaPanel.update();
+		
+		if(!inputListenerAdded){
+			addInputListener();
+		}
+		
+		if(++runsSinceFullRepaint >= FULL_REPAINT_RUNS){
+			runsSinceFullRepaint = 0;
+			TransitionMediaPanel.markDirty();
+			MediaPanel.markDirty();
+		}
+		
+		/*
+		 * The timeline length and layout can only change with the tracks, which always marks the timeline dirty.
+		 */
+		if(Timeline.isDirty()){
+			src.screens.editorScreen.timeline.TimelineManager.updateTimelineLength();
+			DecodingThread.updateDecodedFrames();
+		}
+		
+		Timeline.repaintIfDirty();
+		TransitionMediaPanel.repaintIfDirty();
+		MediaPanel.repaintIfDirty();
 
 		
 		if(MainApplet.getInstance().getjPanel16().getWidth() != MainApplet.getInstance().getjLayeredPane1().getWidth() || MainApplet.getInstance().getjPanel16().getHeight() != MainApplet.getInstance().getjLayeredPane1().getHeight()){
@@ -76,43 +158,29 @@ public class TaskThread {
 		if(TransitionMediaPanel.draggedTransition != -1){
 			if(TransitionMediaPanel.hoveredTransition != TransitionMediaPanel.draggedTransition){
 				if(TransitionMediaPanel.transitionValidPosition){
-					Toolkit toolkit = Toolkit.getDefaultToolkit(); 
-					Cursor cursor = toolkit.createCustomCursor(DataStore.spriteLoadFile(25), new Point(10,0), "cursor4");
-					MainApplet.getInstance().setCursor(cursor);
+					setCursor(getCursor(25, new Point(10,0)));
 				} else {
-					Toolkit toolkit = Toolkit.getDefaultToolkit(); 
-					Cursor cursor = toolkit.createCustomCursor(DataStore.spriteLoadFile(24), new Point(10,0), "cursor5");
-					MainApplet.getInstance().setCursor(cursor);
+					setCursor(getCursor(24, new Point(10,0)));
 				}
 			}
 		} else if(MediaPanel.draggedMediaItem != null){
 			if(MediaPanel.hoveredMediaItem != MediaPanel.draggedMediaItem){
 				if(MediaPanel.transitionValidPosition){
-					Toolkit toolkit = Toolkit.getDefaultToolkit(); 
-					Cursor cursor = toolkit.createCustomCursor(DataStore.spriteLoadFile(25), new Point(10,0), "cursor6");
-					MainApplet.getInstance().setCursor(cursor);
+					setCursor(getCursor(25, new Point(10,0)));
 				} else {
-					Toolkit toolkit = Toolkit.getDefaultToolkit(); 
-					Cursor cursor = toolkit.createCustomCursor(DataStore.spriteLoadFile(24), new Point(10,0), "cursor6");
-					MainApplet.getInstance().setCursor(cursor);
+					setCursor(getCursor(24, new Point(10,0)));
 				}
 			} 
 		} else if(Timeline.itemTrimHover == 2){
-			Toolkit toolkit = Toolkit.getDefaultToolkit(); 
-			Cursor cursor = toolkit.createCustomCursor(DataStore.spriteLoadFile(23), new Point(10,0), "cursor3");
-			MainApplet.getInstance().setCursor(cursor);
+			setCursor(getCursor(23, new Point(10,0)));
 			
 		} else if(ChromaKeyFrame.addColour){
-			Toolkit toolkit = Toolkit.getDefaultToolkit(); 
-			Cursor cursor = toolkit.createCustomCursor(DataStore.spriteLoadFile(29), new Point(0,12), "cursor7");
-			MainApplet.getInstance().setCursor(cursor);
+			setCursor(getCursor(29, new Point(0,12)));
 		} else {
-			MainApplet.getInstance().setCursor(null);
+			setCursor(null);
 		}
 		
 		
-		src.screens.editorScreen.timeline.TimelineManager.updateTimelineLength();
-		
 		//NewJApplet.instance.getTimeline1().paintComponent(NewJApplet.instance.getTimeline1().getGraphics());
 
 	
@@ -161,7 +161,7 @@ public class Renderer {
 								 */
 								MediaImageItem mediaImageItem = (MediaImageItem) trackItem.mediaItem;
 
-								previewImage = mediaImageItem.previewImage;
+								previewImage = mediaImageItem.getPreviewImage();
 
 								/*
 								 * If the fullQuality boolean is true, we want to use the original source,
@@ -388,5 +388,56 @@ public class Renderer {
 		}
 		return pixels;
 	}
+	
+	/**
+	 * Works out from the time-line alone (without rendering anything) whether a frame only shows still images,
+	 * so that a run of frames showing the same items can be rendered and written once.
+	 * The same rules are used as in renderFrame.
+	 * @param frameId - The frame to check.
+	 * @return - The items drawn at the frame, in drawing order, or null if anything drawn changes from frame to frame
+	 * (a video or text item, or a transition).
+	 */
+	public static ArrayList<TrackItem> getStillFrameItems(int frameId){
+		ArrayList<TrackItem> stillItems = new ArrayList<TrackItem>();
+		
+		/*
+		 * Store a local version of the global track array-list (To prevent any concurrency issues).
+		 */
+		ArrayList<Track> localTracks = (ArrayList<Track>) src.screens.editorScreen.timeline.TimelineManager.tracks.clone();
+		for(Track trackInstance : localTracks){
+			ArrayList<TrackItem> localTrackItems = (ArrayList<TrackItem>) trackInstance.trackItems.clone();
+			for(TrackItem trackItem : localTrackItems){
+				if(trackItem == null || trackItem instanceof TrackAudioItem){
+					continue;
+				}
+				
+				int startX = trackItem.getTrackStartPosition();
+				int endX = trackItem.getTrackStartPosition()+trackItem.mediaDuration;
+				if(frameId < startX || frameId > endX){
+					continue;
+				}
+				
+				if(!(trackItem instanceof TrackImageItem)){
+					return null;
+				}
+				
+				/*
+				 * Is a transition from this item to the next one being drawn at this frame?
+				 */
+				for(Transition transition : trackInstance.transitions){
+					TrackItem item1 = transition.item1;
+					if(transition.item2.trackStartPosition < item1.trackStartPosition){
+						item1 = transition.item2;
+					}
+					if(item1 == trackItem && frameId >= (item1.getTrackStartPosition()+item1.mediaDuration)-transition.duration){
+						return null;
+					}
+				}
+				
+				stillItems.add(trackItem);
+			}
+		}
+		return stillItems;
+	}
 		
 }
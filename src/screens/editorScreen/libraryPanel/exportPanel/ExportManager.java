@@ -1,13 +1,27 @@
 package src.screens.editorScreen.libraryPanel.exportPanel;
 
+import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
+import javax.swing.BorderFactory;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 
@@ -19,20 +33,28 @@ import src.Project;
 import src.renderer.Renderer;
 import src.screens.editorScreen.libraryPanel.mediaPanel.MediaPanelManager;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.Album;
+import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.ImageCache;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaAudioItem;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaImageItem;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaItem;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaManager;
+import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaVideoItem;
 import src.screens.editorScreen.newProjectPanel.NewProject;
 import src.screens.editorScreen.timeline.track.Track;
 import src.thirdPartyLibraries.AnimatedGifEncoder;
+import src.thirdPartyLibraries.movLibrary.H264MovWriter;
 import src.thirdPartyLibraries.movLibrary.JPEGMovWriter;
 import src.thirdPartyLibraries.movLibrary.MovWriter;
+import src.thirdPartyLibraries.movLibrary.PNGMovWriter;
+import src.thirdPartyLibraries.movLibrary.ProresMovWriter;
 import src.util.Misc;
 import src.screens.editorScreen.timeline.track.AudioTrack;
 import src.screens.editorScreen.timeline.track.trackItem.TrackItem;
 import src.screens.editorScreen.timeline.track.trackItem.TrackAudioItem;
+import src.screens.editorScreen.timeline.track.trackItem.TrackVideoItem;
 import sun.misc.GC;
+import asg.jcodec.codecs.h264.encode.LookaheadRateControl;
+import asg.jcodec.codecs.prores.ProresEncoder;
 
 public class ExportManager {
 
@@ -43,8 +65,51 @@ public class ExportManager {
 	
 	public static int fps = 30;
 	
-	public static String[] saveToDirectoryFiles = new String[] {"MOV File (*.mov)"};
-	public static String[][] directoryExtentsions = new String[][] {{"mov", ".mov"}, {"avi", ".avi"}};
+	public static final int OUTPUT_MOV = 0;
+	public static final int OUTPUT_GIF = 2;
+	
+	public static String[] saveToDirectoryFiles = new String[] {"MOV File (*.mov)", "AVI File (*.avi)", "GIF File (*.gif)"};
+	public static String[][] directoryExtentsions = new String[][] {{"mov", ".mov"}, {"avi", ".avi"}, {"gif", ".gif"}};
+	
+	/**
+	 * If true, GIF exports train one palette on frames sampled across the whole export and share it,
+	 * otherwise each frame gets its own palette.
+	 */
+	public static boolean gifGlobalPalette = true;
+	
+	/**
+	 * How many frames the shared GIF palette is trained on.
+	 */
+	public static final int GIF_PALETTE_SAMPLES = 8;
+	
+	/**
+	 * Sample interval for the GIF colour quantizer, see AnimatedGifEncoder.setQuality.
+	 */
+	public static final int GIF_QUALITY = 10;
+	
+	public static final int CODEC_JPEG = 0;
+	public static final int CODEC_PNG = 1;
+	public static final int CODEC_H264 = 2;
+	public static final int CODEC_PRORES = 3;
+	
+	/**
+	 * Rate control of H.264 exports, in the order they are listed on the H.264 tab.
+	 */
+	public static final LookaheadRateControl.Mode[] h264RateControls = new LookaheadRateControl.Mode[] {LookaheadRateControl.Mode.CRF, LookaheadRateControl.Mode.VBR, LookaheadRateControl.Mode.CBR};
+	public static final String[] h264RateControlNames = new String[] {"Constant quality", "Average bitrate (VBR)", "Constant bitrate (CBR)"};
+	
+	public static JComboBox<String> h264RateControlBox;
+	public static JTextField h264BitrateField;
+	
+	/**
+	 * Bitrate of H.264 exports that aren't constant quality, in kbit/s.
+	 */
+	public static int h264Bitrate = 5000;
+	
+	/**
+	 * Seconds between H.264 key frames, the points a player can seek to.
+	 */
+	public static final int H264_KEY_INTERVAL_SECONDS = 2;
 	
 	/**
 	 * Starts the export process.
@@ -58,11 +123,18 @@ public class ExportManager {
 		new Thread() {
 			public void run() {
 
+				/*
+				 * The clips' audio, read by the MOV writer until it is closed.
+				 */
+				ArrayList<AudioInputStream> audioStreams = new ArrayList<AudioInputStream>();
 
 				try {
 					
 					
-					
+					/*
+					 * There is no AVI writer, so anything other than GIF is written as a MOV.
+					 */
+					outputFormat = MainApplet.getInstance().getjComboBox1().getSelectedIndex() == OUTPUT_GIF ? OUTPUT_GIF : OUTPUT_MOV;
 					
 					File file = Misc.saveToDirectory(saveToDirectoryFiles[outputFormat], directoryExtentsions[outputFormat]);
 
@@ -99,11 +171,6 @@ public class ExportManager {
 					fps = Project.frameRate;
 
 
-					//anim = new PNGMovWriter(file);
-
-					anim = new JPEGMovWriter(file, quality);
-
-
 					float frameDuration = (float) (1f/(fps));
 
 
@@ -123,6 +190,24 @@ public class ExportManager {
 						width = NewProject.dimensions[dimension][0];
 						height = NewProject.dimensions[dimension][1];
 					}
+					
+					if(outputFormat == OUTPUT_GIF){
+						exportToGif(file, width, height);
+						MainApplet.instance.getjInternalFrame2().setVisible(false);
+						cleanup();
+						return;
+					}
+					
+					int codec = MainApplet.getInstance().getjComboBox4().getSelectedIndex();
+					if(codec == CODEC_H264){
+						anim = new H264MovWriter(file, createH264RateControl(fps), Math.max(1, (int) Math.round(fps*H264_KEY_INTERVAL_SECONDS)));
+					} else if(codec == CODEC_PRORES){
+						anim = new ProresMovWriter(file, ProresEncoder.Profile.STANDARD);
+					} else if(codec == CODEC_PNG){
+						anim = new PNGMovWriter(file);
+					} else {
+						anim = new JPEGMovWriter(file, quality);
+					}
 
 					
 					/*
@@ -145,6 +230,7 @@ public class ExportManager {
 										try {
 											ByteArrayInputStream input = new ByteArrayInputStream(mediaAudioItem.getWAV());
 											AudioInputStream audioIn = AudioSystem.getAudioInputStream(input);
+											audioStreams.add(audioIn);
 											anim.addAudioTrack(audioIn, trackAudioItem.trackStartPosition);
 										} catch (Exception e) {
 											e.printStackTrace();
@@ -153,10 +239,45 @@ public class ExportManager {
 								}
 							}
 						}
+
+						/*
+						 * Write the audio of any video clips, trimmed the same way as the clip's frames.
+						 */
+						for(TrackItem trackItem : trackInstance.trackItems){
+							if(trackItem instanceof TrackVideoItem && trackItem.mediaItem instanceof MediaVideoItem){
+								MediaVideoItem mediaVideoItem = (MediaVideoItem) trackItem.mediaItem;
+								try {
+									File wav = mediaVideoItem.getWAV();
+									if(wav == null){
+										continue;
+									}
+									AudioInputStream audioIn = AudioSystem.getAudioInputStream(wav);
+									audioStreams.add(audioIn);
+									long skipBytes = (long) (trackItem.mediaStartPosition/fps*audioIn.getFormat().getFrameRate())*audioIn.getFormat().getFrameSize();
+									while(skipBytes > 0){
+										long skipped = audioIn.skip(skipBytes);
+										if(skipped <= 0){
+											break;
+										}
+										skipBytes -= skipped;
+									}
+									float startTime = (float) (trackItem.getTrackStartPosition()/fps);
+									anim.addAudioTrack(audioIn, startTime, startTime+(float) (trackItem.mediaDuration/fps));
+								} catch (Exception e) {
+									e.printStackTrace();
+								}
+							}
+						}
 					}
 
 
 
+					/*
+					 * Frames that only show the same still images as the frame before them are
+					 * not rendered or encoded again, the previous frame is just shown for longer.
+					 */
+					ArrayList<TrackItem> previousStillItems = null;
+					
 					for(int frameIndex = 0; frameIndex < Renderer.pixels.length; frameIndex++){
 
 						MainApplet.instance.getjLabel19().setText("Frame "+(frameIndex+1)+" / "+(Renderer.pixels.length));
@@ -177,6 +298,13 @@ public class ExportManager {
 						
 						MainApplet.instance.getjProgressBar1().setValue(percent);
 						
+						ArrayList<TrackItem> stillItems = Renderer.getStillFrameItems(frameIndex);
+						if(stillItems != null && stillItems.equals(previousStillItems)){
+							anim.repeatLastFrame(frameDuration);
+							continue;
+						}
+						previousStillItems = stillItems;
+						
 						int[] pixels = Renderer.renderFrame(frameIndex, true, width, height, true);
 						BufferedImage bufferedImage = ImagePanel.getBI(pixels, width, height);
 						if(bufferedImage == null){
@@ -188,6 +316,7 @@ public class ExportManager {
 						//SaveImage(width, height, pixels, "./"+frameIndex+".png");
 						
 						anim.addFrame(frameDuration, bufferedImage, null);
+						framesWritten++;
 					}
 					anim.close(false);
 
@@ -199,6 +328,14 @@ public class ExportManager {
 
 				} catch (Exception e) {
 					e.printStackTrace();
+				} finally {
+					for(AudioInputStream audioIn : audioStreams){
+						try {
+							audioIn.close();
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					}
 				}
 
 			}
@@ -230,23 +367,9 @@ public class ExportManager {
 
 
 		/*
-		 * Store a local version of the global album array-list (To prevent any concurrency issues).
+		 * The full quality still images are only needed while exporting.
 		 */
-		ArrayList<Album> tempAlbums = (ArrayList<Album>) MediaPanelManager.albums.clone();
-
-		for(Album album : tempAlbums){
-
-			ArrayList<MediaItem> tempMediaItems = (ArrayList<MediaItem>) album.mediaItems.clone();
-
-			for(MediaItem mediaItem : tempMediaItems){
-				if(mediaItem instanceof MediaImageItem){
-					MediaImageItem mediaImageItem = (MediaImageItem) mediaItem;
-					if(!mediaImageItem.createdPreviewPixels){
-						mediaImageItem.sourceImage = null;
-					}
-				}
-			}
-		}
+		ImageCache.clear();
 
 	}
 	
@@ -288,29 +411,146 @@ public class ExportManager {
 		
 	}
 	
-	public static void exportToGif(){
-		AnimatedGifEncoder e = new AnimatedGifEncoder();
-		e.start("hmm.gif");
-		e.setDelay(30);   // 1 frame per sec (1000)
-		e.setRepeat(0);
-
-		
+	/**
+	 * Adds a tab next to the video tab to choose the rate control of H.264, which the codec list
+	 * offers along with ProRes 422 as an intermediate for finishing elsewhere.
+	 */
+	public static void setupCodecPanel(){
 		
-		for(int frameIndex = 0; frameIndex < 700; frameIndex++){
-			
-			int[] pixels = Renderer.renderFrame(frameIndex, true, 454, 255, false);
-			BufferedImage bufferedImage = ImagePanel.getBI(pixels, 454, 255);
-			if(bufferedImage == null){
-				bufferedImage = new BufferedImage(454, 255, BufferedImage.TYPE_INT_RGB);
-				bufferedImage.getGraphics().drawRect(30,30,100,100);
+		h264RateControlBox = new JComboBox<String>(h264RateControlNames);
+		h264RateControlBox.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				updateCodecPanel();
 			}
-			e.addFrame(bufferedImage);
-			System.out.println("added frame: "+frameIndex);
+		});
+		h264BitrateField = new JTextField(""+h264Bitrate);
+		
+		JPanel panel = new JPanel(new GridLayout(2, 2, 6, 6));
+		panel.setBackground(new Color(102, 102, 102));
+		panel.setBorder(BorderFactory.createEtchedBorder());
+		panel.add(new JLabel("Rate control: "));
+		panel.add(h264RateControlBox);
+		panel.add(new JLabel("Bitrate (kbit/s): "));
+		panel.add(h264BitrateField);
+		
+		MainApplet.getInstance().getjTabbedPane3().addTab("H.264", panel);
+		
+		updateCodecPanel();
+		
+	}
+	
+	/**
+	 * The bitrate is only used when the quality isn't constant.
+	 */
+	public static void updateCodecPanel(){
+		
+		h264BitrateField.setEnabled(h264RateControls[h264RateControlBox.getSelectedIndex()] != LookaheadRateControl.Mode.CRF);
+		
+	}
+	
+	/**
+	 * Creates the rate control chosen on the H.264 tab. Constant quality follows the
+	 * compression slider on the video tab.
+	 * @param fps - Frame rate of the export.
+	 */
+	public static LookaheadRateControl createH264RateControl(double fps){
+		
+		try {
+			h264Bitrate = Math.max(1, Integer.parseInt(h264BitrateField.getText().trim()));
+		} catch (NumberFormatException e) {
+			h264BitrateField.setText(""+h264Bitrate);
+		}
+		
+		switch(h264RateControls[h264RateControlBox.getSelectedIndex()]){
+		case CBR:
+			return LookaheadRateControl.cbr(h264Bitrate*1000, fps);
+		case VBR:
+			return LookaheadRateControl.vbr(h264Bitrate*1000, fps);
+		default:
+			int compression = MainApplet.getInstance().getjSlider3().getValue();
+			return LookaheadRateControl.crf(18+compression/5);
 		}
 		
+	}
+	
+	/**
+	 * Writes the whole time-line as an animated GIF.
+	 * Frames are rendered in order on this thread, while quantizing and LZW encoding runs on a pool
+	 * with one thread per core. Only the part of each frame that changed since the last one is encoded,
+	 * and a limited number of frames are in flight so memory stays bounded on long exports.
+	 * @param file - The file to write.
+	 * @param width - Width of the output.
+	 * @param height - Height of the output.
+	 */
+	public static void exportToGif(File file, final int width, final int height) throws Exception {
+		int totalFrames = Renderer.pixels.length;
+		int threads = Runtime.getRuntime().availableProcessors();
+		
+		AnimatedGifEncoder e = new AnimatedGifEncoder();
+		e.start(file.getAbsolutePath());
+		e.setSize(width, height);
+		e.setFrameRate((float) Project.frameRate);
+		e.setRepeat(0);
 		
+		AnimatedGifEncoder.Palette palette = null;
+		if(gifGlobalPalette && totalFrames > 0){
+			MainApplet.instance.getjLabel19().setText("Building palette");
+			int samples = Math.min(GIF_PALETTE_SAMPLES, totalFrames);
+			int[][] sampledFrames = new int[samples][];
+			for(int sample = 0; sample < samples; sample++){
+				int frameIndex = (int) ((long) sample * totalFrames / samples);
+				src.screens.editorScreen.timeline.TimelineManager.setTimelinePosition(frameIndex);
+				sampledFrames[sample] = renderGifFrame(frameIndex, width, height);
+			}
+			palette = AnimatedGifEncoder.trainPalette(sampledFrames, GIF_QUALITY);
+		}
+		final AnimatedGifEncoder.Palette framePalette = palette;
 		
-		e.finish();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			LinkedList<Future<AnimatedGifEncoder.EncodedFrame>> encoding = new LinkedList<Future<AnimatedGifEncoder.EncodedFrame>>();
+			int[] previous = null;
+			for(int frameIndex = 0; frameIndex < totalFrames; frameIndex++){
+				MainApplet.instance.getjLabel19().setText("Frame "+(frameIndex+1)+" / "+totalFrames);
+				int percent = Math.min(100, Math.max(0, (frameIndex+1) * 100 / totalFrames));
+				MainApplet.instance.getjLabel20().setText(percent+"%");
+				MainApplet.instance.getjProgressBar1().setValue(percent);
+				
+				src.screens.editorScreen.timeline.TimelineManager.setTimelinePosition(frameIndex);
+				final int[] pixels = renderGifFrame(frameIndex, width, height);
+				final int[] lastPixels = previous;
+				encoding.add(pool.submit(new Callable<AnimatedGifEncoder.EncodedFrame>() {
+					public AnimatedGifEncoder.EncodedFrame call() throws Exception {
+						return AnimatedGifEncoder.encodeFrame(pixels, lastPixels, width, height, framePalette, GIF_QUALITY);
+					}
+				}));
+				previous = pixels;
+				
+				/*
+				 * Write finished frames in order, waiting for the oldest once enough are queued.
+				 */
+				while(encoding.size() >= threads * 2 || (!encoding.isEmpty() && encoding.getFirst().isDone())){
+					e.addFrame(encoding.removeFirst().get());
+				}
+			}
+			while(!encoding.isEmpty()){
+				e.addFrame(encoding.removeFirst().get());
+			}
+		} finally {
+			pool.shutdownNow();
+			e.finish();
+		}
+	}
+	
+	/**
+	 * @return The rendered frame, or a black frame if there is nothing to render.
+	 */
+	private static int[] renderGifFrame(int frameIndex, int width, int height){
+		int[] pixels = Renderer.renderFrame(frameIndex, true, width, height, true);
+		if(pixels == null || pixels.length != width * height){
+			pixels = new int[width * height];
+		}
+		return pixels;
 	}
 	
 	
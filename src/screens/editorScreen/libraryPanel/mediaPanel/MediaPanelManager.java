@@ -2,6 +2,7 @@ package src.screens.editorScreen.libraryPanel.mediaPanel;
 
 import java.util.ArrayList;
 
+import src.AutosaveManager;
 import src.MainApplet;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.Album;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaManager;
@@ -17,6 +18,7 @@ public static ArrayList<Album> albums = new ArrayList<Album>(100);
 	public static Album createAlbum(String name, boolean switchToAlbum){
 		Album album = new Album(name);
 		albums.add(album);
+		AutosaveManager.markDirty();
 		if(switchToAlbum){
 			MediaManager.selectedAlbum = albums.indexOf(album);
 		}
@@ -0,0 +1,80 @@
+package src.screens.editorScreen.libraryPanel.mediaPanel.album.media;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Full quality still images, shared by every image item and kept within a memory budget.
+ * Once the budget is exceeded the least recently used images are dropped; they are simply
+ * decoded again from the source file if they are needed later.
+ */
+public class ImageCache {
+
+	/**
+	 * The most memory (in bytes) the cached images may take up.
+	 */
+	public static long budget = Runtime.getRuntime().maxMemory()/4;
+
+	private static long size = 0;
+
+	/*
+	 * In access order, so the first entry is always the least recently used.
+	 */
+	private static final LinkedHashMap<String, BufferedImage> images = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+
+	/**
+	 * @return The key for an image file decoded to fit the given size.
+	 */
+	public static String getKey(String directory, int width, int height){
+		return directory+"@"+width+"x"+height;
+	}
+
+	/**
+	 * @return The cached image, or null if it isn't cached (or has been evicted).
+	 */
+	public static synchronized BufferedImage get(String key){
+		return images.get(key);
+	}
+
+	/**
+	 * Adds an image to the cache, evicting the least recently used images until it is back within budget.
+	 * The image just added is never evicted, even if it is larger than the budget on its own.
+	 */
+	public static synchronized void put(String key, BufferedImage image){
+		BufferedImage previous = images.put(key, image);
+		if(previous != null){
+			size -= getSize(previous);
+		}
+		size += getSize(image);
+
+		Iterator<Map.Entry<String, BufferedImage>> iterator = images.entrySet().iterator();
+		while(size > budget && iterator.hasNext()){
+			Map.Entry<String, BufferedImage> eldest = iterator.next();
+			if(eldest.getValue() == image){
+				break;
+			}
+			size -= getSize(eldest.getValue());
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Removes all images from the cache.
+	 */
+	public static synchronized void clear(){
+		images.clear();
+		size = 0;
+	}
+
+	/**
+	 * @return The memory used by the image's pixel data, in bytes.
+	 */
+	private static long getSize(BufferedImage image){
+		DataBuffer buffer = image.getRaster().getDataBuffer();
+		return (long) buffer.getSize()*buffer.getNumBanks()*DataBuffer.getDataTypeSize(buffer.getDataType())/8;
+	}
+
+}
@@ -6,7 +6,8 @@ import java.io.IOException;
 
 import src.dataStore.DataStore;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.Album;
-import src.thirdPartyLibraries.mp3transform.main.org.mp3transform.wav.WavConverter;
+import src.thirdPartyLibraries.audio.javazoom.jl.converter.Converter;
+import src.thirdPartyLibraries.audio.javazoom.jl.decoder.JavaLayerException;
 import src.util.Misc;
 
 public  class MediaAudioItem extends MediaItem{
@@ -28,7 +29,7 @@ public  class MediaAudioItem extends MediaItem{
 		String out = DataStore.getLocation()+"temp.wav";
 
 		try {
-			WavConverter.convert(in, out);
+			new Converter().convertPcm(in, out);
 
 			File file = new File(out);
 
@@ -38,6 +39,8 @@ public  class MediaAudioItem extends MediaItem{
 			}
 
 
+		} catch (JavaLayerException e) {
+			e.printStackTrace();
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -8,7 +8,14 @@ import java.awt.image.BufferedImage;
 import java.awt.image.BufferedImageOp;
 import java.awt.image.ImagingOpException;
 import java.awt.image.PixelGrabber;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import javax.swing.ImageIcon;
 
 
@@ -32,68 +39,49 @@ public class MediaImageItem extends MediaItem {
 	public static int thumbnailWidth = 454;
 	public static int thumbnailHeight = 255;
 	
-	public boolean createdPreviewPixels = false;
-	
-	public Image sourceImage = null;
+	public volatile boolean createdPreviewPixels = false;
 	
 	/**
 	 * Returns the full image data from the original source (no compression etc.)
+	 * The result is kept in the shared ImageCache, so it may be decoded again if it has been evicted.
 	 * @param width2 - The width that we need it to be.
 	 * @param height2 - The height that we need it to be.
 	 * @return
 	 */
 	public Image getFullImage(int width2, int height2){
-		if(sourceImage != null){
-			return sourceImage;
+		String key = ImageCache.getKey(directory, width2, height2);
+		BufferedImage finalImage = ImageCache.get(key);
+		if(finalImage != null){
+			return finalImage;
 		}
-		int width;
-		int height;
-		int[] pixels;
-		Image finalImage = null;
 		try {
-			Image image = Toolkit.getDefaultToolkit().getImage(directory);
-			ImageIcon imageicon = new ImageIcon(image);
-			width = imageicon.getIconWidth();
-			height = imageicon.getIconHeight();
-			pixels = new int[width * height];
-			PixelGrabber pixelgrabber = new PixelGrabber(image, 0, 0, width, height, pixels, 0, width);
-			pixelgrabber.grabPixels();
-			Image resizedImage = Scalr.resize(ImagePanel.getBI(image), Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_WIDTH, width2, null);
-			if(resizedImage.getHeight(null) >= height2){
-				resizedImage = Scalr.resize(ImagePanel.getBI(image), Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_HEIGHT, height2, null);
-			}
-			finalImage = resizedImage;
+			finalImage = fitImage(readImage(width2, height2), width2, height2);
+			ImageCache.put(key, finalImage);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
-		sourceImage = finalImage;
 		return finalImage;
 	}
 	
 	
 	/**
 	 * Scale the image and store it for preview purposes.
+	 * Does nothing if it has already been done, e.g. by the import service.
 	 */
-	public void createPreviewPixels(){
+	public synchronized void createPreviewPixels(){
 
-		
-		int width;
-		int height;
-		int[] pixels;
+		if(createdPreviewPixels){
+			return;
+		}
 		try {
-			Image image = Toolkit.getDefaultToolkit().getImage(directory);
-			ImageIcon imageicon = new ImageIcon(image);
-			width = imageicon.getIconWidth();
-			height = imageicon.getIconHeight();
-			pixels = new int[width * height];
-			PixelGrabber pixelgrabber = new PixelGrabber(image, 0, 0, width, height, pixels, 0, width);
-			pixelgrabber.grabPixels();
-			Image resizedImage = Scalr.resize(ImagePanel.getBI(image), Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_WIDTH, Project.getScaledWidth(), null);
-			if(resizedImage.getHeight(null) >= Project.getScaledHeight()){
-				resizedImage = Scalr.resize(ImagePanel.getBI(image), Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_HEIGHT, Project.getScaledHeight(), null);
-			}
+			BufferedImage image = readImage(Project.getScaledWidth(), Project.getScaledHeight());
+			BufferedImage resizedImage = fitImage(image, Project.getScaledWidth(), Project.getScaledHeight());
 			previewImage = resizedImage;
-			thumbnail = Scalr.resize(ImagePanel.getBI(image), Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_HEIGHT, 67, null);
+			/*
+			 * The thumbnail is much smaller than the preview, so it is made from that rather than the source.
+			 */
+			thumbnail = Scalr.resize(resizedImage.getHeight() >= 67 ? resizedImage : image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_HEIGHT, 67, null);
+			thumbnailChanged();
 			createdPreviewPixels = true;
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -102,9 +90,86 @@ public class MediaImageItem extends MediaItem {
 		
 	}
 	
+	/**
+	 * Resizes an image to fit within the given size.
+	 */
+	private static BufferedImage fitImage(BufferedImage image, int width, int height){
+		BufferedImage resizedImage = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_WIDTH, width, null);
+		if(resizedImage.getHeight() >= height){
+			resizedImage.flush();
+			resizedImage = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_HEIGHT, height, null);
+		}
+		return resizedImage;
+	}
+	
+	/**
+	 * Decodes the source file at reduced resolution: the reader skips rows and columns so the image is
+	 * still at least twice the size needed to fit width x height (leaving the final resize to smooth it),
+	 * but a large photo is never fully decoded just to make a preview. Anything ImageIO can't read is
+	 * loaded at full size through the toolkit instead.
+	 * @return The image, as an opaque RGB image.
+	 */
+	private BufferedImage readImage(int width, int height) throws IOException {
+		ImageInputStream input = ImageIO.createImageInputStream(new File(directory));
+		if(input != null){
+			try {
+				Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+				if(readers.hasNext()){
+					ImageReader reader = readers.next();
+					try {
+						reader.setInput(input, true, true);
+						int sourceWidth = reader.getWidth(0);
+						int sourceHeight = reader.getHeight(0);
+						double scale = Math.min((double) width/sourceWidth, (double) height/sourceHeight);
+						int subsampling = Math.max(1, (int) (1/(scale*2)));
+
+						ImageReadParam param = reader.getDefaultReadParam();
+						param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+						BufferedImage image = reader.read(0, param);
+						if(image.getType() != BufferedImage.TYPE_INT_RGB){
+							image = ImagePanel.getBI(image);
+						}
+						return image;
+					} catch (IOException e) {
+						/*
+						 * e.g. CMYK JPEGs, which the toolkit can still load.
+						 */
+					} finally {
+						reader.dispose();
+					}
+				}
+			} finally {
+				input.close();
+			}
+		}
+		return ImagePanel.getBI(new ImageIcon(Toolkit.getDefaultToolkit().getImage(directory)).getImage());
+	}
+	
+	/**
+	 * @return The preview image, made now if the import service hasn't got to this item yet.
+	 */
+	public Image getPreviewImage(){
+		if(!createdPreviewPixels){
+			createPreviewPixels();
+		}
+		return previewImage;
+	}
+	
 	public MediaImageItem(String directory, Album album) {
+		this(directory, album, null);
+	}
+	
+	/**
+	 * @param savedInfo - Metadata saved with the project, used instead of probing the file if it hasn't changed.
+	 */
+	public MediaImageItem(String directory, Album album, MediaInfo savedInfo) {
 		super(directory, album);
-		createPreviewPixels();
+		info = MediaImportService.probe(new File(directory), -1, savedInfo);
+		MediaImportService.submit(this, MediaImportService.PRIORITY_PREVIEW, new Runnable() {
+			public void run() {
+				createPreviewPixels();
+			}
+		});
 	}
 
 
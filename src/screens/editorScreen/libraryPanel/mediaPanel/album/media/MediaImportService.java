@@ -0,0 +1,386 @@
+package src.screens.editorScreen.libraryPanel.mediaPanel.album.media;
+
+import static asg.jcodec.common.NIOUtils.readableFileChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.SwingUtilities;
+
+import asg.jcodec.common.FileChannelWrapper;
+import asg.jcodec.common.NIOUtils;
+import asg.jcodec.containers.mp4.boxes.SampleEntry;
+import asg.jcodec.containers.mp4.boxes.VideoSampleEntry;
+import asg.jcodec.containers.mp4.demuxer.AbstractMP4DemuxerTrack;
+import asg.jcodec.containers.mp4.demuxer.MP4Demuxer;
+import src.AutosaveManager;
+import src.video.decodeManager.MpegHelper;
+import src.video.decodeManager.MpegIndex;
+
+/**
+ * Does the slow part of importing media (scaling previews and thumbnails, opening video decoders)
+ * on a small, fixed pool of worker threads, so a folder of hundreds of files doesn't start a
+ * thread per file. Items are added to their album as soon as their header has been probed,
+ * and show "Importing..." until a worker gets to them.
+ */
+public class MediaImportService {
+
+	/**
+	 * Work with a lower priority number is done first, otherwise in the order it was submitted.
+	 */
+	public static final int PRIORITY_PREVIEW = 0;
+	public static final int PRIORITY_DECODER = 1;
+	/**
+	 * For items restored with a project, which can be used before their decoder is open.
+	 */
+	public static final int PRIORITY_BACKGROUND = 2;
+
+	/**
+	 * How much of the start of a file goes into its fingerprint.
+	 */
+	private static final int FINGERPRINT_LENGTH = 64*1024;
+
+	/**
+	 * How much of an MPEG stream without a saved index is searched for a sequence header.
+	 */
+	private static final int MPEG_PROBE_LENGTH = 8*1024*1024;
+
+	/**
+	 * Leave a core free for the GUI and the rendering and decoding threads.
+	 */
+	private static final int WORKERS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()-1));
+
+	private static final PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<Runnable>();
+
+	private static final ThreadPoolExecutor pool = new ThreadPoolExecutor(WORKERS, WORKERS, 0, TimeUnit.MILLISECONDS, queue, new ThreadFactory() {
+		private int count = 0;
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "Import-"+(count++));
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY-1);
+			return thread;
+		}
+	});
+
+	private static final AtomicInteger sequence = new AtomicInteger();
+
+	/**
+	 * The work submitted by one import, so it can be followed and cancelled without touching
+	 * work queued by anything else, such as the decoders of a project being loaded.
+	 */
+	public static class Batch {
+
+		private final AtomicInteger submitted = new AtomicInteger();
+		private final AtomicInteger finished = new AtomicInteger();
+
+		/**
+		 * @return The amount of this batch's work that hasn't finished yet.
+		 */
+		public int getPending(){
+			return submitted.get()-finished.get();
+		}
+	}
+
+	/**
+	 * The batch that work submitted from each thread belongs to, see beginBatch.
+	 */
+	private static final ThreadLocal<Batch> currentBatch = new ThreadLocal<Batch>();
+
+	private static class ImportTask implements Runnable, Comparable<ImportTask> {
+
+		private final MediaItem mediaItem;
+		private final Runnable work;
+		private final int priority;
+		private final Batch batch;
+		private final int order = sequence.getAndIncrement();
+
+		private ImportTask(MediaItem mediaItem, int priority, Runnable work, Batch batch){
+			this.mediaItem = mediaItem;
+			this.priority = priority;
+			this.work = work;
+			this.batch = batch;
+		}
+
+		public void run() {
+			try {
+				work.run();
+			} catch (Exception e) {
+				e.printStackTrace();
+			} finally {
+				if(batch != null){
+					batch.finished.incrementAndGet();
+				}
+			}
+		}
+
+		public int compareTo(ImportTask other) {
+			if(priority != other.priority){
+				return priority < other.priority ? -1 : 1;
+			}
+			return order < other.order ? -1 : (order == other.order ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Starts a batch, everything submitted from the calling thread belongs to it until endBatch is called.
+	 */
+	public static Batch beginBatch(){
+		Batch batch = new Batch();
+		currentBatch.set(batch);
+		return batch;
+	}
+
+	/**
+	 * Stops adding work submitted from the calling thread to its batch.
+	 */
+	public static void endBatch(){
+		currentBatch.remove();
+	}
+
+	/**
+	 * Queues the slow part of importing an item, as part of the calling thread's batch if it has one.
+	 * @param mediaItem - The item the work is for, removed from its album if the import is cancelled first.
+	 * @param priority - PRIORITY_PREVIEW, PRIORITY_DECODER or PRIORITY_BACKGROUND.
+	 * @param work - The work to do on a worker thread.
+	 */
+	public static void submit(MediaItem mediaItem, int priority, Runnable work){
+		Batch batch = currentBatch.get();
+		if(batch != null){
+			batch.submitted.incrementAndGet();
+		}
+		pool.execute(new ImportTask(mediaItem, priority, work, batch));
+	}
+
+	/**
+	 * Drops the batch's work that hasn't started yet and removes its items from their albums.
+	 * Work that is already running, and work from other batches, is left to finish.
+	 * The albums are changed on the event dispatch thread, as that is where they are painted from.
+	 */
+	public static void cancel(Batch batch){
+		final ArrayList<MediaItem> removed = new ArrayList<MediaItem>();
+		for(Runnable runnable : queue.toArray(new Runnable[0])){
+			ImportTask task = (ImportTask) runnable;
+			/*
+			 * A worker may have taken the task since the copy was made, then it is left to finish.
+			 */
+			if(task.batch == batch && queue.remove(task)){
+				removed.add(task.mediaItem);
+				batch.finished.incrementAndGet();
+			}
+		}
+		if(removed.isEmpty()){
+			return;
+		}
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				for(MediaItem mediaItem : removed){
+					if(mediaItem.thisAlbum != null){
+						mediaItem.thisAlbum.mediaItems.remove(mediaItem);
+					}
+					if(mediaItem instanceof MediaVideoItem){
+						((MediaVideoItem) mediaItem).closeDecoder();
+					}
+				}
+				AutosaveManager.markDirty();
+			}
+		});
+	}
+
+	/**
+	 * Reads the dimensions, frame count, frame rate and codec from a file's header.
+	 * Nothing is decoded, so this is cheap enough to do for every file before it is added.
+	 * @param formatType - As passed to MediaManager.addVideo, or -1 for a still image.
+	 * @return What could be read, never null.
+	 */
+	public static MediaInfo probe(File file, int formatType){
+		MediaInfo info = new MediaInfo();
+		info.fileLength = file.length();
+		info.lastModified = file.lastModified();
+		info.fingerprint = fingerprint(file);
+		try {
+			if(formatType == -1){
+				probeImage(file, info);
+			}
+			if(formatType == 0){
+				probeGif(file, info);
+			}
+			if(formatType == 1 || formatType == MediaManager.FORMAT_PRORES){
+				probeMp4(file, info);
+			}
+			if(formatType == MediaManager.FORMAT_AVI){
+				probeAvi(file, info);
+			}
+			if(formatType == MediaManager.FORMAT_MPEG){
+				probeMpeg(file, info);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return info;
+	}
+
+	/**
+	 * Uses metadata saved with a project if the file hasn't changed since, otherwise probes it again.
+	 * @param saved - The saved metadata, or null to always probe.
+	 */
+	public static MediaInfo probe(File file, int formatType, MediaInfo saved){
+		if(saved != null && saved.matches(file)){
+			return saved;
+		}
+		return probe(file, formatType);
+	}
+
+	/**
+	 * @return A CRC32 of the start of the file, which changes if the file is replaced or re-encoded
+	 * even when its size happens to stay the same. 0 if it can't be read.
+	 */
+	public static long fingerprint(File file){
+		try {
+			RandomAccessFile input = new RandomAccessFile(file, "r");
+			try {
+				byte[] data = new byte[(int) Math.min(FINGERPRINT_LENGTH, input.length())];
+				input.readFully(data);
+				CRC32 crc = new CRC32();
+				crc.update(data);
+				return crc.getValue();
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	private static void probeImage(File file, MediaInfo info) throws IOException {
+		ImageInputStream input = ImageIO.createImageInputStream(file);
+		if(input == null){
+			return;
+		}
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if(readers.hasNext()){
+				ImageReader reader = readers.next();
+				try {
+					reader.setInput(input, true, true);
+					info.codec = reader.getFormatName();
+					info.width = reader.getWidth(0);
+					info.height = reader.getHeight(0);
+				} finally {
+					reader.dispose();
+				}
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Only the logical screen size is in the header, counting the frames means reading the whole file.
+	 */
+	private static void probeGif(File file, MediaInfo info) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			byte[] header = new byte[10];
+			input.readFully(header);
+			info.codec = "gif";
+			info.width = (header[6]&0xff) | (header[7]&0xff)<<8;
+			info.height = (header[8]&0xff) | (header[9]&0xff)<<8;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Parses the moov box only, the sample data isn't touched.
+	 */
+	private static void probeMp4(File file, MediaInfo info) throws IOException {
+		FileChannelWrapper channel = readableFileChannel(file);
+		try {
+			AbstractMP4DemuxerTrack track = new MP4Demuxer(channel).getVideoTrack();
+			if(track == null){
+				return;
+			}
+			info.frameCount = (int) track.getFrameCount();
+			long duration = track.getDuration().getNum();
+			if(duration > 0){
+				info.framerate = (double) info.frameCount*track.getTimescale()/duration;
+			}
+			SampleEntry[] entries = track.getSampleEntries();
+			if(entries.length > 0){
+				info.codec = entries[0].getFourcc();
+				if(entries[0] instanceof VideoSampleEntry){
+					info.width = ((VideoSampleEntry) entries[0]).getWidth();
+					info.height = ((VideoSampleEntry) entries[0]).getHeight();
+				}
+			}
+		} finally {
+			NIOUtils.closeQuietly(channel);
+		}
+	}
+
+	/**
+	 * Reads the main AVI header (avih) and the handler of the first stream header (strh),
+	 * which directly follow the RIFF and hdrl list headers.
+	 */
+	private static void probeAvi(File file, MediaInfo info) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			byte[] header = new byte[116];
+			input.readFully(header);
+			if(!fourcc(header, 0).equals("RIFF") || !fourcc(header, 24).equals("avih")){
+				return;
+			}
+			int microSecPerFrame = readInt(header, 32);
+			if(microSecPerFrame > 0){
+				info.framerate = 1000000.0/microSecPerFrame;
+			}
+			info.frameCount = readInt(header, 48);
+			info.width = readInt(header, 64);
+			info.height = readInt(header, 68);
+			if(readInt(header, 28) == 56 && fourcc(header, 100).equals("strh")){
+				info.codec = fourcc(header, 112);
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Everything is in the index saved for the file, if there is one. Otherwise only the first
+	 * sequence header is read, counting the frames means reading the whole file, which is left
+	 * to MpegHelper when the decoder is opened.
+	 */
+	private static void probeMpeg(File file, MediaInfo info) throws IOException {
+		MpegIndex index = MpegIndex.load(MpegHelper.getIndexFile(file.getAbsolutePath()), file);
+		if(index != null){
+			info.frameCount = index.getFrameCount();
+		} else {
+			index = MpegIndex.build(file, MPEG_PROBE_LENGTH);
+		}
+		info.width = index.width;
+		info.height = index.height;
+		info.framerate = index.framerate;
+		info.codec = index.codec;
+	}
+
+	private static String fourcc(byte[] data, int offset){
+		return new String(data, offset, 4);
+	}
+
+	private static int readInt(byte[] data, int offset){
+		return (data[offset]&0xff) | (data[offset+1]&0xff)<<8 | (data[offset+2]&0xff)<<16 | (data[offset+3]&0xff)<<24;
+	}
+
+}
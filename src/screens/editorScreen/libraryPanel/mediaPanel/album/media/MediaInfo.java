@@ -0,0 +1,84 @@
+package src.screens.editorScreen.libraryPanel.mediaPanel.album.media;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Metadata read from a file's header without decoding any of it.
+ * Anything the header doesn't say is left as 0 (or null for the codec).
+ * It is saved with the project, so opening the project again doesn't need to probe the file.
+ */
+public class MediaInfo {
+
+	/*
+	 * What the file looked like when it was probed, to tell whether saved metadata still applies.
+	 */
+	public long fileLength = 0;
+	public long lastModified = 0;
+	/**
+	 * CRC32 of the start of the file, see MediaImportService.fingerprint.
+	 */
+	public long fingerprint = 0;
+
+	public int width = 0;
+	public int height = 0;
+
+	/**
+	 * Number of video frames, 0 for stills and audio.
+	 */
+	public int frameCount = 0;
+	public double framerate = 0;
+
+	/**
+	 * The codec or image format name, e.g. "avc1", "MJPG" or "png".
+	 */
+	public String codec = null;
+
+	/**
+	 * @return Whether this metadata is still right for the file. Only the file's size and date are
+	 * checked, unless the date has changed (e.g. the file was copied), then its start is compared too.
+	 */
+	public boolean matches(File file){
+		if(file.length() != fileLength){
+			return false;
+		}
+		if(file.lastModified() == lastModified){
+			return true;
+		}
+		return MediaImportService.fingerprint(file) == fingerprint;
+	}
+
+	public void write(DataOutputStream stream) throws IOException {
+		stream.writeLong(fileLength);
+		stream.writeLong(lastModified);
+		stream.writeLong(fingerprint);
+		stream.writeInt(width);
+		stream.writeInt(height);
+		stream.writeInt(frameCount);
+		stream.writeDouble(framerate);
+		stream.writeUTF(codec == null ? "" : codec);
+	}
+
+	public static MediaInfo read(DataInputStream stream) throws IOException {
+		MediaInfo info = new MediaInfo();
+		info.fileLength = stream.readLong();
+		info.lastModified = stream.readLong();
+		info.fingerprint = stream.readLong();
+		info.width = stream.readInt();
+		info.height = stream.readInt();
+		info.frameCount = stream.readInt();
+		info.framerate = stream.readDouble();
+		info.codec = stream.readUTF();
+		if(info.codec.length() == 0){
+			info.codec = null;
+		}
+		return info;
+	}
+
+	public String toString(){
+		return codec+" "+width+"x"+height+", "+frameCount+" frames @ "+framerate+" fps";
+	}
+
+}
@@ -2,6 +2,8 @@ package src.screens.editorScreen.libraryPanel.mediaPanel.album.media;
 
 import java.awt.image.BufferedImage;
 
+import src.MediaPanel;
+import src.Timeline;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.Album;
 
 public abstract class MediaItem {
@@ -9,6 +11,11 @@ public abstract class MediaItem {
 	public String directory;
 	public Album thisAlbum;
 	
+	/**
+	 * Read from the file's header when the item is added, before any of it is decoded.
+	 */
+	public MediaInfo info = new MediaInfo();
+	
 	public MediaItem(String directory, Album album){
 		this.directory = directory;
 		this.thisAlbum = album;
@@ -16,4 +23,12 @@ public abstract class MediaItem {
 	
 	public abstract BufferedImage getThumbnail();
 	
+	/**
+	 * Called once a thumbnail has been made, the timeline draws them on the items that use it.
+	 */
+	protected static void thumbnailChanged(){
+		Timeline.markDirty();
+		MediaPanel.markDirty();
+	}
+	
 }
@@ -2,8 +2,14 @@ package src.screens.editorScreen.libraryPanel.mediaPanel.album.media;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import javax.swing.SwingUtilities;
+
+import src.AutosaveManager;
 import src.MainApplet;
 import src.MediaPanel;
 import src.dataStore.DataStore;
@@ -12,9 +18,12 @@ import src.screens.editorScreen.libraryPanel.mediaPanel.MediaPanelManager;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.Album;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.MultiItemAdder;
 import src.screens.editorScreen.timeline.TimelineManager;
+import src.screens.editorScreen.timeline.edit.EditHistory;
 import src.screens.editorScreen.timeline.track.Track;
 import src.screens.editorScreen.timeline.track.TrackManager;
 import src.util.Misc;
+import src.video.decodeManager.MpegHelper;
+import src.video.decodeManager.ProresHelper;
 
 
 public class MediaManager {
@@ -31,15 +40,27 @@ public class MediaManager {
 	 * @param directory - The hard-drive directory of the image.
 	 */
 	public static void addImage(Album album, String directory){
-		MediaItem mediaItem = new MediaImageItem(directory, album);
-		album.mediaItems.add(mediaItem);
+		addImage(album, directory, null);
+	}
+	
+	/**
+	 * @param savedInfo - Metadata saved with the project, or null to probe the file.
+	 */
+	public static void addImage(Album album, String directory, MediaInfo savedInfo){
+		addToAlbum(album, new MediaImageItem(directory, album, savedInfo));
 	}
 	
 
 	
 	public static void addVideo(Album album, String directory, int formatType){
-		MediaItem mediaItem = new MediaVideoItem(directory, album, formatType);
-		album.mediaItems.add(mediaItem);
+		addVideo(album, directory, formatType, null);
+	}
+	
+	/**
+	 * @param savedInfo - Metadata saved with the project, or null to probe the file.
+	 */
+	public static void addVideo(Album album, String directory, int formatType, MediaInfo savedInfo){
+		addToAlbum(album, new MediaVideoItem(directory, album, formatType, savedInfo));
 	}
 	
 	/**
@@ -47,8 +68,31 @@ public class MediaManager {
 	 * @param directory - The hard-drive directory of the audio.
 	 */
 	public static void addAudio(Album album, String directory){
-		MediaItem mediaItem = new MediaAudioItem(directory, album);
-		album.mediaItems.add(mediaItem);
+		addToAlbum(album, new MediaAudioItem(directory, album));
+	}
+	
+	/**
+	 * Albums are painted, and have cancelled imports removed, on the event dispatch thread, so items
+	 * are added there too. This waits for the item to be added, as loading a project looks up the
+	 * items it has just added by their index.
+	 */
+	private static void addToAlbum(final Album album, final MediaItem mediaItem){
+		AutosaveManager.markDirty();
+		if(SwingUtilities.isEventDispatchThread()){
+			album.mediaItems.add(mediaItem);
+			return;
+		}
+		try {
+			SwingUtilities.invokeAndWait(new Runnable() {
+				public void run() {
+					album.mediaItems.add(mediaItem);
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (InvocationTargetException e) {
+			e.printStackTrace();
+		}
 	}
 	
 	/**
@@ -70,6 +114,7 @@ public class MediaManager {
 
 
 
+			EditHistory.beginGroup();
 			try{
 
 
@@ -83,7 +128,7 @@ public class MediaManager {
 						MediaImageItem mediaImageItem = (MediaImageItem) mediaItem;
 
 
-						MediaPanel.track.addTrackItem(mediaImageItem, 0, 100, TrackManager.getFurthestTrackPoint(track)+1);
+						TrackManager.addItem(MediaPanel.track, mediaImageItem, 0, 100, TrackManager.getFurthestTrackPoint(track)+1);
 					}
 				}
 
@@ -92,6 +137,8 @@ public class MediaManager {
 
 			} catch (Exception e){
 				e.printStackTrace();
+			} finally {
+				EditHistory.endGroup();//Adding the whole album is undone in one step.
 			}
 
 
@@ -124,12 +171,40 @@ public class MediaManager {
 	}
 	
 	public static final int FORMAT_AVI = 20;
+	public static final int FORMAT_PRORES = 21;
+	public static final int FORMAT_MPEG = 22;
+	
+	/**
+	 * MPEG-1/2 program streams and transport streams, see MpegHelper. Transport streams holding
+	 * other video, as .m2ts and .mts files from AVCHD cameras usually do, aren't added.
+	 */
+	public static final List<String> MPEG_EXTENSIONS = Arrays.asList("mpg", "mpeg", "vob", "ts", "m2ts", "mts");
+	
+	/**
+	 * MOV and MP4 files are ProRes or else left to FrameGrab, which only decodes H.264.
+	 * The codec saved with the project is used if the file hasn't changed, otherwise the moov box is read.
+	 */
+	private static int getMovFormat(File file, MediaInfo savedInfo){
+		if(savedInfo != null && savedInfo.matches(file)){
+			return ProresHelper.FOURCCS.contains(savedInfo.codec) ? FORMAT_PRORES : 1;
+		}
+		return ProresHelper.isProres(file) ? FORMAT_PRORES : 1;
+	}
 	
 	/**
 	 * @param file - The file to add.
 	 * @param album - The album to add the file too.
 	 */
 	public static void addFile(File file, Album album){
+		addFile(file, album, null);
+	}
+	
+	/**
+	 * @param file - The file to add.
+	 * @param album - The album to add the file too.
+	 * @param savedInfo - Metadata saved with the project, used if the file hasn't changed since, or null.
+	 */
+	public static void addFile(File file, Album album, MediaInfo savedInfo){
 		
 		if(file == null){
 			return;
@@ -142,23 +217,27 @@ public class MediaManager {
 			String ext = name.substring(pos+1);
 
 			if(ext.equalsIgnoreCase("png") || ext.equalsIgnoreCase("jpg")){
-				MediaManager.addImage(album, file.getAbsolutePath());
+				MediaManager.addImage(album, file.getAbsolutePath(), savedInfo);
 			}
 			
 			if(ext.equalsIgnoreCase("gif")){
-				MediaManager.addVideo(album, file.getAbsolutePath(), 0);
+				MediaManager.addVideo(album, file.getAbsolutePath(), 0, savedInfo);
 			}
 			
 			if(ext.equalsIgnoreCase("mp4")){
-				MediaManager.addVideo(album, file.getAbsolutePath(), 1);
+				MediaManager.addVideo(album, file.getAbsolutePath(), getMovFormat(file, savedInfo), savedInfo);
 			}
 			
 			if(ext.equalsIgnoreCase("mov")){
-				MediaManager.addVideo(album, file.getAbsolutePath(), 1);
+				MediaManager.addVideo(album, file.getAbsolutePath(), getMovFormat(file, savedInfo), savedInfo);
 			}
 			
 			if(ext.equalsIgnoreCase("avi")){
-				MediaManager.addVideo(album, file.getAbsolutePath(), FORMAT_AVI);
+				MediaManager.addVideo(album, file.getAbsolutePath(), FORMAT_AVI, savedInfo);
+			}
+			
+			if(MPEG_EXTENSIONS.contains(ext.toLowerCase()) && (savedInfo != null && savedInfo.matches(file) || MpegHelper.isMpegVideo(file))){
+				MediaManager.addVideo(album, file.getAbsolutePath(), FORMAT_MPEG, savedInfo);
 			}
 			
 			if(ext.equalsIgnoreCase("mp3")){
@@ -169,6 +248,8 @@ public class MediaManager {
 	
 	/**
 	 * Import an entire folder and add all of the files.
+	 * Each file is only probed here, the previews are made by the MediaImportService,
+	 * and closing the progress window cancels whatever it hasn't started.
 	 */
 	public static void importFolder(){
 
@@ -198,23 +279,32 @@ public class MediaManager {
 					int count = 0;
 
 
-					for (File file : files) {
-						int currentPoints = (count+1);
-						int goalPoints = files.length;
-						int percent = (int) (currentPoints * 100) / goalPoints; 
-						if(percent > 100){
-							percent = 100;
-						}
-						if(percent < 0){
-							percent = 0;
+					MediaImportService.Batch batch = MediaImportService.beginBatch();
+					try {
+						for (File file : files) {
+							if(isImportClosed()){
+								MediaImportService.cancel(batch);
+								return;
+							}
+							addFile(file, MediaPanelManager.albums.get(selectedAlbum));
+							count++;
+							MainApplet.instance.getjLabel19().setText("Added "+count+" / "+files.length);
+							setImportProgress(count-batch.getPending(), files.length);
 						}
+					} finally {
+						MediaImportService.endBatch();
+					}
 
-						MainApplet.instance.getjLabel20().setText(percent+"%");
-
-						MainApplet.instance.getjProgressBar1().setValue(percent);
-
-						addFile(file, MediaPanelManager.albums.get(selectedAlbum));
-						count++;
+					/*
+					 * Wait for the previews to be made.
+					 */
+					while(batch.getPending() > 0){
+						if(isImportClosed()){
+							MediaImportService.cancel(batch);
+							return;
+						}
+						setImportProgress(count-batch.getPending(), files.length);
+						Thread.sleep(100);
 					}
 					MainApplet.instance.getjInternalFrame2().setVisible(false);
 
@@ -228,6 +318,30 @@ public class MediaManager {
 		}.start();
 	}
 	
+	/**
+	 * @return True if the user has closed the progress window.
+	 */
+	private static boolean isImportClosed(){
+		return MainApplet.instance.getjInternalFrame2().isClosed() || !MainApplet.instance.getjInternalFrame2().isVisible();
+	}
+	
+	private static void setImportProgress(int currentPoints, int goalPoints){
+		if(goalPoints == 0){
+			return;
+		}
+		int percent = (int) (currentPoints * 100) / goalPoints; 
+		if(percent > 100){
+			percent = 100;
+		}
+		if(percent < 0){
+			percent = 0;
+		}
+
+		MainApplet.instance.getjLabel20().setText(percent+"%");
+
+		MainApplet.instance.getjProgressBar1().setValue(percent);
+	}
+	
 	
 	
 	
@@ -25,6 +25,7 @@ import javax.swing.ImageIcon;
 
 import asg.jcodec.api.FrameGrab;
 import asg.jcodec.api.JCodecException;
+import asg.jcodec.common.DecodeOptions;
 import asg.jcodec.common.FileChannelWrapper;
 import asg.jcodec.common.JCodecUtil;
 import asg.jcodec.common.NIOUtils;
@@ -41,6 +42,7 @@ import asg.jcodec.containers.mp4.muxer.PCMMP4MuxerTrack;
 
 
 
+import src.AutosaveManager;
 import src.ImagePanel;
 import src.MainApplet;
 import src.Project;
@@ -48,15 +50,17 @@ import src.dataStore.DataStore;
 import src.multiThreading.threads.DecodingThread;
 import src.renderer.Renderer;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.Album;
-import src.thirdPartyLibraries.Frame;
-import src.thirdPartyLibraries.GifView;
 import src.thirdPartyLibraries.Scalr;
 import src.thirdPartyLibraries.Scalr.Method;
 import src.thirdPartyLibraries.Scalr.Mode;
 import src.util.Misc;
 import src.video.decodeManager.AviHelper;
 import src.video.decodeManager.DecodeManager;
+import src.video.decodeManager.GifHelper;
+import src.video.decodeManager.Mp4AudioDecoder;
 import src.video.decodeManager.Mp4Helper;
+import src.video.decodeManager.MpegHelper;
+import src.video.decodeManager.ProresHelper;
 
 public class MediaVideoItem extends MediaItem {
 
@@ -95,13 +99,33 @@ public class MediaVideoItem extends MediaItem {
 	public DecodeManager videoDecoder;
 	
 	public BufferedImage requestFrame(int frameIndex){
+		return requestFrame(frameIndex, DecodeOptions.FULL);
+	}
+	
+	/**
+	 * @param options - Shortcuts the decoder may take, e.g. DecodeOptions.FAST for previews.
+	 */
+	public BufferedImage requestFrame(int frameIndex, DecodeOptions options){
+		if(!decoderOpened){
+			openDecoder();
+			if(!decoderOpened){
+				return null;
+			}
+		}
 		while(true){
 			if(!busy){
 				busy = true;
+				DecodeManager decoder = videoDecoder;
+				if(decoder == null){
+					// Closed since, the item has been removed
+					busy = false;
+					return null;
+				}
 				try {
-					BufferedImage image = videoDecoder.requestFrame(frameIndex);
+					BufferedImage image = decoder.requestFrame(frameIndex, options);
 					if(frameIndex == 0){
 						thumbnail = Scalr.resize(ImagePanel.getBI(image), Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_HEIGHT, 67, null);
+						thumbnailChanged();
 					}
 					busy = false;
 					return image;
@@ -118,7 +142,7 @@ public class MediaVideoItem extends MediaItem {
 
 		try {
 
-			if(formatType == 1){
+			if(formatType == 0 || formatType == 1 || formatType == MediaManager.FORMAT_PRORES || formatType == MediaManager.FORMAT_MPEG){
 				//BufferedImage image = requestFrame(frameIndex);
 				
 				
@@ -158,7 +182,7 @@ public class MediaVideoItem extends MediaItem {
 	
 	public Image getPreviewFrame(int frameIndex){
 		try {
-		if(formatType == 0 || formatType == 1 || formatType == MediaManager.FORMAT_AVI){
+		if(formatType == 0 || formatType == 1 || formatType == MediaManager.FORMAT_AVI || formatType == MediaManager.FORMAT_PRORES || formatType == MediaManager.FORMAT_MPEG){
 			
 		int width;
 		int height;
@@ -168,7 +192,12 @@ public class MediaVideoItem extends MediaItem {
 		File tempFile = new File(DataStore.getCache()+"/"+getReferenceName()+"/"+frameIndex+".png");
 		
 		Image image = null;
-		if(tempFile.exists()){
+		/*
+		 * GIF frames are quick to composite, so they are decoded straight from the file rather than cached as PNGs.
+		 */
+		if(formatType == 0 && decoderOpened && videoDecoder != null){
+			image = requestFrame(frameIndex);
+		} else if(tempFile.exists()){
 			
 			
 			image = Toolkit.getDefaultToolkit().getImage(tempFile.getAbsolutePath());
@@ -211,34 +240,6 @@ public class MediaVideoItem extends MediaItem {
 		return null;
 	}
 	
-	public void generatePreviewFile(){
-		/*
-		 * Decoding GIF
-		 */
-		try {
-			GifView gifView = new GifView();
-			gifView.setGifImage(Misc.getBytesFromFile(new File(directory)));
-			gifView.start();
-			
-			int index = 0;
-			
-			//DataOutputStream os = new DataOutputStream(new FileOutputStream(DataStore.getCache()+"/"+getReferenceName()+".dat"));
-			
-			totalFrames = gifView.gifDecoder.frameList.size();
-			
-			for (Frame frame : gifView.gifDecoder.frameList) {
-				BufferedImage bufferedImage = ImagePanel.getBI(frame.pixels, frame.width, frame.height);
-				File picture = new File(DataStore.getCache()+"/"+getReferenceName()+"/"+index+".png");
-			    ImageIO.write(bufferedImage, "png", picture);
-				index++;
-			}
-
-		} catch (Exception e1) {
-			e1.printStackTrace();
-		}
-	}
-	
-	
 	/**
 	 * Returns the full image data from the original source (no compression etc.)
 	 * @param width2 - The width that we need it to be.
@@ -277,11 +278,15 @@ public class MediaVideoItem extends MediaItem {
 	
 	
 	public void decodeFrame(int frameIndex){
+		if(formatType == 0){
+			return;
+		}
 		try {
 			if(new File(DataStore.getCache()+"/"+getReferenceName()+"/"+frameIndex+".png").exists()){
 				return;
 			}
-			BufferedImage image = requestFrame(frameIndex);
+			// The cached frames are only previews, so the loop filter can be skipped
+			BufferedImage image = requestFrame(frameIndex, DecodeOptions.FAST);
 			//Image resizedImage = image;
 			Image resizedImage = Scalr.resize(image, Scalr.Method.SPEED, Scalr.Mode.FIT_TO_WIDTH, 300, null);
 			if(resizedImage.getHeight(null) >= Project.getScaledHeight()){
@@ -294,51 +299,60 @@ public class MediaVideoItem extends MediaItem {
 	}
 	
 	
+	/**
+	 * True if the clip has an AAC audio track that can be decoded into a WAV file.
+	 */
+	public boolean hasAudio = false;
+	
+	/**
+	 * @return Where the clip's decoded audio is kept, next to its cached preview frames so it is
+	 * deleted with them if the file changes.
+	 */
+	public File getWAVFile(){
+		return new File(DataStore.getCache()+"/"+getReferenceName()+"/audio.wav");
+	}
+	
+	/**
+	 * Decodes the clip's audio into getWAVFile().
+	 * @param input - A channel opened on the clip, closed once decoding finishes.
+	 */
 	public void decodeAudio(FileChannelWrapper input){
-	      /*  try {
-	        	
-	            MP4Demuxer demuxer = new MP4Demuxer(input);
-	            MP4Muxer muxer = new MP4Muxer(output, Brand.MOV);
-
-	            List<AbstractMP4DemuxerTrack> at = demuxer.getAudioTracks();
-	            List<PCMMP4MuxerTrack> audioTracks = new ArrayList<PCMMP4MuxerTrack>();
-	            for (AbstractMP4DemuxerTrack demuxerTrack : at) {
-	                PCMMP4MuxerTrack att = muxer.addUncompressedAudioTrack(((AudioSampleEntry) demuxerTrack.getSampleEntries()[0]).getFormat());
-	                audioTracks.add(att);
-	                att.setEdits(demuxerTrack.getEdits());
-	                att.setName(demuxerTrack.getName());
-	            }
-
-	            AbstractMP4DemuxerTrack vt = demuxer.getVideoTrack();
-	            FramesMP4MuxerTrack video = muxer.addTrackForCompressed(VIDEO, (int) vt.getTimescale());
-	            // vt.open(input);
-	            video.setTimecode(muxer.addTimecodeTrack((int) vt.getTimescale()));
-	            video.setEdits(vt.getEdits());
-	            video.addSampleEntries(vt.getSampleEntries());
-	            MP4Packet pkt = null;
-	            while ((pkt = (MP4Packet)vt.nextFrame()) != null) {
-	               // pkt = processFrame(pkt);
-	                video.addFrame(pkt);
-
-	                for (int i = 0; i < at.size(); i++) {
-	                    AudioSampleEntry ase = (AudioSampleEntry) at.get(i).getSampleEntries()[0];
-	                    int frames = (int) (ase.getSampleRate() * pkt.getDuration() / vt.getTimescale());
-	                    MP4Packet apkt = (MP4Packet)at.get(i).nextFrame();
-	                    audioTracks.get(i).addSamples(apkt.getData());
-	                }
-	            }
-
-	            muxer.writeHeader();
-	        } finally {
-	            if (input != null)
-	                input.close();
-	            if (output != null)
-	                output.close();
-	        }*/
+		try {
+			Mp4AudioDecoder.decodeToWav(input, getWAVFile());
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			NIOUtils.closeQuietly(input);
+		}
+	}
+	
+	/**
+	 * @return The clip's audio as a WAV file, decoded the first time it is asked for,
+	 * or null if the clip has none.
+	 */
+	public synchronized File getWAV(){
+		File wavFile = getWAVFile();
+		if(hasAudio && !wavFile.exists()){
+			try {
+				decodeAudio(readableFileChannel(new File(directory)));
+			} catch (FileNotFoundException e) {
+				e.printStackTrace();
+			}
+		}
+		return hasAudio && wavFile.exists() ? wavFile : null;
 	}
 	
 	
 	public MediaVideoItem(final String directory, Album album, int formatType) {
+		this(directory, album, formatType, null);
+	}
+	
+	/**
+	 * @param savedInfo - Metadata saved with the project. If the file hasn't changed since, it is used instead
+	 * of probing the file and the decoder is only opened once imported media has been dealt with.
+	 * If it has changed, the frames cached for the old file are deleted.
+	 */
+	public MediaVideoItem(final String directory, Album album, int formatType, MediaInfo savedInfo) {
 		super(directory, album);
 		//createPreviewPixels();
 
@@ -352,53 +366,132 @@ public class MediaVideoItem extends MediaItem {
 
 		this.formatType = formatType;
 
-		new Thread() {
+		/*
+		 * The frame count from the header lets the clip be placed on the time-line
+		 * before the import service has got round to opening its decoder.
+		 */
+		info = MediaImportService.probe(new File(directory), formatType, savedInfo);
+		if(savedInfo != null && info != savedInfo){
+			clearCachedFrames(dir);
+		}
+		totalFrames = info.frameCount;
+		frameDecoded = new byte[totalFrames];
+
+		int priority = info == savedInfo ? MediaImportService.PRIORITY_BACKGROUND : MediaImportService.PRIORITY_DECODER;
+		MediaImportService.submit(this, priority, new Runnable() {
 			public void run() {
-				try {
+				openDecoder();
+			}
+		});
+	}
+	
+	/**
+	 * Deletes the preview frames cached for a file that has since changed.
+	 */
+	private static void clearCachedFrames(File dir){
+		File[] files = dir.listFiles();
+		if(files != null){
+			for(File file : files){
+				file.delete();
+			}
+		}
+	}
+	
+	public volatile boolean decoderOpened = false;
+	
+	/**
+	 * Opens the clip's decoder and loads its thumbnail from the cache.
+	 * Does nothing if it has already been done, e.g. by the import service.
+	 * decoderOpened is only set once the decoder has been opened, so if that fails it is tried again next time.
+	 */
+	public synchronized void openDecoder(){
+		if(decoderOpened){
+			return;
+		}
+		try {
 
 
-					if(formatType == 1){
-						videoDecoder = new Mp4Helper(instance, directory);
-					}
-					
-					if(formatType == MediaManager.FORMAT_AVI){
-						videoDecoder = new AviHelper(instance, directory);
-					}
+			if(formatType == 0){
+				videoDecoder = new GifHelper(instance, directory);
+			}
+
+			if(formatType == 1){
+				videoDecoder = new Mp4Helper(instance, directory);
+				hasAudio = Mp4AudioDecoder.getAacTrack(((Mp4Helper) videoDecoder).frameGrab.demuxer) != null;
+			}
+			
+			if(formatType == MediaManager.FORMAT_AVI){
+				videoDecoder = new AviHelper(instance, directory);
+			}
+			
+			if(formatType == MediaManager.FORMAT_PRORES){
+				videoDecoder = new ProresHelper(instance, directory);
+				hasAudio = Mp4AudioDecoder.getAacTrack(((ProresHelper) videoDecoder).demuxer) != null;
+			}
+			
+			if(formatType == MediaManager.FORMAT_MPEG){
+				videoDecoder = new MpegHelper(instance, directory);
+				// Without a saved index the probe couldn't count the frames, so the saved metadata gets them now
+				info.frameCount = totalFrames;
+				AutosaveManager.markDirty();
+			}
 
+			if(videoDecoder == null){
+				return;
+			}
+			decoderOpened = true;
 
 
-					frameDecoded = new byte[totalFrames];
+			if(frameDecoded == null || frameDecoded.length != totalFrames){
+				frameDecoded = new byte[totalFrames];
+			}
 
-					File tempFile = new File(DataStore.getCache()+"/"+getReferenceName()+"/"+0+".png");
+			File tempFile = new File(DataStore.getCache()+"/"+getReferenceName()+"/"+0+".png");
 
-					Image image = null;
-					if(tempFile.exists()){
-						image = Toolkit.getDefaultToolkit().getImage(tempFile.getAbsolutePath());
-						ImageIcon imageicon = new ImageIcon(image);
-						int width = imageicon.getIconWidth();
-						int height = imageicon.getIconHeight();
-						int[] pixels = new int[width * height];
-						PixelGrabber pixelgrabber = new PixelGrabber(image, 0, 0, width, height, pixels, 0, width);
-						pixelgrabber.grabPixels();
-						thumbnail = Scalr.resize(ImagePanel.getBI(image), Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_HEIGHT, 67, null);
-					}
+			Image image = null;
+			if(tempFile.exists()){
+				image = Toolkit.getDefaultToolkit().getImage(tempFile.getAbsolutePath());
+				ImageIcon imageicon = new ImageIcon(image);
+				int width = imageicon.getIconWidth();
+				int height = imageicon.getIconHeight();
+				int[] pixels = new int[width * height];
+				PixelGrabber pixelgrabber = new PixelGrabber(image, 0, 0, width, height, pixels, 0, width);
+				pixelgrabber.grabPixels();
+				thumbnail = Scalr.resize(ImagePanel.getBI(image), Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_HEIGHT, 67, null);
+			}
+			
+			if(formatType == 0 && thumbnail == null){
+				thumbnail = Scalr.resize(videoDecoder.requestFrame(0), Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_HEIGHT, 67, null);
+			}
+			
+			if((formatType == 1 || formatType == MediaManager.FORMAT_PRORES || formatType == MediaManager.FORMAT_MPEG) && thumbnail == null){
+				thumbnail = Scalr.resize(videoDecoder.requestFrame(0, DecodeOptions.KEYFRAMES), Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_HEIGHT, 67, null);
+			}
+			thumbnailChanged();
 
 
 
 
 
-					DecodingThread.updateDecodingPriority();
+			DecodingThread.updateDecodingPriority();
 
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-			}
-		}.start();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
 	}
 
 	
 	
-	
+	/**
+	 * Closes the clip's decoder when the item is removed. It is opened again if a frame is requested after all.
+	 */
+	public synchronized void closeDecoder(){
+		if(videoDecoder != null){
+			videoDecoder.close();
+			videoDecoder = null;
+		}
+		decoderOpened = false;
+	}
 
 	@Override
 	public BufferedImage getThumbnail() {
@@ -54,6 +54,7 @@ public class TimelineManager {
 			}
 		}
 		timelinePosition = position;
+		Timeline.markPositionDirty();
 		ImagePanel.generateFullQualityFrame();
 		
 		DecodingThread.updateDecodingPriority();
@@ -210,6 +211,7 @@ public class TimelineManager {
 				
 				Renderer.pixels = new int[furthestPoint+1][];
 				Renderer.renderingStatus = new byte[furthestPoint+1];
+				Timeline.markDirty();
 				
 				for(int index = 0; index < Renderer.pixels.length; index++){
 					
@@ -240,6 +242,7 @@ public class TimelineManager {
 			
 			if(src.screens.editorScreen.timeline.TimelineManager.timelinePosition > Renderer.pixels.length-1){
 				src.screens.editorScreen.timeline.TimelineManager.timelinePosition = Renderer.pixels.length-1;
+				Timeline.markPositionDirty();
 			}
 			
 			
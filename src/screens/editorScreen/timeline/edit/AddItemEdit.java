@@ -0,0 +1,31 @@
+package src.screens.editorScreen.timeline.edit;
+
+import src.screens.editorScreen.timeline.track.Track;
+import src.screens.editorScreen.timeline.track.trackItem.TrackItem;
+
+/**
+ * An item was added to a track.
+ */
+public class AddItemEdit extends Edit {
+
+	private final Track track;
+	private final TrackItem trackItem;
+
+	public AddItemEdit(Track track, TrackItem trackItem){
+		this.track = track;
+		this.trackItem = trackItem;
+	}
+
+	@Override
+	public void undo() {
+		track.trackItems.remove(trackItem);
+		invalidate(trackItem);
+	}
+
+	@Override
+	public void redo() {
+		track.trackItems.add(trackItem);
+		invalidate(trackItem);
+	}
+
+}
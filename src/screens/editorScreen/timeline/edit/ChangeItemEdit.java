@@ -0,0 +1,70 @@
+package src.screens.editorScreen.timeline.edit;
+
+import src.screens.editorScreen.timeline.track.Track;
+import src.screens.editorScreen.timeline.track.TrackManager;
+import src.screens.editorScreen.timeline.track.trackItem.TrackItem;
+
+/**
+ * An item was moved, trimmed or shortened by a split.
+ * The item's current track and positions are taken as the state after the change.
+ */
+public class ChangeItemEdit extends Edit {
+
+	private final TrackItem trackItem;
+
+	private final Track oldTrack;
+	private final int oldTrackStartPosition;
+	private final int oldMediaStartPosition;
+	private final int oldMediaDuration;
+
+	private final Track newTrack;
+	private final int newTrackStartPosition;
+	private final int newMediaStartPosition;
+	private final int newMediaDuration;
+
+	public ChangeItemEdit(TrackItem trackItem, Track oldTrack, int oldTrackStartPosition, int oldMediaStartPosition, int oldMediaDuration){
+		this.trackItem = trackItem;
+		this.oldTrack = oldTrack;
+		this.oldTrackStartPosition = oldTrackStartPosition;
+		this.oldMediaStartPosition = oldMediaStartPosition;
+		this.oldMediaDuration = oldMediaDuration;
+		this.newTrack = TrackManager.getTrackForItem(trackItem);
+		this.newTrackStartPosition = trackItem.trackStartPosition;
+		this.newMediaStartPosition = trackItem.mediaStartPosition;
+		this.newMediaDuration = trackItem.mediaDuration;
+	}
+
+	/**
+	 * @return Whether the item is any different from before, edits that change nothing aren't worth recording.
+	 */
+	public boolean changed(){
+		return oldTrack != newTrack || oldTrackStartPosition != newTrackStartPosition
+				|| oldMediaStartPosition != newMediaStartPosition || oldMediaDuration != newMediaDuration;
+	}
+
+	@Override
+	public void undo() {
+		apply(oldTrack, oldTrackStartPosition, oldMediaStartPosition, oldMediaDuration);
+	}
+
+	@Override
+	public void redo() {
+		apply(newTrack, newTrackStartPosition, newMediaStartPosition, newMediaDuration);
+	}
+
+	private void apply(Track track, int trackStartPosition, int mediaStartPosition, int mediaDuration){
+		invalidate(trackItem);
+		Track currentTrack = TrackManager.getTrackForItem(trackItem);
+		if(currentTrack != track){
+			if(currentTrack != null){
+				currentTrack.trackItems.remove(trackItem);
+			}
+			track.trackItems.add(trackItem);
+		}
+		trackItem.trackStartPosition = trackStartPosition;
+		trackItem.mediaStartPosition = mediaStartPosition;
+		trackItem.mediaDuration = mediaDuration;
+		invalidate(trackItem);
+	}
+
+}
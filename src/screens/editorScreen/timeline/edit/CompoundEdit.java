@@ -0,0 +1,34 @@
+package src.screens.editorScreen.timeline.edit;
+
+import java.util.ArrayList;
+
+/**
+ * Several edits that are undone and redone together, e.g. everything a single mouse drag changed.
+ */
+public class CompoundEdit extends Edit {
+
+	private final ArrayList<Edit> edits = new ArrayList<Edit>();
+
+	public void add(Edit edit){
+		edits.add(edit);
+	}
+
+	public boolean isEmpty(){
+		return edits.isEmpty();
+	}
+
+	@Override
+	public void undo() {
+		for(int index = edits.size()-1; index >= 0; index--){
+			edits.get(index).undo();
+		}
+	}
+
+	@Override
+	public void redo() {
+		for(Edit edit : edits){
+			edit.redo();
+		}
+	}
+
+}
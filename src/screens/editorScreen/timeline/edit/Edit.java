@@ -0,0 +1,38 @@
+package src.screens.editorScreen.timeline.edit;
+
+import src.renderer.Renderer;
+import src.screens.editorScreen.timeline.track.trackItem.TrackItem;
+
+/**
+ * One change to the timeline that can be reversed and applied again.
+ * Edits only touch the objects they changed, never the rest of the project.
+ */
+public abstract class Edit {
+
+	/**
+	 * Reverses the change.
+	 */
+	public abstract void undo();
+
+	/**
+	 * Applies the change again after it was undone.
+	 */
+	public abstract void redo();
+
+	/**
+	 * Marks the frames an item covers as needing to be rendered again.
+	 */
+	protected static void invalidate(TrackItem trackItem){
+		invalidate(trackItem.trackStartPosition, trackItem.trackStartPosition+trackItem.mediaDuration);
+	}
+
+	/**
+	 * Marks a range of frames as needing to be rendered again.
+	 */
+	protected static void invalidate(int from, int to){
+		for(int frameIndex = Math.max(0, from); frameIndex <= to && frameIndex+1 < Renderer.renderingStatus.length; frameIndex++){
+			Renderer.renderingStatus[frameIndex] = 0;
+		}
+	}
+
+}
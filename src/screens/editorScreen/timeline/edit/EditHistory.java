@@ -0,0 +1,131 @@
+package src.screens.editorScreen.timeline.edit;
+
+import java.util.ArrayList;
+
+import src.AutosaveManager;
+import src.ImagePanel;
+import src.Timeline;
+import src.multiThreading.threads.DecodingThread;
+import src.screens.editorScreen.timeline.TimelineManager;
+
+/**
+ * Undo and redo for the timeline.
+ * Every change is recorded as a small edit that knows how to reverse itself, so undoing
+ * applies that change to the live tracks instead of reloading a saved copy of the whole
+ * project (and re-importing all of its media), and a long history costs very little memory.
+ */
+public class EditHistory {
+
+	/**
+	 * Edits hold a few references and numbers each, so the history can be deep.
+	 */
+	public static final int MAX_EDITS = 1000;
+
+	private static final ArrayList<Edit> undoHistory = new ArrayList<Edit>();
+	private static final ArrayList<Edit> redoHistory = new ArrayList<Edit>();
+
+	/*
+	 * Edits recorded between beginGroup and endGroup are collected here and undone as one.
+	 */
+	private static CompoundEdit group = null;
+	private static int groupDepth = 0;
+
+	/**
+	 * Adds a change that has just been made to the history.
+	 * Anything that was undone can no longer be redone, as it followed a different state.
+	 * Every change to the tracks is recorded here, so this is also where the timeline learns it has to be repainted
+	 * and the autosave that there is something to save.
+	 */
+	public static synchronized void record(Edit edit){
+		Timeline.markDirty();
+		AutosaveManager.markDirty();
+		if(groupDepth > 0){
+			group.add(edit);
+			return;
+		}
+		undoHistory.add(edit);
+		if(undoHistory.size() > MAX_EDITS){
+			undoHistory.remove(0);
+		}
+		redoHistory.clear();
+	}
+
+	/**
+	 * Starts collecting edits into a single undo step, until the matching endGroup.
+	 * Groups may be nested, only the outermost one is recorded.
+	 */
+	public static synchronized void beginGroup(){
+		if(groupDepth++ == 0){
+			group = new CompoundEdit();
+		}
+	}
+
+	public static synchronized void endGroup(){
+		if(groupDepth == 0){
+			return;
+		}
+		if(--groupDepth == 0){
+			CompoundEdit finished = group;
+			group = null;
+			if(!finished.isEmpty()){
+				record(finished);
+			}
+		}
+	}
+
+	/**
+	 * Closes any groups still open, recording what they collected as one step. Used before starting
+	 * a group that must be the outermost one, in case an earlier group was never ended.
+	 */
+	public static synchronized void closeGroups(){
+		if(groupDepth > 0){
+			groupDepth = 1;
+			endGroup();
+		}
+	}
+
+	/**
+	 * Reverses the most recent edit, if there is one and no edit is in progress.
+	 */
+	public static synchronized void undo(){
+		if(groupDepth > 0 || undoHistory.isEmpty()){
+			return;
+		}
+		Edit edit = undoHistory.remove(undoHistory.size()-1);
+		edit.undo();
+		redoHistory.add(edit);
+		refresh();
+	}
+
+	/**
+	 * Applies the most recently undone edit again.
+	 */
+	public static synchronized void redo(){
+		if(groupDepth > 0 || redoHistory.isEmpty()){
+			return;
+		}
+		Edit edit = redoHistory.remove(redoHistory.size()-1);
+		edit.redo();
+		undoHistory.add(edit);
+		refresh();
+	}
+
+	/**
+	 * Forgets all history, e.g. when another project is loaded.
+	 */
+	public static synchronized void clear(){
+		Timeline.markDirty();
+		AutosaveManager.markDirty();
+		undoHistory.clear();
+		redoHistory.clear();
+	}
+
+	private static void refresh(){
+		AutosaveManager.markDirty();
+		TimelineManager.updateTimelineLength();
+		Timeline.update();
+		ImagePanel.update();
+		DecodingThread.updateDecodingPriority();
+	}
+
+}
@@ -0,0 +1,37 @@
+package src.screens.editorScreen.timeline.edit;
+
+import java.util.Collections;
+
+import src.TrackManagerPanel;
+import src.screens.editorScreen.timeline.TimelineManager;
+
+/**
+ * Two neighbouring tracks swapped places.
+ */
+public class MoveTrackEdit extends Edit {
+
+	private final int position1;
+	private final int position2;
+
+	public MoveTrackEdit(int position1, int position2){
+		this.position1 = position1;
+		this.position2 = position2;
+	}
+
+	@Override
+	public void undo() {
+		swap();
+	}
+
+	@Override
+	public void redo() {
+		swap();
+	}
+
+	private void swap(){
+		Collections.swap(TimelineManager.tracks, position1, position2);
+		TrackManagerPanel.update();
+		invalidate(0, Integer.MAX_VALUE);
+	}
+
+}
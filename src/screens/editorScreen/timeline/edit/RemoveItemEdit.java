@@ -0,0 +1,36 @@
+package src.screens.editorScreen.timeline.edit;
+
+import src.screens.editorScreen.timeline.track.Track;
+import src.screens.editorScreen.timeline.track.trackItem.TrackItem;
+
+/**
+ * An item was removed from a track.
+ */
+public class RemoveItemEdit extends Edit {
+
+	private final Track track;
+	private final TrackItem trackItem;
+	private final int index;
+
+	/**
+	 * @param index - Where the item was in the track's list, so it is drawn in the same order when restored.
+	 */
+	public RemoveItemEdit(Track track, TrackItem trackItem, int index){
+		this.track = track;
+		this.trackItem = trackItem;
+		this.index = index;
+	}
+
+	@Override
+	public void undo() {
+		track.trackItems.add(Math.min(index, track.trackItems.size()), trackItem);
+		invalidate(trackItem);
+	}
+
+	@Override
+	public void redo() {
+		track.trackItems.remove(trackItem);
+		invalidate(trackItem);
+	}
+
+}
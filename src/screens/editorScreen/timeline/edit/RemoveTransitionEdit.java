@@ -0,0 +1,31 @@
+package src.screens.editorScreen.timeline.edit;
+
+import src.screens.editorScreen.timeline.track.Track;
+import src.screens.editorScreen.timeline.track.transition.Transition;
+
+/**
+ * A transition was removed, either on its own or because one of its items was moved or removed.
+ */
+public class RemoveTransitionEdit extends Edit {
+
+	private final Track track;
+	private final Transition transition;
+
+	public RemoveTransitionEdit(Track track, Transition transition){
+		this.track = track;
+		this.transition = transition;
+	}
+
+	@Override
+	public void undo() {
+		track.transitions.add(transition);
+		invalidate(transition.item1.trackStartPosition, transition.item2.trackStartPosition+transition.item2.mediaDuration);
+	}
+
+	@Override
+	public void redo() {
+		track.transitions.remove(transition);
+		invalidate(transition.item1.trackStartPosition, transition.item2.trackStartPosition+transition.item2.mediaDuration);
+	}
+
+}
@@ -12,6 +12,8 @@ import src.TrackManagerPanel;
 import src.dataStore.DataStore;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaItem;
 import src.screens.editorScreen.timeline.TimelineManager;
+import src.screens.editorScreen.timeline.edit.EditHistory;
+import src.screens.editorScreen.timeline.edit.MoveTrackEdit;
 import src.screens.editorScreen.timeline.track.trackItem.TrackItem;
 import src.screens.editorScreen.timeline.track.transition.Transition;
 
@@ -60,6 +62,7 @@ public abstract class Track {
             	int position = TimelineManager.tracks.indexOf(instance);
             	if(position > 0){
             		Collections.swap(TimelineManager.tracks, position, position-1);
+            		EditHistory.record(new MoveTrackEdit(position, position-1));
             		TrackManagerPanel.update();
             		src.Timeline.update();
             	}
@@ -72,6 +75,7 @@ public abstract class Track {
             	int position = TimelineManager.tracks.indexOf(instance);
             	if(position < TimelineManager.tracks.size()-1){
             		Collections.swap(TimelineManager.tracks, position, position+1);
+            		EditHistory.record(new MoveTrackEdit(position, position+1));
             		TrackManagerPanel.update();
             		src.Timeline.update();
             	}
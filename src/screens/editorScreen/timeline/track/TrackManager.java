@@ -4,6 +4,10 @@ import java.util.ArrayList;
 
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaItem;
 import src.screens.editorScreen.timeline.TimelineManager;
+import src.screens.editorScreen.timeline.edit.AddItemEdit;
+import src.screens.editorScreen.timeline.edit.ChangeItemEdit;
+import src.screens.editorScreen.timeline.edit.EditHistory;
+import src.screens.editorScreen.timeline.edit.RemoveItemEdit;
 import src.screens.editorScreen.timeline.track.trackItem.TrackAudioItem;
 import src.screens.editorScreen.timeline.track.trackItem.TrackImageItem;
 import src.screens.editorScreen.timeline.track.trackItem.TrackItem;
@@ -99,18 +103,37 @@ public class TrackManager {
 		int secondDuration = secondItemEndFrame-secondItemStartFrame;
 		int secondItemTrackStartPos = trackItem.getTrackStartPosition() + splitPosition;
 
+		EditHistory.beginGroup();
 		
 		/*
 		 * Transform the track item into segment 1
 		 */
+		int oldDuration = trackItem.mediaDuration;
 		trackItem.mediaDuration = firstItemEndFrame-firstItemStartFrame;
+		EditHistory.record(new ChangeItemEdit(trackItem, track, trackItem.trackStartPosition, trackItem.mediaStartPosition, oldDuration));
 		
 		/*
 		 * Create a new track item for segment 2 and 
 		 * add it to the timeline after segment 1.
 		 */
-		track.addTrackItem(trackItem.mediaItem, secondItemStartFrame, secondDuration, secondItemTrackStartPos);
+		addItem(track, trackItem.mediaItem, secondItemStartFrame, secondDuration, secondItemTrackStartPos);
 		
+		EditHistory.endGroup();
+	}
+	
+	/**
+	 * Adds an item to a track and records it so it can be undone.
+	 * @return The new item, or null if the track doesn't take items of this type.
+	 */
+	public static TrackItem addItem(Track track, MediaItem mediaItem, int mediaStartPosition, int mediaDuration, int trackStartPosition){
+		int size = track.trackItems.size();
+		track.addTrackItem(mediaItem, mediaStartPosition, mediaDuration, trackStartPosition);
+		if(track.trackItems.size() == size){
+			return null;
+		}
+		TrackItem trackItem = track.trackItems.get(size);
+		EditHistory.record(new AddItemEdit(track, trackItem));
+		return trackItem;
 	}
 	
 	/**
@@ -141,13 +164,18 @@ public class TrackManager {
 					
 					if(trackItem == item){
 						
+						EditHistory.beginGroup();
+						
 						Transition transition = TransitionManager.itemPartOfAnyTransition(item);
 						
 						if(transition != null){
 							TransitionManager.removeTransition(transition);
 						}
 						
+						EditHistory.record(new RemoveItemEdit(trackInstance, item, trackInstance.trackItems.indexOf(item)));
 						trackInstance.trackItems.remove(item);
+						
+						EditHistory.endGroup();
 					}
 				}
 			}
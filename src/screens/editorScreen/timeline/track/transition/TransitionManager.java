@@ -3,6 +3,8 @@ package src.screens.editorScreen.timeline.track.transition;
 import src.Timeline;
 import src.TransitionMediaPanel;
 import src.renderer.Renderer;
+import src.screens.editorScreen.timeline.edit.EditHistory;
+import src.screens.editorScreen.timeline.edit.RemoveTransitionEdit;
 import src.screens.editorScreen.timeline.track.Track;
 import src.screens.editorScreen.timeline.track.trackItem.TrackItem;
 
@@ -113,7 +115,9 @@ public class TransitionManager {
 	 * @param transition - The transition to remove.
 	 */
 	public static void removeTransition(Transition transition){
-		src.screens.editorScreen.timeline.track.transition.TransitionManager.getTrackForTransition(transition).transitions.remove(transition);
+		Track track = getTrackForTransition(transition);
+		EditHistory.record(new RemoveTransitionEdit(track, transition));
+		track.transitions.remove(transition);
 		for(int frameIndex = transition.item1.getTrackStartPosition(); frameIndex < transition.item2.trackStartPosition+transition.item2.mediaDuration+1; frameIndex++){
 			if(frameIndex+1 < Renderer.renderingStatus.length){
 				Renderer.renderingStatus[frameIndex] = 0;
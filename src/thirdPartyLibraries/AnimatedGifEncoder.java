@@ -169,6 +169,243 @@ public class AnimatedGifEncoder {
     return ok;
   }
 
+  /**
+   * A colour table shared by every frame of a file, trained once on a sample
+   * of the frames instead of once per frame. Mapping colours to it is thread
+   * safe, so frames can be encoded against it in parallel.
+   */
+  public static class Palette {
+    final NeuQuant quantizer;
+
+    final byte[] colorTab; // RGB palette
+
+    Palette(NeuQuant quantizer, byte[] colorTab) {
+      this.quantizer = quantizer;
+      this.colorTab = colorTab;
+    }
+  }
+
+  /**
+   * A frame that has been quantized and LZW encoded by
+   * <code>encodeFrame</code>, ready to be written with
+   * <code>addFrame(EncodedFrame)</code>.
+   */
+  public static class EncodedFrame {
+    int x, y, width, height; // rectangle that changed
+
+    byte[] colorTab; // RGB palette
+
+    boolean globalPalette; // colorTab is the shared palette
+
+    int transIndex = -1; // index of unchanged pixels, or -1 if none
+
+    byte[] data; // code size, data sub-blocks and terminator
+  }
+
+  /**
+   * Trains a palette on the given frames. Large frames are sampled so that no
+   * more than about a million pixels are used in total.
+   * 
+   * @param frames
+   *          RGB pixels of each sample frame.
+   * @param quality
+   *          as for <code>setQuality</code>.
+   */
+  public static Palette trainPalette(int[][] frames, int quality) {
+    long total = 0;
+    for (int f = 0; f < frames.length; f++) {
+      total += frames[f].length;
+    }
+    int step = (int) Math.max(1, total >> 20);
+    byte[] bgr = new byte[(int) (total / step + frames.length) * 3];
+    int k = 0;
+    for (int f = 0; f < frames.length; f++) {
+      int[] rgb = frames[f];
+      for (int i = 0; i < rgb.length; i += step) {
+        int c = rgb[i];
+        bgr[k++] = (byte) c;
+        bgr[k++] = (byte) (c >> 8);
+        bgr[k++] = (byte) (c >> 16);
+      }
+    }
+    NeuQuant nq = new NeuQuant(bgr, k, quality);
+    return new Palette(nq, toRGB(nq.process()));
+  }
+
+  /**
+   * Quantizes and LZW encodes one frame. Only the rectangle that changed since
+   * the previous frame is encoded, and pixels inside it that didn't change are
+   * made transparent if the palette has an entry left over for it. The frames
+   * are written with "do not dispose", so each one is drawn over the last.
+   * Nothing is shared between calls, so frames can be encoded on several
+   * threads at once.
+   * 
+   * @param pixels
+   *          RGB pixels of the frame.
+   * @param previous
+   *          RGB pixels of the previous frame, or null to encode it all.
+   * @param palette
+   *          shared palette, or null to train one for just this frame.
+   * @param quality
+   *          as for <code>setQuality</code>.
+   */
+  public static EncodedFrame encodeFrame(int[] pixels, int[] previous, int width, int height,
+      Palette palette, int quality) throws IOException {
+    int minX = 0, minY = 0, maxX = width - 1, maxY = height - 1;
+    if (previous != null) {
+      minX = width;
+      minY = height;
+      maxX = -1;
+      maxY = -1;
+      for (int y = 0, i = 0; y < height; y++) {
+        for (int x = 0; x < width; x++, i++) {
+          if (((pixels[i] ^ previous[i]) & 0xffffff) != 0) {
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            maxY = y;
+          }
+        }
+      }
+      if (maxX < 0) {
+        // nothing changed, redraw a single pixel
+        minX = minY = maxX = maxY = 0;
+        previous = null;
+      }
+    }
+    EncodedFrame frame = new EncodedFrame();
+    frame.x = minX;
+    frame.y = minY;
+    frame.width = maxX - minX + 1;
+    frame.height = maxY - minY + 1;
+
+    int nPix = frame.width * frame.height;
+    NeuQuant nq;
+    if (palette != null) {
+      nq = palette.quantizer;
+      frame.colorTab = palette.colorTab;
+      frame.globalPalette = true;
+    } else {
+      byte[] bgr = new byte[nPix * 3];
+      int k = 0;
+      for (int y = minY; y <= maxY; y++) {
+        for (int i = y * width + minX, end = i + frame.width; i < end; i++) {
+          int c = pixels[i];
+          bgr[k++] = (byte) c;
+          bgr[k++] = (byte) (c >> 8);
+          bgr[k++] = (byte) (c >> 16);
+        }
+      }
+      nq = new NeuQuant(bgr, bgr.length, quality);
+      frame.colorTab = toRGB(nq.process());
+    }
+
+    // map changed pixels, leaving unchanged ones until a spare entry is known
+    byte[] indexed = new byte[nPix];
+    boolean[] used = new boolean[256];
+    boolean unchanged = false;
+    int k = 0;
+    for (int y = minY; y <= maxY; y++) {
+      for (int i = y * width + minX, end = i + frame.width; i < end; i++, k++) {
+        int c = pixels[i];
+        if (previous != null && ((c ^ previous[i]) & 0xffffff) == 0) {
+          unchanged = true;
+          continue;
+        }
+        int index = nq.map(c & 0xff, (c >> 8) & 0xff, (c >> 16) & 0xff);
+        used[index] = true;
+        indexed[k] = (byte) index;
+      }
+    }
+    if (unchanged) {
+      for (int i = 0; i < 256; i++) {
+        if (!used[i]) {
+          frame.transIndex = i;
+          break;
+        }
+      }
+      k = 0;
+      for (int y = minY; y <= maxY; y++) {
+        for (int i = y * width + minX, end = i + frame.width; i < end; i++, k++) {
+          int c = pixels[i];
+          if (((c ^ previous[i]) & 0xffffff) == 0) {
+            indexed[k] = (byte) (frame.transIndex >= 0 ? frame.transIndex
+                : nq.map(c & 0xff, (c >> 8) & 0xff, (c >> 16) & 0xff));
+          }
+        }
+      }
+    }
+
+    ByteArrayOutputStream data = new ByteArrayOutputStream(nPix / 2 + 16);
+    new LZWEncoder(frame.width, frame.height, indexed, 8).encode(data);
+    frame.data = data.toByteArray();
+    return frame;
+  }
+
+  /**
+   * Converts a palette from the quantizer's BGR order to RGB.
+   */
+  private static byte[] toRGB(byte[] colorTab) {
+    for (int i = 0; i < colorTab.length; i += 3) {
+      byte temp = colorTab[i];
+      colorTab[i] = colorTab[i + 2];
+      colorTab[i + 2] = temp;
+    }
+    return colorTab;
+  }
+
+  /**
+   * Writes a frame made by <code>encodeFrame</code>. Frames must be added in
+   * order, and the first one must cover the whole image.
+   * 
+   * @return true if successful.
+   */
+  public boolean addFrame(EncodedFrame frame) {
+    if ((frame == null) || !started) {
+      return false;
+    }
+    boolean ok = true;
+    try {
+      if (!sizeSet) {
+        setSize(frame.width, frame.height);
+      }
+      if (firstFrame) {
+        writeLSD();
+        colorTab = frame.colorTab;
+        writePalette();
+        if (repeat >= 0) {
+          writeNetscapeExt();
+        }
+      }
+      out.write(0x21); // extension introducer
+      out.write(0xf9); // GCE label
+      out.write(4); // data block size
+      out.write((1 << 2) | // 4:6 disposal = do not dispose
+          (frame.transIndex >= 0 ? 1 : 0)); // 8 transparency flag
+      writeShort(delay);
+      out.write(Math.max(0, frame.transIndex));
+      out.write(0); // block terminator
+
+      out.write(0x2c); // image separator
+      writeShort(frame.x);
+      writeShort(frame.y);
+      writeShort(frame.width);
+      writeShort(frame.height);
+      if (firstFrame || frame.globalPalette) {
+        out.write(0); // use the global color table
+      } else {
+        out.write(0x80 | palSize); // local color table
+        colorTab = frame.colorTab;
+        writePalette();
+      }
+      out.write(frame.data);
+      firstFrame = false;
+    } catch (IOException e) {
+      ok = false;
+    }
+    return ok;
+  }
+
   /**
    * Flushes any pending data and closes output file. If writing to an
    * OutputStream, the stream is not closed.
@@ -179,6 +179,64 @@ public class Converter
 		}
 	}
 
+	/**
+	 * Converts an MPEG audio file to a 16 Bit PCM WAV file through the
+	 * decoder's direct-to-array path: every frame is decoded into the
+	 * same sample array, which is then written straight to the file.
+	 *
+	 * @param sourceName	The MPEG audio file to convert.
+	 * @param destName		The WAV file to write.
+	 */
+	public synchronized void convertPcm(String sourceName, String destName)
+		throws JavaLayerException
+	{
+		InputStream in = null;
+		WaveFile outWave = null;
+		try
+		{
+			in = openInput(sourceName);
+			Decoder decoder = new Decoder();
+			Bitstream stream = new Bitstream(in);
+			short[] pcm = new short[Obuffer.OBUFFERSIZE];
+
+			Header header;
+			while ((header = stream.readFrame())!=null)
+			{
+				if (outWave==null)
+				{
+					short channels = (short)((header.mode()==Header.SINGLE_CHANNEL) ? 1 : 2);
+					outWave = new WaveFile();
+					if (outWave.OpenForWrite(destName, header.frequency(), (short)16, channels)!=WaveFile.DDC_SUCCESS)
+						throw new JavaLayerException("Unable to write "+destName);
+				}
+				int samples = decoder.decodeFrame(header, stream, pcm, 0);
+				if (outWave.WriteData(pcm, samples)!=WaveFile.DDC_SUCCESS)
+					throw new JavaLayerException("Unable to write "+destName);
+				stream.closeFrame();
+			}
+		}
+		catch (IOException ex)
+		{
+			throw new JavaLayerException(ex.getLocalizedMessage(), ex);
+		}
+		finally
+		{
+			// Close patches the RIFF and data chunk sizes into the header
+			if (outWave!=null)
+				outWave.Close();
+			if (in!=null)
+			{
+				try
+				{
+					in.close();
+				}
+				catch (IOException ex)
+				{
+				}
+			}
+		}
+	}
+
 
 	protected int countFrames(InputStream in)
 	{
@@ -409,4 +467,4 @@ public class Converter
 	}
 
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -60,6 +60,7 @@ public class RiffFile
    private RiffChunkHeader   	riff_header;      // header for whole file
    protected int      			fmode;            // current file I/O mode
    protected RandomAccessFile 	file;             // I/O stream to use
+   private byte[]				sampleBytes = new byte[0]; // reused by Write(short[], int), grown as needed
 
    /**
     * Dummy Constructor
@@ -191,10 +192,15 @@ public class RiffFile
 
    /**
     * Write NumBytes data.
+    * The samples are converted into one byte buffer kept between calls, as this is called for every decoded frame.
 	*/     
    public int Write(short[] Data, int NumBytes )
    {
-      byte[] theData = new byte[NumBytes];
+      if (sampleBytes.length < NumBytes)
+      {
+        sampleBytes = new byte[NumBytes];
+      }
+      byte[] theData = sampleBytes;
       int yc = 0;
       for (int y = 0;y<NumBytes;y=y+2)
       {
@@ -148,9 +148,47 @@ public class Decoder implements DecoderErrors
 				
 		output.write_buffer(1);
 		
-		return output;	
+		return output;
 	}
-	
+
+	/**
+	 * Decodes one frame straight into a caller-provided array as
+	 * interleaved 16 Bit PCM. This is the throughput path used for
+	 * whole-file conversion: the frame decoder, synthesis filters and
+	 * output buffer are created once and reused for every frame, so no
+	 * per-frame sample storage is allocated.
+	 *
+	 * @param header		The header describing the frame to decode.
+	 * @param stream		The bistream that provides the bits for te body of the frame.
+	 * @param pcm			The array the samples are written to. It must have room
+	 *						for <code>getOutputBlockSize()</code> samples past offset.
+	 * @param offset		The index of the first sample written.
+	 *
+	 * @return The number of interleaved samples written to pcm.
+	 */
+	public int decodeFrame(Header header, Bitstream stream, short[] pcm, int offset)
+		throws DecoderException
+	{
+		if (!initialized)
+		{
+			if (output==null)
+				output = new PcmBuffer(header.mode()==Header.SINGLE_CHANNEL ? 1 : 2);
+			initialize(header);
+		}
+
+		if (!(output instanceof PcmBuffer))
+			throw new IllegalStateException("output buffer is not a PcmBuffer");
+
+		PcmBuffer pcmBuffer = (PcmBuffer)output;
+		pcmBuffer.setTarget(pcm, offset);
+
+		FrameDecoder decoder = retrieveDecoder(header, stream, header.layer());
+
+		decoder.decodeFrame();
+
+		return pcmBuffer.getSampleCount();
+	}
+
 	/**
 	 * Changes the output buffer. This will take effect the next time
 	 * decodeFrame() is called. 
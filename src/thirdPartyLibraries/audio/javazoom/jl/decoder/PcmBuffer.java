@@ -0,0 +1,108 @@
+/*
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package src.thirdPartyLibraries.audio.javazoom.jl.decoder;
+
+/**
+ * The <code>PcmBuffer</code> class is an output buffer that writes
+ * interleaved 16 Bit PCM samples straight into an array owned by the
+ * caller. Unlike <code>SampleBuffer</code> it owns no sample storage of
+ * its own, so one instance is reused for the whole stream and only the
+ * target array and offset change between frames.
+ */
+public class PcmBuffer extends Obuffer
+{
+  private short[]		target;
+  private int			offset;
+  private final int[]	bufferp = new int[MAXCHANNELS];
+  private final int		channels;
+
+  /**
+   * Constructor
+   */
+  public PcmBuffer(int number_of_channels)
+  {
+	channels = number_of_channels;
+  }
+
+  /**
+   * Sets the array that the next decoded frame is written to. Samples
+   * are interleaved starting at <code>offset</code>; the array must have
+   * room for <code>Obuffer.OBUFFERSIZE</code> samples past it.
+   */
+  public void setTarget(short[] pcm, int offset)
+  {
+	this.target = pcm;
+	this.offset = offset;
+	clear_buffer();
+  }
+
+  public int getChannelCount()
+  {
+	return channels;
+  }
+
+  /**
+   * Returns the number of interleaved samples written since the
+   * last call to <code>setTarget</code> or <code>clear_buffer</code>.
+   */
+  public int getSampleCount()
+  {
+	return bufferp[0] - offset;
+  }
+
+  /**
+   * Takes a 16 Bit PCM sample.
+   */
+  public void append(int channel, short value)
+  {
+	target[bufferp[channel]] = value;
+	bufferp[channel] += channels;
+  }
+
+  public void appendSamples(int channel, float[] f)
+  {
+	final short[] out = target;
+	final int step = channels;
+	int pos = bufferp[channel];
+	float fs;
+	for (int i=0; i<32; i++)
+	{
+		fs = f[i];
+		out[pos] = (short)(fs > 32767.0f ? 32767
+						: (fs < -32768.0f ? -32768 : fs));
+		pos += step;
+	}
+	bufferp[channel] = pos;
+  }
+
+  public void write_buffer(int val)
+  {}
+
+  public void close()
+  {}
+
+  public void clear_buffer()
+  {
+	for (int i = 0; i < channels; ++i)
+		bufferp[i] = offset + i;
+  }
+
+  public void set_stop_flag()
+  {}
+}
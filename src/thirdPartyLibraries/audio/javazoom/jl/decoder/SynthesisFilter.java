@@ -47,6 +47,7 @@ final class SynthesisFilter
   private int				 channel;
   private float 			 scalefactor;
   private float[]			 eq;
+  private boolean			 eqPassThru;		// all eq factors are 1.0
 	
 	/**
 	 * Quality value for controlling CPU usage/quality tradeoff. 
@@ -100,6 +101,12 @@ final class SynthesisFilter
 	 {
 		throw new IllegalArgumentException("eq0");	 
 	 }
+	 eqPassThru = true;
+	 for (int i=0; i<32; i++)
+	 {
+		 if (eq[i]!=1.0f)
+			 eqPassThru = false;
+	 }
 	  
   }
   
@@ -160,6 +167,13 @@ final class SynthesisFilter
 
   public void input_samples(float[] s)
   {
+	  // the default equalizer leaves every band untouched, so skip
+	  // the 32 multiplies per subband sample.
+	  if (eqPassThru)
+	  {
+		  System.arraycopy(s, 0, samples, 0, 32);
+		  return;
+	  }
 	  for (int i=31; i>=0; i--)
 	  {		
 		 samples[i] = s[i]*eq[i];
@@ -199,6 +199,8 @@ class AtomFactory {
 			atom = new SampleSizeAtom(parent,atomIn);
 		} else if(type.equals("stco")) {
 			atom = new ChunkOffsetAtom(parent,atomIn);
+		} else if(type.equals("stss")) {
+			atom = new SyncSampleAtom(parent,atomIn);
 		} else if(type.charAt(0)==65449) {
 			atom = new UserDataTextAtom(parent,type,atomIn);
 		} else if(type.equals("WLOC")) {
@@ -0,0 +1,146 @@
+package src.thirdPartyLibraries.movLibrary;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import asg.jcodec.codecs.h264.H264Encoder;
+import asg.jcodec.codecs.h264.H264Utils;
+import asg.jcodec.codecs.h264.encode.LookaheadRateControl;
+import asg.jcodec.codecs.h264.io.model.SeqParameterSet;
+import asg.jcodec.codecs.h264.mp4.AvcCBox;
+import asg.jcodec.common.model.ColorSpace;
+import asg.jcodec.common.model.Picture;
+import asg.jcodec.scale.AWTUtil;
+import asg.jcodec.scale.RgbToYuv420;
+
+/** A MovWriter that encodes frames as H.264, with P frames between
+ * key frames.
+ * <P>Frames are held back for <code>LOOKAHEAD</code> frames before they
+ * are encoded, so the rate control knows what follows each frame.
+ */
+public class H264MovWriter extends MovWriter {
+
+	/** The number of frames the rate control looks ahead. */
+	public static final int LOOKAHEAD = 8;
+
+	private static class PendingFrame {
+		float duration;
+		final BufferedImage image;
+		final Map<String, Object> settings;
+		PendingFrame(float duration,BufferedImage image,Map<String, Object> settings) {
+			this.duration = duration;
+			this.image = image;
+			this.settings = settings;
+		}
+	}
+
+	private final H264Encoder encoder;
+	private final LookaheadRateControl rateControl;
+	private final RgbToYuv420 transform = new RgbToYuv420(0, 0);
+	private final LinkedList<PendingFrame> pending = new LinkedList<PendingFrame>();
+	private Picture rgb, yuv;
+	private ByteBuffer buffer;
+	private byte[] avcC;
+	private boolean keyFrame;
+
+	/**
+	 *
+	 * @param file the destination file to write to.
+	 * @param rateControl decides the quality, or the bitrate, of the frames.
+	 * @param keyInterval the number of frames from one key frame to the next.
+	 * @throws IOException
+	 */
+	public H264MovWriter(File file,LookaheadRateControl rateControl,int keyInterval) throws IOException {
+		super(file);
+		this.rateControl = rateControl;
+		encoder = new H264Encoder(rateControl);
+		encoder.setKeyInterval(keyInterval);
+		encoder.setSlices(Runtime.getRuntime().availableProcessors());
+	}
+
+	@Override
+	public synchronized void addFrame(float duration, BufferedImage bi,
+			Map<String, Object> settings) throws IOException {
+		rateControl.lookahead(toYUV(bi));
+		pending.add(new PendingFrame(duration, bi, settings));
+		if(pending.size()>LOOKAHEAD) {
+			PendingFrame frame = pending.removeFirst();
+			super.addFrame(frame.duration, frame.image, frame.settings);
+		}
+	}
+
+	@Override
+	public synchronized void repeatLastFrame(float duration) {
+		if(pending.isEmpty()) {
+			super.repeatLastFrame(duration);
+		} else {
+			pending.getLast().duration += duration;
+		}
+	}
+
+	@Override
+	public void close(boolean writeRemainingAudio) throws IOException {
+		synchronized(this) {
+			while(!pending.isEmpty()) {
+				PendingFrame frame = pending.removeFirst();
+				super.addFrame(frame.duration, frame.image, frame.settings);
+			}
+		}
+		super.close(writeRemainingAudio);
+	}
+
+	private Picture toYUV(BufferedImage bi) {
+		if(yuv==null || yuv.getWidth()!=bi.getWidth() || yuv.getHeight()!=bi.getHeight()) {
+			rgb = Picture.create(bi.getWidth(), bi.getHeight(), ColorSpace.RGB);
+			yuv = Picture.create(bi.getWidth(), bi.getHeight(), ColorSpace.YUV420);
+			buffer = ByteBuffer.allocate(bi.getWidth()*bi.getHeight()*3);
+		}
+		AWTUtil.fromBufferedImage(bi, rgb);
+		transform.transform(rgb, yuv);
+		return yuv;
+	}
+
+	@Override
+	protected void writeFrame(OutputStream out, BufferedImage image,
+			Map<String, Object> settings) throws IOException {
+		Picture pic = toYUV(image);
+		buffer.clear();
+		ByteBuffer result = encoder.encodeFrame(buffer, pic);
+
+		//only key frames carry the SPS and PPS, they go in the sample description:
+		List<ByteBuffer> spsList = new ArrayList<ByteBuffer>();
+		List<ByteBuffer> ppsList = new ArrayList<ByteBuffer>();
+		H264Utils.wipePS(result, spsList, ppsList);
+		keyFrame = !spsList.isEmpty();
+		if(keyFrame && avcC==null) {
+			SeqParameterSet sps = H264Utils.readSPS(spsList.get(0).duplicate());
+			ByteBuffer atom = ByteBuffer.allocate(1024);
+			new AvcCBox(sps.profile_idc, 0, sps.level_idc, spsList, ppsList).write(atom);
+			atom.flip();
+			avcC = new byte[atom.remaining()];
+			atom.get(avcC);
+		}
+		H264Utils.encodeMOVPacket(result);
+
+		byte[] data = new byte[result.remaining()];
+		result.get(data);
+		out.write(data);
+	}
+
+	@Override
+	protected boolean isKeyFrame() {
+		return keyFrame;
+	}
+
+	@Override
+	protected VideoSampleDescriptionEntry getVideoSampleDescriptionEntry() {
+		return VideoSampleDescriptionEntry.createH264Description( videoTrack.w, videoTrack.h, avcC!=null ? avcC : new byte[0]);
+	}
+}
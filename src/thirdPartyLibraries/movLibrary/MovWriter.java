@@ -68,12 +68,14 @@ public abstract class MovWriter {
 		final int duration;
 		final long fileLength;
 		final long dataStart;
-		public VideoSample(int duration,long dataStart,long fileLength) {
+		final boolean keyFrame;
+		public VideoSample(int duration,long dataStart,long fileLength,boolean keyFrame) {
 			if(duration<=0) throw new IllegalArgumentException("duration ("+duration+") must be greater than zero.");
 			if(fileLength<=0) throw new IllegalArgumentException("file length ("+fileLength+") must be greater than zero.");
 			this.duration = duration;
 			this.fileLength = fileLength;
 			this.dataStart = dataStart;
+			this.keyFrame = keyFrame;
 		}
 	}
 	
@@ -85,6 +87,8 @@ public abstract class MovWriter {
 		SampleSizeAtom stsz = new SampleSizeAtom();
 		SampleToChunkAtom stsc = new SampleToChunkAtom();
 		ChunkOffsetAtom stco = new ChunkOffsetAtom();
+		SyncSampleAtom stss = new SyncSampleAtom();
+		boolean allKeyFrames = true;
 		
 		void writeToMoovRoot(ParentAtom moovRoot) {
 			ParentAtom trakAtom = new ParentAtom("trak");
@@ -119,6 +123,9 @@ public abstract class MovWriter {
 			stbl.add(stsd);
 			
 			stbl.add(stts);
+			//without a sync sample atom every sample is a key frame:
+			if(!allKeyFrames)
+				stbl.add(stss);
 			stbl.add(stsc);
 			stbl.add(stsz);
 			stbl.add(stco);
@@ -127,8 +134,37 @@ public abstract class MovWriter {
 		int samplesInCurrentChunk = 0;
 		long durationOfCurrentChunk = 0;
 		int currentChunkIndex = 0;
+		
+		/** The most recent sample. It is only added to the sample tables
+		 * when the next one is written (or the track is closed), so that
+		 * its duration can still be extended by <code>repeatLastFrame()</code>.
+		 */
+		VideoSample lastSample = null;
+		
+		/** Adds the most recent sample to the sample tables. This must be called
+		 * before any more data is written, because closing a chunk
+		 * writes audio data.
+		 */
+		void flushLastSample() throws IOException {
+			if(lastSample!=null) {
+				VideoSample sample = lastSample;
+				lastSample = null;
+				addSample(sample);
+			}
+		}
+		
+		void extendLastSample(int duration) {
+			if(lastSample==null) throw new IllegalArgumentException("there is no frame to repeat");
+			lastSample = new VideoSample(lastSample.duration+duration, lastSample.dataStart, lastSample.fileLength, lastSample.keyFrame);
+		}
+		
 		private void addSample(VideoSample sample) throws IOException {
 			samples.add(sample);
+			if(sample.keyFrame) {
+				stss.addSyncSample(samples.size());
+			} else {
+				allKeyFrames = false;
+			}
 			totalDuration += sample.duration;
 			stts.addSampleTime(sample.duration);
 			stsz.addSampleSize(sample.fileLength);
@@ -142,6 +178,7 @@ public abstract class MovWriter {
 		}
 		
 		void close() throws IOException {
+			flushLastSample();
 			closeChunk();
 		}
 		
@@ -164,9 +201,9 @@ public abstract class MovWriter {
 		void addFrame(int duration, File imageFile) throws IOException {
 			Dimension d = ImageSize.get(imageFile);
 			validateSize(d.width, d.height);
+			flushLastSample();
 			long byteSize = write(out, imageFile);
-			VideoSample sample = new VideoSample(duration, out.getBytesWritten()-byteSize, byteSize);
-			addSample(sample);
+			lastSample = new VideoSample(duration, out.getBytesWritten()-byteSize, byteSize, true);
 		}
 		
 		void validateSize(int width,int height) {
@@ -184,7 +221,7 @@ public abstract class MovWriter {
 		}
 
 		boolean isEmpty() {
-			return samples.size()==0;
+			return samples.size()==0 && lastSample==null;
 		}
 	}
 	
@@ -475,14 +512,38 @@ public abstract class MovWriter {
 		int relativeDuration = (int)(duration*DEFAULT_TIME_SCALE+.5);
 
 		videoTrack.validateSize(bi.getWidth(), bi.getHeight());
+		videoTrack.flushLastSample();
 		long startPosition = out.getBytesWritten();
 		writeFrame(out, bi, settings);
 		long byteSize = out.getBytesWritten() - startPosition;
-		VideoSample sample = new VideoSample(relativeDuration, out.getBytesWritten()-byteSize, byteSize);
-		videoTrack.addSample(sample);
+		videoTrack.lastSample = new VideoSample(relativeDuration, out.getBytesWritten()-byteSize, byteSize, isKeyFrame());
+	}
+	
+	/** Shows the last image added for longer, instead of encoding
+	 * the same image again.
+	 * <P>Nothing is written to the file: the duration of the
+	 * previous sample is increased. So a still image that lasts for
+	 * several seconds is stored once, as a single sample.
+	 * 
+	 * @param duration the extra duration (in seconds) the last frame
+	 * should show. (This value is converted to a timescale of DEFAULT_TIME_SCALE.)
+	 * @throws IllegalArgumentException if no frame has been added yet.
+	 */
+	public synchronized void repeatLastFrame(float duration) {
+		if(closed) throw new IllegalArgumentException("this writer has already been closed");
+		int relativeDuration = (int)(duration*DEFAULT_TIME_SCALE+.5);
+		videoTrack.extendLastSample(relativeDuration);
 	}
 	
 	protected abstract void writeFrame(OutputStream out,BufferedImage image,Map<String, Object> settings) throws IOException;
+	
+	/** Whether the frame <code>writeFrame()</code> just wrote can be decoded
+	 * without the frames before it. Subclasses that predict frames from
+	 * each other override this; by default every frame is a key frame.
+	 */
+	protected boolean isKeyFrame() {
+		return true;
+	}
 
 	/** Adds an image to this animation.
 	 * <P>All images must be the same dimensions; if this image is
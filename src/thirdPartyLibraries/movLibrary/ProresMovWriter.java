@@ -0,0 +1,61 @@
+package src.thirdPartyLibraries.movLibrary;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import asg.jcodec.codecs.prores.ProresEncoder;
+import asg.jcodec.common.model.ColorSpace;
+import asg.jcodec.common.model.Picture;
+import asg.jcodec.scale.AWTUtil;
+import asg.jcodec.scale.RgbToYuv422;
+
+/** A MovWriter that encodes frames as Apple ProRes.
+ * <P>Every frame is a key frame. The slices of each frame are
+ * encoded on all of the processors.
+ */
+public class ProresMovWriter extends MovWriter {
+
+	private final ProresEncoder encoder;
+	private final ProresEncoder.Profile profile;
+	private final RgbToYuv422 transform = new RgbToYuv422(2, 0);
+	private Picture rgb, yuv;
+	private ByteBuffer buffer;
+
+	/**
+	 *
+	 * @param file the destination file to write to.
+	 * @param profile the ProRes flavour, <code>STANDARD</code> is ProRes 422.
+	 * @throws IOException
+	 */
+	public ProresMovWriter(File file,ProresEncoder.Profile profile) throws IOException {
+		super(file);
+		this.profile = profile;
+		encoder = new ProresEncoder(profile);
+	}
+
+	@Override
+	protected void writeFrame(OutputStream out, BufferedImage image,
+			Map<String, Object> settings) throws IOException {
+		if(yuv==null || yuv.getWidth()!=image.getWidth() || yuv.getHeight()!=image.getHeight()) {
+			rgb = Picture.create(image.getWidth(), image.getHeight(), ColorSpace.RGB);
+			yuv = Picture.create(image.getWidth(), image.getHeight(), ColorSpace.YUV422_10);
+			//10 bit 4:2:2 takes 2.5 bytes a pixel uncompressed, a frame never comes near 4
+			buffer = ByteBuffer.allocate(((image.getWidth()+15)&~15)*((image.getHeight()+15)&~15)*4);
+		}
+		AWTUtil.fromBufferedImage(image, rgb);
+		transform.transform(rgb, yuv);
+
+		buffer.clear();
+		encoder.encodeFrame(buffer, yuv);
+		out.write(buffer.array(), buffer.arrayOffset()+buffer.position(), buffer.remaining());
+	}
+
+	@Override
+	protected VideoSampleDescriptionEntry getVideoSampleDescriptionEntry() {
+		return VideoSampleDescriptionEntry.createProresDescription( videoTrack.w, videoTrack.h, profile.fourcc);
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * @(#)SyncSampleAtom.java
+ *
+ * $Date: 2012-07-03 07:10:05 +0100 (Tue, 03 Jul 2012) $
+ *
+ * Copyright (c) 2011 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * http://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package src.thirdPartyLibraries.movLibrary;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/** The sync sample atom lists the samples that are key frames, by number
+ * (starting at 1). If a track has no sync sample atom every sample is
+ * a key frame.
+ * <P>Use at your own risk.  This class (and its package) may change in future releases.
+ */
+public class SyncSampleAtom extends LeafAtom {
+	int version = 0;
+	int flags = 0;
+	long[] sampleTable = new long[0];
+	
+	public SyncSampleAtom(int version, int flags) {
+		super(null);
+		this.version = version;
+		this.flags = flags;
+	}
+	
+	public SyncSampleAtom() {
+		super(null);
+	}
+	
+	public long getSyncSample(int index) {
+		return sampleTable[index];
+	}
+	
+	public int getSyncSampleCount() {
+		return sampleTable.length;
+	}
+	
+	public SyncSampleAtom(Atom parent,InputStream in) throws IOException {
+		super(parent);
+		version = in.read();
+		flags = read24Int(in);
+		int arraySize = (int)read32Int(in);
+		sampleTable = new long[arraySize];
+		for(int a = 0; a<sampleTable.length; a++) {
+			sampleTable[a] = read32Int(in);
+		}
+	}
+	
+	/** @param sampleNumber the number of the key frame, starting at 1.
+	 */
+	public void addSyncSample(long sampleNumber) {
+		long[] newArray = new long[sampleTable.length+1];
+		System.arraycopy(sampleTable,0,newArray,0,sampleTable.length);
+		newArray[newArray.length-1] = sampleNumber;
+		sampleTable = newArray;
+	}
+	
+	@Override
+	protected String getIdentifier() {
+		return "stss";
+	}
+
+
+	@Override
+	protected long getSize() {
+		return 16+sampleTable.length*4;
+	}
+
+
+	@Override
+	protected void writeContents(GuardedOutputStream out) throws IOException {
+		out.write(version);
+		write24Int(out,flags);
+		write32Int(out,sampleTable.length);
+		for(int a = 0; a<sampleTable.length; a++) {
+			write32Int(out,sampleTable[a]);
+		}
+	}
+
+
+	@Override
+	public String toString() {
+		String entriesString;
+		if(sampleTable.length>50 && ABBREVIATE) {
+			entriesString = "[ ... ]";
+		} else {
+			StringBuffer sb = new StringBuffer();
+			sb.append("[ ");
+			for(int a = 0; a<sampleTable.length; a++) {
+				if(a!=0) {
+					sb.append(", ");
+				}
+				sb.append(sampleTable[a]);
+			}
+			sb.append(" ]");
+			entriesString = sb.toString();
+		}
+		
+		return "SyncSampleAtom[ version="+version+", "+
+		"flags="+flags+", "+
+		"sampleTable="+entriesString+"]";
+	}
+}
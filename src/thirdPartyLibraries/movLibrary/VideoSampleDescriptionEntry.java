@@ -75,6 +75,11 @@ class VideoSampleDescriptionEntry extends SampleDescriptionEntry {
 	 */
 	int colorTableID = 65535;
 	
+	/** Atoms that follow the fixed fields, such as the "avcC" atom
+	 * an H.264 decoder is configured from. Written as they are.
+	 */
+	byte[] extensions = new byte[0];
+	
 	public VideoSampleDescriptionEntry(String type,int dataReference,int w,int h) {
 		super(type,dataReference);
 		width = w;
@@ -120,11 +125,12 @@ class VideoSampleDescriptionEntry extends SampleDescriptionEntry {
 		Atom.write32BytePascalString(out, compressorName);
 		Atom.write16Int(out, depth);
 		Atom.write16Int(out, colorTableID);
+		out.write(extensions);
 	}
 
 	@Override
 	protected long getSize() {
-		return 86;
+		return 86+extensions.length;
 	}
 	
 	@Override
@@ -144,7 +150,8 @@ class VideoSampleDescriptionEntry extends SampleDescriptionEntry {
 		"frameCount="+frameCount+", "+
 		"compressorName=\""+compressorName+"\", "+
 		"depth="+depth+", "+
-		"colorTableID="+colorTableID+" ]";
+		"colorTableID="+colorTableID+", "+
+		"extensions="+extensions.length+" bytes ]";
 	}
 	
 	protected static VideoSampleDescriptionEntry createJPEGDescription(int width,int height) {
@@ -166,4 +173,28 @@ class VideoSampleDescriptionEntry extends SampleDescriptionEntry {
 		e.spatialQuality = 512;
 		return e;
 	}
+	
+	/**
+	 * @param avcC the complete "avcC" atom, with the SPS and PPS
+	 * the frames are decoded with.
+	 */
+	protected static VideoSampleDescriptionEntry createH264Description(int width,int height,byte[] avcC) {
+		VideoSampleDescriptionEntry e = new VideoSampleDescriptionEntry("avc1",1,width,height);
+		e.compressorName = "H.264";
+		e.temporalQuality = 512;
+		e.spatialQuality = 512;
+		e.extensions = avcC;
+		return e;
+	}
+	
+	/**
+	 * @param fourcc the ProRes flavour, such as "apcn" for ProRes 422.
+	 */
+	protected static VideoSampleDescriptionEntry createProresDescription(int width,int height,String fourcc) {
+		VideoSampleDescriptionEntry e = new VideoSampleDescriptionEntry(fourcc,1,width,height);
+		e.compressorName = "Apple ProRes";
+		e.temporalQuality = 0;
+		e.spatialQuality = 512;
+		return e;
+	}
 }
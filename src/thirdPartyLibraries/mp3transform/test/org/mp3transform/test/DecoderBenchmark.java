@@ -0,0 +1,94 @@
+package src.thirdPartyLibraries.mp3transform.test.org.mp3transform.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+import src.thirdPartyLibraries.audio.javazoom.jl.decoder.Bitstream;
+import src.thirdPartyLibraries.audio.javazoom.jl.decoder.Header;
+import src.thirdPartyLibraries.audio.javazoom.jl.decoder.Obuffer;
+import src.thirdPartyLibraries.mp3transform.main.org.mp3transform.Decoder;
+import src.util.Misc;
+
+/**
+ * Decodes the same MP3 with both bundled decoders and prints the time
+ * each one takes, so the faster one can be used for import and export.
+ * The file is read into memory first so only decoding is measured.
+ *
+ * Usage: DecoderBenchmark <file.mp3> [rounds]
+ */
+public class DecoderBenchmark {
+
+    public static void main(String[] a) throws Exception {
+        if (a.length == 0) {
+            System.out.println("Options: <input.mp3> [rounds]");
+            return;
+        }
+        byte[] mp3 = Misc.getBytesFromFile(new File(a[0]));
+        int rounds = a.length > 1 ? Integer.parseInt(a[1]) : 5;
+
+        // warm up both paths before timing
+        decodeJavazoom(mp3);
+        decodeMp3transform(mp3);
+
+        long javazoom = 0;
+        long mp3transform = 0;
+        long samples = 0;
+        for (int i = 0; i < rounds; i++) {
+            long time = System.nanoTime();
+            samples = decodeJavazoom(mp3);
+            javazoom += System.nanoTime() - time;
+
+            time = System.nanoTime();
+            decodeMp3transform(mp3);
+            mp3transform += System.nanoTime() - time;
+        }
+        System.out.println("samples per round: " + samples);
+        System.out.println("javazoom (direct pcm): " + javazoom / rounds / 1000000 + " ms");
+        System.out.println("mp3transform:          " + mp3transform / rounds / 1000000 + " ms");
+    }
+
+    static long decodeJavazoom(byte[] mp3) throws Exception {
+        src.thirdPartyLibraries.audio.javazoom.jl.decoder.Decoder decoder =
+                new src.thirdPartyLibraries.audio.javazoom.jl.decoder.Decoder();
+        Bitstream stream = new Bitstream(new ByteArrayInputStream(mp3));
+        short[] pcm = new short[Obuffer.OBUFFERSIZE];
+        long samples = 0;
+        try {
+            Header header;
+            while ((header = stream.readFrame()) != null) {
+                samples += decoder.decodeFrame(header, stream, pcm, 0);
+                stream.closeFrame();
+            }
+        } finally {
+            stream.close();
+        }
+        return samples;
+    }
+
+    static void decodeMp3transform(byte[] mp3) throws IOException {
+        NullDecoder decoder = new NullDecoder();
+        src.thirdPartyLibraries.mp3transform.main.org.mp3transform.Bitstream stream =
+                new src.thirdPartyLibraries.mp3transform.main.org.mp3transform.Bitstream(new ByteArrayInputStream(mp3));
+        src.thirdPartyLibraries.mp3transform.main.org.mp3transform.Header header;
+        while ((header = stream.readFrame()) != null) {
+            decoder.decodeFrame(header, stream);
+            stream.closeFrame();
+        }
+    }
+
+    /**
+     * Decodes into the decoder's own buffer without an audio line.
+     */
+    static class NullDecoder extends Decoder {
+        public void decodeFrame(src.thirdPartyLibraries.mp3transform.main.org.mp3transform.Header header,
+                src.thirdPartyLibraries.mp3transform.main.org.mp3transform.Bitstream stream) throws IOException {
+            if (channels == 0) {
+                initOutputBuffer(null, header.mode() ==
+                        src.thirdPartyLibraries.mp3transform.main.org.mp3transform.Header.MODE_SINGLE_CHANNEL ? 1 : 2);
+            }
+            super.decodeFrame(header, stream);
+        }
+    }
+
+}
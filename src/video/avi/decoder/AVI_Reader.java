@@ -3,9 +3,14 @@ package src.video.avi.decoder;
 import java.awt.*;
 import java.awt.image.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStreamImpl;
 
 
 /** <pre>
@@ -192,6 +197,10 @@ public class AVI_Reader  {
    //the input file
     private  RandomAccessFile  raFile;
     public  String            raFilePath;
+    //kept open once the index has been read, so frames are read without reopening the file
+    private  FileChannel       frameChannel;
+    private  MappedByteBuffer  mappedFile;          //the whole file, if it fits into a single mapping
+    private  final ThreadLocal<FrameReader> frameReaders = new ThreadLocal<FrameReader>();
     private  boolean           headerOK = false;    //whether header has been read
     //more avi file properties etc
     private  int               streamNumber;        //number of the (first) video stream
@@ -270,6 +279,8 @@ public class AVI_Reader  {
             openAndReadHeader(file.getAbsolutePath());                                //open and read header
         } catch (Exception e) {
         	e.printStackTrace();
+        	close();
+        	return;
         }                        //ask for parameters
         try {
         	
@@ -277,31 +288,131 @@ public class AVI_Reader  {
         	isVirtual = true;
         	verbose = true;
             makeStack(file.getAbsolutePath(), firstFrame, lastFrame, isVirtual, convertToGray, flipVertical);  //read data
+            openFrameChannel(file);
         } catch (Exception e) {
             error(exceptionMessage(e));
+            close();
             return;
         }
 	}
-    
+
+    /** Opens the file once for reading frames. Files up to 2 GB are memory mapped and a frame
+     *  is a slice of the mapping, larger (AVI 2.0) files are read with positional reads instead.
+     *  Both can be used from several threads at once. If the file can't be mapped (e.g. out of
+     *  address space on a 32-bit VM), the positional reads are used for it as well. */
+    private void openFrameChannel(File file) throws IOException {
+        frameChannel = new RandomAccessFile(file, "r").getChannel();
+        if (frameChannel.size() <= Integer.MAX_VALUE) {
+            try {
+                mappedFile = frameChannel.map(FileChannel.MapMode.READ_ONLY, 0, frameChannel.size());
+            } catch (IOException e) {
+                mappedFile = null;
+            }
+        }
+    }
+
+    /** Closes the file. No more frames can be read after this. The mapping (if any) is
+     *  released once it is garbage collected. */
+    public synchronized void close() {
+        mappedFile = null;
+        try {
+            if (raFile != null)
+                raFile.close();
+        } catch (IOException e) {}
+        try {
+            if (frameChannel != null)
+                frameChannel.close();
+        } catch (IOException e) {}
+    }
+
+    /** Decodes a frame, may be called from several threads at once since every frame is
+     *  stored on its own (no inter-frame compression). Returns null if the frame can't be read. */
     public BufferedImage getFrame(int index){
-    	int[] pixels = null;
-		
 		long[] frameInfo = (long[])(getFrameInfos().get(index));
-	
 		try {
-			RandomAccessFile rFile = null;
-			rFile = new RandomAccessFile(new File(raFilePath), "r");
-			
-			pixels = (int[]) readFrame(rFile, frameInfo[0], (int)frameInfo[1]);
+			ByteBuffer data = getFrameData(frameInfo[0], (int)frameInfo[1]);
+			if (variableLength)                 //JPEG or PNG-compressed frames
+				return readCompressedImage(data);
+
+			byte[] rawData = new byte[data.remaining()];
+			data.get(rawData);
+			int[] pixels = (int[]) unpackFixedLengthFrame(rawData);
+			BufferedImage bi = new BufferedImage(dwWidth, biHeight, BufferedImage.TYPE_INT_RGB);
+			bi.getRaster().setDataElements(0, 0, dwWidth, biHeight, pixels);
+			return bi;
 		} catch (Exception e) {
-			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
-		
-		BufferedImage bi = getBI(pixels, dwWidth, dwHeight);
-	
-		
-		return bi;
+		return null;
+    }
+
+    /** Returns the data of a frame, a slice of the mapped file (no copy) if the file is mapped,
+     *  otherwise (or if the frame doesn't start inside the mapping) read from the channel */
+    private ByteBuffer getFrameData(long filePos, int size) throws IOException {
+        MappedByteBuffer mappedFile = this.mappedFile;
+        if (mappedFile != null && filePos <= mappedFile.capacity()) {
+            ByteBuffer data = mappedFile.duplicate();
+            data.limit((int)Math.min(filePos+size, data.capacity()));
+            data.position((int)filePos);
+            return data.slice();
+        }
+        ByteBuffer data = ByteBuffer.allocate(size);
+        while (data.hasRemaining() && frameChannel.read(data, filePos+data.position()) > 0);
+        data.flip();
+        return data;
+    }
+
+    /** Decodes a JPEG or PNG-compressed frame with the image reader kept by the calling thread.
+     *  MJPG frames without Huffman tables get the standard tables inserted into a buffer
+     *  that is also kept by the thread, any other frame is read straight from its data. */
+    private BufferedImage readCompressedImage(ByteBuffer data) throws Exception {
+        FrameReader frameReader = frameReaders.get();
+        if (frameReader == null) {
+            frameReader = new FrameReader(ImageIO.getImageReadersByFormatName(
+                    dataCompression==PNG_COMPRESSION ? "png" : "jpeg").next());
+            frameReaders.set(frameReader);
+        }
+        if (biCompression==MJPG_COMPRESSION) {
+            int position = huffmanTablesPosition(data);
+            if (position >= 0) {
+                int length = data.remaining() + HUFFMAN_LENGTH;
+                if (frameReader.buffer.length < length)
+                    frameReader.buffer = new byte[length];
+                data.get(frameReader.buffer, 0, position);
+                System.arraycopy(HUFFMAN_TABLES, 0, frameReader.buffer, position, HUFFMAN_LENGTH);
+                data.get(frameReader.buffer, position+HUFFMAN_LENGTH, length-position-HUFFMAN_LENGTH);
+                data = ByteBuffer.wrap(frameReader.buffer, 0, length);
+            }
+        }
+        ByteBufferImageInputStream input = new ByteBufferImageInputStream(data);
+        try {
+            frameReader.reader.setInput(input, true, true);
+            BufferedImage img = frameReader.reader.read(0);
+            if (img==null) throw new Exception("can't read frame, ImageIO returns null");
+            return img;
+        } finally {
+            frameReader.reader.setInput(null);
+        }
+    }
+
+    /** Returns where the Huffman tables have to be inserted into MJPG data that has none
+     *  (before the start of scan), or -1 if the data already has them */
+    private static int huffmanTablesPosition(ByteBuffer data) {
+        int length = data.remaining();
+        if (length<6 || (data.getShort(0)&0xffff)!=0xffd8) return -1;   //not a start of JPEG-like data
+        int offset = 2;
+        int segmentLength = 0;
+        do {
+            int code = data.getShort(offset)&0xffff;        //read segment type
+            if (code==0xffc4)                               //Huffman table found, nothing to do
+                return -1;
+            else if (code==0xffda || code==0xffd9)          //start of image data or end of image?
+                return offset;
+            offset += 2;
+            segmentLength = data.getShort(offset)&0xffff;   //read length of this segment
+            offset += segmentLength;                        //and skip the segment contents
+        } while (offset<length-4);
+        return -1;
     }
     
 
@@ -972,12 +1083,19 @@ public class AVI_Reader  {
      *  return the pixels array of the resulting image
      */
     private Object readFixedLengthFrame (RandomAccessFile rFile, int size)  throws Exception, IOException {
-        if (size < scanLineSize*biHeight) //check minimum size (fixed frame length format)
-            throw new Exception("Data chunk size "+size+" too short ("+(scanLineSize*biHeight)+" required)");
         byte[] rawData = new byte[size];
         int  n  = rFile.read(rawData, 0, size);
         if (n < rawData.length)
             throw new Exception("Frame ended prematurely after " + n + " bytes");
+        return unpackFixedLengthFrame(rawData);
+    }
+
+    /** Unpacks the data of a fixed-length frame,
+     *  returns the pixels array of the resulting image
+     */
+    private Object unpackFixedLengthFrame (byte[] rawData)  throws Exception {
+        if (rawData.length < scanLineSize*biHeight) //check minimum size (fixed frame length format)
+            throw new Exception("Data chunk size "+rawData.length+" too short ("+(scanLineSize*biHeight)+" required)");
 
         boolean topDown = flipVertical ? !dataTopDown : dataTopDown;
         Object pixels = null;
@@ -1391,4 +1509,46 @@ public class AVI_Reader  {
             readableSize += HUFFMAN_LENGTH;
         }
     }
+
+    /** What one thread reuses for decoding compressed frames */
+    private static class FrameReader {
+        ImageReader reader;
+        byte[] buffer = new byte[0];    //holds MJPG data with Huffman tables inserted
+
+        FrameReader (ImageReader reader) {
+            this.reader = reader;
+        }
+    }
+
+    /** An ImageInputStream reading the data of one frame directly from its buffer,
+     *  instead of caching it in memory or on disk like the streams of ImageIO */
+    private static class ByteBufferImageInputStream extends ImageInputStreamImpl {
+        ByteBuffer data;
+
+        ByteBufferImageInputStream (ByteBuffer data) {
+            this.data = data;
+        }
+
+        public int read () {
+            bitOffset = 0;
+            if (streamPos >= data.limit()) return -1;
+            return data.get((int)streamPos++) & 0xff;
+        }
+
+        public int read (byte[] b, int off, int len) {
+            bitOffset = 0;
+            if (len == 0) return 0;
+            if (streamPos >= data.limit()) return -1;
+            int nBytes = Math.min(len, data.limit()-(int)streamPos);
+            ByteBuffer source = data.duplicate();
+            source.position((int)streamPos);
+            source.get(b, off, nBytes);
+            streamPos += nBytes;
+            return nBytes;
+        }
+
+        public long length () {
+            return data.limit();
+        }
+    }
 }
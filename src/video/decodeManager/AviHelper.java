@@ -2,35 +2,110 @@ package src.video.decodeManager;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaVideoItem;
 import src.video.avi.decoder.AVI_Reader;
 
 public class AviHelper extends DecodeManager {
 
+	/**
+	 * How many frames after the requested one are decoded ahead while frames are requested in order.
+	 */
+	private static final int PREFETCH = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Shared by every AVI, leaving a core free for the thread asking for the frames.
+	 */
+	private static final ExecutorService decoders = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()-1), new ThreadFactory() {
+		private int count = 0;
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "AviDecoder-"+(count++));
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
 	public AVI_Reader avi;
 
+	private final HashMap<Integer, Future<BufferedImage>> prefetched = new HashMap<Integer, Future<BufferedImage>>();
+	private int lastFrame = -1;
+
 	public AviHelper(MediaVideoItem mediaVideoItem, String directory)
 			throws Exception {
 		super(mediaVideoItem, directory);
-		
-		
+
+
 		avi = new AVI_Reader();
 		avi.run(new File(directory));
-		
-		
+
+
 		mediaVideoItem.totalFrames = avi.getSize();
 		mediaVideoItem.framerate = avi.getFrameRate();
-		
+
 	}
 
 	@Override
-	public BufferedImage requestFrame(int frameIndex) {
-		
+	public synchronized BufferedImage requestFrame(int frameIndex) throws Exception {
+
 		System.out.println("Requesting frame: "+frameIndex);
-		
-		BufferedImage bi = avi.getFrame(frameIndex);
-		return bi;
+
+		Future<BufferedImage> frame = prefetched.remove(frameIndex);
+		prefetch(frameIndex, frameIndex == lastFrame+1);
+		lastFrame = frameIndex;
+
+		if(frame != null){
+			return frame.get();
+		}
+		return avi.getFrame(frameIndex);
+	}
+
+	/**
+	 * Cancels any frames still queued and closes the file.
+	 */
+	@Override
+	public synchronized void close() {
+		for(Future<BufferedImage> frame : prefetched.values()){
+			frame.cancel(false);
+		}
+		prefetched.clear();
+		avi.close();
+	}
+
+	/**
+	 * Every AVI frame is stored on its own, so when frames are asked for in order the next few
+	 * are decoded in parallel on the pool while the caller works through them.
+	 * Frames queued for outside the new window (after a seek) are cancelled if they haven't started.
+	 * @param sequential - Whether the frame follows the one requested before it, nothing new is queued otherwise.
+	 */
+	private void prefetch(int frameIndex, boolean sequential){
+		Iterator<Integer> queued = prefetched.keySet().iterator();
+		while(queued.hasNext()){
+			int index = queued.next();
+			if(index <= frameIndex || index > frameIndex+PREFETCH || !sequential){
+				prefetched.get(index).cancel(false);
+				queued.remove();
+			}
+		}
+		if(!sequential){
+			return;
+		}
+		for(int index = frameIndex+1; index <= frameIndex+PREFETCH && index < avi.getSize(); index++){
+			if(!prefetched.containsKey(index)){
+				final int frameToDecode = index;
+				prefetched.put(index, decoders.submit(new Callable<BufferedImage>() {
+					public BufferedImage call() {
+						return avi.getFrame(frameToDecode);
+					}
+				}));
+			}
+		}
 	}
 
 }
@@ -2,6 +2,7 @@ package src.video.decodeManager;
 
 import java.awt.image.BufferedImage;
 
+import asg.jcodec.common.DecodeOptions;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaVideoItem;
 
 public abstract class DecodeManager {
@@ -13,6 +14,20 @@ public abstract class DecodeManager {
 	
 	public abstract BufferedImage requestFrame(int frameIndex) throws Exception;
 	
+	/**
+	 * Gets a frame for a preview, where the decoder may take the shortcuts in the options.
+	 * Decoders without any shortcuts decode the frame in full.
+	 */
+	public BufferedImage requestFrame(int frameIndex, DecodeOptions options) throws Exception {
+		return requestFrame(frameIndex);
+	}
+	
+	/**
+	 * Releases the files the decoder has open, when its item is removed. No frames are requested after this.
+	 */
+	public void close() {
+	}
+	
 	
 	
 }
@@ -0,0 +1,36 @@
+package src.video.decodeManager;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+
+import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaVideoItem;
+import src.video.gif.GifReader;
+
+public class GifHelper extends DecodeManager {
+
+	public GifReader gif;
+
+	public GifHelper(MediaVideoItem mediaVideoItem, String directory) throws Exception {
+		super(mediaVideoItem, directory);
+
+		gif = new GifReader(new File(directory));
+
+		mediaVideoItem.totalFrames = gif.getFrameCount();
+		mediaVideoItem.framerate = gif.getFrameRate();
+	}
+
+	/**
+	 * The reader only keeps one canvas, so the frame is copied out into its own image.
+	 */
+	@Override
+	public BufferedImage requestFrame(int frameIndex) {
+		BufferedImage image = new BufferedImage(gif.width, gif.height, BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		synchronized(gif){
+			System.arraycopy(gif.getFramePixels(frameIndex), 0, pixels, 0, pixels.length);
+		}
+		return image;
+	}
+
+}
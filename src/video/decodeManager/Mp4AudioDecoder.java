@@ -0,0 +1,159 @@
+package src.video.decodeManager;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import net.sourceforge.jaad.aac.Decoder;
+import net.sourceforge.jaad.aac.SampleBuffer;
+import asg.jcodec.codecs.mpeg4.mp4.EsdsBox;
+import asg.jcodec.codecs.wav.WavHeader;
+import asg.jcodec.codecs.wav.WavHeader.FmtChunk;
+import asg.jcodec.common.NIOUtils;
+import asg.jcodec.common.SeekableByteChannel;
+import asg.jcodec.containers.mp4.MP4Packet;
+import asg.jcodec.containers.mp4.boxes.Box;
+import asg.jcodec.containers.mp4.boxes.LeafBox;
+import asg.jcodec.containers.mp4.boxes.SampleEntry;
+import asg.jcodec.containers.mp4.demuxer.AbstractMP4DemuxerTrack;
+import asg.jcodec.containers.mp4.demuxer.MP4Demuxer;
+
+/**
+ * Decodes the AAC audio track of an MP4/MOV clip into a WAV file,
+ * the same format MediaAudioItem converts MP3s to.
+ */
+public class Mp4AudioDecoder {
+
+	/**
+	 * Large enough for any raw AAC frame (6144 bits per channel, 8 channels).
+	 */
+	private static final int MAX_PACKET_SIZE = 1 << 16;
+
+	/**
+	 * @return The first AAC audio track of the clip, or null if it has none.
+	 */
+	public static AbstractMP4DemuxerTrack getAacTrack(MP4Demuxer demuxer){
+		List<AbstractMP4DemuxerTrack> audioTracks = demuxer.getAudioTracks();
+		for(AbstractMP4DemuxerTrack track : audioTracks){
+			SampleEntry[] entries = track.getSampleEntries();
+			if(entries.length > 0 && "mp4a".equals(entries[0].getFourcc())){
+				return track;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return The AudioSpecificConfig from the esds box of the track, as JAAD expects it.
+	 */
+	private static byte[] getDecoderSpecificInfo(AbstractMP4DemuxerTrack track){
+		SampleEntry mp4a = track.getSampleEntries()[0];
+		LeafBox b = Box.findFirst(mp4a, LeafBox.class, "esds");
+		if(b == null){
+			b = Box.findFirst(mp4a, LeafBox.class, null, "esds");
+		}
+		if(b == null){
+			return null;
+		}
+		EsdsBox esds = new EsdsBox();
+		esds.parse(b.getData());
+		return NIOUtils.toArray(esds.getStreamInfo());
+	}
+
+	/**
+	 * Decodes the clip's audio packet by packet and streams it into a WAV file, so only one
+	 * frame of samples is held in memory at a time. The packet storage, frame array and PCM
+	 * sample buffer are reused for every frame. The header is written with the RIFF and data
+	 * chunk sizes once the length of the audio is known.
+	 * The audio is written to a .part file first and only renamed once it is complete.
+	 * @param channel - The clip to read from.
+	 * @param wavFile - The WAV file to write.
+	 * @return False if the clip has no AAC audio, in which case nothing is written.
+	 */
+	public static boolean decodeToWav(SeekableByteChannel channel, File wavFile) throws IOException {
+		MP4Demuxer demuxer = new MP4Demuxer(channel);
+		AbstractMP4DemuxerTrack track = getAacTrack(demuxer);
+		if(track == null){
+			return false;
+		}
+		byte[] info = getDecoderSpecificInfo(track);
+		if(info == null){
+			return false;
+		}
+
+		Decoder decoder = new Decoder(info);
+		SampleBuffer sampleBuffer = new SampleBuffer();
+		sampleBuffer.setBigEndian(false);
+
+		ByteBuffer storage = ByteBuffer.allocate(MAX_PACKET_SIZE);
+		byte[] frame = new byte[MAX_PACKET_SIZE];
+
+		File partFile = new File(wavFile.getPath()+".part");
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(partFile), 1 << 16);
+		long dataSize = 0;
+		int sampleRate = 0;
+		int channels = 0;
+		boolean complete = false;
+		try {
+			// Room for the header, which is written once the sizes are known
+			out.write(new byte[WavHeader.WAV_HEADER_SIZE]);
+
+			MP4Packet packet;
+			storage.clear();
+			while((packet = track.nextFrame(storage)) != null){
+				ByteBuffer data = packet.getData();
+				int length = data.remaining();
+				data.get(frame, 0, length);
+				decoder.decodeFrame(frame, length, sampleBuffer);
+				byte[] pcm = sampleBuffer.getData();
+				if(pcm.length > 0){
+					if(channels == 0){
+						sampleRate = sampleBuffer.getSampleRate();
+						channels = sampleBuffer.getChannels();
+					}
+					out.write(pcm);
+					dataSize += pcm.length;
+				}
+				storage.clear();
+			}
+			out.close();
+			out = null;
+
+			if(channels == 0){
+				return false;
+			}
+
+			FmtChunk fmt = new FmtChunk((short) 1, (short) channels, sampleRate, sampleRate * channels * 2,
+					(short) (channels * 2), (short) 16);
+			ByteArrayOutputStream header = new ByteArrayOutputStream(WavHeader.WAV_HEADER_SIZE);
+			new WavHeader("RIFF", (int) (36 + dataSize), "WAVE", fmt, WavHeader.WAV_HEADER_SIZE, dataSize).write(header);
+			RandomAccessFile file = new RandomAccessFile(partFile, "rw");
+			try {
+				file.write(header.toByteArray());
+			} finally {
+				file.close();
+			}
+
+			wavFile.delete();
+			complete = partFile.renameTo(wavFile);
+			if(!complete){
+				throw new IOException("Couldn't rename "+partFile+" to "+wavFile);
+			}
+			return true;
+		} finally {
+			if(out != null){
+				out.close();
+			}
+			if(!complete){
+				partFile.delete();
+			}
+		}
+	}
+
+}
@@ -5,26 +5,36 @@ import java.io.File;
 import java.io.IOException;
 
 import asg.jcodec.api.FrameGrab;
+import asg.jcodec.common.DecodeOptions;
 import asg.jcodec.common.FileChannelWrapper;
 import asg.jcodec.common.JCodecUtil;
 import asg.jcodec.common.NIOUtils;
+import asg.jcodec.common.model.Picture;
 import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaVideoItem;
 
 public class Mp4Helper extends DecodeManager{
 
 	
+	/**
+	 * lastFrame after the decoder has been moved somewhere other than the frame after it,
+	 * so the next frame, even frame 0, is seeked to.
+	 */
+	private static final int REPOSITIONED = Integer.MIN_VALUE;
+	
 	public FrameGrab frameGrab = null;
 	public int lastFrame = -1;
 	
+	/*
+	 * The options the decoder is positioned with, and the last frame it gave back,
+	 * which is returned again for frames the options skip.
+	 */
+	private DecodeOptions lastOptions = DecodeOptions.FULL;
+	private BufferedImage lastImage = null;
+	private int lastKeyFrame = -1;
+	
 	
 	public Mp4Helper(MediaVideoItem mediaVideoItem, String directory) throws Exception {
-		super(mediaVideoItem, directory);
-		
-		FileChannelWrapper ch2 = null;
-		ch2 = NIOUtils.readableFileChannel(new File(directory));
-
-		//double startSec = 51.632;
-		frameGrab = new FrameGrab(ch2);
+		this(open(directory));
 
 		mediaVideoItem.totalFrames = (int) frameGrab.demuxer.getVideoTrack().getFrameCount();
 
@@ -38,18 +48,76 @@ public class Mp4Helper extends DecodeManager{
 		
 	}
 
+	/**
+	 * Decodes from a file that is already open, without an item to report the frame count to.
+	 */
+	Mp4Helper(FrameGrab frameGrab) throws Exception {
+		super(null, null);
+		this.frameGrab = frameGrab;
+	}
+
+	private static FrameGrab open(String directory) throws Exception {
+		FileChannelWrapper ch2 = null;
+		ch2 = NIOUtils.readableFileChannel(new File(directory));
+
+		//double startSec = 51.632;
+		FrameGrab frameGrab = new FrameGrab(ch2);
+		// Frames played in order are decoded a few at a time, each on its own core
+		frameGrab.setThreads(Math.min(4, Runtime.getRuntime().availableProcessors()));
+		return frameGrab;
+	}
+
 	@Override
 	public BufferedImage requestFrame(int frameIndex) throws Exception {
-		BufferedImage image;
+		return requestFrame(frameIndex, DecodeOptions.FULL);
+	}
+
+	/**
+	 * Changing the options starts again from the previous key frame, as frames decoded
+	 * with shortcuts aren't good enough to predict full quality frames from.
+	 * With KEYFRAMES the key frame at or before the frame is returned.
+	 */
+	@Override
+	public synchronized BufferedImage requestFrame(int frameIndex, DecodeOptions options) throws Exception {
+		if(options != lastOptions){
+			frameGrab.setOptions(options);
+			lastOptions = options;
+			lastFrame = REPOSITIONED;
+			lastKeyFrame = -1;
+		}
+		if(options.keyframesOnly){
+			return requestKeyFrame(frameIndex);
+		}
+		Picture picture;
 		if(frameIndex == lastFrame+1){
-			image = frameGrab.getFrame();
+			picture = frameGrab.getNativeFrame();
 			System.out.println("grabbed next frame");
 		} else {
-			image = JCodecUtil.toBufferedImage(frameGrab.seekToFramePrecise(frameIndex).getNativeFrame());
+			picture = frameGrab.seekToFramePrecise(frameIndex).getNativeFrame();
 			System.out.println("wag1");
 		}
 		lastFrame = frameIndex;
-		return image;
+		if(picture != null){
+			lastImage = JCodecUtil.toBufferedImage(picture);
+		}
+		return lastImage;
+	}
+
+	/**
+	 * Decodes just the key frame before the frame, unless it is the one decoded last time.
+	 */
+	private BufferedImage requestKeyFrame(int frameIndex) throws Exception {
+		frameGrab.seekToFrameSloppy(frameIndex);
+		int keyFrame = (int) frameGrab.videoTrack.getCurFrame();
+		if(keyFrame != lastKeyFrame || lastImage == null){
+			Picture picture = frameGrab.getNativeFrame();
+			if(picture != null){
+				lastImage = JCodecUtil.toBufferedImage(picture);
+				lastKeyFrame = keyFrame;
+			}
+		}
+		lastFrame = REPOSITIONED;
+		return lastImage;
 	}
 
 }
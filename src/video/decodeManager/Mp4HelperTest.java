@@ -0,0 +1,83 @@
+package src.video.decodeManager;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import asg.jcodec.api.FrameGrab;
+import asg.jcodec.api.SequenceEncoder;
+import asg.jcodec.common.DecodeOptions;
+import asg.jcodec.common.NIOUtils;
+
+public class Mp4HelperTest {
+
+	/*
+	 * 30 frames, each a flat grey a little lighter than the one before, with key frames at 0 and 25.
+	 */
+	private static final int FRAMES = 30;
+	private static File clip;
+
+	@BeforeClass
+	public static void encodeClip() throws Exception {
+		clip = File.createTempFile("Mp4HelperTest", ".mp4");
+		SequenceEncoder encoder = new SequenceEncoder(clip);
+		for(int i = 0; i < FRAMES; i++){
+			BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_3BYTE_BGR);
+			Graphics g = image.getGraphics();
+			g.setColor(new Color(grey(i), grey(i), grey(i)));
+			g.fillRect(0, 0, image.getWidth(), image.getHeight());
+			g.dispose();
+			encoder.encodeImage(image);
+		}
+		encoder.finish();
+	}
+
+	@AfterClass
+	public static void deleteClip() {
+		clip.delete();
+	}
+
+	private static int grey(int frame) {
+		return 40+6*frame;
+	}
+
+	private static Mp4Helper open() throws Exception {
+		return new Mp4Helper(new FrameGrab(NIOUtils.readableFileChannel(clip)));
+	}
+
+	private static void assertFrame(int frame, BufferedImage image) {
+		int blue = image.getRGB(image.getWidth()/2, image.getHeight()/2) & 0xff;
+		assertEquals("frame "+frame, grey(frame), blue, 3);
+	}
+
+	@Test
+	public void testFrameZeroAfterThumbnail() throws Exception {
+		Mp4Helper helper = open();
+		assertFrame(25, helper.requestFrame(28, DecodeOptions.KEYFRAMES));
+		assertFrame(0, helper.requestFrame(0, DecodeOptions.FULL));
+		assertFrame(1, helper.requestFrame(1, DecodeOptions.FULL));
+	}
+
+	@Test
+	public void testFrameZeroAfterOptionsChange() throws Exception {
+		Mp4Helper helper = open();
+		assertFrame(27, helper.requestFrame(27, DecodeOptions.FAST));
+		assertFrame(0, helper.requestFrame(0, DecodeOptions.FULL));
+	}
+
+	@Test
+	public void testFramesInOrder() throws Exception {
+		Mp4Helper helper = open();
+		for(int i = 0; i < FRAMES; i++){
+			assertFrame(i, helper.requestFrame(i));
+		}
+	}
+
+}
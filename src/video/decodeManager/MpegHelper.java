@@ -0,0 +1,206 @@
+package src.video.decodeManager;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import asg.jcodec.codecs.mpeg12.MPEGDecoder;
+import asg.jcodec.codecs.mpeg12.Mpeg2Thumb2x2;
+import asg.jcodec.codecs.mpeg12.Mpeg2Thumb4x4;
+import asg.jcodec.common.DecodeOptions;
+import asg.jcodec.common.JCodecUtil;
+import asg.jcodec.common.model.Picture;
+import src.dataStore.DataStore;
+import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaVideoItem;
+
+/**
+ * MPEG-1/2 video in program streams (.mpg, .vob) and transport streams (.ts, .m2ts, .mts).
+ * The first time a file is opened its MpegIndex is built, which is then kept with the cached
+ * preview frames so the file doesn't have to be read through again.
+ */
+public class MpegHelper extends DecodeManager {
+
+	/**
+	 * Width of the preview frames MediaVideoItem caches. Previews are decoded at the lowest
+	 * resolution that is still at least this wide.
+	 */
+	private static final int PREVIEW_WIDTH = 300;
+
+	/**
+	 * How far into a file to look for its video stream, before deciding it hasn't got one.
+	 */
+	private static final int PROBE_LENGTH = 4*1024*1024;
+
+	/*
+	 * The reduced decoders only inverse transform the top left 4x4 or 2x2 coefficients of each
+	 * block and predict from references at the same size, giving a picture half or a quarter as wide.
+	 * Each keeps its own reference pictures, so each remembers how far it has got.
+	 */
+	private static final int FULL = 0, HALF = 1, QUARTER = 2;
+	private final MPEGDecoder[] decoders = new MPEGDecoder[] {new MPEGDecoder(), new Mpeg2Thumb4x4(), new Mpeg2Thumb2x2()};
+
+	/*
+	 * Reference pictures are decoded into one set of planes and B pictures into another, so the
+	 * last reference picture is still there when it is shown after the B pictures coded after it.
+	 */
+	private final int[][][] planes = new int[3][][];
+	private final int[][][] bPlanes = new int[3][][];
+
+	/*
+	 * The key frame each decoder started from and the last reference picture it decoded since,
+	 * -1 if it has to start again.
+	 */
+	private final int[] keyFrames = new int[] {-1, -1, -1};
+	private final int[] lastReferences = new int[] {-1, -1, -1};
+	private final Picture[] references = new Picture[3];
+
+	public MpegIndex index;
+	private MpegStream stream;
+	private ByteBuffer frameData;
+
+	public MpegHelper(MediaVideoItem mediaVideoItem, String directory) throws Exception {
+		this(new File(directory), getIndexFile(directory));
+
+		mediaVideoItem.totalFrames = index.getFrameCount();
+		if(index.framerate > 0){
+			mediaVideoItem.framerate = index.framerate;
+		}
+	}
+
+	/**
+	 * Decodes a file without an item to report the frame count to.
+	 * @param indexFile - Where its index is saved, or loaded from if it is up to date.
+	 */
+	MpegHelper(File file, File indexFile) throws Exception {
+		super(null, null);
+
+		index = MpegIndex.open(file, indexFile);
+		stream = new MpegStream(file, index.packetSize, index.videoId);
+		frameData = ByteBuffer.allocate(index.sequenceHeader.length+index.getMaxLength());
+	}
+
+	/**
+	 * @return False if the file is a transport stream whose programs only carry other video, like
+	 * the H.264 of AVCHD (.m2ts, .mts) cameras, or has no video stream at all near its start.
+	 */
+	public static boolean isMpegVideo(File file){
+		try {
+			MpegStream stream = new MpegStream(file);
+			try {
+				return stream.findVideo(PROBE_LENGTH);
+			} finally {
+				stream.close();
+			}
+		} catch (IOException e) {
+			System.err.println(file+": "+e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * @return Where the index of a file is saved, in the folder MediaVideoItem caches its preview frames in.
+	 */
+	public static File getIndexFile(String directory){
+		return new File(DataStore.getCache()+"/"+directory.hashCode()+"/frames.idx");
+	}
+
+	@Override
+	public BufferedImage requestFrame(int frameIndex) throws Exception {
+		return requestFrame(frameIndex, DecodeOptions.FULL);
+	}
+
+	/**
+	 * Thumbnails (KEYFRAMES) are the key frame before the frame, decoded at a quarter of the width.
+	 * Other previews are decoded at the lowest resolution that is still at least as wide as the
+	 * cached preview frames.
+	 */
+	@Override
+	public synchronized BufferedImage requestFrame(int frameIndex, DecodeOptions options) throws Exception {
+		int reduction = FULL;
+		if(options.keyframesOnly){
+			reduction = QUARTER;
+		} else if(options != DecodeOptions.FULL){
+			while(reduction < QUARTER && (index.width >> (reduction+1)) >= PREVIEW_WIDTH){
+				reduction++;
+			}
+		}
+
+		if(frameIndex < 0 || frameIndex >= index.getFrameCount()){
+			return null;
+		}
+		int picture = index.getPicture(frameIndex);
+		if(options.keyframesOnly){
+			picture = index.getKeyFrame(picture);
+		}
+
+		Picture decoded = decode(reduction, picture);
+		return decoded == null ? null : JCodecUtil.toBufferedImage(decoded);
+	}
+
+	/**
+	 * Decodes the reference pictures from the key frame up to a picture, then the picture.
+	 * B pictures in between are skipped, as nothing is predicted from them. A decoder that has
+	 * already got part of the way there (frames asked for in order) carries on where it stopped,
+	 * and the last reference picture it decoded is given back again when it is asked for.
+	 */
+	private Picture decode(int reduction, int picture) throws Exception {
+		int keyFrame = index.getKeyFrame(picture);
+		int lastReference = lastReferences[reduction];
+		boolean started = keyFrames[reduction] != -1 && keyFrames[reduction] <= keyFrame && keyFrame <= lastReference;
+		if(started && picture == lastReference){
+			return references[reduction];
+		}
+		int from = keyFrame;
+		if(started && lastReference < picture){
+			from = lastReference+1;
+		} else {
+			keyFrames[reduction] = keyFrame;
+		}
+
+		int codedWidth = (index.width+15) & ~0xf;
+		int codedHeight = (index.height+15) & ~0xf;
+		// Room for 4:2:2 and 4:4:4 chroma, and for interlaced pictures rounded up to 32 lines
+		int size = (codedWidth*(codedHeight+16)) >> (reduction*2);
+		if(planes[reduction] == null || planes[reduction][0].length < size){
+			planes[reduction] = new int[][] {new int[size], new int[size], new int[size]};
+			bPlanes[reduction] = new int[][] {new int[size], new int[size], new int[size]};
+		}
+
+		Picture decoded = null;
+		try {
+			for(int i = from; i <= picture; i++){
+				if(index.types[i] == MpegIndex.B){
+					if(i == picture){
+						decoded = decoders[reduction].decodeFrame(read(i), bPlanes[reduction]);
+					}
+					continue;
+				}
+				decoded = decoders[reduction].decodeFrame(read(i), planes[reduction]);
+				lastReferences[reduction] = i;
+				references[reduction] = decoded;
+			}
+		} catch (Exception e) {
+			keyFrames[reduction] = -1;
+			throw e;
+		}
+		return decoded;
+	}
+
+	/**
+	 * @return A picture's access unit, after the first sequence header, as the GOP it is in may not start with one.
+	 */
+	private ByteBuffer read(int picture) throws Exception {
+		frameData.clear();
+		frameData.put(index.sequenceHeader);
+		stream.read(index.offsets[picture], index.skips[picture], index.lengths[picture], frameData);
+		frameData.flip();
+		return frameData;
+	}
+
+	@Override
+	public synchronized void close() {
+		stream.close();
+	}
+
+}
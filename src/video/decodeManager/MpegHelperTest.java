@@ -0,0 +1,316 @@
+package src.video.decodeManager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import asg.jcodec.codecs.mpeg12.MPEGDecoder;
+import asg.jcodec.codecs.mpeg12.MPEGTestStream;
+import asg.jcodec.common.JCodecUtil;
+import asg.jcodec.common.model.ColorSpace;
+import asg.jcodec.common.model.Picture;
+import asg.jcodec.common.model.Rect;
+
+public class MpegHelperTest {
+
+	private static final int WIDTH = 64, HEIGHT = 48;
+
+	/*
+	 * Pictures in coded order. The stream starts part way through a GOP, with a P and a B picture
+	 * that can't be decoded, and every GOP is open: its first B pictures are predicted from the
+	 * last P picture of the GOP before.
+	 */
+	private static final String TYPES = "PB"+"IPBBPBBPBB"+"IPBBPBBPBB"+"IPBBPBBPBB"+"IBBPBB";
+
+	/*
+	 * Stream types of a PMT entry.
+	 */
+	private static final int MPEG2_VIDEO = 0x02, H264_VIDEO = 0x1B;
+
+	private static List<ByteBuffer> accessUnits = new ArrayList<ByteBuffer>();
+
+	/**
+	 * The frames in display order, decoded one after the other from the first I picture.
+	 */
+	private static List<int[]> expected = new ArrayList<int[]>();
+
+	private static File programStream;
+	private static File transportStream;
+	private static File index;
+
+	@BeforeClass
+	public static void encodeStreams() throws Exception {
+		MPEGTestStream encoder = new MPEGTestStream(WIDTH, HEIGHT, 2);
+		for(int i = 0; i < TYPES.length(); i++){
+			char type = TYPES.charAt(i);
+			accessUnits.add(encoder.frame(type(type), i, i == 0 || type == 'I', 0));
+		}
+		decodeInOrder();
+
+		programStream = File.createTempFile("MpegHelperTest", ".mpg");
+		writeProgramStream(programStream);
+		transportStream = File.createTempFile("MpegHelperTest", ".ts");
+		writeTransportStream(transportStream, MPEG2_VIDEO);
+		index = File.createTempFile("MpegHelperTest", ".idx");
+	}
+
+	@AfterClass
+	public static void deleteStreams() {
+		programStream.delete();
+		transportStream.delete();
+		index.delete();
+	}
+
+	private static int type(char type) {
+		return type == 'I' ? MPEGTestStream.I : (type == 'P' ? MPEGTestStream.P : MPEGTestStream.B);
+	}
+
+	private static void decodeInOrder() {
+		MPEGDecoder decoder = new MPEGDecoder();
+		int codedWidth = (WIDTH+15) & ~0xf, codedHeight = (HEIGHT+15) & ~0xf;
+		int references = 0;
+		int[] held = null;
+		for(int i = 0; i < TYPES.length(); i++){
+			char type = TYPES.charAt(i);
+			if(type == 'I' || type == 'P' && references >= 1 || type == 'B' && references >= 2){
+				int[][] planes = new int[][] {new int[codedWidth*codedHeight], new int[codedWidth*codedHeight], new int[codedWidth*codedHeight]};
+				decoder.decodeFrame(accessUnits.get(i).duplicate(), planes);
+				int[] frame = pixels(JCodecUtil.toBufferedImage(new Picture(codedWidth, codedHeight, planes, ColorSpace.YUV420, new Rect(0, 0, WIDTH, HEIGHT))));
+				// B pictures are shown straight away, reference pictures after the B pictures that follow them
+				if(type == 'B'){
+					expected.add(frame);
+					continue;
+				}
+				references++;
+				if(held != null){
+					expected.add(held);
+				}
+				held = frame;
+			}
+		}
+		expected.add(held);
+	}
+
+	private static int[] pixels(BufferedImage image) {
+		return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+	}
+
+	/**
+	 * Packs the video into packets of random sizes, with a pack header before each and an audio packet now and then.
+	 */
+	private static void writeProgramStream(File file) throws IOException {
+		ByteArrayOutputStream video = new ByteArrayOutputStream();
+		for(ByteBuffer accessUnit : accessUnits){
+			video.write(bytes(accessUnit));
+		}
+		byte[] data = video.toByteArray();
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Random random = new Random(1);
+		for(int pos = 0; pos < data.length;){
+			output.write(new byte[] {0, 0, 1, (byte) 0xBA, 0x44, 0, 4, 0, 4, 1, 1, (byte) 0x89, (byte) 0xC3, (byte) 0xF8});
+			if(random.nextInt(3) == 0){
+				output.write(new byte[] {0, 0, 1, (byte) 0xC0, 0, 10, (byte) 0x80, 0, 0, 1, 2, 3, 4, 5, 6, 7});
+			}
+			int length = Math.min(data.length-pos, 1+random.nextInt(3000));
+			int headerLength = random.nextBoolean() ? 5 : 0;
+			int packetLength = 3+headerLength+length;
+			output.write(new byte[] {0, 0, 1, (byte) 0xE0, (byte) (packetLength >> 8), (byte) packetLength, (byte) 0x80, (byte) (headerLength > 0 ? 0x80 : 0), (byte) headerLength});
+			for(int i = 0; i < headerLength; i++){
+				output.write(0x21);
+			}
+			output.write(data, pos, length);
+			pos += length;
+		}
+		output.write(new byte[] {0, 0, 1, (byte) 0xB9});
+		write(file, output);
+	}
+
+	/**
+	 * Writes a PAT and a PMT listing the video (PID 0x100) with the given stream type and an audio
+	 * stream (PID 0x101), then one PES packet per picture, with packets of another PID in between.
+	 */
+	private static void writeTransportStream(File file, int streamType) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		writeSection(output, 0, new int[] {0, 0xB0, 13, 0, 1, 0xC1, 0, 0, 0, 1, 0xF0, 0x00, 0, 0, 0, 0});
+		writeSection(output, 0x1000, new int[] {2, 0xB0, 23, 0, 1, 0xC1, 0, 0, 0xE1, 0x00, 0xF0, 0,
+				0x03, 0xE1, 0x01, 0xF0, 0, streamType, 0xE1, 0x00, 0xF0, 0, 0, 0, 0, 0});
+
+		Random random = new Random(2);
+		int continuity = 0;
+		for(ByteBuffer accessUnit : accessUnits){
+			ByteArrayOutputStream pes = new ByteArrayOutputStream();
+			pes.write(new byte[] {0, 0, 1, (byte) 0xE0, 0, 0, (byte) 0x80, (byte) 0x80, 5, 0x21, 0, 1, 0, 1});
+			pes.write(bytes(accessUnit));
+			byte[] data = pes.toByteArray();
+
+			for(int pos = 0; pos < data.length;){
+				if(random.nextInt(4) == 0){
+					output.write(new byte[] {0x47, 0x01, 0x01, 0x10});
+					for(int i = 0; i < 184; i++){
+						output.write(0xAA);
+					}
+				}
+				int length = Math.min(184, data.length-pos);
+				int stuffing = 184-length;
+				output.write(0x47);
+				output.write((pos == 0 ? 0x40 : 0) | 0x01);
+				output.write(0x00);
+				if(stuffing > 0){
+					output.write(0x30 | (continuity++ & 0xf));
+					output.write(stuffing-1);
+					if(stuffing > 1){
+						output.write(0);
+						for(int i = 0; i < stuffing-2; i++){
+							output.write(0xFF);
+						}
+					}
+				} else {
+					output.write(0x10 | (continuity++ & 0xf));
+				}
+				output.write(data, pos, length);
+				pos += length;
+			}
+		}
+		write(file, output);
+	}
+
+	private static void writeSection(ByteArrayOutputStream output, int pid, int[] section) {
+		output.write(0x47);
+		output.write(0x40 | (pid >> 8));
+		output.write(pid & 0xff);
+		output.write(0x10);
+		output.write(0);//Pointer field
+		for(int b : section){
+			output.write(b);
+		}
+		for(int i = 5+section.length; i < 188; i++){
+			output.write(0xFF);
+		}
+	}
+
+	private static byte[] bytes(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+
+	private static void write(File file, ByteArrayOutputStream output) throws IOException {
+		FileOutputStream stream = new FileOutputStream(file);
+		try {
+			stream.write(output.toByteArray());
+		} finally {
+			stream.close();
+		}
+	}
+
+	private static MpegHelper open(File file) throws Exception {
+		index.delete();
+		return new MpegHelper(file, index);
+	}
+
+	private static void assertFrame(int frame, BufferedImage image) {
+		assertNotNull("frame "+frame, image);
+		assertArrayEquals("frame "+frame, expected.get(frame), pixels(image));
+	}
+
+	@Test
+	public void testFramesInOrder() throws Exception {
+		MpegHelper helper = open(programStream);
+		try {
+			assertEquals(expected.size(), helper.index.getFrameCount());
+			for(int i = 0; i < expected.size(); i++){
+				assertFrame(i, helper.requestFrame(i));
+			}
+		} finally {
+			helper.close();
+		}
+	}
+
+	@Test
+	public void testFramesInRandomOrder() throws Exception {
+		MpegHelper helper = open(programStream);
+		try {
+			Random random = new Random(5);
+			for(int i = 0; i < 60; i++){
+				int frame = random.nextInt(expected.size());
+				assertFrame(frame, helper.requestFrame(frame));
+			}
+		} finally {
+			helper.close();
+		}
+	}
+
+	@Test
+	public void testTransportStream() throws Exception {
+		assertTrue(MpegHelper.isMpegVideo(transportStream));
+		MpegHelper helper = open(transportStream);
+		try {
+			assertEquals(MpegStream.TS, helper.index.packetSize);
+			assertEquals(expected.size(), helper.index.getFrameCount());
+			for(int i = expected.size()-1; i >= 0; i--){
+				assertFrame(i, helper.requestFrame(i));
+			}
+		} finally {
+			helper.close();
+		}
+	}
+
+	@Test
+	public void testH264TransportStreamRefused() throws Exception {
+		File file = File.createTempFile("MpegHelperTest", ".m2ts");
+		try {
+			writeTransportStream(file, H264_VIDEO);
+			assertFalse(MpegHelper.isMpegVideo(file));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testIndexSavedAndLoaded() throws Exception {
+		index.delete();
+		MpegIndex built = MpegIndex.open(programStream, index);
+		assertTrue(index.exists());
+
+		MpegIndex loaded = MpegIndex.load(index, programStream);
+		assertNotNull(loaded);
+		assertEquals(built.packetSize, loaded.packetSize);
+		assertEquals(built.videoId, loaded.videoId);
+		assertEquals(WIDTH, loaded.width);
+		assertEquals(HEIGHT, loaded.height);
+		assertEquals(built.framerate, loaded.framerate, 0);
+		assertEquals(built.codec, loaded.codec);
+		assertArrayEquals(built.sequenceHeader, loaded.sequenceHeader);
+		assertArrayEquals(built.offsets, loaded.offsets);
+		assertArrayEquals(built.skips, loaded.skips);
+		assertArrayEquals(built.lengths, loaded.lengths);
+		assertArrayEquals(built.types, loaded.types);
+		for(int i = 0; i < built.getFrameCount(); i++){
+			assertEquals(built.getPicture(i), loaded.getPicture(i));
+			assertEquals(built.getKeyFrame(i), loaded.getKeyFrame(i));
+		}
+
+		// An index for the file as it was before it changed isn't used
+		assertTrue(programStream.setLastModified(programStream.lastModified()-10000));
+		assertNull(MpegIndex.load(index, programStream));
+	}
+
+}
@@ -0,0 +1,494 @@
+package src.video.decodeManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import asg.jcodec.common.ByteArrayList;
+import asg.jcodec.common.IntArrayList;
+import asg.jcodec.common.LongArrayList;
+
+/**
+ * Where every picture of an MPEG-1/2 program or transport stream is, so any frame can be decoded
+ * by going back to the key frame before it rather than reading the stream from the start.
+ * Building it takes one pass over the file, after that it is saved and loaded again for as long
+ * as the file doesn't change.
+ *
+ * Pictures are numbered in the order they are coded. Each one is an access unit: its picture
+ * header and slices, with the sequence and GOP headers that come before it, and for field pictures
+ * both fields.
+ */
+public class MpegIndex {
+
+	private static final int MAGIC = 0x4D504958;
+	private static final int VERSION = 1;
+
+	public static final byte I = 1, P = 2, B = 3;
+
+	private static final double[] FRAME_RATES = new double[] {0, 24000/1001.0, 24, 25, 30000/1001.0, 30, 50, 60000/1001.0, 60};
+
+	/*
+	 * The file the index is for.
+	 */
+	public long fileLength;
+	public long lastModified;
+
+	/*
+	 * The stream, see MpegStream.
+	 */
+	public int packetSize;
+	public int videoId;
+
+	public int width;
+	public int height;
+	public double framerate;
+	/**
+	 * "mpeg2" if the sequence header has a sequence extension, otherwise "mpeg1".
+	 */
+	public String codec;
+
+	/**
+	 * The first sequence header and its extensions, for pictures that don't come after one.
+	 */
+	public byte[] sequenceHeader;
+
+	/*
+	 * For each picture: the unit it starts in, how much of that unit's video comes before it,
+	 * its size and its type (I, P or B).
+	 */
+	public long[] offsets;
+	public int[] skips;
+	public int[] lengths;
+	public byte[] types;
+
+	/*
+	 * Worked out from the types when the index is made or loaded.
+	 */
+	private int[] displayToCoded;
+	private int[] keyFrames;
+
+	/**
+	 * @return The number of frames, leaving out any at the start that can't be decoded.
+	 */
+	public int getFrameCount(){
+		return types.length;
+	}
+
+	/**
+	 * @return The largest picture, in bytes.
+	 */
+	public int getMaxLength(){
+		int max = 0;
+		for(int length : lengths){
+			max = Math.max(max, length);
+		}
+		return max;
+	}
+
+	/**
+	 * @param frame - A frame in display order.
+	 * @return The picture it is coded as.
+	 */
+	public int getPicture(int frame){
+		return displayToCoded[frame];
+	}
+
+	/**
+	 * @return The I picture decoding has to start from to get to a picture. B pictures need the
+	 * two reference pictures before them, so for the B pictures coded straight after an I picture
+	 * (an open GOP) it is the I picture before that.
+	 */
+	public int getKeyFrame(int picture){
+		int key = findKeyFrame(picture);
+		if(types[picture] == B){
+			while(key > 0 && countReferences(keyFrames[key], picture) < 2){
+				key--;
+			}
+		}
+		return keyFrames[key];
+	}
+
+	/**
+	 * @return How many I and P pictures there are from one picture up to (not including) another.
+	 */
+	private int countReferences(int from, int to){
+		int references = 0;
+		for(int i = from; i < to; i++){
+			if(types[i] != B){
+				references++;
+			}
+		}
+		return references;
+	}
+
+	/**
+	 * @return Which key frame (as an index into keyFrames) is the last one at or before a picture.
+	 */
+	private int findKeyFrame(int picture){
+		int low = 0, high = keyFrames.length-1;
+		while(low < high){
+			int mid = (low+high+1) >>> 1;
+			if(keyFrames[mid] <= picture){
+				low = mid;
+			} else {
+				high = mid-1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * A reference picture (I or P) is shown after the B pictures coded after it, the same way
+	 * a decoder holds it back until the next reference picture comes along.
+	 */
+	private void order(){
+		displayToCoded = new int[types.length];
+		IntArrayList keys = new IntArrayList(1024);
+		int shown = 0;
+		int held = -1;
+		for(int i = 0; i < types.length; i++){
+			if(types[i] == B){
+				displayToCoded[shown++] = i;
+				continue;
+			}
+			if(types[i] == I){
+				keys.add(i);
+			}
+			if(held != -1){
+				displayToCoded[shown++] = held;
+			}
+			held = i;
+		}
+		if(held != -1){
+			displayToCoded[shown++] = held;
+		}
+		keyFrames = keys.toArray();
+	}
+
+	/**
+	 * Reads a saved index.
+	 * @return The index, or null if there isn't one, it can't be read, or the file has changed since.
+	 */
+	public static MpegIndex load(File indexFile, File file){
+		if(!indexFile.exists()){
+			return null;
+		}
+		try {
+			DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			try {
+				if(stream.readInt() != MAGIC || stream.readInt() != VERSION){
+					return null;
+				}
+				MpegIndex index = new MpegIndex();
+				index.fileLength = stream.readLong();
+				index.lastModified = stream.readLong();
+				if(index.fileLength != file.length() || index.lastModified != file.lastModified()){
+					return null;
+				}
+				index.packetSize = stream.readInt();
+				index.videoId = stream.readInt();
+				index.width = stream.readInt();
+				index.height = stream.readInt();
+				index.framerate = stream.readDouble();
+				index.codec = stream.readUTF();
+				index.sequenceHeader = new byte[stream.readInt()];
+				stream.readFully(index.sequenceHeader);
+				int count = stream.readInt();
+				index.offsets = new long[count];
+				index.skips = new int[count];
+				index.lengths = new int[count];
+				index.types = new byte[count];
+				for(int i = 0; i < count; i++){
+					index.offsets[i] = stream.readLong();
+					index.skips[i] = stream.readInt();
+					index.lengths[i] = stream.readInt();
+					index.types[i] = stream.readByte();
+				}
+				index.order();
+				return index;
+			} finally {
+				stream.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	public void save(File indexFile){
+		indexFile.getParentFile().mkdirs();
+		try {
+			DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+			try {
+				stream.writeInt(MAGIC);
+				stream.writeInt(VERSION);
+				stream.writeLong(fileLength);
+				stream.writeLong(lastModified);
+				stream.writeInt(packetSize);
+				stream.writeInt(videoId);
+				stream.writeInt(width);
+				stream.writeInt(height);
+				stream.writeDouble(framerate);
+				stream.writeUTF(codec);
+				stream.writeInt(sequenceHeader.length);
+				stream.write(sequenceHeader);
+				stream.writeInt(types.length);
+				for(int i = 0; i < types.length; i++){
+					stream.writeLong(offsets[i]);
+					stream.writeInt(skips[i]);
+					stream.writeInt(lengths[i]);
+					stream.writeByte(types[i]);
+				}
+			} finally {
+				stream.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Loads the saved index, or builds it and saves it if there isn't an up to date one.
+	 */
+	public static MpegIndex open(File file, File indexFile) throws IOException {
+		MpegIndex index = load(indexFile, file);
+		if(index == null){
+			index = build(file);
+			index.save(indexFile);
+		}
+		return index;
+	}
+
+	/**
+	 * Goes through the file once, mapped a window at a time, finding the start codes in the video.
+	 * @throws IOException If the file can't be read or has no sequence header.
+	 */
+	public static MpegIndex build(File file) throws IOException {
+		return build(file, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param limit - How much of the file to go through. Only the start of it is enough for the
+	 * sequence header (the size and frame rate), the pictures found are of no use.
+	 */
+	public static MpegIndex build(File file, long limit) throws IOException {
+		MpegIndex index = new MpegIndex();
+		index.fileLength = file.length();
+		index.lastModified = file.lastModified();
+
+		MpegStream stream = new MpegStream(file);
+		try {
+			new Builder(index).scan(stream, limit);
+		} finally {
+			stream.close();
+		}
+		index.packetSize = stream.packetSize;
+		index.videoId = stream.videoId;
+		if(index.sequenceHeader == null){
+			throw new IOException("No MPEG video found in "+file);
+		}
+		index.order();
+		return index;
+	}
+
+	/**
+	 * Splits the video into access units as it goes past. A new one starts at the first sequence
+	 * header, GOP header or picture header after a picture's slices, except for the second field
+	 * of a field picture.
+	 */
+	private static class Builder {
+
+		/*
+		 * The last few units, so the unit a start code begins in can be found even if the
+		 * start code is split over two of them.
+		 */
+		private static final int RECENT = 4;
+		private final long[] unitOffsets = new long[RECENT];
+		private final long[] unitStarts = new long[RECENT];
+		private int units = 0;
+
+		private final MpegIndex index;
+		private final LongArrayList offsets = new LongArrayList(1 << 16);
+		private final IntArrayList skips = new IntArrayList(1 << 16);
+		private final LongArrayList starts = new LongArrayList(1 << 16);
+		private final ByteArrayList types = new ByteArrayList(1 << 16);
+
+		/*
+		 * How much video has gone past, and the last 4 bytes of it.
+		 */
+		private long position = 0;
+		private int last = -1;
+
+		/*
+		 * The start code being read, and the bytes after it read so far.
+		 */
+		private int code = -1;
+		private int header = 0;
+		private int headerBytes = 0;
+
+		private boolean afterSlices = true;
+		private boolean secondField = false;
+		private boolean firstField = false;
+		private long unitStart = -1;
+		private int unitStartSkip;
+		private long unitStartPosition;
+
+		private int references = 0;
+		private boolean sequenceExtension = false;
+		private ByteArrayOutputStream sequenceHeader = null;
+
+		private Builder(MpegIndex index){
+			this.index = index;
+		}
+
+		private void scan(MpegStream stream, long limit) throws IOException {
+			long size = Math.min(limit, stream.size());
+			for(long pos = 0; pos < size;){
+				long unit = pos;
+				pos = stream.next(pos);
+				if(stream.payloadLength == 0){
+					continue;
+				}
+				unitOffsets[units % RECENT] = unit;
+				unitStarts[units % RECENT] = position;
+				units++;
+
+				ByteBuffer payload = stream.payload();
+				for(int i = payload.position(), end = payload.limit(); i < end; i++){
+					read(payload.get(i) & 0xff);
+				}
+			}
+			finish();
+		}
+
+		private void read(int b){
+			position++;
+			last = last << 8 | b;
+			if(sequenceHeader != null && index.sequenceHeader == null){
+				sequenceHeader.write(b);
+			}
+			if((last & 0xFFFFFF00) == 0x100){
+				startCode(b, position-4);
+				return;
+			}
+			if(headerBytes < 3){
+				header = header << 8 | b;
+				headerBytes++;
+				if(headerBytes == 2 && code == 0x00){
+					picture((header>>3) & 7);
+				}
+				if(headerBytes == 3 && code == 0xB5){
+					extension(header>>20, header & 3);
+				}
+			}
+		}
+
+		private void startCode(int code, long start){
+			this.code = code;
+			header = 0;
+			headerBytes = 0;
+
+			if(sequenceHeader != null && index.sequenceHeader == null && code != 0xB5 && code != 0xB2){
+				byte[] bytes = sequenceHeader.toByteArray();
+				index.sequenceHeader = new byte[bytes.length-4];
+				System.arraycopy(bytes, 0, index.sequenceHeader, 0, index.sequenceHeader.length);
+			}
+			if(code == 0xB3 && sequenceHeader == null){
+				sequenceHeader = new ByteArrayOutputStream();
+				sequenceHeader.write(0);
+				sequenceHeader.write(0);
+				sequenceHeader.write(1);
+				sequenceHeader.write(0xB3);
+			}
+
+			if(code >= 0x01 && code <= 0xAF){
+				afterSlices = true;
+			} else if(code == 0xB3 || code == 0xB8 || code == 0x00){
+				if(afterSlices){
+					afterSlices = false;
+					if(code == 0x00 && secondField){
+						secondField = false;
+						this.code = -1;
+						return;
+					}
+					int unit = Math.max(0, units-RECENT);
+					for(int i = units-1; i > unit; i--){
+						if(unitStarts[i % RECENT] <= start){
+							unit = i;
+							break;
+						}
+					}
+					unitStart = unitOffsets[unit % RECENT];
+					unitStartSkip = (int) Math.max(0, start-unitStarts[unit % RECENT]);
+					unitStartPosition = start;
+				}
+			}
+		}
+
+		/**
+		 * The picture header of the first (or only) field of an access unit. Pictures that
+		 * can't be decoded because the stream starts after their reference pictures are left out.
+		 */
+		private void picture(int type){
+			firstField = true;
+			if(unitStart == -1 || type < I || type > B){
+				return;
+			}
+			boolean decodable = type == I || references >= (type == P ? 1 : 2);
+			if(decodable && index.sequenceHeader != null){
+				offsets.add(unitStart);
+				skips.add(unitStartSkip);
+				starts.add(unitStartPosition);
+				types.add((byte) type);
+				if(type != B){
+					references++;
+				}
+			}
+			unitStart = -1;
+		}
+
+		private void extension(int id, int pictureStructure){
+			if(id == 1){
+				sequenceExtension = true;
+			}
+			// Picture coding extension: a field picture is followed by its other field
+			if(id == 8 && firstField){
+				secondField = pictureStructure != 3;
+			}
+			firstField = false;
+		}
+
+		/**
+		 * Works out the size of each access unit from where the next one starts.
+		 */
+		private void finish(){
+			index.offsets = offsets.toArray();
+			index.skips = skips.toArray();
+			index.types = types.toArray();
+			long[] starts = this.starts.toArray();
+			long end = unitStart != -1 ? unitStartPosition : position;
+			index.lengths = new int[starts.length];
+			for(int i = 0; i < starts.length; i++){
+				long next = i+1 < starts.length ? starts[i+1] : end;
+				index.lengths[i] = (int) (next-starts[i]);
+			}
+
+			if(index.sequenceHeader != null){
+				byte[] header = index.sequenceHeader;
+				index.width = (header[4] & 0xff)<<4 | (header[5] & 0xff)>>4;
+				index.height = (header[5] & 0x0f)<<8 | (header[6] & 0xff);
+				int frameRate = header[7] & 0x0f;
+				index.framerate = frameRate < FRAME_RATES.length ? FRAME_RATES[frameRate] : 0;
+				index.codec = sequenceExtension ? "mpeg2" : "mpeg1";
+			}
+		}
+	}
+
+}
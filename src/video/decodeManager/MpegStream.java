@@ -0,0 +1,374 @@
+package src.video.decodeManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import asg.jcodec.common.IntArrayList;
+
+/**
+ * Reads the video of an MPEG program stream (.mpg, .vob) or transport stream (.ts, .m2ts) through
+ * windows of the file mapped into memory, one container unit at a time.
+ * A unit is a pack header or PES packet in a program stream, and a packet in a transport stream.
+ * Only the first video stream (or PID) is read, everything else is stepped over. In a transport
+ * stream that is the first MPEG-1/2 video listed in the program map, a file whose programs only
+ * carry other video (the H.264 of AVCHD cameras) is refused.
+ */
+public class MpegStream {
+
+	/**
+	 * How much of the file is mapped at once, the window moves along as the file is read.
+	 */
+	private static final int WINDOW = 32*1024*1024;
+
+	/**
+	 * Enough for the largest unit, a PES packet is at most 6+65535 bytes.
+	 */
+	private static final int MAX_UNIT = 6+65535;
+
+	/**
+	 * The unit size: 0 for a program stream, 188 byte packets for a transport stream, or
+	 * 192 byte packets for M2TS (AVCHD, Blu-ray), where each packet has a 4 byte time code first.
+	 */
+	public static final int PROGRAM = 0, TS = 188, M2TS = 192;
+
+	/*
+	 * PMT stream types of MPEG-1 and MPEG-2 video, and of the other kinds of video a transport
+	 * stream may carry instead: MPEG-4 part 2, H.264, H.265 and VC-1.
+	 */
+	private static final int MPEG1_VIDEO = 0x01, MPEG2_VIDEO = 0x02;
+	private static final int[] OTHER_VIDEO = new int[] {0x10, 0x1B, 0x24, 0xEA};
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long size;
+	private MappedByteBuffer window;
+	private long windowStart = 0;
+
+	public final int packetSize;
+
+	/**
+	 * Stream id (0xE0-0xEF) of the video PES packets in a program stream, or the PID of the
+	 * video packets in a transport stream. -1 until the first video unit is read.
+	 */
+	public int videoId;
+
+	/*
+	 * The PIDs of the program maps listed in the PAT, while the video PID is still to be found.
+	 * Until a PAT is read the video is taken from the first PES packet with a video stream id.
+	 */
+	private final IntArrayList programMaps = new IntArrayList();
+	private boolean readTables;
+
+	/*
+	 * Where the video carried by the last unit read is, as a file position and length.
+	 * The length is 0 if the unit didn't carry any.
+	 */
+	public long payloadStart;
+	public int payloadLength;
+
+	/**
+	 * Opens a file whose kind of stream and video stream aren't known yet.
+	 */
+	public MpegStream(File file) throws IOException {
+		this(file, -1, -1);
+	}
+
+	/**
+	 * @param packetSize - PROGRAM, TS or M2TS, or -1 to tell from the start of the file.
+	 * @param videoId - The video stream id or PID, or -1 to use the first one found.
+	 */
+	public MpegStream(File file, int packetSize, int videoId) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		channel = this.file.getChannel();
+		size = channel.size();
+		this.packetSize = packetSize == -1 ? detect() : packetSize;
+		this.videoId = videoId;
+		readTables = videoId == -1 && this.packetSize != PROGRAM;
+	}
+
+	public long size(){
+		return size;
+	}
+
+	public void close(){
+		try {
+			file.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Reads units from the start of the file until the video stream is found and, in a transport
+	 * stream with a PAT, until its program map has said which PID it is.
+	 * @param limit - How far into the file to look.
+	 * @return True if a video stream was found.
+	 * @throws IOException If the program map only lists video that isn't MPEG-1/2.
+	 */
+	public boolean findVideo(long limit) throws IOException {
+		long end = Math.min(limit, size);
+		for(long pos = 0; pos < end && (videoId == -1 || readTables && programMaps.size() > 0);){
+			pos = next(pos);
+		}
+		return videoId != -1;
+	}
+
+	/**
+	 * Transport streams have a sync byte (0x47) at the start of every packet, anything else
+	 * is taken to be a program stream.
+	 */
+	private int detect() throws IOException {
+		for(int packet : new int[] {TS, M2TS}){
+			int prefix = packet-TS;
+			if(size >= prefix+packet*2+1 && get(prefix) == 0x47 && get(prefix+packet) == 0x47 && get(prefix+packet*2) == 0x47){
+				return packet;
+			}
+		}
+		return PROGRAM;
+	}
+
+	/**
+	 * Maps the window again if the bytes from pos to pos+length aren't all in it.
+	 */
+	private void ensure(long pos, int length) throws IOException {
+		if(window == null || pos < windowStart || pos+length > windowStart+window.limit()){
+			windowStart = pos;
+			window = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(WINDOW, size-pos));
+		}
+	}
+
+	private int get(long pos) throws IOException {
+		ensure(pos, 1);
+		return window.get((int) (pos-windowStart)) & 0xff;
+	}
+
+	/**
+	 * Reads the unit at a position, setting payloadStart and payloadLength to its video.
+	 * Anything that doesn't look like a unit is skipped up to the next one.
+	 * @return The position of the next unit, or the file size at the end.
+	 * @throws IOException If the program map of a transport stream only lists video that isn't MPEG-1/2.
+	 */
+	public long next(long pos) throws IOException {
+		payloadLength = 0;
+		if(packetSize == PROGRAM){
+			return nextProgramUnit(pos);
+		}
+		return nextPacket(pos);
+	}
+
+	private long nextProgramUnit(long pos) throws IOException {
+		if(pos+6 > size){
+			return size;
+		}
+		ensure(pos, (int) Math.min(MAX_UNIT, size-pos));
+		if(get(pos) != 0 || get(pos+1) != 0 || get(pos+2) != 1){
+			return resync(pos+1);
+		}
+		int code = get(pos+3);
+		if(code == 0xBA){
+			// MPEG-2 pack headers are 14 bytes plus stuffing, MPEG-1 ones 12 bytes
+			if((get(pos+4) & 0xC0) == 0x40){
+				return pos+14+(get(pos+13) & 7);
+			}
+			return pos+12;
+		}
+		if(code == 0xB9){
+			return pos+4;
+		}
+		if(code < 0xBB){
+			return resync(pos+1);
+		}
+		long end = Math.min(size, pos+6+(get(pos+4)<<8 | get(pos+5)));
+		if(code >= 0xE0 && code <= 0xEF){
+			if(videoId == -1){
+				videoId = code;
+			}
+			if(code == videoId){
+				long start = pesPayload(pos+6);
+				if(start < end){
+					payloadStart = start;
+					payloadLength = (int) (end-start);
+				}
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * @param pos - Just after the packet length of a video PES packet.
+	 * @return Where its data starts, after the MPEG-2 or MPEG-1 PES header.
+	 */
+	private long pesPayload(long pos) throws IOException {
+		if((get(pos) & 0xC0) == 0x80){
+			return pos+3+get(pos+2);
+		}
+		for(int i = 0; i < 16 && get(pos) == 0xFF; i++){
+			pos++;
+		}
+		if((get(pos) & 0xC0) == 0x40){
+			pos += 2;
+		}
+		int flags = get(pos) & 0xF0;
+		if(flags == 0x20){
+			return pos+5;
+		}
+		if(flags == 0x30){
+			return pos+10;
+		}
+		return pos+1;
+	}
+
+	/**
+	 * @return The position of the next start code prefix (00 00 01), or the file size.
+	 */
+	private long resync(long pos) throws IOException {
+		for(; pos+3 <= size; pos++){
+			if(get(pos) == 0 && get(pos+1) == 0 && get(pos+2) == 1){
+				return pos;
+			}
+		}
+		return size;
+	}
+
+	private long nextPacket(long pos) throws IOException {
+		int prefix = packetSize-TS;
+		long packet = pos+prefix;
+		if(packet+TS > size){
+			return size;
+		}
+		ensure(pos, packetSize);
+		if(get(packet) != 0x47){
+			// Lost sync, carry on from the next sync byte
+			for(pos++; pos+packetSize <= size; pos++){
+				if(get(pos+prefix) == 0x47){
+					return pos;
+				}
+			}
+			return size;
+		}
+		int pid = (get(packet+1) & 0x1F)<<8 | get(packet+2);
+		boolean unitStart = (get(packet+1) & 0x40) != 0;
+		int adaptation = (get(packet+3)>>4) & 3;
+		long end = packet+TS;
+		long start = packet+4;
+		if((adaptation & 1) == 0){
+			return pos+packetSize;
+		}
+		if(adaptation == 3){
+			start += 1+get(start);
+		}
+		if(readTables && unitStart && start < end){
+			readTable(pid, start+1+get(start), end);
+		}
+		if(unitStart && start+9 <= end && get(start) == 0 && get(start+1) == 0 && get(start+2) == 1){
+			int streamId = get(start+3);
+			if(videoId == -1 && programMaps.size() == 0 && streamId >= 0xE0 && streamId <= 0xEF){
+				videoId = pid;
+			}
+			if(pid == videoId){
+				start += 9+get(start+8);
+			}
+		}
+		if(pid == videoId && start < end){
+			payloadStart = start;
+			payloadLength = (int) (end-start);
+		}
+		return pos+packetSize;
+	}
+
+	/**
+	 * Reads a PAT (PID 0) for the PIDs of the program maps, or a program map for the first
+	 * MPEG-1/2 video PID. Only sections that fit in the packet they start in are read, as PATs and
+	 * program maps almost always do.
+	 * @param pos - The start of the section, after the pointer field.
+	 */
+	private void readTable(int pid, long pos, long end) throws IOException {
+		if(pos+3 > end){
+			return;
+		}
+		int tableId = get(pos);
+		long sectionEnd = pos+3+((get(pos+1) & 0x0F)<<8 | get(pos+2))-4;
+		if(sectionEnd > end){
+			return;
+		}
+		if(pid == 0 && tableId == 0x00){
+			for(long entry = pos+8; entry+4 <= sectionEnd; entry += 4){
+				int program = get(entry)<<8 | get(entry+1);
+				if(program != 0){
+					programMaps.add((get(entry+2) & 0x1F)<<8 | get(entry+3));
+				}
+			}
+			return;
+		}
+		if(tableId != 0x02 || !isProgramMap(pid)){
+			return;
+		}
+		int other = -1;
+		long entry = pos+12+((get(pos+10) & 0x0F)<<8 | get(pos+11));
+		for(; entry+5 <= sectionEnd; entry += 5+((get(entry+3) & 0x0F)<<8 | get(entry+4))){
+			int streamType = get(entry);
+			if(streamType == MPEG1_VIDEO || streamType == MPEG2_VIDEO){
+				videoId = (get(entry+1) & 0x1F)<<8 | get(entry+2);
+				readTables = false;
+				return;
+			}
+			for(int type : OTHER_VIDEO){
+				if(streamType == type && other == -1){
+					other = streamType;
+				}
+			}
+		}
+		if(other != -1){
+			throw new IOException("The video is "+(other == 0x1B ? "H.264" : "stream type 0x"+Integer.toHexString(other))+", not MPEG-1/2");
+		}
+	}
+
+	private boolean isProgramMap(int pid){
+		for(int i = 0; i < programMaps.size(); i++){
+			if(programMaps.get(i) == pid){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return The video of the last unit read, valid until the next unit is read.
+	 */
+	public ByteBuffer payload() throws IOException {
+		ensure(payloadStart, payloadLength);
+		ByteBuffer payload = window.duplicate();
+		payload.position((int) (payloadStart-windowStart));
+		payload.limit(payload.position()+payloadLength);
+		return payload;
+	}
+
+	/**
+	 * Copies the video of a run of units into a buffer.
+	 * @param pos - The unit the video starts in.
+	 * @param skip - How much of that unit's video comes before it.
+	 * @param length - How much video to copy.
+	 */
+	public void read(long pos, int skip, int length, ByteBuffer out) throws IOException {
+		while(length > 0 && pos < size){
+			pos = next(pos);
+			if(payloadLength > skip){
+				ByteBuffer payload = payload();
+				payload.position(payload.position()+skip);
+				if(payload.remaining() > length){
+					payload.limit(payload.position()+length);
+				}
+				length -= payload.remaining();
+				out.put(payload);
+				skip = 0;
+			} else {
+				skip -= payloadLength;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,163 @@
+package src.video.decodeManager;
+
+import static asg.jcodec.common.NIOUtils.readableFileChannel;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import asg.jcodec.codecs.prores.ProresDecoder;
+import asg.jcodec.codecs.prores.ProresToThumb2x2;
+import asg.jcodec.codecs.prores.ProresToThumb4x4;
+import asg.jcodec.common.DecodeOptions;
+import asg.jcodec.common.FileChannelWrapper;
+import asg.jcodec.common.JCodecUtil;
+import asg.jcodec.common.NIOUtils;
+import asg.jcodec.common.model.Packet;
+import asg.jcodec.common.model.Picture;
+import asg.jcodec.common.model.Rect;
+import asg.jcodec.containers.mp4.boxes.Box;
+import asg.jcodec.containers.mp4.boxes.SampleEntry;
+import asg.jcodec.containers.mp4.boxes.SampleSizesBox;
+import asg.jcodec.containers.mp4.boxes.VideoSampleEntry;
+import asg.jcodec.containers.mp4.demuxer.AbstractMP4DemuxerTrack;
+import asg.jcodec.containers.mp4.demuxer.MP4Demuxer;
+import src.screens.editorScreen.libraryPanel.mediaPanel.album.media.MediaVideoItem;
+
+public class ProresHelper extends DecodeManager {
+
+	/**
+	 * Sample entry types of the ProRes flavours, 4444 included.
+	 */
+	public static final List<String> FOURCCS = Arrays.asList("apco", "apcs", "apcn", "apch", "ap4h");
+
+	/**
+	 * Width of the preview frames MediaVideoItem caches. Previews are decoded at the lowest
+	 * resolution that is still at least this wide.
+	 */
+	private static final int PREVIEW_WIDTH = 300;
+
+	/*
+	 * Every frame is a key frame, so any frame can be decoded on its own.
+	 * The reduced decoders only inverse transform the top left 4x4 or 2x2 coefficients of
+	 * each block, giving a picture half or a quarter as wide.
+	 */
+	private static final int FULL = 0, HALF = 1, QUARTER = 2;
+	private final ProresDecoder[] decoders = new ProresDecoder[] {new ProresDecoder(), new ProresToThumb4x4(), new ProresToThumb2x2()};
+	private final int[][][] planes = new int[3][][];
+
+	private FileChannelWrapper channel;
+	public MP4Demuxer demuxer;
+	private AbstractMP4DemuxerTrack track;
+	private ByteBuffer frameData;
+	private int width, height;
+
+	public ProresHelper(MediaVideoItem mediaVideoItem, String directory) throws Exception {
+		super(mediaVideoItem, directory);
+
+		channel = readableFileChannel(new File(directory));
+		try {
+			demuxer = new MP4Demuxer(channel);
+			track = demuxer.getVideoTrack();
+
+			SampleEntry entry = track.getSampleEntries()[0];
+			width = ((VideoSampleEntry) entry).getWidth();
+			height = ((VideoSampleEntry) entry).getHeight();
+
+			// One buffer big enough for every frame, as they are read one at a time
+			SampleSizesBox stsz = Box.findFirst(track.getBox(), SampleSizesBox.class, "mdia", "minf", "stbl", "stsz");
+			int maxSize = stsz.getDefaultSize();
+			if(stsz.getSizes() != null){
+				for(int size : stsz.getSizes()){
+					maxSize = Math.max(maxSize, size);
+				}
+			}
+			frameData = ByteBuffer.allocate(maxSize);
+		} catch (Exception e) {
+			NIOUtils.closeQuietly(channel);
+			throw e;
+		}
+
+		mediaVideoItem.totalFrames = (int) track.getFrameCount();
+		long duration = track.getDuration().getNum();
+		if(duration > 0){
+			mediaVideoItem.framerate = (double) mediaVideoItem.totalFrames*track.getTimescale()/duration;
+		}
+
+	}
+
+	/**
+	 * @return True if the file is a MOV or MP4 whose video track is ProRes. Only the moov box is read.
+	 */
+	public static boolean isProres(File file){
+		try {
+			FileChannelWrapper channel = readableFileChannel(file);
+			try {
+				AbstractMP4DemuxerTrack video = new MP4Demuxer(channel).getVideoTrack();
+				return video != null && video.getSampleEntries().length > 0 && FOURCCS.contains(video.getSampleEntries()[0].getFourcc());
+			} finally {
+				channel.close();
+			}
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	@Override
+	public BufferedImage requestFrame(int frameIndex) throws Exception {
+		return requestFrame(frameIndex, DecodeOptions.FULL);
+	}
+
+	/**
+	 * Thumbnails (KEYFRAMES) are decoded at a quarter of the width. Other previews are decoded
+	 * at the lowest resolution that is still at least as wide as the cached preview frames.
+	 */
+	@Override
+	public synchronized BufferedImage requestFrame(int frameIndex, DecodeOptions options) throws Exception {
+		int reduction = FULL;
+		if(options.keyframesOnly){
+			reduction = QUARTER;
+		} else if(options != DecodeOptions.FULL){
+			while(reduction < QUARTER && (width >> (reduction+1)) >= PREVIEW_WIDTH){
+				reduction++;
+			}
+		}
+
+		Packet packet = readFrame(frameIndex);
+		if(packet == null){
+			return null;
+		}
+
+		int codedWidth = ((width + 15) & ~0xf) >> reduction;
+		int codedHeight = ((height + 15) & ~0xf) >> reduction;
+		int size = codedWidth*codedHeight;
+		if(planes[reduction] == null || planes[reduction][0].length < size){
+			// Room for 4:4:4 chroma
+			planes[reduction] = new int[][] {new int[size], new int[size], new int[size]};
+		}
+
+		Picture picture = decoders[reduction].decodeFrame(packet.getData(), planes[reduction]);
+		picture.setCrop(new Rect(0, 0, width >> reduction, height >> reduction));
+		return JCodecUtil.toBufferedImage(picture);
+	}
+
+	private Packet readFrame(int frameIndex) throws IOException {
+		if(!track.gotoFrame(frameIndex)){
+			return null;
+		}
+		frameData.clear();
+		return track.nextFrame(frameData);
+	}
+
+	/**
+	 * Closes the file, which the demuxer (and the audio decoder reading through it) keeps open until then.
+	 */
+	@Override
+	public synchronized void close() {
+		NIOUtils.closeQuietly(channel);
+	}
+
+}
@@ -0,0 +1,411 @@
+package src.video.gif;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Reads frames from an animated GIF on request.
+ * Opening the file only indexes it: the position, colour table and disposal mode of each frame
+ * are recorded without decompressing anything. A frame is decoded by compositing forward from
+ * the frame before it (if that was the last one asked for) or from the nearest frame that covers
+ * the whole canvas, so scrubbing and playing both stay cheap and the whole animation is never
+ * held in memory. The file itself is memory mapped rather than read onto the heap.
+ */
+public class GifReader {
+
+	private static final int MAX_STACK_SIZE = 4096;
+
+	private static final int DISPOSE_BACKGROUND = 2;
+	private static final int DISPOSE_PREVIOUS = 3;
+
+	/**
+	 * Where one image in the file is, and how it is drawn and disposed of.
+	 */
+	private static class GifImage {
+		int x, y, width, height;
+		boolean interlace;
+		int[] colorTable;
+		int dispose;
+		boolean transparency;
+		int transIndex;
+		int delay;
+		/**
+		 * Position of the LZW minimum code size, followed by the image data sub-blocks.
+		 */
+		int dataPosition;
+		/**
+		 * True if neither drawing this image nor disposing of it depends on any earlier frame.
+		 */
+		boolean keyFrame;
+	}
+
+	private final ByteBuffer data;
+
+	public final int width;
+	public final int height;
+
+	private int bgColor = 0;
+
+	private final ArrayList<GifImage> images = new ArrayList<GifImage>();
+
+	/*
+	 * Compositing state, reused for every frame.
+	 */
+	private final int[] canvas;
+	private int[] previous = null;
+	private int canvasFrame = -1;
+
+	/*
+	 * LZW working arrays.
+	 */
+	private final short[] prefix = new short[MAX_STACK_SIZE];
+	private final byte[] suffix = new byte[MAX_STACK_SIZE];
+	private final byte[] pixelStack = new byte[MAX_STACK_SIZE + 1];
+	private byte[] pixels = new byte[0];
+	private final byte[] block = new byte[256];
+
+	public GifReader(File file) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = input.getChannel();
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			input.close();
+		}
+		data.order(ByteOrder.LITTLE_ENDIAN);
+
+		if(data.remaining() < 13 || data.get(0) != 'G' || data.get(1) != 'I' || data.get(2) != 'F'){
+			throw new IOException("Not a GIF: "+file);
+		}
+		data.position(6);
+		width = data.getShort() & 0xffff;
+		height = data.getShort() & 0xffff;
+		int packed = data.get() & 0xff;
+		int bgIndex = data.get() & 0xff;
+		data.get(); // pixel aspect ratio
+
+		int[] globalColorTable = null;
+		if((packed & 0x80) != 0){
+			globalColorTable = readColorTable(2 << (packed & 7));
+			bgColor = globalColorTable[bgIndex];
+		}
+
+		readIndex(globalColorTable);
+		if(images.isEmpty()){
+			throw new IOException("No frames in GIF: "+file);
+		}
+		canvas = new int[width * height];
+	}
+
+	/**
+	 * Walks the blocks of the file once, recording each image and skipping its data.
+	 * A truncated file keeps whatever frames were read before the end.
+	 */
+	private void readIndex(int[] globalColorTable) {
+		try {
+			readBlocks(globalColorTable);
+		} catch (BufferUnderflowException e) {
+		}
+	}
+
+	private void readBlocks(int[] globalColorTable) {
+		int dispose = 0;
+		boolean transparency = false;
+		int transIndex = 0;
+		int delay = 0;
+
+		while(data.hasRemaining()){
+			int code = data.get() & 0xff;
+			if(code == 0x2C){
+				GifImage image = new GifImage();
+				image.x = data.getShort() & 0xffff;
+				image.y = data.getShort() & 0xffff;
+				image.width = data.getShort() & 0xffff;
+				image.height = data.getShort() & 0xffff;
+				int packed = data.get() & 0xff;
+				image.interlace = (packed & 0x40) != 0;
+				image.colorTable = (packed & 0x80) != 0 ? readColorTable(2 << (packed & 7)) : globalColorTable;
+				image.dispose = dispose;
+				image.transparency = transparency;
+				image.transIndex = transIndex;
+				image.delay = delay;
+				image.dataPosition = data.position();
+				image.keyFrame = images.isEmpty() || (!transparency && dispose != DISPOSE_PREVIOUS
+						&& image.x == 0 && image.y == 0 && image.width == width && image.height == height);
+				if(image.colorTable == null){
+					return; // no colour table, nothing can be drawn from here on
+				}
+				data.get(); // LZW minimum code size
+				skipBlocks();
+				images.add(image);
+
+				dispose = 0;
+				transparency = false;
+				transIndex = 0;
+				delay = 0;
+			} else if(code == 0x21){
+				int label = data.get() & 0xff;
+				if(label == 0xf9){
+					data.get(); // block size
+					int packed = data.get() & 0xff;
+					dispose = (packed & 0x1c) >> 2;
+					transparency = (packed & 1) != 0;
+					delay = (data.getShort() & 0xffff) * 10;
+					transIndex = data.get() & 0xff;
+				}
+				skipBlocks();
+			} else if(code == 0x3b){
+				return;
+			} else if(code != 0x00){
+				return; // bad byte, keep whatever frames were read
+			}
+		}
+	}
+
+	private void skipBlocks(){
+		while(data.hasRemaining()){
+			int size = data.get() & 0xff;
+			if(size == 0){
+				return;
+			}
+			if(data.position() + size > data.limit()){
+				data.position(data.limit());
+				return;
+			}
+			data.position(data.position() + size);
+		}
+	}
+
+	private int[] readColorTable(int colors){
+		int[] table = new int[256]; // max size to avoid bounds checks
+		for(int i = 0; i < colors && data.remaining() >= 3; i++){
+			int r = data.get() & 0xff;
+			int g = data.get() & 0xff;
+			int b = data.get() & 0xff;
+			table[i] = 0xff000000 | (r << 16) | (g << 8) | b;
+		}
+		return table;
+	}
+
+	public int getFrameCount(){
+		return images.size();
+	}
+
+	/**
+	 * @return The frame rate from the average frame delay, treating a delay of 0 as 100ms like browsers do.
+	 */
+	public double getFrameRate(){
+		long total = 0;
+		for(GifImage image : images){
+			total += image.delay > 0 ? image.delay : 100;
+		}
+		return 1000.0 * images.size() / total;
+	}
+
+	/**
+	 * Composites a frame into the reused canvas.
+	 * @return The canvas, only valid until the next call.
+	 */
+	public synchronized int[] getFramePixels(int index){
+		int keyFrame = index;
+		while(!images.get(keyFrame).keyFrame){
+			keyFrame--;
+		}
+		int start;
+		if(canvasFrame >= keyFrame && canvasFrame <= index){
+			start = canvasFrame + 1;
+		} else {
+			Arrays.fill(canvas, 0);
+			start = keyFrame;
+		}
+
+		for(int i = start; i <= index; i++){
+			if(i > keyFrame){
+				dispose(images.get(i - 1));
+			}
+			GifImage image = images.get(i);
+			if(image.dispose == DISPOSE_PREVIOUS){
+				if(previous == null){
+					previous = new int[canvas.length];
+				}
+				System.arraycopy(canvas, 0, previous, 0, canvas.length);
+			}
+			draw(image);
+		}
+		canvasFrame = index;
+		return canvas;
+	}
+
+	/**
+	 * Applies the disposal of the frame that is on the canvas before the next one is drawn.
+	 */
+	private void dispose(GifImage image){
+		if(image.dispose == DISPOSE_BACKGROUND){
+			int color = image.transparency ? 0 : bgColor;
+			int bottom = Math.min(image.y + image.height, height);
+			int right = Math.min(image.x + image.width, width);
+			for(int y = image.y; y < bottom; y++){
+				if(image.x < right){
+					Arrays.fill(canvas, y * width + image.x, y * width + right, color);
+				}
+			}
+		}
+		if(image.dispose == DISPOSE_PREVIOUS && previous != null){
+			System.arraycopy(previous, 0, canvas, 0, canvas.length);
+		}
+	}
+
+	private void draw(GifImage image){
+		decodeImageData(image);
+		int[] colors = image.colorTable;
+		int pass = 1;
+		int inc = 8;
+		int iline = 0;
+		for(int i = 0; i < image.height; i++){
+			int line = i;
+			if(image.interlace){
+				if(iline >= image.height){
+					pass++;
+					switch(pass){
+					case 2:
+						iline = 4;
+						break;
+					case 3:
+						iline = 2;
+						inc = 4;
+						break;
+					case 4:
+						iline = 1;
+						inc = 2;
+					}
+				}
+				line = iline;
+				iline += inc;
+			}
+			line += image.y;
+			if(line < height){
+				int k = line * width;
+				int dx = k + image.x;
+				int dlim = Math.min(dx + image.width, k + width);
+				int sx = i * image.width;
+				while(dx < dlim){
+					int index = pixels[sx++] & 0xff;
+					if(!image.transparency || index != image.transIndex){
+						canvas[dx] = colors[index];
+					}
+					dx++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * LZW decodes an image's data into the reused pixel index array.
+	 */
+	private void decodeImageData(GifImage image){
+		ByteBuffer in = data.duplicate();
+		in.position(image.dataPosition);
+
+		int npix = image.width * image.height;
+		if(pixels.length < npix){
+			pixels = new byte[npix];
+		}
+
+		int dataSize = in.get() & 0xff;
+		int clear = 1 << dataSize;
+		int endOfInformation = clear + 1;
+		int available = clear + 2;
+		int oldCode = -1;
+		int codeSize = dataSize + 1;
+		int codeMask = (1 << codeSize) - 1;
+		for(int code = 0; code < clear && code < MAX_STACK_SIZE; code++){
+			prefix[code] = 0;
+			suffix[code] = (byte) code;
+		}
+
+		int datum = 0, bits = 0, count = 0, first = 0, top = 0, pi = 0, bi = 0;
+		for(int i = 0; i < npix;){
+			if(top == 0){
+				if(bits < codeSize){
+					if(count == 0){
+						count = readBlock(in);
+						if(count <= 0){
+							break;
+						}
+						bi = 0;
+					}
+					datum += (block[bi] & 0xff) << bits;
+					bits += 8;
+					bi++;
+					count--;
+					continue;
+				}
+				int code = datum & codeMask;
+				datum >>= codeSize;
+				bits -= codeSize;
+
+				if(code > available || code == endOfInformation){
+					break;
+				}
+				if(code == clear){
+					codeSize = dataSize + 1;
+					codeMask = (1 << codeSize) - 1;
+					available = clear + 2;
+					oldCode = -1;
+					continue;
+				}
+				if(oldCode == -1){
+					pixelStack[top++] = suffix[code];
+					oldCode = code;
+					first = code;
+					continue;
+				}
+				int inCode = code;
+				if(code == available){
+					pixelStack[top++] = (byte) first;
+					code = oldCode;
+				}
+				while(code > clear){
+					pixelStack[top++] = suffix[code];
+					code = prefix[code];
+				}
+				first = suffix[code] & 0xff;
+				if(available >= MAX_STACK_SIZE){
+					break;
+				}
+				pixelStack[top++] = (byte) first;
+				prefix[available] = (short) oldCode;
+				suffix[available] = (byte) first;
+				available++;
+				if((available & codeMask) == 0 && available < MAX_STACK_SIZE){
+					codeSize++;
+					codeMask += available;
+				}
+				oldCode = inCode;
+			}
+
+			top--;
+			pixels[pi++] = pixelStack[top];
+			i++;
+		}
+		Arrays.fill(pixels, pi, npix, (byte) 0); // clear missing pixels
+	}
+
+	private int readBlock(ByteBuffer in){
+		if(!in.hasRemaining()){
+			return 0;
+		}
+		int size = in.get() & 0xff;
+		size = Math.min(size, in.remaining());
+		in.get(block, 0, size);
+		return size;
+	}
+
+}
@@ -0,0 +1,60 @@
+package src.video.decodeManager;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import asg.jcodec.codecs.wav.WavHeader;
+import asg.jcodec.common.ByteBufferSeekableByteChannel;
+import asg.jcodec.common.NIOUtils;
+
+/**
+ * Decodes the AAC track of the same clip several times and prints the
+ * decode throughput and the bytes allocated per decoded second of audio,
+ * so changes to the JAAD decoder can be checked for speed and GC churn.
+ * The clip is read into memory first so only demuxing and decoding is measured.
+ *
+ * Usage: Mp4AudioBenchmark <file.mp4> [rounds]
+ */
+public class Mp4AudioBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		if(args.length == 0){
+			System.out.println("Options: <input.mp4> [rounds]");
+			return;
+		}
+		ByteBuffer clip = NIOUtils.fetchFrom(new File(args[0]));
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		File wavFile = File.createTempFile("Mp4AudioBenchmark", ".wav");
+		wavFile.deleteOnExit();
+
+		// warm up before timing
+		if(!Mp4AudioDecoder.decodeToWav(new ByteBufferSeekableByteChannel(clip.duplicate()), wavFile)){
+			System.out.println("no AAC track in "+args[0]);
+			return;
+		}
+
+		long time = System.nanoTime();
+		long allocated = threads.getThreadAllocatedBytes(threadId);
+		for(int i = 0; i < rounds; i++){
+			Mp4AudioDecoder.decodeToWav(new ByteBufferSeekableByteChannel(clip.duplicate()), wavFile);
+		}
+		allocated = threads.getThreadAllocatedBytes(threadId)-allocated;
+		time = System.nanoTime()-time;
+
+		WavHeader header = WavHeader.read(wavFile);
+		double audioSeconds = (double) header.dataSize/header.fmt.byteRate;
+		double decodeSeconds = time/1e9/rounds;
+
+		long perRound = allocated/rounds;
+		System.out.println("audio length:      "+String.format("%.1f", audioSeconds)+" s");
+		System.out.println("decode time:       "+String.format("%.1f", decodeSeconds*1000)+" ms ("+String.format("%.0f", audioSeconds/decodeSeconds)+"x realtime)");
+		System.out.println("allocated / round: "+perRound/1024+" KB");
+		System.out.println("allocated / audio second: "+(long) (perRound/audioSeconds)+" bytes");
+	}
+
+}